@@ -0,0 +1,100 @@
+package dev.maltsev.atm.command;
+
+import com.google.common.base.Splitter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of turning an input line into a command: {@link CommandParser#next()} including {@link CommandFactory#create}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class CommandDispatchBenchmark {
+
+    @Param({"100"})
+    public int customerCount;
+
+    private CommandFactory commandFactory;
+
+    private CommandParser commandParser;
+
+    private BufferedReader legacyReader;
+
+    @Setup
+    public void setUp() {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < customerCount; i++) {
+            script.append("login customer").append(i).append('\n')
+                    .append("deposit 100\n")
+                    .append("transfer customer").append((i + 1) % customerCount).append(" 25.50\n")
+                    .append("withdraw 10\n")
+                    .append("logout\n");
+        }
+        byte[] bytes = script.toString().getBytes(StandardCharsets.UTF_8);
+        commandFactory = new CommandFactory();
+        commandParser = new CommandParser(new RepeatingInputStream(bytes), commandFactory);
+        legacyReader = new BufferedReader(new InputStreamReader(new RepeatingInputStream(bytes)));
+    }
+
+    @Benchmark
+    public Optional<Command> next() {
+        return commandParser.next();
+    }
+
+    /**
+     * A baseline: reading a line as a string and splitting it with Guava Splitter
+     */
+    @Benchmark
+    public Optional<Command> splitterNext() throws IOException {
+        String[] tokens =
+                Splitter.on(" ")
+                        .trimResults()
+                        .omitEmptyStrings()
+                        .splitToList(legacyReader.readLine())
+                        .toArray(new String[0]);
+
+        if (tokens.length == 0) {
+            return Optional.empty();
+        }
+
+        return Optional.of(commandFactory.create(tokens));
+    }
+
+    /**
+     * An endless stream repeating the given bytes
+     */
+    static class RepeatingInputStream extends InputStream {
+
+        private final byte[] bytes;
+
+        private int position;
+
+        RepeatingInputStream(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() {
+            byte b = bytes[position];
+            position = (position + 1) % bytes.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            int count = Math.min(length, bytes.length - position);
+            System.arraycopy(bytes, position, buffer, offset, count);
+            position = (position + count) % bytes.length;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package dev.maltsev.atm.controller;
+
+import dev.maltsev.atm.audit.AuditLog;
+import dev.maltsev.atm.audit.AuditedBankService;
+import dev.maltsev.atm.audit.OverflowPolicy;
+import dev.maltsev.atm.command.CommandFactory;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * End-to-end {@link AtmController#doProcess} over a scripted session of 'customerCount' customers.
+ * Each customer deposits, transfers to its neighbour and repays 'debtFanOut' debts created by transfers
+ * exceeding the balance. Every benchmark thread replays its own script against the shared bank,
+ * the thread count is set with '-PjmhThreads=N'. With 'audit' every bank operation is written to an audit log
+ * in a temporary file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class AtmControllerBenchmark {
+
+    @Param({"10", "1000"})
+    public int customerCount;
+
+    @Param({"0", "5"})
+    public int debtFanOut;
+
+    @Param({"false", "true"})
+    public boolean audit;
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    private AtmController controller;
+
+    private Path auditPath;
+
+    private AuditLog auditLog;
+
+    @Setup
+    public void setUp() throws IOException {
+        BankService bankService = new BankServiceImpl();
+        if (audit) {
+            auditPath = Files.createTempFile("atm-audit", ".log");
+            auditLog = new AuditLog(auditPath, 1 << 16, OverflowPolicy.BLOCK);
+        }
+        controller = new AtmController(new CommandFactory(),
+                auditLog != null ? new AuditedBankService(bankService, auditLog) : bankService);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (auditLog != null) {
+            auditLog.close();
+            Files.delete(auditPath);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Script {
+
+        private byte[] bytes;
+
+        @Setup
+        public void setUp(AtmControllerBenchmark benchmark) {
+            String prefix = "thread" + benchmark.threadCounter.getAndIncrement() + "-";
+            int customerCount = benchmark.customerCount;
+
+            StringBuilder script = new StringBuilder();
+            for (int i = 0; i < customerCount; i++) {
+                script.append("login ").append(prefix).append(i).append('\n')
+                        .append("logout\n");
+            }
+            for (int i = 0; i < customerCount; i++) {
+                String next = prefix + ((i + 1) % customerCount);
+                script.append("login ").append(prefix).append(i).append('\n')
+                        .append("deposit 100\n")
+                        .append("transfer ").append(next).append(" 50\n");
+                for (int j = 0; j < benchmark.debtFanOut; j++) {
+                    script.append("transfer ").append(next).append(" 100\n");
+                }
+                script.append("deposit 1000\n")
+                        .append("withdraw 10\n")
+                        .append("logout\n");
+            }
+            script.append("exit\n");
+            bytes = script.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public void doProcess(Script script) {
+        controller.doProcess(new ByteArrayInputStream(script.bytes), NullOutputStream.INSTANCE);
+    }
+
+    /**
+     * A stream discarding everything written
+     */
+    static class NullOutputStream extends OutputStream {
+
+        static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
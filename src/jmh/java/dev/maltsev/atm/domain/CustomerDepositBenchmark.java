@@ -0,0 +1,51 @@
+package dev.maltsev.atm.domain;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of {@link Customer#deposit(Money)} repaying 'debtFanOut' outstanding creditors.
+ * Debts are recreated before every invocation, so a single invocation is the unit of measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class CustomerDepositBenchmark {
+
+    private static final Money DEBT = Money.valueOf(10);
+
+    @Param({"1", "10", "100", "1000"})
+    public int debtFanOut;
+
+    private Customer debtor;
+
+    private Customer[] creditors;
+
+    private Money depositAmount;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        DebtLedger ledger = new DebtLedger();
+        debtor = new Customer("debtor", ledger);
+        creditors = new Customer[debtFanOut];
+        for (int i = 0; i < debtFanOut; i++) {
+            creditors[i] = new Customer("creditor" + i, ledger);
+        }
+        depositAmount = DEBT.multiply(debtFanOut);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        for (Customer creditor : creditors) {
+            debtor.transfer(creditor, DEBT);
+        }
+    }
+
+    @Benchmark
+    public List<Transaction> deposit() {
+        return debtor.deposit(depositAmount);
+    }
+}
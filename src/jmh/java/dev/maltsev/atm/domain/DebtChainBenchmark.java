@@ -0,0 +1,45 @@
+package dev.maltsev.atm.domain;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of a deposit settled through a chain of 'chainLength' customers, each owing to the next one.
+ * The chain is recreated before every invocation, so a single invocation is the unit of measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class DebtChainBenchmark {
+
+    private static final Money DEBT = Money.valueOf(10);
+
+    @Param({"100", "10000"})
+    public int chainLength;
+
+    private Customer[] chain;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        DebtLedger ledger = new DebtLedger();
+        chain = new Customer[chainLength];
+        for (int i = 0; i < chainLength; i++) {
+            chain[i] = new Customer("customer" + i, ledger);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        for (int i = chainLength - 2; i >= 0; i--) {
+            chain[i].transfer(chain[i + 1], DEBT);
+        }
+    }
+
+    @Benchmark
+    public List<Transaction> deposit() {
+        return chain[0].deposit(DEBT);
+    }
+}
@@ -0,0 +1,81 @@
+package dev.maltsev.atm.journal;
+
+import dev.maltsev.atm.domain.Customer;
+import dev.maltsev.atm.domain.DebtLedger;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Time to rebuild the bank from a journal of 'recordCount' records spread over 'customerCount' customers,
+ * every fourth record is a debt change and the rest are balance changes.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class JournalReplayBenchmark {
+
+    @Param({"10000"})
+    public int customerCount;
+
+    @Param({"10000000"})
+    public int recordCount;
+
+    private Path path;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        path = Files.createTempFile("atm", ".journal");
+        try (Journal journal = new Journal(path, FsyncPolicy.NONE, 1000)) {
+            journal.replay(new NoOpHandler());
+
+            DebtLedger ledger = new DebtLedger();
+            Customer[] customers = new Customer[customerCount];
+            for (int i = 0; i < customerCount; i++) {
+                customers[i] = new Customer(i, "customer" + i, ledger, journal);
+                journal.customerCreated(customers[i]);
+            }
+            for (int i = 0; i < recordCount; i++) {
+                Customer customer = customers[i % customerCount];
+                if (i % 4 == 0) {
+                    journal.debtChanged(customer, customers[(i + 1) % customerCount], 1);
+                } else {
+                    journal.balanceChanged(customer, 1);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(path);
+    }
+
+    @Benchmark
+    public BankService replay() throws IOException {
+        try (Journal journal = new Journal(path, FsyncPolicy.NONE, 1000)) {
+            return new BankServiceImpl(journal);
+        }
+    }
+
+    private static class NoOpHandler implements Journal.Handler {
+
+        @Override
+        public void customerCreated(long sequence, int id, String loginName) {
+        }
+
+        @Override
+        public void balanceChanged(long sequence, int id, long cents) {
+        }
+
+        @Override
+        public void debtChanged(long sequence, int debtorId, int creditorId, long cents) {
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package dev.maltsev.atm.metrics;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Overhead of timing an operation on the hot path: reading the clock twice and recording the latency
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class TimerBenchmark {
+
+    private final Timer timer = new Metrics().timer("benchmark");
+
+    private final Timer disabledTimer = Metrics.DISABLED.timer("benchmark");
+
+    private final Histogram histogram = new Histogram();
+
+    @Benchmark
+    public void record(Latency latency) {
+        histogram.record(latency.next());
+    }
+
+    @Benchmark
+    public void time() {
+        timer.stop(timer.start());
+    }
+
+    @Benchmark
+    public void timeDisabled() {
+        disabledTimer.stop(disabledTimer.start());
+    }
+
+    /**
+     * Latencies to record, a counter per thread so the threads share the histogram only
+     */
+    @State(Scope.Thread)
+    public static class Latency {
+
+        private long value;
+
+        long next() {
+            return value++ & 0xFFFFF;
+        }
+    }
+}
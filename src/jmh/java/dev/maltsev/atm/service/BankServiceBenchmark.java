@@ -0,0 +1,135 @@
+package dev.maltsev.atm.service;
+
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.Transaction;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.offheap.OffHeapStore;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import dev.maltsev.atm.service.impl.OffHeapBankService;
+import dev.maltsev.atm.service.impl.ShardedBankService;
+import dev.maltsev.atm.service.impl.SingleWriterBankService;
+import dev.maltsev.atm.shard.LoopbackTransport;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Throughput of {@link BankService} operations. Every benchmark thread works in its own session,
+ * the thread count is set with '-PjmhThreads=N'. The single-writer engine is worth comparing with the locking ones
+ * at several thread counts: it trades the contention on customers for a hand-off to the writer thread. The sharded
+ * engine's transfers mostly cross its four shards, so it measures the cost of the two-phase commit.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class BankServiceBenchmark {
+
+    private static final Money INITIAL_BALANCE = Money.valueOf(1_000_000_000);
+
+    private static final Money AMOUNT = Money.ofCents(1);
+
+    @Param({"1000", "100000"})
+    public int customerCount;
+
+    @Param({"0", "10"})
+    public int debtFanOut;
+
+    @Param({"heap", "offheap", "single-writer", "sharded"})
+    public String engine;
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    private BankService bankService;
+
+    private String[] loginNames;
+
+    @Setup
+    public void setUp() throws BankServiceException, IOException {
+        switch (engine) {
+            case "offheap":
+                bankService = new OffHeapBankService(OffHeapStore.temporary());
+                break;
+            case "single-writer":
+                bankService = new SingleWriterBankService();
+                break;
+            case "sharded":
+                bankService = new ShardedBankService(new LoopbackTransport(4));
+                break;
+            default:
+                bankService = new BankServiceImpl();
+        }
+        loginNames = new String[customerCount];
+        for (int i = 0; i < customerCount; i++) {
+            loginNames[i] = "customer" + i;
+            bankService.logout(bankService.login(loginNames[i]));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (bankService instanceof Closeable) {
+            ((Closeable) bankService).close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadSession {
+
+        private String loginName;
+
+        private Session session;
+
+        private Session debtorSession;
+
+        @Setup
+        public void setUp(BankServiceBenchmark benchmark) throws BankServiceException {
+            int threadIndex = benchmark.threadCounter.getAndIncrement();
+            loginName = "thread" + threadIndex;
+
+            session = benchmark.bankService.login(loginName);
+            benchmark.bankService.deposit(session, INITIAL_BALANCE);
+
+            // a debtor owing to 'debtFanOut' creditors, so every deposit repays a debt first
+            debtorSession = benchmark.bankService.login(loginName + "-debtor");
+            for (int i = 0; i < benchmark.debtFanOut; i++) {
+                String creditor = benchmark.loginNames[(threadIndex * benchmark.debtFanOut + i) % benchmark.customerCount];
+                benchmark.bankService.transfer(debtorSession, creditor, INITIAL_BALANCE);
+            }
+        }
+
+        @TearDown
+        public void tearDown(BankServiceBenchmark benchmark) throws BankServiceException {
+            benchmark.bankService.logout(session);
+            benchmark.bankService.logout(debtorSession);
+        }
+    }
+
+    @Benchmark
+    public Session loginLogout(ThreadSession threadSession) throws BankServiceException {
+        Session session = bankService.login(threadSession.loginName + "-login");
+        bankService.logout(session);
+        return session;
+    }
+
+    @Benchmark
+    public List<Transaction> deposit(ThreadSession threadSession) throws BankServiceException {
+        return bankService.deposit(threadSession.debtorSession, AMOUNT);
+    }
+
+    @Benchmark
+    public Transaction withdraw(ThreadSession threadSession) throws BankServiceException {
+        return bankService.withdraw(threadSession.session, AMOUNT);
+    }
+
+    @Benchmark
+    public List<Transaction> transfer(ThreadSession threadSession) throws BankServiceException {
+        String to = loginNames[ThreadLocalRandom.current().nextInt(customerCount)];
+        return bankService.transfer(threadSession.session, to, AMOUNT);
+    }
+}
@@ -1,24 +1,84 @@
 package dev.maltsev.atm;
 
 import dev.maltsev.atm.controller.AtmController;
+import dev.maltsev.atm.controller.AtmServer;
+import dev.maltsev.atm.controller.BatchReport;
+import dev.maltsev.atm.load.LoadGenerator;
+import dev.maltsev.atm.load.LoadSettings;
+import dev.maltsev.atm.load.LoadTarget;
+import dev.maltsev.atm.load.ProtocolTarget;
+import dev.maltsev.atm.load.ServiceTarget;
+import dev.maltsev.atm.service.BankService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 
 @SpringBootApplication
 public class AtmApplication implements CommandLineRunner {
 
+    private static final String BATCH_OPTION = "--batch";
+
+    private static final String SERVER_OPTION = "--server";
+
+    private static final String LOAD_OPTION = "--load";
+
     @Autowired
     AtmController controller;
 
+    @Autowired
+    AtmServer server;
+
+    @Autowired
+    BankService service;
+
+    @Autowired
+    LoadSettings loadSettings;
+
+    @Value("${atm.batch.flush-every:1000}")
+    int batchFlushEvery;
+
+    /**
+     * 'service' to call the bank service directly or 'protocol' to type commands into terminal sessions
+     */
+    @Value("${atm.load.target:service}")
+    String loadTarget;
+
     public static void main(String[] args) {
         SpringApplication.run(AtmApplication.class, args);
     }
 
     @Override
-    public void run(String... args) {
-        controller.doProcess(System.in, System.out);
+    public void run(String... args) throws IOException, InterruptedException {
+        if (Arrays.asList(args).contains(BATCH_OPTION)) {
+            BatchReport report = controller.doBatchProcess(System.in, System.out, batchFlushEvery);
+            System.out.println(report);
+        } else if (Arrays.asList(args).contains(LOAD_OPTION)) {
+            try (LoadTarget target = createLoadTarget()) {
+                System.out.println(new LoadGenerator(loadSettings).run(target));
+            }
+        } else if (Arrays.asList(args).contains(SERVER_OPTION)) {
+            // serve until the application is shut down
+            server.start();
+            server.awaitTermination();
+        } else {
+            controller.doProcess(System.in, System.out);
+        }
+    }
+
+    private LoadTarget createLoadTarget() {
+        switch (loadTarget) {
+            case "service":
+                return new ServiceTarget(service);
+            case "protocol":
+                return new ProtocolTarget(controller);
+            default:
+                throw new IllegalArgumentException("Unknown load target '" + loadTarget + "'");
+        }
     }
 }
@@ -0,0 +1,36 @@
+package dev.maltsev.atm;
+
+import dev.maltsev.atm.audit.AuditLog;
+import dev.maltsev.atm.audit.AuditedBankService;
+import dev.maltsev.atm.history.HistoryBankService;
+import dev.maltsev.atm.history.TransactionHistory;
+import dev.maltsev.atm.metrics.MeteredBankService;
+import dev.maltsev.atm.metrics.Metrics;
+import dev.maltsev.atm.service.BankService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+
+/**
+ * Creates the bank service every client uses: the engine selected by {@code atm.bank.engine} recording transactions
+ * to the history, then to the audit log, then timed by the metrics, each of them only if it is enabled
+ */
+@Configuration
+public class BankServiceConfiguration {
+
+    /**
+     * @param engine the engine, the bean being created is not a candidate for its own parameter
+     */
+    @Bean(destroyMethod = "")
+    @Primary
+    public BankService bankService(BankService engine, Metrics metrics, ObjectProvider<AuditLog> auditLogProvider,
+                                   ObjectProvider<TransactionHistory> historyProvider) {
+        TransactionHistory history = historyProvider.getIfAvailable();
+        AuditLog auditLog = auditLogProvider.getIfAvailable();
+        BankService recorded = history != null ? new HistoryBankService(engine, history) : engine;
+        BankService audited = auditLog != null ? new AuditedBankService(recorded, auditLog) : recorded;
+        return metrics.isEnabled() ? new MeteredBankService(audited, metrics) : audited;
+    }
+}
@@ -0,0 +1,25 @@
+package dev.maltsev.atm.audit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+
+/**
+ * Creates the audit log when {@code atm.audit.path} is set
+ */
+@Configuration
+@ConditionalOnProperty("atm.audit.path")
+public class AuditConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public AuditLog auditLog(@Value("${atm.audit.path}") String path,
+                             @Value("${atm.audit.buffer-size:65536}") int bufferSize,
+                             @Value("${atm.audit.overflow:BLOCK}") OverflowPolicy overflowPolicy) throws IOException {
+        return new AuditLog(Paths.get(path), bufferSize, overflowPolicy);
+    }
+}
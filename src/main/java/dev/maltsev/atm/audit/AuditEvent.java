@@ -0,0 +1,13 @@
+package dev.maltsev.atm.audit;
+
+
+/**
+ * A kind of bank operation written to the audit log
+ */
+public enum AuditEvent {
+    LOGIN,
+    LOGOUT,
+    DEPOSIT,
+    WITHDRAW,
+    TRANSFER
+}
@@ -0,0 +1,365 @@
+package dev.maltsev.atm.audit;
+
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.util.Loggable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * An audit trail of bank operations written by a background thread.
+ * <p>
+ * Sessions put records into a ring buffer of preallocated slots: a record is a few references and numbers copied
+ * into a claimed slot, so it neither allocates nor waits for the disk. The writer thread formats the records as
+ * UTF-8 text lines into a buffer and writes it to the file when it is full or the ring is drained. The writer
+ * polls the ring every millisecond, backing off up to 100 ms while it is idle, and sessions wake it up only once
+ * the ring is half full, so records are written in batches and a session never switches to the writer for
+ * a single record. When the ring is full the {@link OverflowPolicy} decides whether the session waits or
+ * the record is dropped.
+ * <p>
+ * The audit log is not forced to disk, the journal is the durable state. A line looks like:
+ * <pre>
+ * 2021-09-01T10:00:00.123Z TRANSFER Alice Bob 25.5 ok
+ * 2021-09-01T10:00:01.456Z WITHDRAW Alice - 1000 failed: not enough money
+ * </pre>
+ */
+public class AuditLog implements Closeable, Loggable {
+
+    private static final long MIN_WRITER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long MAX_WRITER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel out;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final Slot[] slots;
+
+    private final int mask;
+
+    /**
+     * the sequence of the record in every slot once it is filled
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * the sequence of the next record to claim
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * the sequence of the next record to write
+     */
+    private final AtomicLong consumed = new AtomicLong();
+
+    private final LongAdder droppedCount = new LongAdder();
+
+    private final Thread writer;
+
+    private final StringBuilder line = new StringBuilder();
+
+    private char[] lineChars = new char[256];
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final ByteBuffer encoded = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE);
+
+    private long cachedSecond = Long.MIN_VALUE;
+
+    private String cachedSecondText;
+
+    /**
+     * a number of written records, it is updated by the writer only
+     */
+    private volatile long writtenCount;
+
+    private volatile boolean writerParked;
+
+    private volatile boolean closed;
+
+    private IOException failure;
+
+    /**
+     * Open the audit log appending to the given file
+     *
+     * @param bufferSize a number of records the buffer holds, rounded up to a power of two
+     */
+    public AuditLog(@NotNull Path path, int bufferSize, @NotNull OverflowPolicy overflowPolicy) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND),
+                bufferSize, overflowPolicy);
+    }
+
+    AuditLog(@NotNull WritableByteChannel out, int bufferSize, @NotNull OverflowPolicy overflowPolicy) {
+        if (bufferSize <= 0 || bufferSize > 1 << 30) {
+            throw new IllegalArgumentException("buffer size has to be from 1 to 2^30");
+        }
+        int capacity = Integer.highestOneBit(bufferSize * 2 - 1);
+        this.out = out;
+        this.overflowPolicy = overflowPolicy;
+        this.slots = new Slot[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            published.set(i, -1);
+        }
+        this.mask = capacity - 1;
+        this.writer = new Thread(this::write, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Put a record of an operation into the buffer, a record after {@link #close()} is dropped
+     *
+     * @param loginName   a customer performing the operation
+     * @param counterpart a customer receiving a transfer, null for other operations
+     * @param cents       an amount of the operation, 0 for login and logout
+     * @param error       a message of the error the operation has failed with, null if it has succeeded
+     */
+    public void record(@NotNull AuditEvent event, @NotNull String loginName, @Nullable String counterpart, long cents,
+                       @Nullable String error) {
+        long sequence;
+        long backlog;
+        while (true) {
+            if (closed) {
+                droppedCount.increment();
+                return;
+            }
+            sequence = claimed.get();
+            backlog = sequence - consumed.get();
+            if (backlog > mask) {
+                if (overflowPolicy == OverflowPolicy.DROP) {
+                    droppedCount.increment();
+                    return;
+                }
+                LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        int index = (int) sequence & mask;
+        slots[index].set(System.currentTimeMillis(), event, loginName, counterpart, cents, error);
+        published.lazySet(index, sequence);
+        if (backlog >= slots.length / 2 && writerParked) {
+            // the first session to see it wakes the writer up, the rest don't repeat the system call
+            writerParked = false;
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @return a number of records dropped because the buffer was full, the writer failed or the log was closed
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount;
+    }
+
+    /**
+     * Write the buffered records and close the file, records put afterwards are dropped
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        logger().info("Audit log closed, {} records written, {} dropped", getWrittenCount(), getDroppedCount());
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void write() {
+        boolean unflushed = false;
+        long parkNanos = MIN_WRITER_PARK_NANOS;
+        while (true) {
+            long sequence = consumed.get();
+            int index = (int) sequence & mask;
+            if (published.get(index) == sequence) {
+                Slot slot = slots[index];
+                writeLine(slot);
+                slot.clear();
+                consumed.lazySet(sequence + 1);
+                unflushed = true;
+                continue;
+            }
+
+            if (unflushed) {
+                flush();
+                unflushed = false;
+                parkNanos = MIN_WRITER_PARK_NANOS;
+                continue;
+            }
+            // a record claimed before closing may still be being filled, once all of them are written the claimed
+            // sequence is moved a buffer ahead, so late sessions find the buffer full and drop their records
+            if (closed && claimed.compareAndSet(sequence, sequence + slots.length)) {
+                return;
+            }
+
+            writerParked = true;
+            if (published.get(index) != sequence) {
+                LockSupport.parkNanos(this, parkNanos);
+                parkNanos = Math.min(parkNanos * 2, MAX_WRITER_PARK_NANOS);
+            }
+            writerParked = false;
+        }
+    }
+
+    private void writeLine(Slot slot) {
+        if (failure != null) {
+            droppedCount.increment();
+            return;
+        }
+
+        line.setLength(0);
+        appendTime(slot.timeMillis);
+        line.append(' ').append(slot.event.name())
+                .append(' ').append(slot.loginName)
+                .append(' ').append(slot.counterpart != null ? slot.counterpart : "-")
+                .append(' ');
+        Money.ofCents(slot.cents).appendTo(line);
+        if (slot.error == null) {
+            line.append(" ok");
+        } else {
+            line.append(" failed: ");
+            // keep a record on one line
+            for (int i = 0; i < slot.error.length(); i++) {
+                char c = slot.error.charAt(i);
+                line.append(c == '\n' || c == '\r' ? ' ' : c);
+            }
+        }
+        line.append('\n');
+
+        int length = line.length();
+        if (length > lineChars.length) {
+            lineChars = new char[Math.max(length, lineChars.length * 2)];
+        }
+        line.getChars(0, length, lineChars, 0);
+        CharBuffer chars = CharBuffer.wrap(lineChars, 0, length);
+        try {
+            while (encoder.encode(chars, encoded, false).isOverflow()) {
+                drain();
+            }
+            writtenCount++;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Append the time in ISO-8601 format, the part up to seconds is formatted once a second
+     */
+    private void appendTime(long timeMillis) {
+        long second = Math.floorDiv(timeMillis, 1000);
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedSecondText = DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(
+                    LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC));
+        }
+        int millis = Math.floorMod(timeMillis, 1000);
+        line.append(cachedSecondText)
+                .append('.')
+                .append((char) ('0' + millis / 100))
+                .append((char) ('0' + millis / 10 % 10))
+                .append((char) ('0' + millis % 10))
+                .append('Z');
+    }
+
+    private void flush() {
+        if (failure != null) {
+            return;
+        }
+        try {
+            drain();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void drain() throws IOException {
+        encoded.flip();
+        while (encoded.hasRemaining()) {
+            out.write(encoded);
+        }
+        encoded.clear();
+    }
+
+    private void fail(IOException e) {
+        logger().error("Failed to write audit log, further records are dropped", e);
+        failure = e;
+    }
+
+    /**
+     * A preallocated record, it is written by the session which has claimed it and read by the writer
+     */
+    private static class Slot {
+
+        private long timeMillis;
+
+        private AuditEvent event;
+
+        private String loginName;
+
+        private String counterpart;
+
+        private long cents;
+
+        private String error;
+
+        void set(long timeMillis, AuditEvent event, String loginName, String counterpart, long cents, String error) {
+            this.timeMillis = timeMillis;
+            this.event = event;
+            this.loginName = loginName;
+            this.counterpart = counterpart;
+            this.cents = cents;
+            this.error = error;
+        }
+
+        /**
+         * Release the references, so a slot doesn't keep strings of old records
+         */
+        void clear() {
+            loginName = null;
+            counterpart = null;
+            error = null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package dev.maltsev.atm.audit;
+
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.Payment;
+import dev.maltsev.atm.domain.Transaction;
+import dev.maltsev.atm.domain.TransferSummary;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+
+/**
+ * A bank service putting a record of every operation of the wrapped one, succeeded or failed, into the audit log
+ */
+public class AuditedBankService implements BankService {
+
+    private final BankService service;
+
+    private final AuditLog auditLog;
+
+    public AuditedBankService(@NotNull BankService service, @NotNull AuditLog auditLog) {
+        this.service = service;
+        this.auditLog = auditLog;
+    }
+
+    @NotNull
+    @Override
+    public Session login(@NotNull String loginName) throws BankServiceException {
+        try {
+            Session session = service.login(loginName);
+            auditLog.record(AuditEvent.LOGIN, loginName, null, 0, null);
+            return session;
+        } catch (BankServiceException | RuntimeException e) {
+            auditLog.record(AuditEvent.LOGIN, loginName, null, 0, String.valueOf(e.getMessage()));
+            throw e;
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<Transaction> deposit(@NotNull Session session, @NotNull Money amount) throws BankServiceException {
+        String loginName = session.getCustomer().getLoginName();
+        try {
+            List<Transaction> transactions = service.deposit(session, amount);
+            auditLog.record(AuditEvent.DEPOSIT, loginName, null, amount.getCents(), null);
+            return transactions;
+        } catch (BankServiceException | RuntimeException e) {
+            auditLog.record(AuditEvent.DEPOSIT, loginName, null, amount.getCents(), String.valueOf(e.getMessage()));
+            throw e;
+        }
+    }
+
+    @NotNull
+    @Override
+    public Transaction withdraw(@NotNull Session session, @NotNull Money amount) throws BankServiceException {
+        String loginName = session.getCustomer().getLoginName();
+        try {
+            Transaction transaction = service.withdraw(session, amount);
+            auditLog.record(AuditEvent.WITHDRAW, loginName, null, amount.getCents(), null);
+            return transaction;
+        } catch (BankServiceException | RuntimeException e) {
+            auditLog.record(AuditEvent.WITHDRAW, loginName, null, amount.getCents(), String.valueOf(e.getMessage()));
+            throw e;
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<Transaction> transfer(@NotNull Session session, @NotNull String toLoginName, @NotNull Money amount)
+            throws BankServiceException {
+        String loginName = session.getCustomer().getLoginName();
+        try {
+            List<Transaction> transactions = service.transfer(session, toLoginName, amount);
+            auditLog.record(AuditEvent.TRANSFER, loginName, toLoginName, amount.getCents(), null);
+            return transactions;
+        } catch (BankServiceException | RuntimeException e) {
+            auditLog.record(AuditEvent.TRANSFER, loginName, toLoginName, amount.getCents(),
+                    String.valueOf(e.getMessage()));
+            throw e;
+        }
+    }
+
+    /**
+     * Record every payment of the batch as a transfer, if the batch fails all its payments are recorded as failed
+     */
+    @NotNull
+    @Override
+    public TransferSummary transferAll(@NotNull Session session, @NotNull List<Payment> payments)
+            throws BankServiceException {
+        String loginName = session.getCustomer().getLoginName();
+        try {
+            TransferSummary summary = service.transferAll(session, payments);
+            for (Payment payment : payments) {
+                auditLog.record(AuditEvent.TRANSFER, loginName, payment.getTo(), payment.getAmount().getCents(), null);
+            }
+            return summary;
+        } catch (BankServiceException | RuntimeException e) {
+            String error = String.valueOf(e.getMessage());
+            for (Payment payment : payments) {
+                auditLog.record(AuditEvent.TRANSFER, loginName, payment.getTo(), payment.getAmount().getCents(),
+                        error);
+            }
+            throw e;
+        }
+    }
+
+    @NotNull
+    @Override
+    public CustomerView logout(@NotNull Session session) throws BankServiceException {
+        String loginName = session.getCustomer().getLoginName();
+        try {
+            CustomerView customer = service.logout(session);
+            auditLog.record(AuditEvent.LOGOUT, loginName, null, 0, null);
+            return customer;
+        } catch (BankServiceException | RuntimeException e) {
+            auditLog.record(AuditEvent.LOGOUT, loginName, null, 0, String.valueOf(e.getMessage()));
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package dev.maltsev.atm.audit;
+
+
+/**
+ * Defines what a session does when the audit log's buffer is full because the writer can't keep up
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The session waits until the writer frees a slot, no record is lost but the session is slowed down to the pace
+     * of the disk
+     */
+    BLOCK,
+
+    /**
+     * The record is dropped and counted, the session never waits
+     */
+    DROP
+}
@@ -5,9 +5,9 @@ import org.jetbrains.annotations.NotNull;
 
 public abstract class AbstractCommand implements Command {
 
-    protected final String[] args;
+    protected final CommandArguments args;
 
     public AbstractCommand(@NotNull CommandArguments commandArguments) {
-        this.args = commandArguments.getArgs();
+        this.args = commandArguments;
     }
 }
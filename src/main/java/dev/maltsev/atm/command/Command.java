@@ -1,6 +1,6 @@
 package dev.maltsev.atm.command;
 
-import dev.maltsev.atm.domain.Customer;
+import dev.maltsev.atm.domain.CustomerView;
 import dev.maltsev.atm.domain.Transaction;
 import dev.maltsev.atm.service.BankService;
 import dev.maltsev.atm.service.exceptions.BankServiceException;
@@ -15,14 +15,14 @@ import java.util.List;
 public interface Command {
 
     @NotNull
-    String execute(BankService service) throws BankServiceException;
+    String execute(BankService service, CommandContext context) throws BankServiceException;
 
     @NotNull
-    default String printTransactionStatement(List<Transaction> transactions, Customer customer) {
+    default String printTransactionStatement(List<Transaction> transactions, CustomerView customer) {
         StringBuilder stringBuilder = new StringBuilder();
         for (Transaction transaction : transactions) {
-            String to = transaction.getTo();
-            if (!to.equals(customer.getLoginName())) {
+            // deposits and repayments made by other customers of a deposit's cascade are not printed
+            if (customer.getLoginName().equals(transaction.getFrom())) {
                 stringBuilder
                         .append(transaction.getStatement())
                         .append("\n");
@@ -33,16 +33,15 @@ public interface Command {
     }
 
     @NotNull
-    default String printBalanceStatement(Customer customer) {
-        return new StringBuilder()
-                .append("Your balance is $")
-                .append(customer.getAccountBalance().setScale(0))
+    default String printBalanceStatement(CustomerView customer) {
+        StringBuilder stringBuilder = new StringBuilder().append("Your balance is $");
+        return customer.getAccountBalance().appendTo(stringBuilder)
                 .append("\n")
                 .toString();
     }
 
     @NotNull
-    default String printCreditStatement(Customer customer) {
+    default String printCreditStatement(CustomerView customer) {
         String statement = customer.getCreditStatement();
         StringBuilder stringBuilder = new StringBuilder();
 
@@ -56,7 +55,7 @@ public interface Command {
     }
 
     @NotNull
-    default String printDebitStatement(Customer customer) {
+    default String printDebitStatement(CustomerView customer) {
         String statement = customer.getDebitStatement();
         StringBuilder stringBuilder = new StringBuilder();
 
@@ -1,13 +1,83 @@
 package dev.maltsev.atm.command;
 
-import lombok.Getter;
-import lombok.RequiredArgsConstructor;
+import dev.maltsev.atm.domain.Money;
+import org.jetbrains.annotations.NotNull;
 
+import java.nio.CharBuffer;
+import java.util.Arrays;
 
-@RequiredArgsConstructor
-@Getter
+
+/**
+ * Arguments of a command, kept as ranges of characters of the command line buffer.
+ * <p>
+ * {@link CommandParser} reuses the same instance and line buffer for every command it parses,
+ * so the arguments are valid until the next command is parsed.
+ */
 public class CommandArguments {
 
-    private final String[] args;
+    private CharBuffer line;
+
+    private int[] starts = new int[4];
+
+    private int[] ends = new int[4];
+
+    private int size;
+
+    /**
+     * Create arguments from the given strings
+     */
+    @NotNull
+    public static CommandArguments of(@NotNull String... args) {
+        CommandArguments arguments = new CommandArguments();
+        arguments.reset(CharBuffer.wrap(String.join(" ", args).toCharArray()));
+
+        int start = 0;
+        for (String arg : args) {
+            arguments.add(start, start + arg.length());
+            start += arg.length() + 1;
+        }
+        return arguments;
+    }
+
+    void reset(@NotNull CharBuffer line) {
+        this.line = line;
+        this.size = 0;
+    }
+
+    void add(int start, int end) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @NotNull
+    public String getString(int index) {
+        checkIndex(index);
+        return new String(line.array(), starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * Parse an amount of money right from the characters of the argument
+     *
+     * @throws NumberFormatException if the argument is not a valid amount
+     */
+    @NotNull
+    public Money getMoney(int index) {
+        checkIndex(index);
+        return Money.ofCents(Money.parseCents(line, starts[index], ends[index]));
+    }
 
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Argument " + index + " of " + size);
+        }
+    }
 }
@@ -0,0 +1,31 @@
+package dev.maltsev.atm.command;
+
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+
+/**
+ * A state of a single ATM terminal shared by the commands executed on it
+ */
+public class CommandContext {
+
+    private Session session;
+
+    public boolean isAuthenticated() {
+        return session != null;
+    }
+
+    @NotNull
+    public Session getSession() throws BankServiceException {
+        if (session == null) {
+            throw new BankServiceException("there is no authenticated customer");
+        }
+        return session;
+    }
+
+    public void setSession(@Nullable Session session) {
+        this.session = session;
+    }
+}
@@ -0,0 +1,36 @@
+package dev.maltsev.atm.command;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Function;
+
+
+/**
+ * A named command known to {@link CommandFactory}.
+ * Any Spring bean implementing this interface is registered as an additional command.
+ */
+public interface CommandDefinition {
+
+    @NotNull
+    String getName();
+
+    @NotNull
+    Command create(@NotNull CommandArguments arguments);
+
+    @NotNull
+    static CommandDefinition of(@NotNull String name, @NotNull Function<CommandArguments, Command> factory) {
+        return new CommandDefinition() {
+            @NotNull
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @NotNull
+            @Override
+            public Command create(@NotNull CommandArguments arguments) {
+                return factory.apply(arguments);
+            }
+        };
+    }
+}
@@ -1,42 +1,117 @@
 package dev.maltsev.atm.command;
 
-import com.google.common.collect.ImmutableMap;
+import dev.maltsev.atm.metrics.Metrics;
+import dev.maltsev.atm.metrics.Timer;
 import dev.maltsev.atm.util.Loggable;
+import dev.maltsev.atm.util.NameTable;
 import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 @Component
 public class CommandFactory implements Loggable {
 
-    private final ImmutableMap<String, Class<? extends Command>> commandMap =
-            new ImmutableMap.Builder<String, Class<? extends Command>>()
-                    .put("login", LoginCommand.class)
-                    .put("deposit", DepositCommand.class)
-                    .put("withdraw", WithdrawCommand.class)
-                    .put("transfer", TransferCommand.class)
-                    .put("logout", LogoutCommand.class)
-                    .put("exit", ExitCommand.class)
-                    .put("help", HelpCommand.class)
-                    .build();
+    private static final List<CommandDefinition> BUILT_IN_COMMANDS = Arrays.asList(
+            CommandDefinition.of("login", LoginCommand::new),
+            CommandDefinition.of("deposit", DepositCommand::new),
+            CommandDefinition.of("withdraw", WithdrawCommand::new),
+            CommandDefinition.of("transfer", TransferCommand::new),
+            CommandDefinition.of("logout", LogoutCommand::new),
+            CommandDefinition.of("exit", ExitCommand::new),
+            CommandDefinition.of("help", HelpCommand::new));
+
+    private final NameTable<CommandDefinition> commandTable;
+
+    private final Metrics metrics;
+
+    private final Timer createTimer;
+
+    public CommandFactory() {
+        this(Collections.emptyList());
+    }
+
+    @Autowired
+    public CommandFactory(ObjectProvider<CommandDefinition> commandDefinitions, @NotNull Metrics metrics) {
+        this(commandDefinitions.orderedStream().collect(Collectors.toList()), metrics);
+    }
+
+    public CommandFactory(@NotNull List<CommandDefinition> commandDefinitions) {
+        this(commandDefinitions, Metrics.DISABLED);
+    }
+
+    /**
+     * @param commandDefinitions commands to register in addition to the built-in ones
+     * @param metrics            a registry of timers of parsing and creating commands, reported by 'stats' command
+     * @throws IllegalStateException if there are several commands with the same name
+     */
+    public CommandFactory(@NotNull List<CommandDefinition> commandDefinitions, @NotNull Metrics metrics) {
+        this.metrics = metrics;
+        this.createTimer = metrics.timer("factory.create");
+
+        Map<String, CommandDefinition> commandMap = new LinkedHashMap<>();
+        CommandDefinition statsCommand = CommandDefinition.of("stats", args -> new StatsCommand(args, metrics));
+        Stream.concat(Stream.concat(BUILT_IN_COMMANDS.stream(), Stream.of(statsCommand)), commandDefinitions.stream())
+                .forEach(definition -> {
+                    if (commandMap.putIfAbsent(definition.getName(), definition) != null) {
+                        throw new IllegalStateException("Duplicate command '" + definition.getName() + "'");
+                    }
+                });
+        this.commandTable = new NameTable<>(commandMap);
+
+        if (!commandDefinitions.isEmpty()) {
+            logger().info("Registered commands: {}", commandMap.keySet());
+        }
+    }
 
     @NotNull
     public Command create(@NotNull String... args) {
+        String commandName = args[0];
+        CommandArguments commandArguments = CommandArguments.of(Arrays.copyOfRange(args, 1, args.length));
+        return create(commandName, 0, commandName.length(), commandArguments);
+    }
+
+    /**
+     * Create a command with the name given as a range of characters
+     *
+     * @param line      characters containing a command name
+     * @param nameStart an index of the first character of the name, inclusive
+     * @param nameEnd   an index of the last character of the name, exclusive
+     * @param arguments arguments of the command
+     * @return a command
+     * @throws IllegalArgumentException if there is no such command
+     */
+    @NotNull
+    public Command create(@NotNull CharSequence line, int nameStart, int nameEnd,
+                          @NotNull CommandArguments arguments) {
+        long startTime = createTimer.start();
+        CommandDefinition commandDefinition = commandTable.get(line, nameStart, nameEnd);
+        if (commandDefinition == null) {
+            createTimer.fail(startTime);
+            throw new IllegalArgumentException("Unknown command '" + line.subSequence(nameStart, nameEnd) + "'");
+        }
+
         try {
-            String commandName = args[0];
-            String[] commandArgs = Arrays.copyOfRange(args, 1, args.length);
-            Class<? extends Command> commandClass = commandMap.get(commandName);
-            if (commandClass == null) {
-                throw new IllegalArgumentException("Unknown command '" + commandName + "'");
-            }
-            Constructor<? extends Command> constructor = commandClass.getConstructor(CommandArguments.class);
-            return constructor.newInstance(new CommandArguments(commandArgs));
-        } catch (InvocationTargetException | InstantiationException | IllegalAccessException | NoSuchMethodException e) {
-            throw new IllegalArgumentException(e);
+            Command command = commandDefinition.create(arguments);
+            createTimer.stop(startTime);
+            return command;
+        } catch (RuntimeException e) {
+            createTimer.fail(startTime);
+            throw e;
         }
     }
+
+    @NotNull
+    Metrics getMetrics() {
+        return metrics;
+    }
 }
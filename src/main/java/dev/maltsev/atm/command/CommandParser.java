@@ -1,41 +1,211 @@
 package dev.maltsev.atm.command;
 
-import com.google.common.base.Splitter;
+import dev.maltsev.atm.metrics.Timer;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.Scanner;
 
 
+/**
+ * A parser of commands, one command per line.
+ * <p>
+ * The input is read into a reusable character buffer and every line is split into tokens by whitespaces in place,
+ * keeping only the tokens' boundaries. A command name is looked up and amounts are parsed right from the buffer,
+ * so no intermediate strings are created.
+ * <p>
+ * A parser created without a reader is fed by the caller with {@link #feed(CharBuffer)}, which suits front-ends
+ * receiving the input in chunks. Its buffer doesn't grow, so a line has to fit into it.
+ */
 public class CommandParser {
 
-    private final Scanner scanner;
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Reader reader;
 
     private final CommandFactory commandFactory;
 
+    private final CommandArguments arguments = new CommandArguments();
+
+    private final Timer parseTimer;
+
+    private char[] buffer;
+
+    private CharBuffer bufferView;
+
+    private int position;
+
+    private int limit;
+
+    private boolean endOfInput;
+
     public CommandParser(InputStream in, CommandFactory commandFactory) {
-        this.scanner = new Scanner(in);
+        this(new InputStreamReader(in), commandFactory);
+    }
+
+    public CommandParser(Reader reader, CommandFactory commandFactory) {
+        this(reader, commandFactory, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CommandParser(Reader reader, CommandFactory commandFactory, int bufferSize) {
+        this.reader = reader;
         this.commandFactory = commandFactory;
+        this.parseTimer = commandFactory.getMetrics().timer("parser.parse");
+        this.buffer = new char[bufferSize];
+        this.bufferView = CharBuffer.wrap(buffer);
+    }
+
+    /**
+     * Create a parser fed by the caller
+     */
+    public CommandParser(CommandFactory commandFactory, int bufferSize) {
+        this(null, commandFactory, bufferSize);
+    }
+
+    /**
+     * Append as many characters as the buffer can take, the rest is left in the given buffer
+     */
+    public void feed(@NotNull CharBuffer chars) {
+        if (reader != null) {
+            throw new IllegalStateException("The parser reads its own input");
+        }
+
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        int count = Math.min(chars.remaining(), buffer.length - limit);
+        chars.get(buffer, limit, count);
+        limit += count;
+    }
+
+    /**
+     * @return a number of characters which can be fed
+     */
+    public int getFreeSpace() {
+        return buffer.length - (limit - position);
+    }
+
+    /**
+     * @return true if a whole line ended by a line feed has been read
+     */
+    public boolean hasLine() {
+        for (int index = position; index < limit; index++) {
+            if (buffer[index] == '\n') {
+                return true;
+            }
+        }
+        return false;
     }
 
     public boolean hasNext() {
-        return scanner.hasNextLine();
+        return position < limit || fill();
     }
 
     @NotNull
     public Optional<Command> next() {
-        String[] tokens =
-                Splitter.on(" ")
-                        .trimResults()
-                        .omitEmptyStrings()
-                        .splitToList(scanner.nextLine())
-                        .toArray(new String[0]);
-
-        if (tokens.length == 0) {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more commands");
+        }
+
+        int lineEnd = findLineEnd();
+        int nextPosition = lineEnd < limit ? lineEnd + 1 : lineEnd;
+
+        // reading the line is left out, it may wait for the input
+        long startTime = parseTimer.start();
+
+        // skip leading whitespaces and find the command name
+        int nameStart = skipWhitespaces(position, lineEnd);
+        int nameEnd = skipToken(nameStart, lineEnd);
+
+        arguments.reset(bufferView);
+        for (int start = skipWhitespaces(nameEnd, lineEnd); start < lineEnd; ) {
+            int end = skipToken(start, lineEnd);
+            arguments.add(start, end);
+            start = skipWhitespaces(end, lineEnd);
+        }
+        position = nextPosition;
+        parseTimer.stop(startTime);
+
+        if (nameStart == nameEnd) {
             return Optional.empty();
         }
 
-        return Optional.of(commandFactory.create(tokens));
+        return Optional.of(commandFactory.create(bufferView, nameStart, nameEnd, arguments));
+    }
+
+    /**
+     * @return an index of the line feed ending the current line or the end of input,
+     * the buffer is filled up until one of them is found
+     */
+    private int findLineEnd() {
+        int index = position;
+        while (true) {
+            for (; index < limit; index++) {
+                if (buffer[index] == '\n') {
+                    return index;
+                }
+            }
+            int offset = index - position;
+            if (!fill()) {
+                return limit;
+            }
+            index = position + offset;
+        }
+    }
+
+    /**
+     * Read more characters, the unread part of the buffer is moved to the beginning and the buffer grows if needed
+     *
+     * @return false if there are no more characters
+     */
+    private boolean fill() {
+        if (endOfInput || reader == null) {
+            return false;
+        }
+
+        int unread = limit - position;
+        if (unread == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            bufferView = CharBuffer.wrap(buffer);
+        } else if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, unread);
+        }
+        position = 0;
+        limit = unread;
+
+        try {
+            int count = reader.read(buffer, limit, buffer.length - limit);
+            if (count < 0) {
+                endOfInput = true;
+                return false;
+            }
+            limit += count;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int skipWhitespaces(int index, int end) {
+        while (index < end && Character.isWhitespace(buffer[index])) {
+            index++;
+        }
+        return index;
+    }
+
+    private int skipToken(int index, int end) {
+        while (index < end && !Character.isWhitespace(buffer[index])) {
+            index++;
+        }
+        return index;
     }
 }
@@ -1,12 +1,13 @@
 package dev.maltsev.atm.command;
 
-import dev.maltsev.atm.domain.Customer;
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
 import dev.maltsev.atm.domain.Transaction;
 import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
 import dev.maltsev.atm.service.exceptions.BankServiceException;
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
 import java.util.List;
 
 
@@ -18,14 +19,15 @@ public class DepositCommand extends AbstractCommand {
 
     @Override
     @NotNull
-    public String execute(BankService service) throws BankServiceException {
-        if (args.length != 1) {
+    public String execute(BankService service, CommandContext context) throws BankServiceException {
+        if (args.size() != 1) {
             throw new IllegalArgumentException("Wrong argument count.\n Correct command format 'deposit [amount]'");
         }
 
-        BigDecimal amount = new BigDecimal(args[0]);
-        List<Transaction> transactions = service.deposit(amount);
-        Customer customer = service.getCurrentCustomer();
+        Money amount = args.getMoney(0);
+        Session session = context.getSession();
+        List<Transaction> transactions = service.deposit(session, amount);
+        CustomerView customer = session.getCustomer();
         return new StringBuilder()
                 .append(printTransactionStatement(transactions, customer))
                 .append(printBalanceStatement(customer))
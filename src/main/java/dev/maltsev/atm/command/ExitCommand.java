@@ -13,8 +13,8 @@ public class ExitCommand extends AbstractCommand {
 
     @Override
     @NotNull
-    public String execute(BankService service) {
-        if (args.length != 0) {
+    public String execute(BankService service, CommandContext context) {
+        if (args.size() != 0) {
             throw new IllegalArgumentException("Wrong argument count.\n Correct command format 'exit'");
         }
         return "ATM stopped.";
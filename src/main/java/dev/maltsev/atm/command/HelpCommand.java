@@ -12,8 +12,8 @@ public class HelpCommand extends AbstractCommand {
 
     @Override
     @NotNull
-    public String execute(BankService service) {
-        if (args.length != 0) {
+    public String execute(BankService service, CommandContext context) {
+        if (args.size() != 0) {
             throw new IllegalArgumentException("Wrong argument count.\n Correct command format 'help'");
         }
         return "\nlogin [name] - authenticates customer to system with provided login name and create it if not exist\n" +
@@ -22,6 +22,16 @@ public class HelpCommand extends AbstractCommand {
                 "withdraw [amount] - withdraws given amount of money from current authenticated customer's account\n" +
                 "transfer [target] [amount] - transfers given amount of money from current authenticated customer's " +
                 "account to the given customer's account\n" +
+                "payroll [file] - transfers money to every customer listed in the file, a customer and an amount " +
+                "per line, as one batch, when the payroll directory is set\n" +
+                "history [count] - prints the latest transactions of current authenticated customer when " +
+                "the history path is set\n" +
+                "history [from] [to] [offset] - prints a page of transactions of current authenticated customer made " +
+                "between the dates yyyy-MM-dd or times yyyy-MM-ddTHH:mm in UTC starting from the offset when " +
+                "the history path is set\n" +
+                "statement - prints balance and debts of current authenticated customer from the read replica " +
+                "when it is enabled\n" +
+                "stats - prints counts, errors and latencies of commands and bank operations\n" +
                 "exit - stops the program\n" +
                 "help - prints help\n";
     }
@@ -0,0 +1,158 @@
+package dev.maltsev.atm.command;
+
+import dev.maltsev.atm.domain.Transaction;
+import dev.maltsev.atm.history.HistoryPage;
+import dev.maltsev.atm.history.TransactionHistory;
+import dev.maltsev.atm.history.TransactionRecord;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+
+/**
+ * Prints transactions of the authenticated customer from the transaction history: the latest ones or a page of the ones
+ * made in a period. Times are in UTC, a period is given by dates 'yyyy-MM-dd', both inclusive, or by times
+ * 'yyyy-MM-ddTHH:mm[:ss]', the end exclusive. A page of a period starts from an optional offset and the command
+ * to print the next one is printed after it.
+ */
+public class HistoryCommand extends AbstractCommand {
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private final TransactionHistory history;
+
+    private final int pageSize;
+
+    public HistoryCommand(@NotNull CommandArguments commandArguments, @NotNull TransactionHistory history,
+                          int pageSize) {
+        super(commandArguments);
+        this.history = history;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    @NotNull
+    public String execute(BankService service, CommandContext context) throws BankServiceException {
+        if (args.size() > 3) {
+            throw new IllegalArgumentException("Wrong argument count.\n Correct command format 'history [count]' or " +
+                    "'history [from] [to] [offset]'");
+        }
+        String loginName = context.getSession().getCustomer().getLoginName();
+
+        if (args.size() >= 2) {
+            long from = parseTime(args.getString(0), false);
+            long to = parseTime(args.getString(1), true);
+            int offset = args.size() == 3 ? parseOffset(args.getString(2)) : 0;
+            HistoryPage page = history.getBetween(loginName, from, to, offset, pageSize);
+
+            StringBuilder stringBuilder = appendRecords(new StringBuilder(), page, loginName);
+            int shown = page.getRecords().size();
+            if (shown == 0 && page.getTotal() > 0) {
+                stringBuilder.append("No transactions after ").append(offset).append(" of ")
+                        .append(page.getTotal()).append("\n");
+            } else if (shown < page.getTotal()) {
+                stringBuilder.append("Shown ").append(offset + 1).append("-").append(offset + shown)
+                        .append(" of ").append(page.getTotal()).append(" transactions");
+                if (offset + shown < page.getTotal()) {
+                    stringBuilder.append(", next page 'history ").append(args.getString(0)).append(" ")
+                            .append(args.getString(1)).append(" ").append(offset + shown).append("'");
+                }
+                stringBuilder.append("\n");
+            }
+            return stringBuilder.toString();
+        }
+
+        HistoryPage page = history.getLatest(loginName, args.size() == 1 ? parseCount(args.getString(0)) : pageSize);
+        StringBuilder stringBuilder = appendRecords(new StringBuilder(), page, loginName);
+        if (page.getRecords().size() < page.getTotal()) {
+            stringBuilder.append("Shown ").append(page.getRecords().size())
+                    .append(" of ").append(page.getTotal()).append(" transactions\n");
+        }
+        return stringBuilder.toString();
+    }
+
+    @NotNull
+    private static StringBuilder appendRecords(@NotNull StringBuilder stringBuilder, @NotNull HistoryPage page,
+                                               @NotNull String loginName) {
+        for (TransactionRecord record : page.getRecords()) {
+            appendRecord(stringBuilder, record, loginName).append("\n");
+        }
+        if (page.getTotal() == 0) {
+            stringBuilder.append("No transactions\n");
+        }
+        return stringBuilder;
+    }
+
+    private static int parseOffset(@NotNull String text) {
+        int offset;
+        try {
+            offset = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong offset " + text);
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset can't be negative");
+        }
+        return offset;
+    }
+
+    private static int parseCount(@NotNull String text) {
+        int count;
+        try {
+            count = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong count " + text);
+        }
+        if (count <= 0 || count > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Count should be from 1 to " + MAX_PAGE_SIZE);
+        }
+        return count;
+    }
+
+    /**
+     * @param end whether the time is the end of a period, the end date is included in the period
+     * @return epoch milliseconds
+     */
+    private static long parseTime(@NotNull String text, boolean end) {
+        try {
+            if (text.indexOf('T') < 0) {
+                LocalDate date = LocalDate.parse(text);
+                return (end ? date.plusDays(1) : date).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+            }
+            return LocalDateTime.parse(text).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Wrong time " + text + ", correct format 'yyyy-MM-dd' or " +
+                    "'yyyy-MM-ddTHH:mm'");
+        }
+    }
+
+    @NotNull
+    private static StringBuilder appendRecord(@NotNull StringBuilder stringBuilder, @NotNull TransactionRecord record,
+                                              @NotNull String loginName) {
+        Transaction transaction = record.getTransaction();
+        stringBuilder.append(DateTimeFormatter.ISO_INSTANT.format(
+                Instant.ofEpochMilli(record.getTimeMillis()).truncatedTo(ChronoUnit.SECONDS)));
+        if (transaction.getFrom() == null) {
+            stringBuilder.append(" Deposited $");
+            return transaction.getAmount().appendTo(stringBuilder);
+        }
+        if (transaction.getTo() == null) {
+            stringBuilder.append(" Withdrew $");
+            return transaction.getAmount().appendTo(stringBuilder);
+        }
+        if (transaction.getFrom().equals(loginName)) {
+            stringBuilder.append(" Transferred $");
+            return transaction.getAmount().appendTo(stringBuilder).append(" to ").append(transaction.getTo());
+        }
+        stringBuilder.append(" Received $");
+        return transaction.getAmount().appendTo(stringBuilder).append(" from ").append(transaction.getFrom());
+    }
+}
@@ -1,8 +1,9 @@
 package dev.maltsev.atm.command;
 
-import dev.maltsev.atm.domain.Customer;
+import dev.maltsev.atm.domain.CustomerView;
 import dev.maltsev.atm.service.exceptions.BankServiceException;
 import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
 import org.jetbrains.annotations.NotNull;
 
 
@@ -14,13 +15,19 @@ public class LoginCommand extends AbstractCommand {
 
     @Override
     @NotNull
-    public String execute(BankService service) throws BankServiceException {
-        if (args.length != 1) {
+    public String execute(BankService service, CommandContext context) throws BankServiceException {
+        if (args.size() != 1) {
             throw new IllegalArgumentException("Wrong argument count.\n Correct command format 'login [login_name]'");
         }
 
-        String loginName = args[0];
-        Customer customer = service.login(loginName);
+        if (context.isAuthenticated()) {
+            throw new BankServiceException("log out of the current customer first");
+        }
+
+        String loginName = args.getString(0);
+        Session session = service.login(loginName);
+        context.setSession(session);
+        CustomerView customer = session.getCustomer();
 
         return new StringBuilder()
                 .append("Hello, ")
@@ -1,6 +1,6 @@
 package dev.maltsev.atm.command;
 
-import dev.maltsev.atm.domain.Customer;
+import dev.maltsev.atm.domain.CustomerView;
 import dev.maltsev.atm.service.BankService;
 import dev.maltsev.atm.service.exceptions.BankServiceException;
 import org.jetbrains.annotations.NotNull;
@@ -14,12 +14,13 @@ public class LogoutCommand extends AbstractCommand {
 
     @Override
     @NotNull
-    public String execute(BankService service) throws BankServiceException {
-        if (args.length != 0) {
+    public String execute(BankService service, CommandContext context) throws BankServiceException {
+        if (args.size() != 0) {
             throw new IllegalArgumentException("Wrong argument count.\n Correct command format 'logout'");
         }
 
-        Customer customer = service.logout();
+        CustomerView customer = service.logout(context.getSession());
+        context.setSession(null);
         return new StringBuilder()
                 .append("Goodbye, ")
                 .append(customer.getLoginName())
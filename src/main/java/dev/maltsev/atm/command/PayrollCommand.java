@@ -0,0 +1,121 @@
+package dev.maltsev.atm.command;
+
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.Payment;
+import dev.maltsev.atm.domain.TransferSummary;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.exceptions.PaymentException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Pays to the customers listed in a file as one batch. Every line of the file is a recipient and an amount
+ * separated by spaces, blank lines and lines starting with '#' are skipped. The file is read by the process
+ * running the bank from the payroll directory, so a session can't read other files. Errors refer to line numbers
+ * and never repeat the file name or content.
+ */
+public class PayrollCommand extends AbstractCommand {
+
+    private final Path directory;
+
+    /**
+     * @param directory the directory payroll files are read from
+     */
+    public PayrollCommand(@NotNull CommandArguments commandArguments, @NotNull Path directory) {
+        super(commandArguments);
+        this.directory = directory;
+    }
+
+    @Override
+    @NotNull
+    public String execute(BankService service, CommandContext context) throws BankServiceException {
+        if (args.size() != 1) {
+            throw new IllegalArgumentException("Wrong argument count.\n Correct command format 'payroll [file]'");
+        }
+        List<Integer> lines = new ArrayList<>();
+        List<Payment> payments = readPayments(resolve(directory, args.getString(0)), lines);
+        Session session = context.getSession();
+        TransferSummary summary;
+        try {
+            summary = service.transferAll(session, payments);
+        } catch (PaymentException e) {
+            throw new BankServiceException(String.format("%s at line %d", e.getReason(), lines.get(e.getIndex())));
+        }
+        CustomerView customer = session.getCustomer();
+
+        return new StringBuilder()
+                .append(summary.getStatement())
+                .append("\n")
+                .append(printBalanceStatement(customer))
+                .append(printCreditStatement(customer))
+                .append(printDebitStatement(customer))
+                .toString();
+    }
+
+    /**
+     * Resolve a payroll file name in the directory
+     *
+     * @throws IllegalArgumentException if the name is absolute or leads out of the directory
+     */
+    @NotNull
+    static Path resolve(@NotNull Path directory, @NotNull String file) {
+        Path root = directory.toAbsolutePath().normalize();
+        Path path;
+        try {
+            path = root.resolve(file).normalize();
+        } catch (InvalidPathException e) {
+            // the message of the exception repeats the name
+            throw new IllegalArgumentException("Can't read payroll file");
+        }
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IllegalArgumentException("Can't read payroll file");
+        }
+        return path;
+    }
+
+    /**
+     * @param lines receives the line number of every payment read
+     */
+    @NotNull
+    static List<Payment> readPayments(@NotNull Path file, @NotNull List<Integer> lines) {
+        List<Payment> payments = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split("\\s+");
+                if (fields.length != 2) {
+                    throw new IllegalArgumentException(String.format(
+                            "Wrong payment at line %d, correct format '[to_login_name] [amount]'", lineNumber));
+                }
+                try {
+                    payments.add(new Payment(fields[0], Money.parse(fields[1])));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(String.format("Wrong amount at line %d", lineNumber));
+                }
+                lines.add(lineNumber);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can't read payroll file");
+        }
+        return payments;
+    }
+}
@@ -0,0 +1,24 @@
+package dev.maltsev.atm.command;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+
+/**
+ * Creates 'payroll' command reading files from {@code atm.payroll.directory} if the directory is set
+ */
+@Configuration
+@ConditionalOnProperty("atm.payroll.directory")
+public class PayrollConfiguration {
+
+    @Bean
+    public CommandDefinition payrollCommand(@Value("${atm.payroll.directory}") String directory) {
+        Path path = Paths.get(directory);
+        return CommandDefinition.of("payroll", args -> new PayrollCommand(args, path));
+    }
+}
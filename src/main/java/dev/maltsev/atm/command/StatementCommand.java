@@ -0,0 +1,41 @@
+package dev.maltsev.atm.command;
+
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.replica.ReadReplica;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Prints the balance and debts of the authenticated customer from the read replica, so a report never locks
+ * the bank's customers. The replica may lag behind the bank, then the statement says by how many changes.
+ */
+public class StatementCommand extends AbstractCommand {
+
+    private final ReadReplica replica;
+
+    public StatementCommand(@NotNull CommandArguments commandArguments, @NotNull ReadReplica replica) {
+        super(commandArguments);
+        this.replica = replica;
+    }
+
+    @Override
+    @NotNull
+    public String execute(BankService service, CommandContext context) throws BankServiceException {
+        if (args.size() != 0) {
+            throw new IllegalArgumentException("Wrong argument count.\n Correct command format 'statement'");
+        }
+
+        long lag = replica.getLag();
+        CustomerView customer = replica.getCustomer(context.getSession().getCustomer().getLoginName());
+        StringBuilder stringBuilder = new StringBuilder()
+                .append(printBalanceStatement(customer))
+                .append(printCreditStatement(customer))
+                .append(printDebitStatement(customer));
+        if (lag > 0) {
+            stringBuilder.append("The statement may miss the latest ").append(lag).append(" changes\n");
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,28 @@
+package dev.maltsev.atm.command;
+
+import dev.maltsev.atm.metrics.Metrics;
+import dev.maltsev.atm.service.BankService;
+import org.jetbrains.annotations.NotNull;
+
+
+public class StatsCommand extends AbstractCommand {
+
+    private final Metrics metrics;
+
+    public StatsCommand(@NotNull CommandArguments commandArguments, @NotNull Metrics metrics) {
+        super(commandArguments);
+        this.metrics = metrics;
+    }
+
+    @Override
+    @NotNull
+    public String execute(BankService service, CommandContext context) {
+        if (args.size() != 0) {
+            throw new IllegalArgumentException("Wrong argument count.\n Correct command format 'stats'");
+        }
+        if (!metrics.isEnabled()) {
+            return "Metrics are disabled.\n";
+        }
+        return metrics.report();
+    }
+}
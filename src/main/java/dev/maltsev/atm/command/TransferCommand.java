@@ -1,12 +1,13 @@
 package dev.maltsev.atm.command;
 
-import dev.maltsev.atm.domain.Customer;
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
 import dev.maltsev.atm.domain.Transaction;
 import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
 import dev.maltsev.atm.service.exceptions.BankServiceException;
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
 import java.util.List;
 
 
@@ -18,15 +19,16 @@ public class TransferCommand extends AbstractCommand {
 
     @Override
     @NotNull
-    public String execute(BankService service) throws BankServiceException {
-        if (args.length != 2) {
+    public String execute(BankService service, CommandContext context) throws BankServiceException {
+        if (args.size() != 2) {
             throw new IllegalArgumentException(
                     "Wrong argument count.\n Correct command format 'transfer [to_login_name] [amount]'");
         }
-        String toLoginName = args[0];
-        BigDecimal amount = new BigDecimal(args[1]);
-        List<Transaction> transactions = service.transfer(toLoginName, amount);
-        Customer customer = service.getCurrentCustomer();
+        String toLoginName = args.getString(0);
+        Money amount = args.getMoney(1);
+        Session session = context.getSession();
+        List<Transaction> transactions = service.transfer(session, toLoginName, amount);
+        CustomerView customer = session.getCustomer();
 
         return new StringBuilder()
                 .append(printTransactionStatement(transactions, customer))
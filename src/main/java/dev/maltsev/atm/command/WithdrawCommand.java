@@ -1,11 +1,12 @@
 package dev.maltsev.atm.command;
 
-import dev.maltsev.atm.domain.Customer;
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
 import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
 import dev.maltsev.atm.service.exceptions.BankServiceException;
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
 
 
 public class WithdrawCommand extends AbstractCommand {
@@ -16,13 +17,14 @@ public class WithdrawCommand extends AbstractCommand {
 
     @Override
     @NotNull
-    public String execute(BankService service) throws BankServiceException {
-        if (args.length != 1) {
+    public String execute(BankService service, CommandContext context) throws BankServiceException {
+        if (args.size() != 1) {
             throw new IllegalArgumentException("Wrong argument count.\n Correct command format 'withdraw [amount]'");
         }
-        BigDecimal amount = new BigDecimal(args[0]);
-        service.withdraw(amount);
-        Customer customer = service.getCurrentCustomer();
+        Money amount = args.getMoney(0);
+        Session session = context.getSession();
+        service.withdraw(session, amount);
+        CustomerView customer = session.getCustomer();
         return new StringBuilder()
                 .append(printBalanceStatement(customer))
                 .append(printCreditStatement(customer))
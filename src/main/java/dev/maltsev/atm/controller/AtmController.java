@@ -1,17 +1,33 @@
 package dev.maltsev.atm.controller;
 
+import dev.maltsev.atm.command.CommandContext;
 import dev.maltsev.atm.command.CommandFactory;
 import dev.maltsev.atm.util.Loggable;
 import dev.maltsev.atm.command.Command;
 import dev.maltsev.atm.command.CommandParser;
 import dev.maltsev.atm.command.ExitCommand;
+import dev.maltsev.atm.metrics.Metrics;
+import dev.maltsev.atm.metrics.Timer;
 import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PrintStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
 
@@ -21,43 +37,208 @@ import java.util.Optional;
 @Controller
 public class AtmController implements Loggable {
 
+    static final String GREETING = "ATM started. All inputs are case-sensitive. Use 'help' to see available commands.";
+
+    private static final int BATCH_BUFFER_SIZE = 1 << 16;
+
+    private static final int SESSION_BUFFER_SIZE = 256;
+
     private final CommandFactory commandFactory;
 
     private final BankService service;
 
-    @Autowired
+    /**
+     * timers of command executions by command class, named 'command.{name}'
+     */
+    private final ClassValue<Timer> commandTimers;
+
     public AtmController(CommandFactory commandFactory, BankService service) {
+        this(commandFactory, service, Metrics.DISABLED);
+    }
+
+    /**
+     * @param service the bank service, decorated with the history, the audit and the metrics if they are enabled
+     * @param metrics a registry of timers of commands
+     */
+    @Autowired
+    public AtmController(CommandFactory commandFactory, BankService service, Metrics metrics) {
         this.commandFactory = commandFactory;
         this.service = service;
+        this.commandTimers = new ClassValue<Timer>() {
+            @Override
+            protected Timer computeValue(Class<?> type) {
+                return metrics.timer("command." + commandName(type));
+            }
+        };
     }
 
+    /**
+     * Run a terminal session reading commands from the given input until 'exit' command or end of input.
+     * Any number of sessions can be processed concurrently against the same bank service, so a session reads and
+     * writes through small buffers, the input buffer grows for long lines only.
+     */
     public void doProcess(InputStream in, OutputStream out) {
         logger().info("ATM started successfully");
 
-        PrintStream outStream = new PrintStream(out);
-        outStream.println("ATM started. All inputs are case-sensitive. Use 'help' to see available commands.");
-        outStream.println();
+        CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        OutputStream stream = out;
+        PrintWriter writer = new PrintWriter(new FilterWriter(
+                Channels.newWriter(Channels.newChannel(stream), encoder, SESSION_BUFFER_SIZE)) {
+            @Override
+            public void flush() throws IOException {
+                // a writer over a channel doesn't flush the stream
+                super.flush();
+                stream.flush();
+            }
+        });
+        writer.println(GREETING);
+        writer.println();
+        writer.flush();
 
-        for (CommandParser commandParser = new CommandParser(in, commandFactory); ; ) {
-            try {
-                if (commandParser.hasNext()) {
-                    Optional<Command> commandOptional = commandParser.next();
-
-                    if (commandOptional.isPresent()) {
-                        Command command = commandOptional.get();
-                        String result = command.execute(service);
-                        outStream.println(result);
-
-                        if (command instanceof ExitCommand) {
-                            break;
-                        }
-                    }
+        CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        Reader reader = Channels.newReader(Channels.newChannel(in), decoder, SESSION_BUFFER_SIZE);
+        process(new CommandParser(reader, commandFactory, SESSION_BUFFER_SIZE), writer, 1);
+    }
+
+    /**
+     * Run a script of commands through large buffers, the output is flushed every 'flushEvery' commands
+     * and at the end of the script
+     *
+     * @return a summary of processed commands
+     * @throws IllegalArgumentException if 'flushEvery' is not positive
+     */
+    public BatchReport doBatchProcess(InputStream in, OutputStream out, int flushEvery) {
+        if (flushEvery <= 0) {
+            throw new IllegalArgumentException("atm.batch.flush-every has to be positive, got " + flushEvery);
+        }
+
+        logger().info("ATM started in batch mode");
+        long startTime = System.nanoTime();
+
+        InputStreamReader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        PrintWriter writer = new PrintWriter(
+                new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BATCH_BUFFER_SIZE));
+
+        long[] counters = process(new CommandParser(reader, commandFactory, BATCH_BUFFER_SIZE), writer, flushEvery);
+
+        BatchReport report = new BatchReport(counters[0], counters[1], (System.nanoTime() - startTime) / 1_000_000);
+        logger().info(report.toString());
+        return report;
+    }
+
+    /**
+     * @return a number of processed commands and a number of errors
+     */
+    private long[] process(CommandParser commandParser, PrintWriter writer, int flushEvery) {
+        long commandCount = 0;
+        long errorCount = 0;
+
+        CommandContext context = new CommandContext();
+        try {
+            while (commandParser.hasNext()) {
+                Outcome outcome = executeNext(commandParser, context, writer);
+                if (outcome != Outcome.EMPTY) {
+                    commandCount++;
+                }
+                if (outcome == Outcome.FAILED) {
+                    errorCount++;
+                }
+                if (outcome == Outcome.EXITED) {
+                    break;
+                }
+
+                if (commandCount % flushEvery == 0) {
+                    writer.flush();
                 }
+            }
+        } finally {
+            writer.flush();
+            release(context);
+        }
+
+        return new long[]{commandCount, errorCount};
+    }
+
+    /**
+     * Parse and execute the next command of a terminal session, its result or error is printed to the writer
+     */
+    Outcome executeNext(CommandParser commandParser, CommandContext context, PrintWriter writer) {
+        try {
+            Optional<Command> commandOptional = commandParser.next();
+            if (!commandOptional.isPresent()) {
+                return Outcome.EMPTY;
+            }
+
+            Command command = commandOptional.get();
+            Timer timer = commandTimers.get(command.getClass());
+            long startTime = timer.start();
+            String result;
+            try {
+                result = command.execute(service, context);
+                timer.stop(startTime);
             } catch (Exception e) {
-                logger().error("Error occurred: ", e);
-                outStream.println("Error occurred: " + e.getMessage());
-                outStream.println();
+                timer.fail(startTime);
+                throw e;
+            }
+            writer.println(result);
+            return command instanceof ExitCommand ? Outcome.EXITED : Outcome.EXECUTED;
+        } catch (Exception e) {
+            logger().error("Error occurred: ", e);
+            writer.println("Error occurred: " + e.getMessage());
+            writer.println();
+            return Outcome.FAILED;
+        }
+    }
+
+    /**
+     * Log out the customer of a finished terminal session
+     */
+    void release(CommandContext context) {
+        if (context.isAuthenticated()) {
+            try {
+                service.logout(context.getSession());
+            } catch (BankServiceException e) {
+                logger().warn("Session is already closed: {}", e.getMessage());
             }
         }
     }
+
+    /**
+     * @return a name of a command by its class, e.g. 'deposit' for DepositCommand
+     */
+    static String commandName(Class<?> type) {
+        String name = type.getSimpleName();
+        if (name.isEmpty()) {
+            // an anonymous class or a lambda
+            return type.getName();
+        }
+        if (name.endsWith("Command") && name.length() > "Command".length()) {
+            name = name.substring(0, name.length() - "Command".length());
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    enum Outcome {
+
+        /**
+         * a blank line
+         */
+        EMPTY,
+
+        EXECUTED,
+
+        /**
+         * a command which can't be parsed or has failed
+         */
+        FAILED,
+
+        /**
+         * the 'exit' command ending the session
+         */
+        EXITED
+    }
 }
@@ -0,0 +1,426 @@
+package dev.maltsev.atm.controller;
+
+import dev.maltsev.atm.command.CommandFactory;
+import dev.maltsev.atm.util.Loggable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A TCP front-end serving terminal sessions with the same line protocol as the standard input.
+ * <p>
+ * Connections are accepted by one thread and spread among worker threads. Every worker multiplexes its connections
+ * with a selector, so an idle terminal costs its buffers only and no thread. The commands are executed against
+ * the shared bank service by a pool of {@code atm.server.command-threads} threads, so a command waiting for
+ * the journal's fsync or the single writer doesn't stall the other connections of its worker. Connections above
+ * {@code atm.server.max-connections} are refused.
+ * <p>
+ * With {@code atm.server.model=session-threads} every connection is a blocking terminal session run by
+ * the {@link SessionExecutor} instead, on a virtual thread if the runtime supports them.
+ */
+@Component
+public class AtmServer implements Closeable, Loggable {
+
+    private static final int BACKLOG = 1024;
+
+    private static final String SESSION_THREADS_MODEL = "session-threads";
+
+    private static final int DEFAULT_COMMAND_THREADS = 64;
+
+    private final AtmController controller;
+
+    private final CommandFactory commandFactory;
+
+    private final int port;
+
+    private final int bufferSize;
+
+    private final int maxConnections;
+
+    private final Worker[] workers;
+
+    private final int commandThreads;
+
+    /**
+     * an executor of the commands of the connections multiplexed by the workers
+     */
+    private ExecutorService commandExecutor;
+
+    /**
+     * an executor of blocking sessions or null if connections are multiplexed by the workers
+     */
+    @Nullable
+    private final SessionExecutor sessionExecutor;
+
+    private final Set<SocketChannel> sessionChannels = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private ServerSocketChannel serverChannel;
+
+    private Thread acceptor;
+
+    private volatile boolean closed;
+
+    /**
+     * Create a server multiplexing connections by worker threads
+     *
+     * @param port           a port to listen, 0 to pick a free one
+     * @param threads        a number of worker threads, 0 for the number of processors
+     * @param bufferSize     a size of the input buffer of a connection, a command line has to fit into it
+     * @param maxConnections a number of connections served at once
+     */
+    public AtmServer(@NotNull AtmController controller, @NotNull CommandFactory commandFactory, int port,
+                     int threads, int bufferSize, int maxConnections) {
+        this(controller, commandFactory, null, port, threads, bufferSize, maxConnections, DEFAULT_COMMAND_THREADS);
+    }
+
+    @Autowired
+    public AtmServer(@NotNull AtmController controller, @NotNull CommandFactory commandFactory,
+                     @NotNull SessionExecutor sessionExecutor,
+                     @Value("${atm.server.model:selector}") String model,
+                     @Value("${atm.server.port:4242}") int port,
+                     @Value("${atm.server.threads:0}") int threads,
+                     @Value("${atm.server.buffer-size:1024}") int bufferSize,
+                     @Value("${atm.server.max-connections:50000}") int maxConnections,
+                     @Value("${atm.server.command-threads:" + DEFAULT_COMMAND_THREADS + "}") int commandThreads) {
+        this(controller, commandFactory, SESSION_THREADS_MODEL.equals(model) ? sessionExecutor : null, port, threads,
+                bufferSize, maxConnections, commandThreads);
+    }
+
+    /**
+     * @param sessionExecutor an executor running every connection as a blocking session, null to multiplex
+     *                        connections by worker threads
+     * @param commandThreads  a number of threads executing the commands of the connections multiplexed by workers
+     * @throws IllegalArgumentException if the number of command threads is not positive
+     */
+    public AtmServer(@NotNull AtmController controller, @NotNull CommandFactory commandFactory,
+                     @Nullable SessionExecutor sessionExecutor, int port, int threads, int bufferSize,
+                     int maxConnections, int commandThreads) {
+        if (commandThreads <= 0) {
+            throw new IllegalArgumentException("atm.server.command-threads has to be positive, got " + commandThreads);
+        }
+        this.controller = controller;
+        this.commandFactory = commandFactory;
+        this.sessionExecutor = sessionExecutor;
+        this.port = port;
+        this.bufferSize = bufferSize;
+        this.maxConnections = maxConnections;
+        this.commandThreads = commandThreads;
+        int workerCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.workers = new Worker[sessionExecutor == null ? workerCount : 0];
+    }
+
+    /**
+     * Start listening
+     *
+     * @return the port the server listens
+     */
+    public synchronized int start() throws IOException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("The server is already started");
+        }
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), BACKLOG);
+        if (workers.length > 0) {
+            AtomicInteger threadCounter = new AtomicInteger();
+            commandExecutor = Executors.newFixedThreadPool(commandThreads, runnable -> {
+                Thread thread = new Thread(runnable, "atm-server-command-" + threadCounter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+            workers[i].thread.start();
+        }
+        acceptor = new Thread(this::accept, "atm-server-acceptor");
+        acceptor.start();
+
+        int localPort = getPort();
+        if (sessionExecutor != null) {
+            logger().info("ATM server listens on port {} with a thread per session, virtual threads: {}", localPort,
+                    sessionExecutor.isVirtual());
+        } else {
+            logger().info("ATM server listens on port {} with {} workers and {} command threads", localPort,
+                    workers.length, commandThreads);
+        }
+        return localPort;
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * @return a number of open connections
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Wait until the server is closed
+     */
+    public void awaitTermination() throws InterruptedException {
+        terminated.await();
+    }
+
+    /**
+     * Stop accepting connections and close the open ones logging out their customers
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed || serverChannel == null) {
+            return;
+        }
+        closed = true;
+
+        serverChannel.close();
+        try {
+            acceptor.join();
+            for (Worker worker : workers) {
+                worker.selector.wakeup();
+                worker.thread.join();
+            }
+            // the commands being executed finish and log out the customers of the closed connections
+            if (commandExecutor != null) {
+                commandExecutor.shutdown();
+                commandExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            // blocked sessions fail reading and log out their customers
+            for (SocketChannel channel : sessionChannels) {
+                closeQuietly(channel);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            terminated.countDown();
+        }
+        logger().info("ATM server stopped");
+    }
+
+    private void accept() {
+        int next = 0;
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                logger().warn("Failed to accept connection: {}", e.toString());
+                continue;
+            }
+
+            if (connectionCount.incrementAndGet() > maxConnections) {
+                connectionCount.decrementAndGet();
+                refuse(channel);
+            } else if (sessionExecutor != null) {
+                startSession(channel);
+            } else {
+                workers[next].register(channel);
+                next = (next + 1) % workers.length;
+            }
+        }
+    }
+
+    private void startSession(SocketChannel channel) {
+        try {
+            Socket socket = channel.socket();
+            socket.setTcpNoDelay(true);
+            sessionChannels.add(channel);
+            sessionExecutor.submit(socket.getInputStream(), socket.getOutputStream()).whenComplete((result, e) -> {
+                sessionChannels.remove(channel);
+                closeQuietly(channel);
+                connectionCount.decrementAndGet();
+            });
+        } catch (IOException | RejectedExecutionException e) {
+            logger().warn("Failed to start session: {}", e.toString());
+            sessionChannels.remove(channel);
+            closeQuietly(channel);
+            connectionCount.decrementAndGet();
+        }
+    }
+
+    private void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger().debug("Failed to close connection {}: {}", channel, e.toString());
+        }
+    }
+
+    private void refuse(SocketChannel channel) {
+        try {
+            channel.write(StandardCharsets.UTF_8.encode("Error occurred: too many connections\n"));
+            channel.close();
+        } catch (IOException e) {
+            logger().debug("Failed to refuse connection {}: {}", channel, e.toString());
+        }
+    }
+
+    /**
+     * A thread serving its connections with a selector, buffers for decoding and encoding are shared by them
+     */
+    private class Worker implements Runnable {
+
+        private final Selector selector;
+
+        private final Thread thread;
+
+        private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<>();
+
+        /**
+         * connections whose lines have been executed
+         */
+        private final Queue<TerminalConnection> executed = new ConcurrentLinkedQueue<>();
+
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        private final CharBuffer decoded = CharBuffer.allocate(bufferSize);
+
+        private final ByteBuffer encoded = ByteBuffer.allocate(bufferSize);
+
+        Worker(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "atm-server-worker-" + index);
+        }
+
+        void register(SocketChannel channel) {
+            registrations.add(channel);
+            selector.wakeup();
+        }
+
+        void executed(TerminalConnection connection) {
+            executed.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+                    openRegistered();
+                    resumeExecuted();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        TerminalConnection connection = (TerminalConnection) key.attachment();
+                        connection.handle(decoder, decoded, encoder, encoded);
+                        if (connection.isClosed()) {
+                            connectionCount.decrementAndGet();
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                logger().error("Server worker failed", e);
+            } finally {
+                closeAll();
+            }
+        }
+
+        private void openRegistered() {
+            SocketChannel channel;
+            while ((channel = registrations.poll()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    TerminalConnection connection = new TerminalConnection(channel, key, controller, commandFactory,
+                            bufferSize, commandExecutor, this::executed);
+                    key.attach(connection);
+                    connection.open(encoder, encoded);
+                } catch (IOException e) {
+                    logger().debug("Failed to open connection {}: {}", channel, e.toString());
+                    connectionCount.decrementAndGet();
+                    try {
+                        channel.close();
+                    } catch (IOException closeException) {
+                        e.addSuppressed(closeException);
+                    }
+                }
+            }
+        }
+
+        private void resumeExecuted() {
+            TerminalConnection connection;
+            while ((connection = executed.poll()) != null) {
+                if (!connection.isClosed()) {
+                    connection.resume(decoder, decoded, encoder, encoded);
+                    if (connection.isClosed()) {
+                        connectionCount.decrementAndGet();
+                    }
+                }
+            }
+        }
+
+        private void closeAll() {
+            for (SelectionKey key : selector.keys()) {
+                TerminalConnection connection = (TerminalConnection) key.attachment();
+                if (connection != null && !connection.isClosed()) {
+                    connection.close();
+                    connectionCount.decrementAndGet();
+                }
+            }
+
+            SocketChannel channel;
+            while ((channel = registrations.poll()) != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger().debug("Failed to close connection {}: {}", channel, e.toString());
+                }
+                connectionCount.decrementAndGet();
+            }
+
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger().warn("Failed to close selector: {}", e.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package dev.maltsev.atm.controller;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+
+/**
+ * A summary of commands processed in batch mode
+ */
+@RequiredArgsConstructor
+@Getter
+public class BatchReport {
+
+    private final long commandCount;
+
+    private final long errorCount;
+
+    private final long elapsedMillis;
+
+    @Override
+    public String toString() {
+        return "Processed " + commandCount + " commands with " + errorCount + " errors in " + elapsedMillis + " ms";
+    }
+}
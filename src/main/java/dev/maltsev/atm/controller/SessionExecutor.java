@@ -0,0 +1,126 @@
+package dev.maltsev.atm.controller;
+
+import dev.maltsev.atm.util.Loggable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Runs every terminal session on its own thread, so a session simply blocks reading its input.
+ * <p>
+ * On Java 21 and later the threads are virtual, a blocked session then costs its buffers and a small stack on the heap
+ * and no OS thread, so the number of sessions is limited by memory only. On older runtimes platform threads are used.
+ */
+@Component
+public class SessionExecutor implements Loggable {
+
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = virtualThreadFactory();
+
+    private final AtmController controller;
+
+    private final ThreadFactory threadFactory;
+
+    private final AtomicInteger activeSessionCount = new AtomicInteger();
+
+    private final AtomicLong platformThreadCounter = new AtomicLong();
+
+    private volatile boolean shutdown;
+
+    @Autowired
+    public SessionExecutor(@NotNull AtmController controller) {
+        this.controller = controller;
+        if (VIRTUAL_THREAD_FACTORY != null) {
+            this.threadFactory = VIRTUAL_THREAD_FACTORY;
+        } else {
+            logger().warn("Virtual threads are not supported by Java {}, sessions run on platform threads",
+                    System.getProperty("java.version"));
+            this.threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "atm-session-" + platformThreadCounter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    /**
+     * Start a terminal session reading commands from the given input
+     *
+     * @return a future completed when the session is over
+     * @throws RejectedExecutionException if the executor is shut down
+     */
+    @NotNull
+    public CompletableFuture<Void> submit(@NotNull InputStream in, @NotNull OutputStream out) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Session executor is shut down");
+        }
+
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        activeSessionCount.incrementAndGet();
+        Thread thread = threadFactory.newThread(() -> {
+            try {
+                controller.doProcess(in, out);
+                completion.complete(null);
+            } catch (Throwable e) {
+                logger().error("Session failed", e);
+                completion.completeExceptionally(e);
+            } finally {
+                activeSessionCount.decrementAndGet();
+            }
+        });
+
+        try {
+            thread.start();
+        } catch (Throwable e) {
+            // out of memory or threads
+            activeSessionCount.decrementAndGet();
+            throw new RejectedExecutionException("Failed to start session", e);
+        }
+        return completion;
+    }
+
+    /**
+     * Reject new sessions, the running ones are finished by their input
+     */
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    public boolean isVirtual() {
+        return threadFactory == VIRTUAL_THREAD_FACTORY;
+    }
+
+    /**
+     * @return a number of sessions which are not finished yet
+     */
+    public int getActiveSessionCount() {
+        return activeSessionCount.get();
+    }
+
+    /**
+     * Look up {@code Thread.ofVirtual().name("atm-session-", 0).factory()}, the build targets a runtime
+     * without virtual threads
+     *
+     * @return a factory of virtual threads or null if the runtime doesn't support them
+     */
+    @Nullable
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "atm-session-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package dev.maltsev.atm.controller;
+
+import dev.maltsev.atm.command.CommandContext;
+import dev.maltsev.atm.command.CommandFactory;
+import dev.maltsev.atm.command.CommandParser;
+import dev.maltsev.atm.util.Loggable;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+
+/**
+ * A terminal session of a single TCP connection driven by a selector.
+ * <p>
+ * Received bytes are decoded into the session's command parser by the selector's thread, whole lines are executed by
+ * the command executor, so a command waiting for the journal or the bank doesn't stall the other connections of
+ * the selector. The connection doesn't read while its lines are executed and is handed back to the selector's thread
+ * when they are done. Responses are collected while the received lines are executed and written at once. If
+ * the socket doesn't take all of them, the connection stops reading until the rest is written, so a terminal which
+ * doesn't read responses doesn't make the server buffer them.
+ */
+class TerminalConnection implements Loggable {
+
+    private final SocketChannel channel;
+
+    private final SelectionKey key;
+
+    private final AtmController controller;
+
+    private final CommandParser commandParser;
+
+    private final CommandContext context = new CommandContext();
+
+    private final Executor commandExecutor;
+
+    private final Consumer<TerminalConnection> executed;
+
+    private final ByteBuffer input;
+
+    private final StringWriter output = new StringWriter();
+
+    private final PrintWriter writer = new PrintWriter(output);
+
+    /**
+     * bytes the socket hasn't taken yet
+     */
+    private ByteBuffer unwritten;
+
+    private boolean endOfInput;
+
+    private boolean closing;
+
+    /**
+     * whether the lines are being executed by the command executor, guarded by the connection
+     */
+    private boolean executing;
+
+    /**
+     * guarded by the connection
+     */
+    private boolean closed;
+
+    /**
+     * @param commandExecutor an executor of the received lines
+     * @param executed        hands the connection back to the selector's thread when the lines are executed
+     */
+    TerminalConnection(@NotNull SocketChannel channel, @NotNull SelectionKey key, @NotNull AtmController controller,
+                       @NotNull CommandFactory commandFactory, int bufferSize, @NotNull Executor commandExecutor,
+                       @NotNull Consumer<TerminalConnection> executed) {
+        this.channel = channel;
+        this.key = key;
+        this.controller = controller;
+        this.commandParser = new CommandParser(commandFactory, bufferSize);
+        this.commandExecutor = commandExecutor;
+        this.executed = executed;
+        this.input = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Send the greeting of a new session
+     */
+    void open(@NotNull CharsetEncoder encoder, @NotNull ByteBuffer encoded) throws IOException {
+        writer.println(AtmController.GREETING);
+        writer.println();
+        send(encoder, encoded);
+    }
+
+    /**
+     * Handle the readiness of the connection, the decoder and the buffers are shared by the connections of a worker
+     */
+    void handle(@NotNull CharsetDecoder decoder, @NotNull CharBuffer decoded, @NotNull CharsetEncoder encoder,
+                @NotNull ByteBuffer encoded) {
+        try {
+            if (key.isWritable()) {
+                send(encoder, encoded);
+            }
+            if (key.isValid() && key.isReadable()) {
+                if (channel.read(input) < 0) {
+                    endOfInput = true;
+                }
+                receive(decoder, decoded, encoder, encoded);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger().debug("Connection {} failed: {}", channel, e.toString());
+            close();
+        }
+    }
+
+    /**
+     * Go on with the input left when the lines have been executed, called by the selector's thread
+     */
+    void resume(@NotNull CharsetDecoder decoder, @NotNull CharBuffer decoded, @NotNull CharsetEncoder encoder,
+                @NotNull ByteBuffer encoded) {
+        try {
+            receive(decoder, decoded, encoder, encoded);
+        } catch (IOException | RuntimeException e) {
+            logger().debug("Connection {} failed: {}", channel, e.toString());
+            close();
+        }
+    }
+
+    /**
+     * Close the connection and log out its customer, the customer is logged out by the command executor if
+     * the lines are being executed
+     */
+    void close() {
+        boolean release;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            release = !executing;
+        }
+
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger().debug("Failed to close connection {}: {}", channel, e.toString());
+        }
+        if (release) {
+            controller.release(context);
+        }
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Decode the received input until a whole line is there, then execute the lines or write the responses
+     */
+    private void receive(CharsetDecoder decoder, CharBuffer decoded, CharsetEncoder encoder, ByteBuffer encoded)
+            throws IOException {
+        // the decoder keeps no state between calls, an incomplete character is left in the input buffer
+        decoder.reset();
+        input.flip();
+        while (!closing && !commandParser.hasLine()) {
+            int free = commandParser.getFreeSpace();
+            if (free == 0) {
+                writer.println("Error occurred: line is too long");
+                closing = true;
+                break;
+            }
+
+            decoded.clear().limit(Math.min(decoded.capacity(), free));
+            decoder.decode(input, decoded, endOfInput);
+            decoded.flip();
+            if (!decoded.hasRemaining()) {
+                break;
+            }
+            commandParser.feed(decoded);
+        }
+        boolean last = endOfInput && !input.hasRemaining();
+        input.compact();
+
+        if (!closing && (commandParser.hasLine() || last)) {
+            execute(last);
+        } else {
+            send(encoder, encoded);
+        }
+    }
+
+    /**
+     * Stop reading and execute the received lines by the command executor
+     *
+     * @param last whether the whole input has been received, then the connection is closing after the lines
+     */
+    private void execute(boolean last) {
+        synchronized (this) {
+            executing = true;
+        }
+        key.interestOps(0);
+        try {
+            commandExecutor.execute(() -> executeLines(last));
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                executing = false;
+            }
+            throw e;
+        }
+    }
+
+    private void executeLines(boolean last) {
+        try {
+            while (!closing && commandParser.hasLine()) {
+                if (controller.executeNext(commandParser, context, writer) == AtmController.Outcome.EXITED) {
+                    closing = true;
+                }
+            }
+            if (last && !closing) {
+                // the last line may have no line feed
+                if (commandParser.hasNext()) {
+                    controller.executeNext(commandParser, context, writer);
+                }
+                closing = true;
+            }
+        } catch (RuntimeException e) {
+            logger().error("Connection {} failed to execute a command", channel, e);
+            closing = true;
+        }
+
+        boolean release;
+        synchronized (this) {
+            executing = false;
+            release = closed;
+        }
+        if (release) {
+            controller.release(context);
+        } else {
+            executed.accept(this);
+        }
+    }
+
+    /**
+     * Write the collected responses, the connection is closed when everything is written if it is closing
+     */
+    private void send(CharsetEncoder encoder, ByteBuffer encoded) throws IOException {
+        if (unwritten != null) {
+            channel.write(unwritten);
+            if (unwritten.hasRemaining()) {
+                return;
+            }
+            unwritten = null;
+        }
+
+        StringBuffer text = output.getBuffer();
+        if (text.length() > 0) {
+            CharBuffer chars = CharBuffer.wrap(text);
+            encoder.reset();
+            while (chars.hasRemaining()) {
+                encoded.clear();
+                encoder.encode(chars, encoded, true);
+                encoded.flip();
+                channel.write(encoded);
+
+                if (encoded.hasRemaining()) {
+                    ByteBuffer rest = StandardCharsets.UTF_8.encode(chars);
+                    unwritten = ByteBuffer.allocate(encoded.remaining() + rest.remaining());
+                    unwritten.put(encoded).put(rest).flip();
+                    break;
+                }
+            }
+            text.setLength(0);
+        }
+
+        if (unwritten != null) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else if (closing) {
+            close();
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+}
@@ -2,33 +2,92 @@ package dev.maltsev.atm.domain;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 
 /**
- * A customer account holding balance
+ * A customer account holding balance as a number of cents.
+ * <p>
+ * The balance is changed by compare-and-set loops, so an account may be changed by several threads without locks and
+ * a conditional change like {@link #tryWithdraw(long)} is atomic. The sign bit of the balance field is never a part
+ * of the balance, subclasses may keep a flag in it.
  */
 public class Account {
 
-    protected BigDecimal balance = BigDecimal.ZERO;
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(Account.class, "state", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * the balance in the lower 63 bits and a subclass' flag in the sign bit
+     */
+    private volatile long state;
 
     public boolean isEmpty() {
-        return balance.compareTo(BigDecimal.ZERO) == 0;
+        return getCents() == 0;
+    }
+
+    public void add(long cents) {
+        while (true) {
+            long current = state;
+            long balance = Math.addExact(current & Long.MAX_VALUE, cents);
+            if (balance < 0) {
+                throw new IllegalArgumentException("Not enough balance");
+            }
+            if (STATE.compareAndSet(this, current, balance | (current & Long.MIN_VALUE))) {
+                return;
+            }
+        }
     }
 
-    public void add(@NotNull BigDecimal amount) {
-        balance = balance.add(amount);
+    public long getCents() {
+        return state & Long.MAX_VALUE;
     }
 
-    public BigDecimal getBalance() {
-        return balance.subtract(BigDecimal.ZERO);
+    @NotNull
+    public Money getBalance() {
+        return Money.ofCents(getCents());
     }
 
-    public void subtract(@NotNull BigDecimal amount) {
-        if (balance.subtract(amount).doubleValue() < 0) {
+    public void subtract(long cents) {
+        if (!tryWithdraw(cents)) {
             throw new IllegalArgumentException("Not enough balance");
         }
+    }
+
+    /**
+     * Subtract the amount if the balance is not less than it
+     *
+     * @return false if the balance is less than the amount, then it is not changed
+     */
+    public boolean tryWithdraw(long cents) {
+        while (true) {
+            long current = state;
+            if ((current & Long.MAX_VALUE) < cents) {
+                return false;
+            }
+            // the balance doesn't borrow from the sign bit, so the flag is kept
+            if (STATE.compareAndSet(this, current, current - cents)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the balance and the flag
+     */
+    protected final long getState() {
+        return state;
+    }
 
-        balance = balance.subtract(amount);
+    protected final boolean compareAndSetState(long expected, long state) {
+        return STATE.compareAndSet(this, expected, state);
     }
 }
@@ -0,0 +1,52 @@
+package dev.maltsev.atm.domain;
+
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * A listener of changes applied to customers' balances and debts.
+ * <p>
+ * It is called under the locks of the changed customers, so changes of the same customer are observed
+ * in the order they are applied. Balance and debt changes are deltas in cents.
+ */
+public interface ChangeListener {
+
+    ChangeListener NONE = new ChangeListener() {
+    };
+
+    default void customerCreated(@NotNull Customer customer) {
+    }
+
+    default void balanceChanged(@NotNull Customer customer, long cents) {
+    }
+
+    default void debtChanged(@NotNull Customer debtor, @NotNull Customer creditor, long cents) {
+    }
+
+    /**
+     * @return a listener reporting every change to this listener and then to the other one
+     */
+    @NotNull
+    default ChangeListener andThen(@NotNull ChangeListener other) {
+        ChangeListener first = this;
+        return new ChangeListener() {
+            @Override
+            public void customerCreated(@NotNull Customer customer) {
+                first.customerCreated(customer);
+                other.customerCreated(customer);
+            }
+
+            @Override
+            public void balanceChanged(@NotNull Customer customer, long cents) {
+                first.balanceChanged(customer, cents);
+                other.balanceChanged(customer, cents);
+            }
+
+            @Override
+            public void debtChanged(@NotNull Customer debtor, @NotNull Customer creditor, long cents) {
+                first.debtChanged(debtor, creditor, cents);
+                other.debtChanged(debtor, creditor, cents);
+            }
+        };
+    }
+}
@@ -4,179 +4,480 @@ import dev.maltsev.atm.util.Loggable;
 import dev.maltsev.atm.service.exceptions.BankServiceException;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.math.BigDecimal;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
- * A bank's customer
+ * A bank's customer.
+ * <p>
+ * Debts between customers are kept in the bank's {@link DebtLedger}.
+ * Every customer is guarded by its own lock. A debt between two customers is changed only under the locks of both
+ * of them. When two locks are needed they are always acquired in the order of login names, so operations on
+ * disjoint pairs of customers run in parallel and never deadlock.
+ * <p>
+ * Every change of balances and debts is reported to the bank's {@link ChangeListener} while the changed customers
+ * are locked. Without a listener nobody needs the changes of a customer in order, then a withdrawal and a deposit
+ * of a customer who doesn't owe change the balance by a compare-and-set without the lock, see
+ * {@link CustomerAccount}.
+ * <p>
+ * Credit and debit statements are built once and kept until a debt of the customer changes, so commands printing
+ * an unchanged statement don't walk the debts again.
  */
 @RequiredArgsConstructor
-public class Customer implements Loggable {
+public class Customer implements CustomerView, Loggable {
+
+    private final int id;
 
     private final String loginName;
 
-    private final Account account = new Account();
+    private final DebtLedger ledger;
+
+    private final ChangeListener listener;
+
+    private final CustomerAccount account = new CustomerAccount();
 
-    private final Map<Customer, Account> creditAccountMap = new LinkedHashMap<>();
+    private final Lock lock = new ReentrantLock();
 
-    private final Map<Customer, Account> debitAccountMap = new LinkedHashMap<>();
+    /**
+     * cached statements, they are guarded by the lock and dropped by the ledger when the customer's debts change
+     */
+    private String creditStatement;
 
-    public BigDecimal getAccountBalance() {
-        return account.getBalance().subtract(BigDecimal.ZERO);
+    private String debitStatement;
+
+    public Customer(@NotNull String loginName, @NotNull DebtLedger ledger) {
+        this(0, loginName, ledger, ChangeListener.NONE);
     }
 
+    @Override
     @NotNull
-    public List<Transaction> deposit(@NotNull BigDecimal amount) {
-        List<Transaction> transactions = new ArrayList<>();
+    public Money getAccountBalance() {
+        return account.getBalance();
+    }
 
-        // pay debts
-        for (Map.Entry<Customer, Account> entry : new ArrayList<>(creditAccountMap.entrySet())) {
-            Customer creditor = entry.getKey();
-            Account creditAccount = entry.getValue();
+    /**
+     * Deposit the amount repaying debts first, every repayment is deposited to the creditor the same way
+     *
+     * @return the deposit and every repayment it has caused, see {@link Settlement#deposit(Customer, Money)}
+     */
+    @NotNull
+    public List<Transaction> deposit(@NotNull Money amount) {
+        return new Settlement().deposit(this, amount);
+    }
 
-            BigDecimal paymentAmount = creditAccount.getBalance().min(amount);
-            if (paymentAmount.doubleValue() > 0) {
-                Transaction transaction = payTo(creditor, paymentAmount);
-                transactions.add(transaction);
-                creditor.deposit(transaction.getAmount());
-                amount = amount.subtract(transaction.getAmount());
-            } else {
-                break;
+    /**
+     * Repay at most the given amount to the first creditor or put the amount on the balance if there are no debts
+     *
+     * @param amount     an amount in cents
+     * @param settlement a settlement to put the creditor and the amount paid to
+     * @return true if a debt has been repaid, false if the amount has been put on the balance
+     */
+    boolean repayFirstDebt(long amount, @NotNull Settlement settlement) {
+        if (isLockFree() && account.tryDeposit(amount)) {
+            return false;
+        }
+
+        while (true) {
+            Customer creditor;
+
+            // do deposit if there are no debts
+            lock.lock();
+            try {
+                Debt debt = ledger.getFirstDebt(this);
+                if (debt == null) {
+                    account.clearOwing();
+                    account.add(amount);
+                    listener.balanceChanged(this, amount);
+                    return false;
+                }
+                creditor = debt.getCreditor();
+            } finally {
+                lock.unlock();
+            }
+
+            // pay debt to the first creditor
+            lock(this, creditor);
+            try {
+                Debt debt = ledger.getDebt(this, creditor);
+                if (debt == null) {
+                    // the debt has been repaid concurrently
+                    continue;
+                }
+                long payment = Math.min(debt.getCents(), amount);
+                ledger.decrease(debt, payment);
+                listener.debtChanged(this, creditor, -payment);
+                settlement.creditor = creditor;
+                settlement.payment = payment;
+                return true;
+            } finally {
+                unlock(this, creditor);
             }
         }
+    }
 
-        // do deposit
-        if (amount.doubleValue() > 0) {
-            account.add(amount);
-            Transaction transaction = new Transaction(null, loginName, amount);
-            transactions.add(transaction);
+    @NotNull
+    public Transaction withdraw(@NotNull Money amount) throws BankServiceException {
+        if (isLockFree()) {
+            return withdrawBalance(amount);
         }
 
-        return transactions;
+        lock.lock();
+        try {
+            return withdrawBalance(amount);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @NotNull
-    public Transaction withdraw(@NotNull BigDecimal amount) throws BankServiceException {
-        if (account.getBalance().subtract(amount).doubleValue() < 0) {
+    private Transaction withdrawBalance(@NotNull Money amount) throws BankServiceException {
+        if (!account.tryWithdraw(amount.getCents())) {
             throw new BankServiceException("not enough money");
-        } else {
-            account.subtract(amount);
-            return new Transaction(loginName, null, amount);
         }
+        listener.balanceChanged(this, -amount.getCents());
+        return new Transaction(loginName, null, amount);
+    }
+
+    @NotNull
+    public List<Transaction> transfer(@NotNull Customer to, @NotNull Money amount) {
+        List<Transaction> transactions = new ArrayList<>();
+
+        lock(this, to);
+        try {
+            Transaction transaction = transferLocked(to, amount.getCents(), new long[3]);
+            if (transaction != null) {
+                transactions.add(transaction);
+            }
+        } finally {
+            unlock(this, to);
+        }
+
+        return transactions;
     }
 
+    /**
+     * Transfer money to many customers as one batch, every payment is made like
+     * {@link #transfer(Customer, Money)} in the given order. The customer and all the recipients are locked once
+     * for the whole batch in the order of login names, so other operations see either none or all of the payments.
+     *
+     * @param recipients recipients of the payments, a recipient may repeat but can't be the customer
+     * @param amounts    amounts of the payments
+     * @return totals of the batch
+     */
     @NotNull
-    public List<Transaction> transfer(@NotNull Customer to, @NotNull BigDecimal amount) {
+    public TransferSummary transferAll(@NotNull List<Customer> recipients, @NotNull List<Money> amounts) {
+        if (recipients.size() != amounts.size()) {
+            throw new IllegalArgumentException("every recipient has to have an amount");
+        }
+
+        if (recipients.contains(this)) {
+            throw new IllegalArgumentException("customer can't pay to itself");
+        }
+
+        TreeSet<Customer> locked = new TreeSet<>(Comparator.comparing(Customer::getLoginName));
+        locked.add(this);
+        locked.addAll(recipients);
+
+        // offset, transferred and owed amounts
+        long[] totals = new long[3];
         List<Transaction> transactions = new ArrayList<>();
+        for (Customer customer : locked) {
+            customer.lock.lock();
+        }
+        try {
+            for (int i = 0; i < recipients.size(); i++) {
+                Transaction transaction = transferLocked(recipients.get(i), amounts.get(i).getCents(), totals);
+                if (transaction != null) {
+                    transactions.add(transaction);
+                }
+            }
+        } finally {
+            for (Customer customer : locked) {
+                customer.lock.unlock();
+            }
+        }
+
+        return new TransferSummary(recipients.size(), locked.size() - 1, Money.ofCents(totals[0]),
+                Money.ofCents(totals[1]), Money.ofCents(totals[2]), transactions);
+    }
+
+    /**
+     * Offset the recipient's debt to the customer, transfer what the balance allows and owe the rest, both
+     * customers have to be locked
+     *
+     * @param remaining an amount in cents
+     * @param totals    offset, transferred and owed amounts to add the parts of the payment to
+     * @return a transaction of the transferred part or null if nothing has been transferred from the balance
+     */
+    @Nullable
+    private Transaction transferLocked(@NotNull Customer to, long remaining, long[] totals) {
+        Transaction transaction = null;
 
         // owe from destination
-        if (to.isOwedTo(this)) {
-            to.payTo(this, amount);
-            amount = amount.subtract(amount);
+        Debt reverseDebt = ledger.getDebt(to, this);
+        if (reverseDebt != null) {
+            long offsetAmount = Math.min(reverseDebt.getCents(), remaining);
+            ledger.decrease(reverseDebt, offsetAmount);
+            listener.debtChanged(to, this, -offsetAmount);
+            totals[0] += offsetAmount;
+            remaining -= offsetAmount;
         }
 
-        // make transfer to destination
-        if (amount.doubleValue() > 0 && account.getBalance().doubleValue() > 0) {
-            BigDecimal transferAmount = account.getBalance().min(amount);
+        // make transfer to destination, the customer is marked as owing at once if the balance is not enough
+        long transferAmount = remaining > 0 ? account.transferUpTo(remaining) : 0;
+        if (transferAmount > 0) {
             to.account.add(transferAmount);
-            account.subtract(transferAmount);
-
-            Transaction transaction = new Transaction(loginName, to.getLoginName(), transferAmount);
-            transactions.add(transaction);
+            listener.balanceChanged(to, transferAmount);
+            listener.balanceChanged(this, -transferAmount);
 
-            amount = amount.subtract(transferAmount);
+            transaction = new Transaction(loginName, to.getLoginName(), Money.ofCents(transferAmount));
+            totals[1] += transferAmount;
+            remaining -= transferAmount;
         }
 
         // owe to destination
-        if (amount.doubleValue() > 0) {
-            oweTo(to, amount);
+        if (remaining > 0) {
+            oweTo(to, remaining);
+            totals[2] += remaining;
         }
 
-        return transactions;
+        return transaction;
     }
 
-    private boolean isOwedTo(@NotNull Customer creditor) {
-        return this.getCreditAccountMap().containsKey(creditor);
+    /**
+     * Subtract the amounts from the debts at once if none of the debts is less than its amount. The debts have to make
+     * cycles and every amount has to be the sum of the amounts of the cycles a debt is in, so nobody's net position
+     * changes.
+     *
+     * @param locked customers of the debts in order of login names
+     * @return false if a debt is less than its amount, then no debt is changed
+     */
+    static boolean cancelDebts(@NotNull Customer[] locked, @NotNull Debt[] debts, @NotNull long[] cents) {
+        for (Customer customer : locked) {
+            customer.lock.lock();
+        }
+        try {
+            for (int i = 0; i < debts.length; i++) {
+                if (debts[i].getCents() < cents[i]) {
+                    return false;
+                }
+            }
+
+            for (int i = 0; i < debts.length; i++) {
+                Customer debtor = debts[i].getDebtor();
+                debtor.ledger.decrease(debts[i], cents[i]);
+                debtor.listener.debtChanged(debtor, debts[i].getCreditor(), -cents[i]);
+            }
+            return true;
+        } finally {
+            for (Customer customer : locked) {
+                customer.lock.unlock();
+            }
+        }
     }
 
-    @NotNull
-    private Transaction payTo(@NotNull Customer creditor, @NotNull BigDecimal amount) {
-        creditAccountMap.putIfAbsent(creditor, new Account());
-        Account creditAccount = creditAccountMap.get(creditor);
-        creditAccount.subtract(amount);
+    /**
+     * Subtract the amount from every debt of a cycle, the amount is reduced to the smallest of the debts as they are
+     * when all the customers are locked
+     *
+     * @param locked customers of the cycle in order of login names
+     * @param debts  debts of the cycle, every debt is owed by a customer to the debtor of the next one
+     * @param cents  an amount to cancel
+     * @return the cancelled amount, 0 if a debt of the cycle has been repaid meanwhile
+     */
+    static long cancelCycle(@NotNull Customer[] locked, @NotNull Debt[] debts, long cents) {
+        for (Customer customer : locked) {
+            customer.lock.lock();
+        }
+        try {
+            long amount = cents;
+            for (Debt debt : debts) {
+                // a repaid debt is removed from the ledger and never grows again
+                amount = Math.min(amount, debt.getCents());
+            }
+            if (amount == 0) {
+                return 0;
+            }
+
+            for (Debt debt : debts) {
+                Customer debtor = debt.getDebtor();
+                debtor.ledger.decrease(debt, amount);
+                debtor.listener.debtChanged(debtor, debt.getCreditor(), -amount);
+            }
+            return amount;
+        } finally {
+            for (Customer customer : locked) {
+                customer.lock.unlock();
+            }
+        }
+    }
 
-        if (creditAccount.isEmpty()) {
-            creditAccountMap.remove(creditor);
+    /**
+     * Apply a balance change restored from a journal, the change is not reported to the listener
+     *
+     * @param cents a delta in cents
+     */
+    public void restoreBalance(long cents) {
+        lock.lock();
+        try {
+            account.add(cents);
+        } finally {
+            lock.unlock();
         }
+    }
 
-        creditor.debitAccountMap.putIfAbsent(this, new Account());
-        Account debitAccount = creditor.debitAccountMap.get(this);
-        debitAccount.subtract(amount);
+    /**
+     * Apply a change of the debt to the creditor restored from a journal, the change is not reported to the listener
+     *
+     * @param cents a delta in cents
+     */
+    public void restoreDebt(@NotNull Customer creditor, long cents) {
+        lock(this, creditor);
+        try {
+            if (cents > 0) {
+                account.markOwing();
+                ledger.increase(this, creditor, cents);
+            } else {
+                Debt debt = ledger.getDebt(this, creditor);
+                if (debt == null) {
+                    throw new IllegalStateException(String.format("%s owes nothing to %s", loginName,
+                            creditor.getLoginName()));
+                }
+                ledger.decrease(debt, -cents);
+            }
+        } finally {
+            unlock(this, creditor);
+        }
+    }
 
-        if (debitAccount.isEmpty()) {
-            creditor.debitAccountMap.remove(this);
+    /**
+     * Run the action while the customer is locked, so the balance and the customer's debts it reads are consistent
+     * unless the customer has no listener and its balance is changed without the lock
+     */
+    public void runLocked(@NotNull Runnable action) {
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
         }
+    }
 
-        return new Transaction(loginName, creditor.getLoginName(), amount);
+    /**
+     * @return the bank-wide customer id used by the journal
+     */
+    public int getId() {
+        return id;
     }
 
+    @Override
     @NotNull
     public String getLoginName() {
         return loginName;
     }
 
-    private void oweTo(@NotNull Customer creditor, @NotNull BigDecimal amount) {
-        creditAccountMap.putIfAbsent(creditor, new Account());
-        Account creditAccount = creditAccountMap.get(creditor);
-        creditAccount.add(amount);
+    private boolean isLockFree() {
+        return listener == ChangeListener.NONE;
+    }
 
-        creditor.debitAccountMap.putIfAbsent(this, new Account());
-        Account debitAccount = creditor.debitAccountMap.get(this);
-        debitAccount.add(amount);
+    private void oweTo(@NotNull Customer creditor, long amount) {
+        ledger.increase(this, creditor, amount);
+        listener.debtChanged(this, creditor, amount);
     }
 
+    /**
+     * @return a read-only view of the customer's debts keyed by creditor, it is not safe to iterate it
+     * while the customer is changed concurrently
+     */
+    @Override
     @NotNull
     public Map<Customer, Account> getCreditAccountMap() {
-        return new LinkedHashMap<>(creditAccountMap);
+        return ledger.getCredits(this);
     }
 
+    @Override
     @NotNull
     public String getCreditStatement() {
-        StringBuilder stringBuilder = new StringBuilder();
-
-        for (Map.Entry<Customer, Account> entry : getCreditAccountMap().entrySet()) {
-            Customer creditor = entry.getKey();
-            BigDecimal amount = entry.getValue().getBalance();
-            stringBuilder.append("Owed $")
-                    .append(amount)
-                    .append(" to ")
-                    .append(creditor.getLoginName());
+        lock.lock();
+        try {
+            if (creditStatement == null) {
+                creditStatement = statement(ledger.getCredits(this), StatementFormatter.CREDIT);
+            }
+            return creditStatement;
+        } finally {
+            lock.unlock();
         }
-
-        return stringBuilder.toString();
     }
 
+    @Override
     @NotNull
     public String getDebitStatement() {
-        StringBuilder stringBuilder = new StringBuilder();
-
-        for (Map.Entry<Customer, Account> entry : getDebitAccountMap().entrySet()) {
-            Customer debtor = entry.getKey();
-            BigDecimal amount = entry.getValue().getBalance();
-            stringBuilder.append("Owed $")
-                    .append(amount)
-                    .append(" from ")
-                    .append(debtor.getLoginName());
+        lock.lock();
+        try {
+            if (debitStatement == null) {
+                debitStatement = statement(ledger.getDebits(this), StatementFormatter.DEBIT);
+            }
+            return debitStatement;
+        } finally {
+            lock.unlock();
         }
+    }
 
+    @NotNull
+    private static String statement(@NotNull Map<Customer, Account> debts, @NotNull StatementFormatter formatter) {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (Map.Entry<Customer, Account> entry : debts.entrySet()) {
+            formatter.append(stringBuilder, entry.getValue().getCents(), entry.getKey().getLoginName());
+        }
         return stringBuilder.toString();
     }
 
+    /**
+     * Drop the cached credit statement, it is called by the ledger under the customer's lock
+     */
+    void creditsChanged() {
+        creditStatement = null;
+    }
+
+    /**
+     * Drop the cached debit statement, it is called by the ledger under the customer's lock
+     */
+    void debitsChanged() {
+        debitStatement = null;
+    }
+
+    /**
+     * @return a read-only view of the debts to the customer keyed by debtor, it is not safe to iterate it
+     * while the customer is changed concurrently
+     */
+    @Override
     @NotNull
     public Map<Customer, Account> getDebitAccountMap() {
-        return new LinkedHashMap<>(debitAccountMap);
+        return ledger.getDebits(this);
+    }
+
+    private static void lock(@NotNull Customer first, @NotNull Customer second) {
+        if (first.loginName.compareTo(second.loginName) < 0) {
+            first.lock.lock();
+            second.lock.lock();
+        } else {
+            second.lock.lock();
+            first.lock.lock();
+        }
+    }
+
+    private static void unlock(@NotNull Customer first, @NotNull Customer second) {
+        first.lock.unlock();
+        second.lock.unlock();
     }
 
     @Override
@@ -0,0 +1,68 @@
+package dev.maltsev.atm.domain;
+
+
+/**
+ * A balance of a {@link Customer} which also marks that the customer may owe.
+ * <p>
+ * The mark is set in the same compare-and-set as the balance is drained by a transfer leaving a debt, so a deposit
+ * made without the customer's lock either lands before the transfer and is taken by it or sees the mark and repays
+ * the debt under the lock. The mark is cleared under the customer's lock when the customer is found to owe nobody.
+ */
+final class CustomerAccount extends Account {
+
+    private static final long OWING = Long.MIN_VALUE;
+
+    /**
+     * Add the amount if the customer doesn't owe
+     *
+     * @return false if the customer may owe, then the balance is not changed
+     */
+    boolean tryDeposit(long cents) {
+        while (true) {
+            long current = getState();
+            if ((current & OWING) != 0) {
+                return false;
+            }
+            if (compareAndSetState(current, Math.addExact(current, cents))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Take at most the amount from the balance, the customer is marked as owing if less has been taken
+     *
+     * @return the amount taken
+     */
+    long transferUpTo(long cents) {
+        while (true) {
+            long current = getState();
+            long taken = Math.min(current & Long.MAX_VALUE, cents);
+            long state = current - taken;
+            if (taken < cents) {
+                state |= OWING;
+            }
+            if (compareAndSetState(current, state)) {
+                return taken;
+            }
+        }
+    }
+
+    void markOwing() {
+        while (true) {
+            long current = getState();
+            if ((current & OWING) != 0 || compareAndSetState(current, current | OWING)) {
+                return;
+            }
+        }
+    }
+
+    void clearOwing() {
+        while (true) {
+            long current = getState();
+            if ((current & OWING) == 0 || compareAndSetState(current, current & Long.MAX_VALUE)) {
+                return;
+            }
+        }
+    }
+}
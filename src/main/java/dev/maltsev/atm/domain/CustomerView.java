@@ -0,0 +1,36 @@
+package dev.maltsev.atm.domain;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+
+/**
+ * A customer as it is seen through a session, it is implemented by every bank storage engine
+ */
+public interface CustomerView {
+
+    @NotNull
+    String getLoginName();
+
+    @NotNull
+    Money getAccountBalance();
+
+    @NotNull
+    String getCreditStatement();
+
+    @NotNull
+    String getDebitStatement();
+
+    /**
+     * @return a read-only map of the customer's debts keyed by creditor in the order they were made
+     */
+    @NotNull
+    Map<? extends CustomerView, ? extends Account> getCreditAccountMap();
+
+    /**
+     * @return a read-only map of the debts to the customer keyed by debtor
+     */
+    @NotNull
+    Map<? extends CustomerView, ? extends Account> getDebitAccountMap();
+}
@@ -0,0 +1,29 @@
+package dev.maltsev.atm.domain;
+
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * A debt of one customer to another, an edge of {@link DebtLedger}
+ */
+public class Debt extends Account {
+
+    private final Customer debtor;
+
+    private final Customer creditor;
+
+    Debt(@NotNull Customer debtor, @NotNull Customer creditor) {
+        this.debtor = debtor;
+        this.creditor = creditor;
+    }
+
+    @NotNull
+    public Customer getDebtor() {
+        return debtor;
+    }
+
+    @NotNull
+    public Customer getCreditor() {
+        return creditor;
+    }
+}
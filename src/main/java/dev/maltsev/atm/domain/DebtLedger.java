@@ -0,0 +1,110 @@
+package dev.maltsev.atm.domain;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * A ledger of debts between bank's customers.
+ * <p>
+ * Every debt is kept once as a {@link Debt} edge indexed both by its debtor and by its creditor. Debts of a debtor
+ * are kept in the order they were made, so they are repaid first in, first out.
+ * <p>
+ * The ledger relies on customers' locks: debts of a customer are read under the customer's lock and
+ * a debt is changed under the locks of both its debtor and creditor. Every change drops the cached statements of
+ * both of them.
+ */
+public class DebtLedger {
+
+    private final ConcurrentMap<Customer, Map<Customer, Debt>> debtsByDebtor = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Customer, Map<Customer, Debt>> debtsByCreditor = new ConcurrentHashMap<>();
+
+    public boolean isOwedTo(@NotNull Customer debtor, @NotNull Customer creditor) {
+        return getDebt(debtor, creditor) != null;
+    }
+
+    @Nullable
+    public Debt getDebt(@NotNull Customer debtor, @NotNull Customer creditor) {
+        Map<Customer, Debt> debts = debtsByDebtor.get(debtor);
+        return debts == null ? null : debts.get(creditor);
+    }
+
+    /**
+     * @return the oldest debt of the debtor or null if there are no debts
+     */
+    @Nullable
+    public Debt getFirstDebt(@NotNull Customer debtor) {
+        Map<Customer, Debt> debts = debtsByDebtor.get(debtor);
+        if (debts == null || debts.isEmpty()) {
+            return null;
+        }
+        Iterator<Debt> iterator = debts.values().iterator();
+        return iterator.next();
+    }
+
+    public boolean hasDebts(@NotNull Customer debtor) {
+        Map<Customer, Debt> debts = debtsByDebtor.get(debtor);
+        return debts != null && !debts.isEmpty();
+    }
+
+    /**
+     * @return a read-only view of the debtor's debts keyed by creditor in the order they were made
+     */
+    @NotNull
+    public Map<Customer, Account> getCredits(@NotNull Customer debtor) {
+        return Collections.unmodifiableMap(index(debtsByDebtor, debtor));
+    }
+
+    /**
+     * @return a read-only view of the debts to the creditor keyed by debtor
+     */
+    @NotNull
+    public Map<Customer, Account> getDebits(@NotNull Customer creditor) {
+        return Collections.unmodifiableMap(index(debtsByCreditor, creditor));
+    }
+
+    /**
+     * Increase the debt of the debtor to the creditor, a new debt is placed after all the debtor's debts
+     */
+    public void increase(@NotNull Customer debtor, @NotNull Customer creditor, long cents) {
+        Map<Customer, Debt> debts = index(debtsByDebtor, debtor);
+        Debt debt = debts.get(creditor);
+        if (debt == null) {
+            debt = new Debt(debtor, creditor);
+            debts.put(creditor, debt);
+            index(debtsByCreditor, creditor).put(debtor, debt);
+        }
+        debt.add(cents);
+        debtor.creditsChanged();
+        creditor.debitsChanged();
+    }
+
+    /**
+     * Decrease the debt and remove it from the ledger when it is repaid
+     *
+     * @throws IllegalArgumentException if the debt is less than the given amount
+     */
+    public void decrease(@NotNull Debt debt, long cents) {
+        debt.subtract(cents);
+        if (debt.isEmpty()) {
+            debtsByDebtor.get(debt.getDebtor()).remove(debt.getCreditor());
+            debtsByCreditor.get(debt.getCreditor()).remove(debt.getDebtor());
+        }
+        debt.getDebtor().creditsChanged();
+        debt.getCreditor().debitsChanged();
+    }
+
+    @NotNull
+    private static Map<Customer, Debt> index(ConcurrentMap<Customer, Map<Customer, Debt>> debts, Customer customer) {
+        Map<Customer, Debt> customerDebts = debts.get(customer);
+        return customerDebts != null ? customerDebts : debts.computeIfAbsent(customer, c -> new LinkedHashMap<>());
+    }
+}
@@ -0,0 +1,373 @@
+package dev.maltsev.atm.domain;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+
+
+/**
+ * Cancels cycles of debts: if A owes B, B owes C and C owes A, the smallest of the three debts is subtracted from
+ * all of them, so at least one debt disappears and nobody's net position changes.
+ * <p>
+ * Netting runs alongside other operations in two passes. First the debts of every customer are copied under
+ * the customer's lock into primitive arrays, a debtor's debts are adjacent, and cycles are cancelled in the copy by
+ * a depth-first search: a cycle is found when the search reaches a customer on its own path, the path is cut back to
+ * the first debt the cancellation has repaid and the search goes on from there. A customer whose debts all lead to
+ * customers already searched can't be in a cycle and is never searched again, so the search visits every debt once
+ * plus the cycles it cancels. Then the cancelled cycles are applied to the ledger in batches: consecutive cycles share
+ * most of their debts, so the amounts of a batch are summed up per debt and every debt is decreased once under
+ * the locks of all customers of the batch. If a debt has been repaid in the meantime, the cycles of the batch are
+ * applied one by one, every cycle reduced to its debts as they are at that moment.
+ */
+public class DebtNetting {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * a number of customers locked at once to apply a batch of cycles, a longer cycle is applied alone
+     */
+    private static final int MAX_BATCH_CUSTOMERS = 1024;
+
+    private Customer[] customersById = new Customer[INITIAL_CAPACITY];
+
+    private int customerCount;
+
+    private int[] debtors = new int[INITIAL_CAPACITY];
+
+    private int[] creditors = new int[INITIAL_CAPACITY];
+
+    private long[] cents = new long[INITIAL_CAPACITY];
+
+    private Debt[] debts = new Debt[INITIAL_CAPACITY];
+
+    private int debtCount;
+
+    /**
+     * debts of customer i are debts from firstDebt[i] to firstDebt[i + 1], exclusive
+     */
+    private int[] firstDebt;
+
+    private int[] cycleDebts = new int[INITIAL_CAPACITY];
+
+    private int cycleDebtCount;
+
+    private int[] cycleStarts = new int[INITIAL_CAPACITY];
+
+    private long[] cycleAmounts = new long[INITIAL_CAPACITY];
+
+    private int cycleCount;
+
+    private DebtNetting() {
+    }
+
+    /**
+     * Cancel cycles of debts between the customers, every change is reported to the bank's listener
+     *
+     * @param customers all customers of the bank
+     */
+    @NotNull
+    public static NettingResult net(@NotNull Collection<Customer> customers) {
+        DebtNetting netting = new DebtNetting();
+        for (Customer customer : customers) {
+            netting.copy(customer);
+        }
+        netting.index();
+        netting.cancelCycles();
+        return netting.apply();
+    }
+
+    private void copy(@NotNull Customer debtor) {
+        debtor.runLocked(() -> {
+            register(debtor);
+            for (Map.Entry<Customer, Account> debt : debtor.getCreditAccountMap().entrySet()) {
+                register(debt.getKey());
+                if (debtCount == debtors.length) {
+                    debtors = Arrays.copyOf(debtors, debtCount * 2);
+                    creditors = Arrays.copyOf(creditors, debtCount * 2);
+                    cents = Arrays.copyOf(cents, debtCount * 2);
+                    debts = Arrays.copyOf(debts, debtCount * 2);
+                }
+                debtors[debtCount] = debtor.getId();
+                creditors[debtCount] = debt.getKey().getId();
+                cents[debtCount] = debt.getValue().getCents();
+                debts[debtCount] = (Debt) debt.getValue();
+                debtCount++;
+            }
+        });
+    }
+
+    private void register(@NotNull Customer customer) {
+        int id = customer.getId();
+        if (id >= customersById.length) {
+            customersById = Arrays.copyOf(customersById, Math.max(id + 1, customersById.length * 2));
+        }
+        customersById[id] = customer;
+        customerCount = Math.max(customerCount, id + 1);
+    }
+
+    /**
+     * Sort the copied debts by debtor keeping the order of debts of every debtor
+     */
+    private void index() {
+        firstDebt = new int[customerCount + 1];
+        for (int i = 0; i < debtCount; i++) {
+            firstDebt[debtors[i] + 1]++;
+        }
+        for (int i = 0; i < customerCount; i++) {
+            firstDebt[i + 1] += firstDebt[i];
+        }
+
+        int[] next = Arrays.copyOf(firstDebt, customerCount);
+        int[] sortedCreditors = new int[debtCount];
+        long[] sortedCents = new long[debtCount];
+        Debt[] sortedDebts = new Debt[debtCount];
+        for (int i = 0; i < debtCount; i++) {
+            int position = next[debtors[i]]++;
+            sortedCreditors[position] = creditors[i];
+            sortedCents[position] = cents[i];
+            sortedDebts[position] = debts[i];
+        }
+        for (int debtor = 0; debtor < customerCount; debtor++) {
+            Arrays.fill(debtors, firstDebt[debtor], firstDebt[debtor + 1], debtor);
+        }
+        creditors = sortedCreditors;
+        cents = sortedCents;
+        debts = sortedDebts;
+    }
+
+    private void cancelCycles() {
+        // 0 - not searched, 1 - on the path, 2 - can't be in a cycle
+        byte[] states = new byte[customerCount];
+        // the next debt to follow from every customer
+        int[] nextDebt = Arrays.copyOf(firstDebt, customerCount);
+        // positions of customers on the path
+        int[] positions = new int[customerCount];
+        // customers of the path and the debts between them
+        int[] path = new int[INITIAL_CAPACITY];
+        int[] pathDebts = new int[INITIAL_CAPACITY];
+
+        for (int root = 0; root < customerCount; root++) {
+            if (states[root] != 0) {
+                continue;
+            }
+            int top = 0;
+            path[0] = root;
+            positions[root] = 0;
+            states[root] = 1;
+
+            while (top >= 0) {
+                int customer = path[top];
+                int debt = nextDebt[customer];
+                int end = firstDebt[customer + 1];
+                while (debt < end && (cents[debt] == 0 || states[creditors[debt]] == 2)) {
+                    debt++;
+                }
+                nextDebt[customer] = debt;
+
+                if (debt == end) {
+                    states[customer] = 2;
+                    top--;
+                    continue;
+                }
+
+                int creditor = creditors[debt];
+                if (states[creditor] == 0) {
+                    if (top + 1 == path.length) {
+                        path = Arrays.copyOf(path, path.length * 2);
+                        pathDebts = Arrays.copyOf(pathDebts, pathDebts.length * 2);
+                    }
+                    pathDebts[top] = debt;
+                    path[++top] = creditor;
+                    positions[creditor] = top;
+                    states[creditor] = 1;
+                    continue;
+                }
+
+                // the creditor is on the path, the debts from it to the top and this debt make a cycle
+                pathDebts[top] = debt;
+                int start = positions[creditor];
+                long amount = Long.MAX_VALUE;
+                for (int i = start; i <= top; i++) {
+                    amount = Math.min(amount, cents[pathDebts[i]]);
+                }
+                addCycle(pathDebts, start, top + 1, amount);
+
+                int cut = -1;
+                for (int i = start; i <= top; i++) {
+                    cents[pathDebts[i]] -= amount;
+                    if (cut < 0 && cents[pathDebts[i]] == 0) {
+                        cut = i;
+                    }
+                }
+                // customers after the first repaid debt leave the path and may be searched again
+                for (int i = cut + 1; i <= top; i++) {
+                    states[path[i]] = 0;
+                }
+                top = cut;
+            }
+        }
+    }
+
+    private void addCycle(int[] debts, int start, int end, long amount) {
+        int length = end - start;
+        if (cycleDebtCount + length > cycleDebts.length) {
+            cycleDebts = Arrays.copyOf(cycleDebts, Math.max(cycleDebtCount + length, cycleDebts.length * 2));
+        }
+        if (cycleCount + 1 >= cycleStarts.length) {
+            cycleStarts = Arrays.copyOf(cycleStarts, cycleStarts.length * 2);
+            cycleAmounts = Arrays.copyOf(cycleAmounts, cycleAmounts.length * 2);
+        }
+        System.arraycopy(debts, start, cycleDebts, cycleDebtCount, length);
+        cycleStarts[cycleCount] = cycleDebtCount;
+        cycleAmounts[cycleCount] = amount;
+        cycleDebtCount += length;
+        cycleCount++;
+        cycleStarts[cycleCount] = cycleDebtCount;
+    }
+
+    @NotNull
+    private NettingResult apply() {
+        int[] ranks = rankByLoginName();
+        long[] batchCents = new long[debtCount];
+        int[] batchDebts = new int[INITIAL_CAPACITY];
+        int batchDebtCount = 0;
+        boolean[] inBatch = new boolean[customerCount];
+        int[] batchMembers = new int[INITIAL_CAPACITY];
+        int batchMemberCount = 0;
+        int batchStart = 0;
+
+        int appliedCount = 0;
+        long cancelled = 0;
+        for (int cycle = 0; cycle <= cycleCount; cycle++) {
+            if (cycle < cycleCount) {
+                int newMemberCount = 0;
+                for (int i = cycleStarts[cycle]; i < cycleStarts[cycle + 1]; i++) {
+                    if (!inBatch[debtors[cycleDebts[i]]]) {
+                        newMemberCount++;
+                    }
+                }
+                if (cycle == batchStart || batchMemberCount + newMemberCount <= MAX_BATCH_CUSTOMERS) {
+                    if (batchMemberCount + newMemberCount > batchMembers.length) {
+                        batchMembers = Arrays.copyOf(batchMembers,
+                                Math.max(batchMemberCount + newMemberCount, batchMembers.length * 2));
+                    }
+                    for (int i = cycleStarts[cycle]; i < cycleStarts[cycle + 1]; i++) {
+                        int debt = cycleDebts[i];
+                        if (!inBatch[debtors[debt]]) {
+                            inBatch[debtors[debt]] = true;
+                            batchMembers[batchMemberCount++] = debtors[debt];
+                        }
+                        if (batchCents[debt] == 0) {
+                            if (batchDebtCount == batchDebts.length) {
+                                batchDebts = Arrays.copyOf(batchDebts, batchDebtCount * 2);
+                            }
+                            batchDebts[batchDebtCount++] = debt;
+                        }
+                        batchCents[debt] += cycleAmounts[cycle];
+                    }
+                    continue;
+                }
+            }
+
+            // the batch is full or the cycles are over
+            Customer[] locked = lockOrder(ranks, batchMembers, batchMemberCount);
+            Debt[] lockedDebts = new Debt[batchDebtCount];
+            long[] amounts = new long[batchDebtCount];
+            for (int i = 0; i < batchDebtCount; i++) {
+                lockedDebts[i] = debts[batchDebts[i]];
+                amounts[i] = batchCents[batchDebts[i]];
+                batchCents[batchDebts[i]] = 0;
+            }
+            if (Customer.cancelDebts(locked, lockedDebts, amounts)) {
+                for (int applied = batchStart; applied < cycle; applied++) {
+                    appliedCount++;
+                    cancelled += cycleAmounts[applied] * (cycleStarts[applied + 1] - cycleStarts[applied]);
+                }
+            } else {
+                // some debts have been repaid meanwhile, what is left of every cycle is cancelled separately
+                for (int applied = batchStart; applied < cycle; applied++) {
+                    long amount = applyCycle(ranks, applied);
+                    if (amount > 0) {
+                        appliedCount++;
+                        cancelled += amount * (cycleStarts[applied + 1] - cycleStarts[applied]);
+                    }
+                }
+            }
+
+            for (int i = 0; i < batchMemberCount; i++) {
+                inBatch[batchMembers[i]] = false;
+            }
+            batchMemberCount = 0;
+            batchDebtCount = 0;
+            batchStart = cycle;
+            if (cycle < cycleCount) {
+                // the cycle which didn't fit starts the next batch
+                cycle--;
+            }
+        }
+        return new NettingResult(debtCount, appliedCount, Money.ofCents(cancelled));
+    }
+
+    private long applyCycle(@NotNull int[] ranks, int cycle) {
+        int start = cycleStarts[cycle];
+        int length = cycleStarts[cycle + 1] - start;
+        int[] members = new int[length];
+        Debt[] cycleDebtList = new Debt[length];
+        for (int i = 0; i < length; i++) {
+            members[i] = debtors[cycleDebts[start + i]];
+            cycleDebtList[i] = debts[cycleDebts[start + i]];
+        }
+        return Customer.cancelCycle(lockOrder(ranks, members, length), cycleDebtList, cycleAmounts[cycle]);
+    }
+
+    /**
+     * @param members different customers
+     * @return the customers in order of login names
+     */
+    @NotNull
+    private Customer[] lockOrder(@NotNull int[] ranks, @NotNull int[] members, int memberCount) {
+        long[] keys = new long[memberCount];
+        for (int i = 0; i < memberCount; i++) {
+            keys[i] = (long) ranks[members[i]] << 32 | members[i];
+        }
+        Arrays.sort(keys);
+        Customer[] locked = new Customer[memberCount];
+        for (int i = 0; i < memberCount; i++) {
+            locked[i] = customersById[(int) keys[i]];
+        }
+        return locked;
+    }
+
+    /**
+     * Rank the customers of the cancelled cycles by login names once, so the locks of a cycle are ordered by
+     * comparing numbers
+     */
+    @NotNull
+    private int[] rankByLoginName() {
+        boolean[] inCycle = new boolean[customerCount];
+        int memberCount = 0;
+        for (int i = 0; i < cycleDebtCount; i++) {
+            int debtor = debtors[cycleDebts[i]];
+            if (!inCycle[debtor]) {
+                inCycle[debtor] = true;
+                memberCount++;
+            }
+        }
+        Customer[] members = new Customer[memberCount];
+        for (int id = 0, i = 0; id < customerCount; id++) {
+            if (inCycle[id]) {
+                members[i++] = customersById[id];
+            }
+        }
+        Arrays.sort(members, Comparator.comparing(Customer::getLoginName));
+
+        int[] ranks = new int[customerCount];
+        for (int i = 0; i < members.length; i++) {
+            ranks[members[i].getId()] = i;
+        }
+        return ranks;
+    }
+}
@@ -0,0 +1,174 @@
+package dev.maltsev.atm.domain;
+
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * An immutable amount of money kept as a whole number of cents.
+ * All arithmetic is exact and throws {@link ArithmeticException} on overflow.
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final int SCALE = 2;
+
+    public static final long CENTS_PER_UNIT = 100;
+
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    @NotNull
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    @NotNull
+    public static Money valueOf(long units) {
+        return ofCents(Math.multiplyExact(units, CENTS_PER_UNIT));
+    }
+
+    /**
+     * Parse a decimal amount like "100", "-5" or "12.5" having at most {@link #SCALE} fraction digits
+     *
+     * @param text a text to parse
+     * @return an amount of money
+     * @throws NumberFormatException if the text is not a valid amount
+     */
+    @NotNull
+    public static Money parse(@NotNull CharSequence text) {
+        return ofCents(parseCents(text, 0, text.length()));
+    }
+
+    /**
+     * Parse a decimal amount from the given range of characters without creating intermediate objects
+     *
+     * @param text  a text to parse
+     * @param start an index of the first character, inclusive
+     * @param end   an index of the last character, exclusive
+     * @return a number of cents
+     * @throws NumberFormatException if the range is not a valid amount
+     */
+    public static long parseCents(@NotNull CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        int digits = 0;
+        int scale = 0;
+        long cents = 0;
+        boolean fraction = false;
+        try {
+            for (; i < end; i++) {
+                char c = text.charAt(i);
+                if (c == '.' && !fraction) {
+                    fraction = true;
+                } else if (c >= '0' && c <= '9' && (!fraction || scale < SCALE)) {
+                    cents = Math.addExact(Math.multiplyExact(cents, 10), c - '0');
+                    digits++;
+                    scale += fraction ? 1 : 0;
+                } else {
+                    throw new NumberFormatException("'" + text.subSequence(start, end) + "' is not a valid amount");
+                }
+            }
+            for (; scale < SCALE; scale++) {
+                cents = Math.multiplyExact(cents, 10);
+            }
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("'" + text.subSequence(start, end) + "' is out of range");
+        }
+
+        if (digits == 0) {
+            throw new NumberFormatException("'" + text.subSequence(start, end) + "' is not a valid amount");
+        }
+
+        return negative ? -cents : cents;
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public int signum() {
+        return Long.signum(cents);
+    }
+
+    public boolean isZero() {
+        return cents == 0;
+    }
+
+    @NotNull
+    public Money add(@NotNull Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    @NotNull
+    public Money subtract(@NotNull Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    @NotNull
+    public Money multiply(long multiplier) {
+        return ofCents(Math.multiplyExact(cents, multiplier));
+    }
+
+    @NotNull
+    public Money min(@NotNull Money other) {
+        return cents <= other.cents ? this : other;
+    }
+
+    @Override
+    public int compareTo(@NotNull Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return cents == ((Money) o).cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * @return an amount without fraction part if it has no cents, e.g. "100", otherwise with two digits, e.g. "12.50"
+     */
+    @Override
+    @NotNull
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    @NotNull
+    public StringBuilder appendTo(@NotNull StringBuilder stringBuilder) {
+        long units = cents / CENTS_PER_UNIT;
+        long fraction = Math.abs(cents % CENTS_PER_UNIT);
+
+        if (cents < 0 && units == 0) {
+            stringBuilder.append('-');
+        }
+        stringBuilder.append(units);
+        if (fraction != 0) {
+            stringBuilder.append('.');
+            if (fraction < 10) {
+                stringBuilder.append('0');
+            }
+            stringBuilder.append(fraction);
+        }
+        return stringBuilder;
+    }
+}
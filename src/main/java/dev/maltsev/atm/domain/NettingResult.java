@@ -0,0 +1,28 @@
+package dev.maltsev.atm.domain;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+
+/**
+ * An outcome of {@link DebtNetting}
+ */
+@RequiredArgsConstructor
+@Getter
+public class NettingResult {
+
+    /**
+     * a number of debts searched for cycles
+     */
+    private final int debtCount;
+
+    /**
+     * a number of cancelled cycles
+     */
+    private final int cycleCount;
+
+    /**
+     * a sum of amounts subtracted from all the debts
+     */
+    private final Money cancelled;
+}
@@ -0,0 +1,20 @@
+package dev.maltsev.atm.domain;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+
+/**
+ * An amount of money to transfer to a customer as a part of a batch
+ */
+@RequiredArgsConstructor
+@Getter
+@EqualsAndHashCode
+@ToString
+public class Payment {
+
+    private final String to;
+    private final Money amount;
+}
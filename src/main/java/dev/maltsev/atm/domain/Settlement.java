@@ -0,0 +1,88 @@
+package dev.maltsev.atm.domain;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * A settlement of a deposit through the debt graph.
+ * <p>
+ * A deposit repays the depositor's debts and every repayment is in turn deposited to the creditor, which repays its
+ * own debts and so on. The settlement walks this cascade depth-first, in the same order as a recursive deposit
+ * would, but keeps the pending deposits in an explicit stack of primitive arrays. A customer who has paid out
+ * everything is replaced by its creditor in the stack, so a chain of debts of any length is settled
+ * in a constant memory without recursion.
+ */
+class Settlement {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private Customer[] customers = new Customer[INITIAL_CAPACITY];
+
+    private long[] amounts = new long[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * A creditor and an amount of the last repayment made by {@link Customer#repayFirstDebt(long, Settlement)}
+     */
+    Customer creditor;
+
+    long payment;
+
+    /**
+     * Deposit the amount to the customer and settle all the repayments it causes
+     *
+     * @return the deposit and then every repayment of the cascade in the order they were made, including the ones
+     * made by the creditors
+     */
+    @NotNull
+    List<Transaction> deposit(@NotNull Customer depositor, @NotNull Money amount) {
+        List<Transaction> transactions = new ArrayList<>();
+        transactions.add(new Transaction(null, depositor.getLoginName(), amount));
+        push(depositor, amount.getCents());
+
+        while (size > 0) {
+            int top = size - 1;
+            Customer customer = customers[top];
+            long remaining = amounts[top];
+
+            if (remaining == 0) {
+                pop();
+            } else if (customer.repayFirstDebt(remaining, this)) {
+                amounts[top] = remaining - payment;
+                transactions.add(new Transaction(
+                        customer.getLoginName(), creditor.getLoginName(), Money.ofCents(payment)));
+                if (top > 0 && amounts[top] == 0) {
+                    // nothing is left to the customer, so the creditor takes its place in the stack
+                    customers[top] = creditor;
+                    amounts[top] = payment;
+                } else {
+                    push(creditor, payment);
+                }
+            } else {
+                // the rest has been put on the balance
+                pop();
+            }
+        }
+
+        return transactions;
+    }
+
+    private void push(Customer customer, long amount) {
+        if (size == customers.length) {
+            customers = Arrays.copyOf(customers, size * 2);
+            amounts = Arrays.copyOf(amounts, size * 2);
+        }
+        customers[size] = customer;
+        amounts[size] = amount;
+        size++;
+    }
+
+    private void pop() {
+        customers[--size] = null;
+    }
+}
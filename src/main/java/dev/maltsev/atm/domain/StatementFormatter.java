@@ -0,0 +1,38 @@
+package dev.maltsev.atm.domain;
+
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Formats lines of credit and debit statements, every storage engine walks its own debts and appends them through it,
+ * so statements read the same whichever engine keeps the customers
+ */
+public enum StatementFormatter {
+
+    /**
+     * a debt of the customer, "Owed $70 to Alice"
+     */
+    CREDIT(" to "),
+
+    /**
+     * a debt to the customer, "Owed $70 from Bob"
+     */
+    DEBIT(" from ");
+
+    private final String preposition;
+
+    StatementFormatter(@NotNull String preposition) {
+        this.preposition = preposition;
+    }
+
+    /**
+     * Append a line of the statement for a debt of the given amount to or from the counterpart
+     */
+    @NotNull
+    public StringBuilder append(@NotNull StringBuilder stringBuilder, long cents, @NotNull String counterpart) {
+        stringBuilder.append("Owed $");
+        return Money.ofCents(cents).appendTo(stringBuilder)
+                .append(preposition)
+                .append(counterpart);
+    }
+}
@@ -5,8 +5,6 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
-
 
 /**
  * A transaction between two customers
@@ -18,17 +16,12 @@ public class Transaction {
 
     private final String from;
     private final String to;
-    private final BigDecimal amount;
-
-    public BigDecimal getAmount() {
-        return amount.subtract(BigDecimal.ZERO);
-    }
+    private final Money amount;
 
     @NotNull
     public String getStatement() {
-        return new StringBuilder()
-                .append("Transferred $")
-                .append(amount.setScale(0))
+        StringBuilder stringBuilder = new StringBuilder().append("Transferred $");
+        return amount.appendTo(stringBuilder)
                 .append(" to ")
                 .append(to)
                 .toString();
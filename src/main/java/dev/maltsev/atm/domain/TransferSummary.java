@@ -0,0 +1,51 @@
+package dev.maltsev.atm.domain;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+
+/**
+ * Totals of a batch of transfers, every transfer is split the same way as a single one: the part offsetting
+ * the recipient's debt to the payer, the part paid from the balance and the part owed to the recipient
+ */
+@RequiredArgsConstructor
+@Getter
+public class TransferSummary {
+
+    private final int paymentCount;
+
+    private final int recipientCount;
+
+    private final Money offset;
+
+    private final Money transferred;
+
+    private final Money owed;
+
+    /**
+     * transactions of the parts paid from the balance
+     */
+    private final List<Transaction> transactions;
+
+    @NotNull
+    public String getStatement() {
+        StringBuilder stringBuilder = new StringBuilder().append("Paid $");
+        offset.add(transferred).add(owed).appendTo(stringBuilder)
+                .append(" in ").append(paymentCount).append(paymentCount == 1 ? " payment" : " payments")
+                .append(" to ").append(recipientCount).append(recipientCount == 1 ? " customer" : " customers")
+                .append("\nTransferred $");
+        transferred.appendTo(stringBuilder);
+        if (offset.signum() > 0) {
+            stringBuilder.append(", offset $");
+            offset.appendTo(stringBuilder).append(" of debts to you");
+        }
+        if (owed.signum() > 0) {
+            stringBuilder.append(", owed $");
+            owed.appendTo(stringBuilder);
+        }
+        return stringBuilder.toString();
+    }
+}
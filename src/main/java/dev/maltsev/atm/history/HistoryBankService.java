@@ -0,0 +1,88 @@
+package dev.maltsev.atm.history;
+
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.Payment;
+import dev.maltsev.atm.domain.Transaction;
+import dev.maltsev.atm.domain.TransferSummary;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.util.Loggable;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A bank service appending transactions made by the wrapped one to the transaction history.
+ * The operation has already been made when the history is written, so a failure to write it is logged but
+ * doesn't fail the operation.
+ */
+public class HistoryBankService implements BankService, Loggable {
+
+    private final BankService service;
+
+    private final TransactionHistory history;
+
+    public HistoryBankService(@NotNull BankService service, @NotNull TransactionHistory history) {
+        this.service = service;
+        this.history = history;
+    }
+
+    @NotNull
+    @Override
+    public Session login(@NotNull String loginName) throws BankServiceException {
+        return service.login(loginName);
+    }
+
+    @NotNull
+    @Override
+    public List<Transaction> deposit(@NotNull Session session, @NotNull Money amount) throws BankServiceException {
+        List<Transaction> transactions = service.deposit(session, amount);
+        append(transactions);
+        return transactions;
+    }
+
+    @NotNull
+    @Override
+    public Transaction withdraw(@NotNull Session session, @NotNull Money amount) throws BankServiceException {
+        Transaction transaction = service.withdraw(session, amount);
+        append(Collections.singletonList(transaction));
+        return transaction;
+    }
+
+    @NotNull
+    @Override
+    public List<Transaction> transfer(@NotNull Session session, @NotNull String toLoginName, @NotNull Money amount)
+            throws BankServiceException {
+        List<Transaction> transactions = service.transfer(session, toLoginName, amount);
+        append(transactions);
+        return transactions;
+    }
+
+    @NotNull
+    @Override
+    public TransferSummary transferAll(@NotNull Session session, @NotNull List<Payment> payments)
+            throws BankServiceException {
+        TransferSummary summary = service.transferAll(session, payments);
+        append(summary.getTransactions());
+        return summary;
+    }
+
+    @NotNull
+    @Override
+    public CustomerView logout(@NotNull Session session) throws BankServiceException {
+        return service.logout(session);
+    }
+
+    private void append(@NotNull List<Transaction> transactions) {
+        try {
+            history.append(transactions);
+        } catch (IOException | RuntimeException e) {
+            logger().error("Failed to write transaction history", e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package dev.maltsev.atm.history;
+
+import dev.maltsev.atm.command.CommandDefinition;
+import dev.maltsev.atm.command.HistoryCommand;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+
+/**
+ * Creates the transaction history kept in {@code atm.history.path} and 'history' command if the path is set
+ */
+@Configuration
+@ConditionalOnProperty("atm.history.path")
+public class HistoryConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public TransactionHistory transactionHistory(@Value("${atm.history.path}") String path) throws IOException {
+        return TransactionHistory.open(Paths.get(path));
+    }
+
+    @Bean
+    public CommandDefinition historyCommand(TransactionHistory history,
+                                            @Value("${atm.history.page-size:20}") int pageSize) {
+        return CommandDefinition.of("history", args -> new HistoryCommand(args, history, pageSize));
+    }
+}
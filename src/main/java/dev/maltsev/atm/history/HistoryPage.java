@@ -0,0 +1,18 @@
+package dev.maltsev.atm.history;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+
+/**
+ * A page of transactions of a customer and the number of all the transactions matching the query
+ */
+@RequiredArgsConstructor
+@Getter
+public class HistoryPage {
+
+    private final List<TransactionRecord> records;
+    private final int total;
+}
@@ -0,0 +1,346 @@
+package dev.maltsev.atm.history;
+
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.Transaction;
+import dev.maltsev.atm.offheap.MappedMemory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An append-only log of transactions with an index of transactions of every customer.
+ * <p>
+ * Transactions are fixed-width records of a memory-mapped file, so the heap doesn't grow with the history.
+ * A customer is identified by the number of its name in a names region. Every transaction is indexed under both of its
+ * customers: the index of a customer is a list of transaction numbers kept in chunks of a mapped file, the heap holds
+ * only the chunk numbers of every customer. Times of transactions never decrease, so the index of a customer is
+ * ordered by time too, and a page of the latest transactions or of a period is found in O(log n) and read
+ * in O(page size).
+ * <pre>
+ * transaction  time millis:long | cents:long | from:int | to:int
+ * name         length:int | name:UTF-8, aligned to 4 bytes
+ * </pre>
+ * Transaction record 0 keeps the header and -1 means no customer. The files are kept in a directory, the index is
+ * rebuilt when the history is opened and deleted when it is closed. Like the off-heap store the transactions and
+ * names survive a restart of the application but are not crash-safe.
+ */
+public class TransactionHistory implements Closeable {
+
+    private static final int MAGIC = 0x41544d48;
+
+    private static final int RECORD_SIZE = 24;
+
+    private static final int DEFAULT_SEGMENT_SHIFT = 26;
+
+    private static final int CHUNK_SHIFT = 6;
+
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private static final int CHUNK_BYTES = 4 << CHUNK_SHIFT;
+
+    private static final int NO_CUSTOMER = -1;
+
+    private static final int HEADER_MAGIC = 0;
+
+    private static final int HEADER_COUNT = 8;
+
+    private static final int HEADER_NAMES_SIZE = 16;
+
+    private static final int NAMES_START = 8;
+
+    private static final int TIME = 0;
+
+    private static final int CENTS = 8;
+
+    private static final int FROM = 16;
+
+    private static final int TO = 20;
+
+    private final Path directory;
+
+    private final MappedMemory transactions;
+
+    private final MappedMemory names;
+
+    private final MappedMemory index;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    private final List<String> loginNames = new ArrayList<>();
+
+    private final List<CustomerIndex> customerIndexes = new ArrayList<>();
+
+    private int count;
+
+    private long namesSize = NAMES_START;
+
+    private int chunkCount;
+
+    private long lastTime = Long.MIN_VALUE;
+
+    /**
+     * Open the history kept in the directory or create a new one
+     */
+    @NotNull
+    public static TransactionHistory open(@NotNull Path directory) throws IOException {
+        return new TransactionHistory(directory, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /**
+     * @param segmentShift a binary logarithm of the size of the mapped segments, records never cross them
+     */
+    public TransactionHistory(@NotNull Path directory, int segmentShift) throws IOException {
+        this.directory = directory;
+
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve("index"));
+        transactions = new MappedMemory(directory.resolve("transactions"), segmentShift);
+        names = new MappedMemory(directory.resolve("names"), segmentShift);
+        index = new MappedMemory(directory.resolve("index"), segmentShift);
+        transactions.ensureCapacity(RECORD_SIZE);
+        names.ensureCapacity(NAMES_START);
+
+        int magic = transactions.getInt(HEADER_MAGIC);
+        if (magic == 0) {
+            transactions.putLong(HEADER_COUNT, 0);
+            transactions.putLong(HEADER_NAMES_SIZE, NAMES_START);
+            transactions.putInt(HEADER_MAGIC, MAGIC);
+        } else if (magic != MAGIC) {
+            close();
+            throw new IOException(directory + " is not a transaction history");
+        } else {
+            restore();
+        }
+    }
+
+    /**
+     * Append the transactions, their time is the current time or the time of the last transaction if the clock
+     * has gone back
+     */
+    public void append(@NotNull List<Transaction> transactionList) throws IOException {
+        append(transactionList, System.currentTimeMillis());
+    }
+
+    synchronized void append(@NotNull List<Transaction> transactionList, long timeMillis) throws IOException {
+        if (transactionList.isEmpty()) {
+            return;
+        }
+        if (count > Integer.MAX_VALUE - transactionList.size() - 1) {
+            throw new IllegalStateException("Transaction history is full");
+        }
+
+        long time = Math.max(timeMillis, lastTime);
+        transactions.ensureCapacity((long) (count + transactionList.size() + 1) * RECORD_SIZE);
+        for (Transaction transaction : transactionList) {
+            int from = idOf(transaction.getFrom());
+            int to = idOf(transaction.getTo());
+            int number = count + 1;
+            long offset = (long) number * RECORD_SIZE;
+            transactions.putLong(offset + TIME, time);
+            transactions.putLong(offset + CENTS, transaction.getAmount().getCents());
+            transactions.putInt(offset + FROM, from);
+            transactions.putInt(offset + TO, to);
+            index(number, from, to);
+            count = number;
+        }
+        lastTime = time;
+        transactions.putLong(HEADER_COUNT, count);
+    }
+
+    /**
+     * @return the latest transactions of the customer in the order they were made
+     */
+    @NotNull
+    public synchronized HistoryPage getLatest(@NotNull String loginName, int limit) {
+        CustomerIndex customerIndex = indexOf(loginName);
+        if (customerIndex == null) {
+            return new HistoryPage(Collections.emptyList(), 0);
+        }
+        return new HistoryPage(read(customerIndex, Math.max(0, customerIndex.size - limit), customerIndex.size),
+                customerIndex.size);
+    }
+
+    /**
+     * @param fromMillis the start of the period, inclusive
+     * @param toMillis   the end of the period, exclusive
+     * @param offset     a number of the transactions of the period to skip
+     * @return the transactions of the customer made in the period starting from the offset and the number of all
+     * of them
+     */
+    @NotNull
+    public synchronized HistoryPage getBetween(@NotNull String loginName, long fromMillis, long toMillis, int offset,
+                                               int limit) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset can't be negative");
+        }
+        CustomerIndex customerIndex = indexOf(loginName);
+        if (customerIndex == null || fromMillis >= toMillis) {
+            return new HistoryPage(Collections.emptyList(), 0);
+        }
+        int start = customerIndex.find(fromMillis);
+        int end = customerIndex.find(toMillis);
+        int pageStart = (int) Math.min(end, (long) start + offset);
+        return new HistoryPage(read(customerIndex, pageStart, pageStart + Math.min(end - pageStart, limit)),
+                end - start);
+    }
+
+    public synchronized int getTransactionCount() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        transactions.close();
+        names.close();
+        index.close();
+
+        Files.deleteIfExists(directory.resolve("index"));
+    }
+
+    /**
+     * Read the names and index the transactions of an existing history
+     */
+    private void restore() throws IOException {
+        long size = transactions.getLong(HEADER_NAMES_SIZE);
+        names.ensureCapacity(size);
+        for (long offset = NAMES_START; offset < size; ) {
+            byte[] name = new byte[names.getInt(offset)];
+            names.getBytes(offset + 4, name);
+            addName(new String(name, StandardCharsets.UTF_8));
+            offset = align(offset + 4 + name.length);
+        }
+        namesSize = size;
+
+        int total = (int) transactions.getLong(HEADER_COUNT);
+        transactions.ensureCapacity((long) (total + 1) * RECORD_SIZE);
+        for (int number = 1; number <= total; number++) {
+            long offset = (long) number * RECORD_SIZE;
+            index(number, transactions.getInt(offset + FROM), transactions.getInt(offset + TO));
+        }
+        count = total;
+        if (total > 0) {
+            lastTime = transactions.getLong((long) total * RECORD_SIZE + TIME);
+        }
+    }
+
+    private int idOf(@Nullable String loginName) throws IOException {
+        if (loginName == null) {
+            return NO_CUSTOMER;
+        }
+        Integer id = ids.get(loginName);
+        if (id != null) {
+            return id;
+        }
+
+        byte[] name = loginName.getBytes(StandardCharsets.UTF_8);
+        long end = align(namesSize + 4 + name.length);
+        names.ensureCapacity(end);
+        names.putInt(namesSize, name.length);
+        names.putBytes(namesSize + 4, name);
+        namesSize = end;
+        transactions.putLong(HEADER_NAMES_SIZE, namesSize);
+        return addName(loginName);
+    }
+
+    private int addName(@NotNull String loginName) {
+        int id = loginNames.size();
+        loginNames.add(loginName);
+        ids.put(loginName, id);
+        customerIndexes.add(new CustomerIndex());
+        return id;
+    }
+
+    private void index(int number, int from, int to) throws IOException {
+        if (from != NO_CUSTOMER) {
+            customerIndexes.get(from).add(number);
+        }
+        if (to != NO_CUSTOMER && to != from) {
+            customerIndexes.get(to).add(number);
+        }
+    }
+
+    @Nullable
+    private CustomerIndex indexOf(@NotNull String loginName) {
+        Integer id = ids.get(loginName);
+        return id != null ? customerIndexes.get(id) : null;
+    }
+
+    @NotNull
+    private List<TransactionRecord> read(@NotNull CustomerIndex customerIndex, int start, int end) {
+        List<TransactionRecord> records = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            long offset = (long) customerIndex.get(i) * RECORD_SIZE;
+            int from = transactions.getInt(offset + FROM);
+            int to = transactions.getInt(offset + TO);
+            Transaction transaction = new Transaction(from != NO_CUSTOMER ? loginNames.get(from) : null,
+                    to != NO_CUSTOMER ? loginNames.get(to) : null,
+                    Money.ofCents(transactions.getLong(offset + CENTS)));
+            records.add(new TransactionRecord(transactions.getLong(offset + TIME), transaction));
+        }
+        return records;
+    }
+
+    private static long align(long offset) {
+        return (offset + 3) & ~3L;
+    }
+
+    /**
+     * Numbers of the transactions of a customer, the numbers are kept in chunks of the index file
+     */
+    private class CustomerIndex {
+
+        private int[] chunks = new int[1];
+
+        private int size;
+
+        void add(int number) throws IOException {
+            int chunk = size >>> CHUNK_SHIFT;
+            if ((size & CHUNK_MASK) == 0) {
+                if (chunk == chunks.length) {
+                    chunks = Arrays.copyOf(chunks, chunks.length * 2);
+                }
+                chunks[chunk] = chunkCount++;
+                index.ensureCapacity((long) chunkCount * CHUNK_BYTES);
+            }
+            index.putInt(offset(size), number);
+            size++;
+        }
+
+        int get(int i) {
+            return index.getInt(offset(i));
+        }
+
+        /**
+         * @return the position of the first transaction made at the given time or later
+         */
+        int find(long timeMillis) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (transactions.getLong((long) get(middle) * RECORD_SIZE + TIME) < timeMillis) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private long offset(int i) {
+            return (long) chunks[i >>> CHUNK_SHIFT] * CHUNK_BYTES + ((long) (i & CHUNK_MASK) << 2);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package dev.maltsev.atm.history;
+
+import dev.maltsev.atm.domain.Transaction;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+
+/**
+ * A transaction read from the history with the time it was made
+ */
+@RequiredArgsConstructor
+@Getter
+@EqualsAndHashCode
+@ToString
+public class TransactionRecord {
+
+    private final long timeMillis;
+    private final Transaction transaction;
+}
@@ -0,0 +1,25 @@
+package dev.maltsev.atm.journal;
+
+
+/**
+ * Defines when a committed operation is forced to the journal's storage device
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Every operation is written and forced before it returns
+     */
+    ALWAYS,
+
+    /**
+     * Operations are written and forced by a background flusher every group commit interval, an operation waits
+     * for the flush that covers it, so concurrent operations share a single fsync
+     */
+    GROUP,
+
+    /**
+     * Operations are written by a background flusher every group commit interval and never forced, changes made
+     * since the last flush are lost on crash
+     */
+    NONE
+}
@@ -0,0 +1,551 @@
+package dev.maltsev.atm.journal;
+
+import dev.maltsev.atm.domain.ChangeListener;
+import dev.maltsev.atm.domain.Customer;
+import dev.maltsev.atm.util.Loggable;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+
+/**
+ * An append-only write-ahead journal of changes applied to customers' balances and debts.
+ * <p>
+ * A change is appended as a compact binary record while the changed customers are locked, so records of the same
+ * customer are in the order the changes were applied, and records of different customers commute. Replaying the
+ * journal from the beginning rebuilds the state no matter how operations of concurrent sessions interleaved.
+ * <p>
+ * Records are buffered and written in frames, every frame is checked by CRC32. A frame torn by a crash at the end
+ * of the journal is discarded by {@link #replay(Handler)}. An operation is made durable by {@link #commit()}
+ * according to the {@link FsyncPolicy}.
+ * <p>
+ * Records are numbered in the order they are appended. A balance record belongs to its customer and a debt record
+ * belongs to the debtor, the journal keeps the number of the last record of every customer, so a snapshot can tell
+ * which records it already contains.
+ * <pre>
+ * journal   magic:int | version:int | frame...
+ * frame     length:int | crc:int | record...
+ * CUSTOMER  1:byte | id:int | name length:short | name:UTF-8
+ * BALANCE   2:byte | id:int | cents:long
+ * DEBT      3:byte | debtor id:int | creditor id:int | cents:long
+ * </pre>
+ */
+public class Journal implements ChangeListener, Closeable, Loggable {
+
+    private static final int MAGIC = 0x41544d4a;
+
+    private static final int VERSION = 1;
+
+    private static final int FILE_HEADER_SIZE = 8;
+
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private static final int MAX_NAME_LENGTH = 1024;
+
+    private static final byte CUSTOMER = 1;
+
+    private static final byte BALANCE = 2;
+
+    private static final byte DEBT = 3;
+
+    private static final int BALANCE_SIZE = 1 + 4 + 8;
+
+    private static final int DEBT_SIZE = 1 + 4 + 4 + 8;
+
+    private static final JournalPosition START = new JournalPosition(FILE_HEADER_SIZE, 0);
+
+    /**
+     * A receiver of replayed records, every record is passed with its number
+     */
+    public interface Handler {
+
+        void customerCreated(long sequence, int id, @NotNull String loginName);
+
+        void balanceChanged(long sequence, int id, long cents);
+
+        void debtChanged(long sequence, int debtorId, int creditorId, long cents);
+    }
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final FsyncPolicy fsyncPolicy;
+
+    private final ScheduledExecutorService flusher;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final CRC32 crc = new CRC32();
+
+    private final Lock lock = new ReentrantLock();
+
+    private final Condition flushed = lock.newCondition();
+
+    private boolean replayed;
+
+    private long appendedRecords;
+
+    private long writtenRecords;
+
+    private long syncedRecords;
+
+    private long[] lastSequences = new long[16];
+
+    private IOException failure;
+
+    /**
+     * Open the journal, it has to be replayed before changes are appended
+     *
+     * @param groupCommitMillis an interval of the background flusher, it is not used by {@link FsyncPolicy#ALWAYS}
+     */
+    public Journal(@NotNull Path path, @NotNull FsyncPolicy fsyncPolicy, long groupCommitMillis) throws IOException {
+        this.path = path;
+        this.fsyncPolicy = fsyncPolicy;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer.position(FRAME_HEADER_SIZE);
+
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            flusher = null;
+        } else {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, groupCommitMillis, groupCommitMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Pass all the records to the handler in the order they were appended and discard a torn frame at the end
+     *
+     * @return the number of replayed records
+     */
+    public long replay(@NotNull Handler handler) throws IOException {
+        return replay(handler, START);
+    }
+
+    /**
+     * Pass the records starting from the given position to the handler in the order they were appended and discard
+     * a torn frame at the end. A frame is torn if it runs past the end of the file or only zeros follow its start,
+     * a damaged frame followed by other data is corruption and the journal is left as it is.
+     *
+     * @param from a position returned by {@link #checkpoint()}
+     * @return the number of replayed records
+     * @throws IOException if a frame before the end of the file is damaged
+     */
+    public long replay(@NotNull Handler handler, @NotNull JournalPosition from) throws IOException {
+        lock.lock();
+        try {
+            if (replayed) {
+                throw new IllegalStateException("journal has been replayed already");
+            }
+
+            readFileHeader();
+            long size = channel.size();
+            if (from.getOffset() > size) {
+                throw new IOException(String.format("Journal %s ends before %s", path, from));
+            }
+
+            long position = from.getOffset();
+            long sequence = from.getSequence();
+            channel.position(position);
+            ByteBuffer in = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            in.limit(0);
+
+            // the end of the damaged frame the replay has stopped at, or 0 if the frame runs past the end of the file
+            long damagedEnd = 0;
+            while (fill(in, FRAME_HEADER_SIZE)) {
+                int length = in.getInt();
+                int checksum = in.getInt();
+                if (length <= 0 || length > BUFFER_SIZE - FRAME_HEADER_SIZE) {
+                    damagedEnd = position + FRAME_HEADER_SIZE;
+                    break;
+                }
+                if (!fill(in, length)) {
+                    break;
+                }
+
+                ByteBuffer frame = in.slice();
+                frame.limit(length);
+                crc.reset();
+                crc.update(frame.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    damagedEnd = position + FRAME_HEADER_SIZE + length;
+                    break;
+                }
+
+                sequence = replayFrame(frame, sequence, handler);
+                in.position(in.position() + length);
+                position += FRAME_HEADER_SIZE + length;
+            }
+
+            if (damagedEnd > 0 && damagedEnd < size && !isZeroFilled(position, size)) {
+                throw new IOException(String.format("Journal %s is damaged at offset %d, %d bytes follow", path,
+                        position, size - position));
+            }
+            if (position < size) {
+                logger().warn("Discarding {} bytes of a torn frame at the end of journal {}", size - position, path);
+                channel.truncate(position);
+            }
+            channel.position(position);
+            appendedRecords = writtenRecords = syncedRecords = sequence;
+            replayed = true;
+
+            return sequence - from.getSequence();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void customerCreated(@NotNull Customer customer) {
+        byte[] name = customer.getLoginName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("login name is too long");
+        }
+
+        lock.lock();
+        try {
+            reserve(1 + 4 + 2 + name.length);
+            buffer.put(CUSTOMER).putInt(customer.getId()).putShort((short) name.length).put(name);
+            appended(customer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void balanceChanged(@NotNull Customer customer, long cents) {
+        lock.lock();
+        try {
+            reserve(BALANCE_SIZE);
+            buffer.put(BALANCE).putInt(customer.getId()).putLong(cents);
+            appended(customer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void debtChanged(@NotNull Customer debtor, @NotNull Customer creditor, long cents) {
+        lock.lock();
+        try {
+            reserve(DEBT_SIZE);
+            buffer.put(DEBT).putInt(debtor.getId()).putInt(creditor.getId()).putLong(cents);
+            appended(debtor);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of the last record belonging to the customer or 0 if there are none since the journal
+     * has been opened, it is stable while the customer is locked
+     */
+    public long getLastSequence(@NotNull Customer customer) {
+        lock.lock();
+        try {
+            int id = customer.getId();
+            return id < lastSequences.length ? lastSequences[id] : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write buffered records, so the returned position is a frame boundary after all of them
+     */
+    @NotNull
+    public JournalPosition checkpoint() {
+        lock.lock();
+        try {
+            checkFailure();
+            writeFrame();
+            return new JournalPosition(channel.position(), writtenRecords);
+        } catch (IOException e) {
+            throw fail(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write and force the records appended so far regardless of the fsync policy
+     *
+     * @throws UncheckedIOException if the journal can't be written
+     */
+    public void force() {
+        sync(true);
+    }
+
+    /**
+     * Make the records appended so far durable according to the fsync policy
+     *
+     * @throws UncheckedIOException if the journal can't be written
+     */
+    public void commit() {
+        switch (fsyncPolicy) {
+            case ALWAYS:
+                sync(true);
+                break;
+            case GROUP:
+                awaitFlush();
+                break;
+            case NONE:
+                break;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        lock.lock();
+        try {
+            if (failure == null) {
+                writeFrame();
+                if (fsyncPolicy != FsyncPolicy.NONE) {
+                    channel.force(false);
+                }
+            }
+        } finally {
+            lock.unlock();
+            channel.close();
+        }
+    }
+
+    /**
+     * Write buffered records and force them unless the policy is {@link FsyncPolicy#NONE},
+     * it is called by the background flusher
+     */
+    private void flush() {
+        try {
+            sync(fsyncPolicy != FsyncPolicy.NONE);
+        } catch (UncheckedIOException e) {
+            logger().error("Failed to flush journal {}", path, e);
+        }
+    }
+
+    private void sync(boolean force) {
+        long records;
+
+        lock.lock();
+        try {
+            checkFailure();
+            if (syncedRecords == appendedRecords && !force) {
+                return;
+            }
+            writeFrame();
+            records = writtenRecords;
+        } catch (IOException e) {
+            throw fail(e);
+        } finally {
+            lock.unlock();
+        }
+
+        // concurrent appends are not blocked by fsync
+        try {
+            if (force) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                throw fail(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        lock.lock();
+        try {
+            if (syncedRecords < records) {
+                syncedRecords = records;
+                flushed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitFlush() {
+        lock.lock();
+        try {
+            long records = appendedRecords;
+            while (syncedRecords < records) {
+                checkFailure();
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void appended(Customer owner) {
+        int id = owner.getId();
+        if (id >= lastSequences.length) {
+            lastSequences = Arrays.copyOf(lastSequences, Math.max(id + 1, lastSequences.length * 2));
+        }
+        lastSequences[id] = ++appendedRecords;
+    }
+
+    private void reserve(int size) {
+        if (!replayed) {
+            throw new IllegalStateException("journal has not been replayed");
+        }
+        checkFailure();
+        if (buffer.remaining() < size) {
+            try {
+                writeFrame();
+            } catch (IOException e) {
+                throw fail(e);
+            }
+        }
+    }
+
+    private void writeFrame() throws IOException {
+        int length = buffer.position() - FRAME_HEADER_SIZE;
+        if (length == 0) {
+            return;
+        }
+
+        ByteBuffer records = buffer.duplicate();
+        records.flip().position(FRAME_HEADER_SIZE);
+        crc.reset();
+        crc.update(records);
+
+        buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear().position(FRAME_HEADER_SIZE);
+        writtenRecords = appendedRecords;
+    }
+
+    private UncheckedIOException fail(IOException e) {
+        failure = e;
+        flushed.signalAll();
+        return new UncheckedIOException("Failed to write journal " + path, e);
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal " + path + " is not writable", failure);
+        }
+    }
+
+    private void readFileHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        if (channel.size() < FILE_HEADER_SIZE) {
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(true);
+        } else {
+            while (header.hasRemaining()) {
+                channel.read(header, header.position());
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(path + " is not a journal of a supported version");
+            }
+        }
+    }
+
+    /**
+     * @return true if the file has only zeros between the positions, like a tail allocated but never written
+     */
+    private boolean isZeroFilled(long from, long to) throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        for (long position = from; position < to; ) {
+            in.clear();
+            int count = channel.read(in, position);
+            if (count < 0) {
+                return true;
+            }
+            for (int i = 0; i < count; i++) {
+                if (in.get(i) != 0) {
+                    return false;
+                }
+            }
+            position += count;
+        }
+        return true;
+    }
+
+    /**
+     * Make sure the buffer has at least the given number of bytes reading more from the channel if needed
+     *
+     * @return false if the end of the channel is reached first
+     */
+    private boolean fill(ByteBuffer in, int size) throws IOException {
+        if (in.remaining() >= size) {
+            return true;
+        }
+
+        in.compact();
+        try {
+            while (in.position() < size) {
+                if (channel.read(in) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.flip();
+        }
+    }
+
+    private static long replayFrame(ByteBuffer frame, long sequence, Handler handler) throws IOException {
+        while (frame.hasRemaining()) {
+            byte type = frame.get();
+            switch (type) {
+                case CUSTOMER:
+                    int id = frame.getInt();
+                    byte[] name = new byte[frame.getShort() & 0xffff];
+                    frame.get(name);
+                    handler.customerCreated(++sequence, id, new String(name, StandardCharsets.UTF_8));
+                    break;
+                case BALANCE:
+                    handler.balanceChanged(++sequence, frame.getInt(), frame.getLong());
+                    break;
+                case DEBT:
+                    handler.debtChanged(++sequence, frame.getInt(), frame.getInt(), frame.getLong());
+                    break;
+                default:
+                    throw new IOException("Unknown journal record type " + type);
+            }
+        }
+        return sequence;
+    }
+}
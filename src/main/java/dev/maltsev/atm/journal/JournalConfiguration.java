@@ -0,0 +1,33 @@
+package dev.maltsev.atm.journal;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+
+/**
+ * Creates the bank's journal when {@code atm.journal.path} is set and the snapshot store when
+ * {@code atm.snapshot.path} is set too
+ */
+@Configuration
+@ConditionalOnProperty("atm.journal.path")
+public class JournalConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public Journal journal(@Value("${atm.journal.path}") String path,
+                           @Value("${atm.journal.fsync:GROUP}") FsyncPolicy fsyncPolicy,
+                           @Value("${atm.journal.group-commit-millis:10}") long groupCommitMillis)
+            throws IOException {
+        return new Journal(Paths.get(path), fsyncPolicy, groupCommitMillis);
+    }
+
+    @Bean
+    @ConditionalOnProperty("atm.snapshot.path")
+    public SnapshotStore snapshotStore(@Value("${atm.snapshot.path}") String path) {
+        return new SnapshotStore(Paths.get(path));
+    }
+}
@@ -0,0 +1,28 @@
+package dev.maltsev.atm.journal;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+
+/**
+ * A position of a frame boundary in the journal
+ */
+@RequiredArgsConstructor
+@Getter
+public class JournalPosition {
+
+    /**
+     * A byte offset of the frame in the journal file
+     */
+    private final long offset;
+
+    /**
+     * The number of records before the frame, records are numbered from 1
+     */
+    private final long sequence;
+
+    @Override
+    public String toString() {
+        return "offset " + offset + ", sequence " + sequence;
+    }
+}
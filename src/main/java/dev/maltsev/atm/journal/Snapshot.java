@@ -0,0 +1,123 @@
+package dev.maltsev.atm.journal;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+
+/**
+ * A columnar copy of the bank's customers taken at a journal checkpoint.
+ * <p>
+ * Every customer is kept with the number of the last journal record it contains, so records after the checkpoint
+ * which are already in the snapshot are skipped on replay. Customer's debts are kept in the order they were made,
+ * in the debts columns after the debts of the previous customer.
+ */
+public class Snapshot {
+
+    private final JournalPosition position;
+
+    private int customerCount;
+
+    private int[] ids = new int[16];
+
+    private byte[][] names = new byte[16][];
+
+    private long[] balances = new long[16];
+
+    private long[] lastSequences = new long[16];
+
+    private int[] debtCounts = new int[16];
+
+    private int debtCount;
+
+    private int[] creditorIds = new int[16];
+
+    private long[] debts = new long[16];
+
+    public Snapshot(@NotNull JournalPosition position) {
+        this.position = position;
+    }
+
+    /**
+     * Add a customer, debts added next belong to it
+     */
+    public void addCustomer(int id, @NotNull byte[] name, long balance, long lastSequence) {
+        if (customerCount == ids.length) {
+            int capacity = customerCount * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            balances = Arrays.copyOf(balances, capacity);
+            lastSequences = Arrays.copyOf(lastSequences, capacity);
+            debtCounts = Arrays.copyOf(debtCounts, capacity);
+        }
+        ids[customerCount] = id;
+        names[customerCount] = name;
+        balances[customerCount] = balance;
+        lastSequences[customerCount] = lastSequence;
+        debtCounts[customerCount] = 0;
+        customerCount++;
+    }
+
+    /**
+     * Add a debt of the last added customer
+     */
+    public void addDebt(int creditorId, long cents) {
+        if (customerCount == 0) {
+            throw new IllegalStateException("no customer to add a debt to");
+        }
+        if (debtCount == creditorIds.length) {
+            int capacity = debtCount * 2;
+            creditorIds = Arrays.copyOf(creditorIds, capacity);
+            debts = Arrays.copyOf(debts, capacity);
+        }
+        creditorIds[debtCount] = creditorId;
+        debts[debtCount] = cents;
+        debtCount++;
+        debtCounts[customerCount - 1]++;
+    }
+
+    /**
+     * @return the checkpoint the journal is replayed from after the snapshot is loaded
+     */
+    @NotNull
+    public JournalPosition getPosition() {
+        return position;
+    }
+
+    public int getCustomerCount() {
+        return customerCount;
+    }
+
+    public int getId(int customer) {
+        return ids[customer];
+    }
+
+    @NotNull
+    public byte[] getName(int customer) {
+        return names[customer];
+    }
+
+    public long getBalance(int customer) {
+        return balances[customer];
+    }
+
+    public long getLastSequence(int customer) {
+        return lastSequences[customer];
+    }
+
+    public int getDebtCount(int customer) {
+        return debtCounts[customer];
+    }
+
+    public int getDebtCount() {
+        return debtCount;
+    }
+
+    public int getCreditorId(int debt) {
+        return creditorIds[debt];
+    }
+
+    public long getDebt(int debt) {
+        return debts[debt];
+    }
+}
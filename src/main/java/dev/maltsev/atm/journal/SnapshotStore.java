@@ -0,0 +1,168 @@
+package dev.maltsev.atm.journal;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+
+/**
+ * Keeps the latest snapshot in a file written and read through a memory mapping.
+ * <p>
+ * A snapshot is written to a temporary file which then replaces the previous one, so a crash during writing
+ * leaves the previous snapshot in place. Columns follow the header one after another and a CRC32 of everything
+ * before it ends the file:
+ * <pre>
+ * header   magic:int | version:int | journal offset:long | journal sequence:long | customers:int | debts:int
+ *          | names size:int
+ * columns  ids:int[customers] | last sequences:long[customers] | balances:long[customers]
+ *          | debt counts:int[customers] | name lengths:short[customers] | names:UTF-8
+ *          | creditor ids:int[debts] | debts:long[debts]
+ * </pre>
+ */
+public class SnapshotStore {
+
+    private static final int MAGIC = 0x41544d53;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+
+    private final Path path;
+
+    public SnapshotStore(@NotNull Path path) {
+        this.path = path;
+    }
+
+    @NotNull
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Replace the latest snapshot with the given one
+     */
+    public void save(@NotNull Snapshot snapshot) throws IOException {
+        int customerCount = snapshot.getCustomerCount();
+        int debtCount = snapshot.getDebtCount();
+        int namesSize = 0;
+        for (int i = 0; i < customerCount; i++) {
+            namesSize += snapshot.getName(i).length;
+        }
+        long size = HEADER_SIZE + customerCount * (4L + 8 + 8 + 4 + 2) + namesSize + debtCount * (4L + 8) + 4;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot of " + size + " bytes is too large");
+        }
+
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            buffer.putInt(MAGIC).putInt(VERSION)
+                    .putLong(snapshot.getPosition().getOffset())
+                    .putLong(snapshot.getPosition().getSequence())
+                    .putInt(customerCount).putInt(debtCount).putInt(namesSize);
+            for (int i = 0; i < customerCount; i++) {
+                buffer.putInt(snapshot.getId(i));
+            }
+            for (int i = 0; i < customerCount; i++) {
+                buffer.putLong(snapshot.getLastSequence(i));
+            }
+            for (int i = 0; i < customerCount; i++) {
+                buffer.putLong(snapshot.getBalance(i));
+            }
+            for (int i = 0; i < customerCount; i++) {
+                buffer.putInt(snapshot.getDebtCount(i));
+            }
+            for (int i = 0; i < customerCount; i++) {
+                buffer.putShort((short) snapshot.getName(i).length);
+            }
+            for (int i = 0; i < customerCount; i++) {
+                buffer.put(snapshot.getName(i));
+            }
+            for (int i = 0; i < debtCount; i++) {
+                buffer.putInt(snapshot.getCreditorId(i));
+            }
+            for (int i = 0; i < debtCount; i++) {
+                buffer.putLong(snapshot.getDebt(i));
+            }
+            buffer.putInt(checksum(buffer, buffer.position()));
+            buffer.force();
+        }
+
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the latest snapshot or null if there is none
+     * @throws IOException if the snapshot is corrupted
+     */
+    @Nullable
+    public Snapshot load() throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4 || size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + path + " is corrupted");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (buffer.getInt((int) size - 4) != checksum(buffer, (int) size - 4)) {
+                throw new IOException("Snapshot " + path + " is corrupted");
+            }
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(path + " is not a snapshot of a supported version");
+            }
+
+            Snapshot snapshot = new Snapshot(new JournalPosition(buffer.getLong(), buffer.getLong()));
+            int customerCount = buffer.getInt();
+            int debtCount = buffer.getInt();
+            int namesSize = buffer.getInt();
+
+            int ids = buffer.position();
+            int lastSequences = ids + customerCount * 4;
+            int balances = lastSequences + customerCount * 8;
+            int debtCounts = balances + customerCount * 8;
+            int nameLengths = debtCounts + customerCount * 4;
+            int names = nameLengths + customerCount * 2;
+            int creditorIds = names + namesSize;
+            int debts = creditorIds + debtCount * 4;
+
+            int debt = 0;
+            for (int i = 0; i < customerCount; i++) {
+                byte[] name = new byte[buffer.getShort(nameLengths + i * 2) & 0xffff];
+                buffer.position(names);
+                buffer.get(name);
+                names += name.length;
+
+                snapshot.addCustomer(buffer.getInt(ids + i * 4), name, buffer.getLong(balances + i * 8),
+                        buffer.getLong(lastSequences + i * 8));
+                for (int j = buffer.getInt(debtCounts + i * 4); j > 0; j--, debt++) {
+                    snapshot.addDebt(buffer.getInt(creditorIds + debt * 4), buffer.getLong(debts + debt * 8));
+                }
+            }
+
+            return snapshot;
+        }
+    }
+
+    private static int checksum(ByteBuffer buffer, int length) {
+        ByteBuffer data = buffer.duplicate();
+        data.clear().limit(length);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,67 @@
+package dev.maltsev.atm.load;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+
+/**
+ * A command of a generated session, either a call of the bank service or a line of the ATM protocol
+ */
+@RequiredArgsConstructor
+@Getter
+public class LoadCommand {
+
+    public enum Operation {
+        LOGIN, DEPOSIT, WITHDRAW, TRANSFER, LOGOUT
+    }
+
+    @NotNull
+    private final Operation operation;
+
+    /**
+     * the customer to log in or the recipient of a transfer
+     */
+    @Nullable
+    private final String loginName;
+
+    /**
+     * an amount in dollars
+     */
+    private final long amount;
+
+    @NotNull
+    public static LoadCommand login(@NotNull String loginName) {
+        return new LoadCommand(Operation.LOGIN, loginName, 0);
+    }
+
+    @NotNull
+    public static LoadCommand logout() {
+        return new LoadCommand(Operation.LOGOUT, null, 0);
+    }
+
+    /**
+     * @return the command as it is typed at the terminal
+     */
+    @NotNull
+    public String getLine() {
+        switch (operation) {
+            case LOGIN:
+                return "login " + loginName;
+            case DEPOSIT:
+                return "deposit " + amount;
+            case WITHDRAW:
+                return "withdraw " + amount;
+            case TRANSFER:
+                return "transfer " + loginName + " " + amount;
+            default:
+                return "logout";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getLine();
+    }
+}
@@ -0,0 +1,38 @@
+package dev.maltsev.atm.load;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+
+/**
+ * Creates the settings of the load generator run by '--load' option from {@code atm.load.*} properties
+ */
+@Configuration
+public class LoadConfiguration {
+
+    @Bean
+    public LoadSettings loadSettings(@Value("${atm.load.customers:10000}") int customerCount,
+                                     @Value("${atm.load.zipf-exponent:0.99}") double zipfExponent,
+                                     @Value("${atm.load.session-length:10}") int sessionLength,
+                                     @Value("${atm.load.debt-ratio:0.1}") double debtRatio,
+                                     @Value("${atm.load.threads:4}") int threadCount,
+                                     @Value("${atm.load.mode:CLOSED}") LoadMode mode,
+                                     @Value("${atm.load.rate:1000}") double rate,
+                                     @Value("${atm.load.expected-interval-micros:0}") long expectedIntervalMicros,
+                                     @Value("${atm.load.duration-seconds:10}") long durationSeconds) {
+        return LoadSettings.builder()
+                .customerCount(customerCount)
+                .zipfExponent(zipfExponent)
+                .sessionLength(sessionLength)
+                .debtRatio(debtRatio)
+                .threadCount(threadCount)
+                .mode(mode)
+                .rate(rate)
+                .expectedInterval(Duration.ofNanos(expectedIntervalMicros * 1000))
+                .duration(Duration.ofSeconds(durationSeconds))
+                .build();
+    }
+}
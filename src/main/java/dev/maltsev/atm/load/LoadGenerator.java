@@ -0,0 +1,264 @@
+package dev.maltsev.atm.load;
+
+import dev.maltsev.atm.load.LoadCommand.Operation;
+import dev.maltsev.atm.metrics.Histogram;
+import dev.maltsev.atm.metrics.HistogramSnapshot;
+import dev.maltsev.atm.util.Loggable;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Runs a generated {@link Workload} against a bank from many threads and measures throughput and latencies.
+ * <p>
+ * All customers are created before the run. Every thread then works through its own connection: it logs in
+ * a customer picked by the Zipf distribution, makes the session's operations and logs out. A hot customer may be
+ * logged in by another thread, then the login is counted as a collision and another customer is picked.
+ * <p>
+ * In the closed mode a thread issues an operation as soon as the previous one is done. A stalled bank then stalls
+ * the generator too, and the operations not issued meanwhile are missing from the latencies, which is
+ * the coordinated omission. With an expected interval a long operation is recorded together with the operations
+ * it has held up, like HdrHistogram's correction does. In the open mode every thread issues operations on
+ * a schedule of the configured rate and an operation's latency is measured from its intended start time, so
+ * the time it has waited for the late operations before it is counted.
+ */
+public class LoadGenerator implements Loggable {
+
+    private final LoadSettings settings;
+
+    private final Workload workload;
+
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+
+    private final Histogram totalLatency = new Histogram();
+
+    private final Histogram serviceTime = new Histogram();
+
+    private final LongAdder operationCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    private final LongAdder collisionCount = new LongAdder();
+
+    public LoadGenerator(@NotNull LoadSettings settings) {
+        if (settings.getThreadCount() <= 0) {
+            throw new IllegalArgumentException("thread count has to be positive");
+        }
+        if (settings.getMode() == LoadMode.OPEN && !(settings.getRate() > 0)) {
+            throw new IllegalArgumentException("rate has to be positive in the open mode");
+        }
+        if (settings.getDuration().isNegative() || settings.getDuration().isZero()) {
+            throw new IllegalArgumentException("duration has to be positive");
+        }
+        if (settings.getExpectedInterval().isNegative()) {
+            throw new IllegalArgumentException("expected interval can't be negative");
+        }
+
+        this.settings = settings;
+        this.workload = new Workload(settings);
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new Histogram());
+        }
+    }
+
+    /**
+     * Create the customers and run the workload for the configured duration, a generator runs once
+     */
+    @NotNull
+    public LoadReport run(@NotNull LoadTarget target) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(settings.getThreadCount(), runnable -> {
+            Thread thread = new Thread(runnable, "atm-load");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            long startTime = System.nanoTime();
+            runAll(executor, thread -> createCustomers(target, thread));
+            logger().info("Created {} customers in {} ms", settings.getCustomerCount(),
+                    (System.nanoTime() - startTime) / 1_000_000);
+
+            SplittableRandom random = new SplittableRandom(settings.getSeed());
+            List<Worker> workers = new ArrayList<>();
+            for (int i = 0; i < settings.getThreadCount(); i++) {
+                workers.add(new Worker(i, random.split()));
+            }
+
+            long runStartTime = System.nanoTime();
+            long runEndTime = runStartTime + settings.getDuration().toNanos();
+            runAll(executor, index -> workers.get(index).run(target, runStartTime, runEndTime));
+            long elapsedNanos = System.nanoTime() - runStartTime;
+
+            Map<Operation, HistogramSnapshot> snapshots = new EnumMap<>(Operation.class);
+            for (Map.Entry<Operation, Histogram> entry : latencies.entrySet()) {
+                snapshots.put(entry.getKey(), entry.getValue().snapshot());
+            }
+            LoadReport report = new LoadReport(settings, elapsedNanos, operationCount.sum(), rejectedCount.sum(),
+                    collisionCount.sum(), snapshots, totalLatency.snapshot(),
+                    settings.getMode() == LoadMode.OPEN ? serviceTime.snapshot() : null);
+            logger().info("Load run finished:\n{}", report);
+            return report;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Log in and out every customer, the customers are split between the threads
+     */
+    private void createCustomers(@NotNull LoadTarget target, int thread) throws IOException {
+        try (LoadTarget.Connection connection = target.connect()) {
+            for (int i = thread; i < settings.getCustomerCount(); i += settings.getThreadCount()) {
+                String loginName = Workload.loginName(i);
+                if (!connection.execute(LoadCommand.login(loginName)) || !connection.execute(LoadCommand.logout())) {
+                    throw new IllegalStateException("Failed to create customer " + loginName);
+                }
+            }
+        }
+    }
+
+    private void runAll(@NotNull ExecutorService executor, @NotNull Task task)
+            throws IOException, InterruptedException {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < settings.getThreadCount(); i++) {
+            int index = i;
+            futures.add(executor.submit(() -> {
+                task.run(index);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw (Error) e.getCause();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Task {
+
+        void run(int thread) throws IOException;
+    }
+
+    /**
+     * A generator thread with its own random sessions and, in the open mode, its own schedule
+     */
+    private class Worker {
+
+        private final SplittableRandom random;
+
+        /**
+         * an interval between intended start times of the thread's operations in the open mode
+         */
+        private final long period;
+
+        private final long expectedIntervalNanos = settings.getExpectedInterval().toNanos();
+
+        private final int index;
+
+        private long nextStartTime;
+
+        private long endTime;
+
+        private LoadTarget.Connection connection;
+
+        Worker(int index, @NotNull SplittableRandom random) {
+            this.index = index;
+            this.random = random;
+            this.period = settings.getMode() == LoadMode.OPEN
+                    ? Math.max(1, Math.round(settings.getThreadCount() * 1e9 / settings.getRate()))
+                    : 0;
+        }
+
+        void run(@NotNull LoadTarget target, long startTime, long endTime) throws IOException {
+            // threads are spread evenly over the first period
+            this.nextStartTime = startTime + period * index / settings.getThreadCount();
+            this.endTime = endTime;
+            try (LoadTarget.Connection targetConnection = target.connect()) {
+                this.connection = targetConnection;
+                while (!isOver()) {
+                    String loginName = workload.nextCustomer(random);
+                    if (!issue(LoadCommand.login(loginName))) {
+                        collisionCount.increment();
+                        continue;
+                    }
+
+                    int length = workload.nextSessionLength(random);
+                    for (int i = 0; i < length && !isOver(); i++) {
+                        issue(workload.nextOperation(random, loginName));
+                    }
+                    // a session cut by the end of the run is logged out when the connection is closed
+                    if (!isOver()) {
+                        issue(LoadCommand.logout());
+                    }
+                }
+            }
+        }
+
+        private boolean isOver() {
+            return (period > 0 ? nextStartTime : System.nanoTime()) - endTime >= 0;
+        }
+
+        private boolean issue(@NotNull LoadCommand command) throws IOException {
+            long intendedStartTime = 0;
+            if (period > 0) {
+                intendedStartTime = nextStartTime;
+                nextStartTime += period;
+                for (long delay = intendedStartTime - System.nanoTime(); delay > 0;
+                     delay = intendedStartTime - System.nanoTime()) {
+                    LockSupport.parkNanos(delay);
+                }
+            }
+
+            long startTime = System.nanoTime();
+            boolean executed = connection.execute(command);
+            long finishTime = System.nanoTime();
+
+            Histogram histogram = latencies.get(command.getOperation());
+            if (period > 0) {
+                record(histogram, finishTime - intendedStartTime);
+                serviceTime.record(finishTime - startTime);
+            } else {
+                record(histogram, finishTime - startTime);
+                // the operations which would have been issued meanwhile if the bank had not stalled
+                if (expectedIntervalNanos > 0) {
+                    for (long missed = finishTime - startTime - expectedIntervalNanos;
+                         missed >= expectedIntervalNanos;
+                         missed -= expectedIntervalNanos) {
+                        record(histogram, missed);
+                    }
+                }
+            }
+
+            operationCount.increment();
+            if (!executed) {
+                rejectedCount.increment();
+            }
+            return executed;
+        }
+
+        private void record(@NotNull Histogram histogram, long latency) {
+            histogram.record(latency);
+            totalLatency.record(latency);
+        }
+    }
+}
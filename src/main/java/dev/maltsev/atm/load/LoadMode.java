@@ -0,0 +1,19 @@
+package dev.maltsev.atm.load;
+
+
+/**
+ * How a load generator issues commands
+ */
+public enum LoadMode {
+
+    /**
+     * every thread issues its next command as soon as the previous one is done, the load adapts to the bank
+     */
+    CLOSED,
+
+    /**
+     * commands are issued at a constant rate whatever the bank's latency is, a late command is late for
+     * its intended start time
+     */
+    OPEN
+}
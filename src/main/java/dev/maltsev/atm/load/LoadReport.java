@@ -0,0 +1,108 @@
+package dev.maltsev.atm.load;
+
+import dev.maltsev.atm.load.LoadCommand.Operation;
+import dev.maltsev.atm.metrics.HistogramSnapshot;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Throughput and latencies of a load run. In the open mode a latency is measured from the intended start time of
+ * the operation, so the time an operation has waited for the ones before it counts, and the service time from
+ * the actual start is reported apart. In the closed mode latencies are corrected only if an expected interval
+ * is given.
+ */
+@RequiredArgsConstructor
+@Getter
+public class LoadReport {
+
+    private static final String REPORT_FORMAT = "%-10s %10s %10s %10s %10s %10s %10s %10s%n";
+
+    @NotNull
+    private final LoadSettings settings;
+
+    private final long elapsedNanos;
+
+    private final long operationCount;
+
+    /**
+     * operations rejected by the bank, login collisions included
+     */
+    private final long rejectedCount;
+
+    /**
+     * logins rejected because another thread had logged the customer in
+     */
+    private final long collisionCount;
+
+    @NotNull
+    private final Map<Operation, HistogramSnapshot> latencies;
+
+    @NotNull
+    private final HistogramSnapshot totalLatency;
+
+    /**
+     * service times of the open mode, null in the closed mode
+     */
+    @Nullable
+    private final HistogramSnapshot serviceTime;
+
+    /**
+     * @return operations per second
+     */
+    public double getThroughput() {
+        return elapsedNanos > 0 ? operationCount * 1e9 / elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder()
+                .append(String.format(Locale.ROOT, "%s loop, %d threads, %d customers, Zipf exponent %.2f%n",
+                        settings.getMode() == LoadMode.OPEN ? "Open" : "Closed", settings.getThreadCount(),
+                        settings.getCustomerCount(), settings.getZipfExponent()))
+                .append(String.format(Locale.ROOT,
+                        "%d operations in %.1f s: %.1f ops/s, %d rejected, %d login collisions%n", operationCount,
+                        elapsedNanos / 1e9, getThroughput(), rejectedCount, collisionCount))
+                .append(String.format(REPORT_FORMAT, "operation", "count", "p50 us", "p90 us", "p99 us",
+                        "p99.9 us", "p99.99 us", "max us"));
+        for (Map.Entry<Operation, HistogramSnapshot> entry : latencies.entrySet()) {
+            appendRow(report, entry.getKey().name().toLowerCase(Locale.ROOT), entry.getValue());
+        }
+        appendRow(report, "all", totalLatency);
+        if (serviceTime != null) {
+            appendRow(report, "service", serviceTime);
+        }
+
+        if (settings.getMode() == LoadMode.OPEN) {
+            report.append(String.format(Locale.ROOT, "Latencies are measured from intended start times at %.1f ops/s, "
+                    + "service is the time from actual start%n", settings.getRate()));
+        } else if (!settings.getExpectedInterval().isZero()) {
+            report.append(String.format(Locale.ROOT, "Latencies are corrected for coordinated omission with "
+                    + "an expected interval of %s us%n", micros(settings.getExpectedInterval().toNanos())));
+        } else {
+            report.append("Latencies are not corrected for coordinated omission, set an expected interval or "
+                    + "use the open mode\n");
+        }
+        return report.toString();
+    }
+
+    private static void appendRow(@NotNull StringBuilder report, @NotNull String name,
+                                  @NotNull HistogramSnapshot snapshot) {
+        if (snapshot.getCount() == 0) {
+            return;
+        }
+        report.append(String.format(REPORT_FORMAT, name, snapshot.getCount(),
+                micros(snapshot.getValueAtPercentile(50)), micros(snapshot.getValueAtPercentile(90)),
+                micros(snapshot.getValueAtPercentile(99)), micros(snapshot.getValueAtPercentile(99.9)),
+                micros(snapshot.getValueAtPercentile(99.99)), micros(snapshot.getMax())));
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+}
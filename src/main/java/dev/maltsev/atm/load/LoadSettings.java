@@ -0,0 +1,82 @@
+package dev.maltsev.atm.load;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+
+/**
+ * Parameters of a generated workload and of the way it is run
+ */
+@Builder(toBuilder = true)
+@Getter
+public class LoadSettings {
+
+    /**
+     * customers are named 'customer0', 'customer1' and so on, all of them are created before the run
+     */
+    @Builder.Default
+    private final int customerCount = 10_000;
+
+    /**
+     * a skew of customers picked for sessions and transfers, 0 for uniform, about 1 for a few hot customers
+     */
+    @Builder.Default
+    private final double zipfExponent = 0.99;
+
+    /**
+     * a mean number of operations between login and logout, the number of a session is uniform around it
+     */
+    @Builder.Default
+    private final int sessionLength = 10;
+
+    /**
+     * relative weights of operations within a session
+     */
+    @Builder.Default
+    private final double depositWeight = 0.3;
+
+    @Builder.Default
+    private final double withdrawWeight = 0.2;
+
+    @Builder.Default
+    private final double transferWeight = 0.5;
+
+    /**
+     * a share of transfers of ten times the largest amount, which customers rarely have, so they make debts
+     */
+    @Builder.Default
+    private final double debtRatio = 0.1;
+
+    /**
+     * the largest amount in dollars of a deposit, a withdrawal or an ordinary transfer
+     */
+    @Builder.Default
+    private final int maxAmount = 100;
+
+    @Builder.Default
+    private final int threadCount = 4;
+
+    @Builder.Default
+    private final LoadMode mode = LoadMode.CLOSED;
+
+    /**
+     * operations per second of all threads together in the open mode
+     */
+    @Builder.Default
+    private final double rate = 1000;
+
+    /**
+     * an interval expected between operations of a thread in the closed mode, a longer operation is recorded with
+     * the operations it has held up, as if they had been issued on time; zero records operations as they are
+     */
+    @Builder.Default
+    private final Duration expectedInterval = Duration.ZERO;
+
+    @Builder.Default
+    private final Duration duration = Duration.ofSeconds(10);
+
+    @Builder.Default
+    private final long seed = 42;
+}
@@ -0,0 +1,37 @@
+package dev.maltsev.atm.load;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * A bank a load generator drives, every generator thread works through its own connection
+ */
+public interface LoadTarget extends Closeable {
+
+    @NotNull
+    Connection connect() throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * A terminal of the bank, a customer's session at a time
+     */
+    interface Connection extends Closeable {
+
+        /**
+         * @return false if the bank has rejected the command, e.g. a withdrawal of more than the balance
+         */
+        boolean execute(@NotNull LoadCommand command) throws IOException;
+
+        /**
+         * Log out of the current customer if any and release the connection
+         */
+        @Override
+        void close() throws IOException;
+    }
+}
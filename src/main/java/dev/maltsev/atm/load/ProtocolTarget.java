@@ -0,0 +1,159 @@
+package dev.maltsev.atm.load;
+
+import dev.maltsev.atm.controller.AtmController;
+import dev.maltsev.atm.controller.SessionExecutor;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Types commands into terminal sessions of the ATM controller, so the load measures the whole protocol path: parsing,
+ * the command, the bank and the output. Every connection is a session of {@link AtmController#doProcess} fed through
+ * in-memory queues, a flush of the session's output is the response to a command.
+ */
+public class ProtocolTarget implements LoadTarget {
+
+    private static final String ERROR_PREFIX = "Error occurred";
+
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private final SessionExecutor sessionExecutor;
+
+    public ProtocolTarget(@NotNull AtmController controller) {
+        this.sessionExecutor = new SessionExecutor(controller);
+    }
+
+    @Override
+    @NotNull
+    public Connection connect() throws IOException {
+        Terminal terminal = new Terminal();
+        CompletableFuture<Void> completion = sessionExecutor.submit(terminal.in, terminal.out);
+        terminal.awaitResponse();
+
+        return new Connection() {
+            @Override
+            public boolean execute(@NotNull LoadCommand command) throws IOException {
+                return !terminal.execute(command.getLine()).startsWith(ERROR_PREFIX);
+            }
+
+            @Override
+            public void close() throws IOException {
+                // the session logs out of the customer when its input is over
+                terminal.close();
+                try {
+                    completion.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                } catch (ExecutionException | TimeoutException e) {
+                    throw new IOException("Terminal session failed", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * A terminal talking to a session through queues
+     */
+    private static class Terminal {
+
+        private static final byte[] END_OF_INPUT = new byte[0];
+
+        private final BlockingQueue<byte[]> lines = new LinkedBlockingQueue<>();
+
+        private final BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+
+        final InputStream in = new InputStream() {
+
+            private byte[] line = new byte[0];
+
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (line == END_OF_INPUT) {
+                    return -1;
+                }
+                if (position == line.length) {
+                    try {
+                        line = lines.take();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                    position = 0;
+                    if (line == END_OF_INPUT) {
+                        return -1;
+                    }
+                }
+                int count = Math.min(len, line.length - position);
+                System.arraycopy(line, position, b, off, count);
+                position += count;
+                return count;
+            }
+        };
+
+        final OutputStream out = new OutputStream() {
+
+            private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+            @Override
+            public void write(int b) {
+                buffer.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                buffer.write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                if (buffer.size() > 0) {
+                    responses.add(buffer.toString(StandardCharsets.UTF_8));
+                    buffer.reset();
+                }
+            }
+        };
+
+        @NotNull
+        String execute(@NotNull String line) throws IOException {
+            lines.add((line + "\n").getBytes(StandardCharsets.UTF_8));
+            return awaitResponse();
+        }
+
+        @NotNull
+        String awaitResponse() throws IOException {
+            try {
+                String response = responses.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (response == null) {
+                    throw new IOException("Terminal session didn't respond in " + TIMEOUT_SECONDS + " seconds");
+                }
+                return response;
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        void close() {
+            lines.add(END_OF_INPUT);
+        }
+    }
+}
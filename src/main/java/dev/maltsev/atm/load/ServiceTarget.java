@@ -0,0 +1,71 @@
+package dev.maltsev.atm.load;
+
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Calls the bank service directly, so the load measures the engine without parsing and formatting of commands
+ */
+public class ServiceTarget implements LoadTarget {
+
+    private final BankService service;
+
+    public ServiceTarget(@NotNull BankService service) {
+        this.service = service;
+    }
+
+    @Override
+    @NotNull
+    public Connection connect() {
+        return new Connection() {
+
+            private Session session;
+
+            @Override
+            public boolean execute(@NotNull LoadCommand command) {
+                try {
+                    switch (command.getOperation()) {
+                        case LOGIN:
+                            session = service.login(command.getLoginName());
+                            break;
+                        case DEPOSIT:
+                            service.deposit(getSession(), Money.valueOf(command.getAmount()));
+                            break;
+                        case WITHDRAW:
+                            service.withdraw(getSession(), Money.valueOf(command.getAmount()));
+                            break;
+                        case TRANSFER:
+                            service.transfer(getSession(), command.getLoginName(),
+                                    Money.valueOf(command.getAmount()));
+                            break;
+                        default:
+                            service.logout(getSession());
+                            session = null;
+                    }
+                    return true;
+                } catch (BankServiceException e) {
+                    return false;
+                }
+            }
+
+            @Override
+            public void close() {
+                if (session != null) {
+                    execute(LoadCommand.logout());
+                }
+            }
+
+            @NotNull
+            private Session getSession() throws BankServiceException {
+                if (session == null) {
+                    throw new BankServiceException("there is no authenticated customer");
+                }
+                return session;
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package dev.maltsev.atm.load;
+
+import dev.maltsev.atm.load.LoadCommand.Operation;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.SplittableRandom;
+
+
+/**
+ * Generates sessions of customers picked by a Zipf distribution: a session logs in, makes a random number of
+ * deposits, withdrawals and transfers and logs out. Recipients of transfers are picked by the same distribution.
+ */
+public class Workload {
+
+    private final LoadSettings settings;
+
+    private final ZipfDistribution customers;
+
+    private final double depositThreshold;
+
+    private final double withdrawThreshold;
+
+    public Workload(@NotNull LoadSettings settings) {
+        if (settings.getCustomerCount() < 2) {
+            throw new IllegalArgumentException("a workload needs two customers at least");
+        }
+        if (settings.getSessionLength() <= 0 || settings.getMaxAmount() <= 0) {
+            throw new IllegalArgumentException("session length and amounts have to be positive");
+        }
+        double totalWeight = settings.getDepositWeight() + settings.getWithdrawWeight()
+                + settings.getTransferWeight();
+        if (settings.getDepositWeight() < 0 || settings.getWithdrawWeight() < 0 || settings.getTransferWeight() < 0
+                || totalWeight <= 0) {
+            throw new IllegalArgumentException("operation weights can't be negative and all zero");
+        }
+
+        this.settings = settings;
+        this.customers = new ZipfDistribution(settings.getCustomerCount(), settings.getZipfExponent());
+        this.depositThreshold = settings.getDepositWeight() / totalWeight;
+        this.withdrawThreshold = (settings.getDepositWeight() + settings.getWithdrawWeight()) / totalWeight;
+    }
+
+    @NotNull
+    public static String loginName(int customer) {
+        return "customer" + customer;
+    }
+
+    /**
+     * @return a customer to start a session of
+     */
+    @NotNull
+    public String nextCustomer(@NotNull SplittableRandom random) {
+        return loginName(customers.next(random));
+    }
+
+    /**
+     * @return a number of operations of a session between login and logout
+     */
+    public int nextSessionLength(@NotNull SplittableRandom random) {
+        return 1 + random.nextInt(2 * settings.getSessionLength() - 1);
+    }
+
+    /**
+     * @param loginName the customer of the session
+     * @return an operation of the session
+     */
+    @NotNull
+    public LoadCommand nextOperation(@NotNull SplittableRandom random, @NotNull String loginName) {
+        double operation = random.nextDouble();
+        long amount = 1 + random.nextInt(settings.getMaxAmount());
+        if (operation < depositThreshold) {
+            return new LoadCommand(Operation.DEPOSIT, null, amount);
+        }
+        if (operation < withdrawThreshold) {
+            return new LoadCommand(Operation.WITHDRAW, null, amount);
+        }
+
+        String recipient;
+        do {
+            recipient = nextCustomer(random);
+        } while (recipient.equals(loginName));
+        if (random.nextDouble() < settings.getDebtRatio()) {
+            amount = 10L * settings.getMaxAmount();
+        }
+        return new LoadCommand(Operation.TRANSFER, recipient, amount);
+    }
+}
@@ -0,0 +1,47 @@
+package dev.maltsev.atm.load;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+
+/**
+ * A Zipf distribution over ranks from 0 to a count, exclusive: rank k is drawn with a probability proportional to
+ * 1/(k+1)^exponent, so a few low ranks are hot. An exponent of 0 is the uniform distribution. The cumulative
+ * probabilities are computed once and a draw is a binary search over them.
+ */
+public class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    public ZipfDistribution(int count, double exponent) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count has to be positive");
+        }
+        if (exponent < 0) {
+            throw new IllegalArgumentException("exponent can't be negative");
+        }
+
+        cumulative = new double[count];
+        double sum = 0;
+        for (int rank = 0; rank < count; rank++) {
+            sum += Math.pow(rank + 1, -exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < count; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    public int getCount() {
+        return cumulative.length;
+    }
+
+    /**
+     * @return a rank from 0 to the count, exclusive
+     */
+    public int next(SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
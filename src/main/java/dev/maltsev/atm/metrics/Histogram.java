@@ -0,0 +1,88 @@
+package dev.maltsev.atm.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A histogram of latencies in nanoseconds with HDR-style log-linear buckets.
+ * <p>
+ * Values below {@value #SUB_BUCKET_COUNT} have a bucket each, larger ones are grouped by powers of two split into
+ * {@value #HALF_SUB_BUCKET_COUNT} buckets, so a recorded value is off by 1/{@value #HALF_SUB_BUCKET_COUNT} at most.
+ * Values above 2^{@value #MAX_VALUE_BITS} ns (about a minute) go to the last bucket.
+ * <p>
+ * Recording is a single atomic increment of a bucket without locks. The buckets are striped by thread, so threads
+ * recording at once rarely share a cache line. A snapshot sums the stripes and may miss records made meanwhile.
+ */
+public class Histogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+
+    static final int MAX_VALUE_BITS = 36;
+
+    static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 2) * HALF_SUB_BUCKET_COUNT;
+
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    private static final int MAX_STRIPE_COUNT = 8;
+
+    private final AtomicLongArray[] stripes;
+
+    private final int stripeMask;
+
+    public Histogram() {
+        int stripeCount = Math.min(MAX_STRIPE_COUNT,
+                Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+        this.stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(BUCKET_COUNT);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * @param value a latency in nanoseconds, negative values are counted as zero
+     */
+    public void record(long value) {
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        stripes[stripe].getAndIncrement(bucketIndex(value));
+    }
+
+    @NotNull
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return new HistogramSnapshot(counts);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return value < 0 ? 0 : (int) value;
+        }
+        long clamped = Math.min(value, MAX_VALUE);
+        // keep the top SUB_BUCKET_BITS bits of the value
+        int shift = 64 - Long.numberOfLeadingZeros(clamped) - SUB_BUCKET_BITS;
+        return shift * HALF_SUB_BUCKET_COUNT + (int) (clamped >>> shift);
+    }
+
+    /**
+     * @return the largest value counted by the bucket
+     */
+    static long highestValue(int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+        int shift = bucketIndex / HALF_SUB_BUCKET_COUNT - 1;
+        long lowestValue = (long) (bucketIndex - shift * HALF_SUB_BUCKET_COUNT) << shift;
+        return lowestValue + (1L << shift) - 1;
+    }
+}
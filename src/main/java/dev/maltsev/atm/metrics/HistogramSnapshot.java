@@ -0,0 +1,53 @@
+package dev.maltsev.atm.metrics;
+
+import lombok.Getter;
+
+
+/**
+ * Counts of a {@link Histogram} at some moment, values are reported as the highest values of their buckets
+ */
+public class HistogramSnapshot {
+
+    private final long[] counts;
+
+    @Getter
+    private final long count;
+
+    HistogramSnapshot(long[] counts) {
+        this.counts = counts;
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        this.count = total;
+    }
+
+    /**
+     * @param percentile a percentile from 0 to 100
+     * @return a value in nanoseconds which the given percentage of the recorded values don't exceed,
+     * 0 if nothing is recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Histogram.highestValue(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the largest recorded value in nanoseconds, 0 if nothing is recorded
+     */
+    public long getMax() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] > 0) {
+                return Histogram.highestValue(i);
+            }
+        }
+        return 0;
+    }
+}
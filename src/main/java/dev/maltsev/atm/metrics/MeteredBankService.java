@@ -0,0 +1,131 @@
+package dev.maltsev.atm.metrics;
+
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.Payment;
+import dev.maltsev.atm.domain.Transaction;
+import dev.maltsev.atm.domain.TransferSummary;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+
+/**
+ * A bank service recording latencies and errors of every call of the wrapped one to timers named
+ * 'bank.{method}'
+ */
+public class MeteredBankService implements BankService {
+
+    private final BankService service;
+
+    private final Timer loginTimer;
+
+    private final Timer depositTimer;
+
+    private final Timer withdrawTimer;
+
+    private final Timer transferTimer;
+
+    private final Timer transferAllTimer;
+
+    private final Timer logoutTimer;
+
+    public MeteredBankService(@NotNull BankService service, @NotNull Metrics metrics) {
+        this.service = service;
+        this.loginTimer = metrics.timer("bank.login");
+        this.depositTimer = metrics.timer("bank.deposit");
+        this.withdrawTimer = metrics.timer("bank.withdraw");
+        this.transferTimer = metrics.timer("bank.transfer");
+        this.transferAllTimer = metrics.timer("bank.transferAll");
+        this.logoutTimer = metrics.timer("bank.logout");
+    }
+
+    @NotNull
+    @Override
+    public Session login(@NotNull String loginName) throws BankServiceException {
+        long startTime = loginTimer.start();
+        try {
+            Session session = service.login(loginName);
+            loginTimer.stop(startTime);
+            return session;
+        } catch (BankServiceException | RuntimeException e) {
+            loginTimer.fail(startTime);
+            throw e;
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<Transaction> deposit(@NotNull Session session, @NotNull Money amount) throws BankServiceException {
+        long startTime = depositTimer.start();
+        try {
+            List<Transaction> transactions = service.deposit(session, amount);
+            depositTimer.stop(startTime);
+            return transactions;
+        } catch (BankServiceException | RuntimeException e) {
+            depositTimer.fail(startTime);
+            throw e;
+        }
+    }
+
+    @NotNull
+    @Override
+    public Transaction withdraw(@NotNull Session session, @NotNull Money amount) throws BankServiceException {
+        long startTime = withdrawTimer.start();
+        try {
+            Transaction transaction = service.withdraw(session, amount);
+            withdrawTimer.stop(startTime);
+            return transaction;
+        } catch (BankServiceException | RuntimeException e) {
+            withdrawTimer.fail(startTime);
+            throw e;
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<Transaction> transfer(@NotNull Session session, @NotNull String toLoginName, @NotNull Money amount)
+            throws BankServiceException {
+        long startTime = transferTimer.start();
+        try {
+            List<Transaction> transactions = service.transfer(session, toLoginName, amount);
+            transferTimer.stop(startTime);
+            return transactions;
+        } catch (BankServiceException | RuntimeException e) {
+            transferTimer.fail(startTime);
+            throw e;
+        }
+    }
+
+    @NotNull
+    @Override
+    public TransferSummary transferAll(@NotNull Session session, @NotNull List<Payment> payments)
+            throws BankServiceException {
+        long startTime = transferAllTimer.start();
+        try {
+            TransferSummary summary = service.transferAll(session, payments);
+            transferAllTimer.stop(startTime);
+            return summary;
+        } catch (BankServiceException | RuntimeException e) {
+            transferAllTimer.fail(startTime);
+            throw e;
+        }
+    }
+
+    @NotNull
+    @Override
+    public CustomerView logout(@NotNull Session session) throws BankServiceException {
+        long startTime = logoutTimer.start();
+        try {
+            CustomerView customer = service.logout(session);
+            logoutTimer.stop(startTime);
+            return customer;
+        } catch (BankServiceException | RuntimeException e) {
+            logoutTimer.fail(startTime);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package dev.maltsev.atm.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A registry of named timers of the hot path: command executions, bank service calls and command parsing.
+ * <p>
+ * Timers are looked up once by their users and kept, so recording doesn't touch the registry.
+ */
+public class Metrics {
+
+    /**
+     * a registry of disabled timers for components created without metrics
+     */
+    public static final Metrics DISABLED = new Metrics(false);
+
+    private static final String REPORT_FORMAT = "%-24s %10s %8s %10s %10s %10s %10s%n";
+
+    private final boolean enabled;
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public Metrics() {
+        this(true);
+    }
+
+    public Metrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return a timer with the given name, created on the first call
+     */
+    @NotNull
+    public Timer timer(@NotNull String name) {
+        return timers.computeIfAbsent(name, key -> new Timer(key, enabled));
+    }
+
+    /**
+     * @return timers sorted by name
+     */
+    @NotNull
+    public List<Timer> getTimers() {
+        List<Timer> result = new ArrayList<>(timers.values());
+        result.sort(Comparator.comparing(Timer::getName));
+        return result;
+    }
+
+    /**
+     * @return a table of counts, errors and latency percentiles in microseconds of the timers used so far
+     */
+    @NotNull
+    public String report() {
+        StringBuilder report = new StringBuilder()
+                .append(String.format(REPORT_FORMAT, "operation", "count", "errors", "p50 us", "p99 us", "p99.9 us",
+                        "max us"));
+        for (Timer timer : getTimers()) {
+            HistogramSnapshot snapshot = timer.snapshot();
+            if (snapshot.getCount() == 0) {
+                continue;
+            }
+            report.append(String.format(REPORT_FORMAT, timer.getName(), snapshot.getCount(), timer.getErrorCount(),
+                    micros(snapshot.getValueAtPercentile(50)), micros(snapshot.getValueAtPercentile(99)),
+                    micros(snapshot.getValueAtPercentile(99.9)), micros(snapshot.getMax())));
+        }
+        return report.toString();
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+}
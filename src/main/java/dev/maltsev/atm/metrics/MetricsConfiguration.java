@@ -0,0 +1,18 @@
+package dev.maltsev.atm.metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+
+/**
+ * Creates the registry of hot path timers, disabled with {@code atm.metrics.enabled=false}
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public Metrics metrics(@Value("${atm.metrics.enabled:true}") boolean enabled) {
+        return enabled ? new Metrics() : Metrics.DISABLED;
+    }
+}
@@ -0,0 +1,72 @@
+package dev.maltsev.atm.metrics;
+
+import dev.maltsev.atm.util.Loggable;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Dumps the metrics report every {@code atm.metrics.dump-interval-seconds} and once more on shutdown, to the log or
+ * to the file {@code atm.metrics.path} if it is set. The file is replaced as a whole, so readers never see a part of
+ * a report.
+ */
+@Component
+@ConditionalOnProperty("atm.metrics.dump-interval-seconds")
+public class MetricsDumper implements DisposableBean, Loggable {
+
+    private final Metrics metrics;
+
+    private final Path path;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-dumper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public MetricsDumper(@NotNull Metrics metrics,
+                         @Value("${atm.metrics.dump-interval-seconds}") long intervalSeconds,
+                         @Value("${atm.metrics.path:}") String path) {
+        this.metrics = metrics;
+        this.path = path.isEmpty() ? null : Paths.get(path);
+        executor.scheduleWithFixedDelay(this::dump, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        dump();
+    }
+
+    void dump() {
+        String report = metrics.report();
+        if (path == null) {
+            logger().info("Metrics:\n{}", report);
+            return;
+        }
+
+        try {
+            Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(temporaryPath, report.getBytes(StandardCharsets.UTF_8));
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            logger().error("Failed to dump metrics to " + path, e);
+        }
+    }
+}
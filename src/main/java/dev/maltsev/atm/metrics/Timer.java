@@ -0,0 +1,69 @@
+package dev.maltsev.atm.metrics;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Latencies and errors of an operation:
+ * <pre>
+ * long startTime = timer.start();
+ * ...
+ * timer.stop(startTime); // or timer.fail(startTime)
+ * </pre>
+ * A disabled timer doesn't read the clock and records nothing.
+ */
+public class Timer {
+
+    @Getter
+    private final String name;
+
+    private final boolean enabled;
+
+    private final Histogram histogram;
+
+    private final LongAdder errorCount = new LongAdder();
+
+    Timer(@NotNull String name, boolean enabled) {
+        this.name = name;
+        this.enabled = enabled;
+        this.histogram = enabled ? new Histogram() : null;
+    }
+
+    /**
+     * @return a start time to pass to {@link #stop(long)} or {@link #fail(long)}
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record a successful operation
+     */
+    public void stop(long startTime) {
+        if (enabled) {
+            histogram.record(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Record a failed operation, its latency is recorded too
+     */
+    public void fail(long startTime) {
+        if (enabled) {
+            histogram.record(System.nanoTime() - startTime);
+            errorCount.increment();
+        }
+    }
+
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    @NotNull
+    public HistogramSnapshot snapshot() {
+        return enabled ? histogram.snapshot() : new HistogramSnapshot(new long[0]);
+    }
+}
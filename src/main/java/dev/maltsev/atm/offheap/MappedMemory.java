@@ -0,0 +1,124 @@
+package dev.maltsev.atm.offheap;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ * A growable memory region backed by a file and mapped to memory by segments of the same size, it keeps
+ * the off-heap store and the transaction history.
+ * <p>
+ * A value aligned to its size never crosses a segment boundary. Accessors are not synchronized, callers guard
+ * the memory they change by their own locks.
+ */
+public class MappedMemory implements Closeable {
+
+    private final FileChannel channel;
+
+    private final int segmentShift;
+
+    private final long segmentMask;
+
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * Map the file, the existing content of the file is kept
+     *
+     * @param segmentShift a binary logarithm of the segment size, segments can't be larger than 1 GB
+     */
+    public MappedMemory(@NotNull Path path, int segmentShift) throws IOException {
+        if (segmentShift < 3 || segmentShift > 30) {
+            throw new IllegalArgumentException("Segment shift should be from 3 to 30");
+        }
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+        ensureCapacity(channel.size());
+    }
+
+    /**
+     * Map more segments if the region is smaller than the given size
+     */
+    public synchronized void ensureCapacity(long size) throws IOException {
+        MappedByteBuffer[] current = segments;
+        int count = (int) ((size + segmentMask) >>> segmentShift);
+        if (count <= current.length) {
+            return;
+        }
+
+        MappedByteBuffer[] extended = Arrays.copyOf(current, count);
+        for (int i = current.length; i < count; i++) {
+            extended[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i << segmentShift, 1L << segmentShift);
+        }
+        segments = extended;
+    }
+
+    public long getLong(long offset) {
+        return segment(offset).getLong(position(offset));
+    }
+
+    public void putLong(long offset, long value) {
+        segment(offset).putLong(position(offset), value);
+    }
+
+    public int getInt(long offset) {
+        return segment(offset).getInt(position(offset));
+    }
+
+    public void putInt(long offset, int value) {
+        segment(offset).putInt(position(offset), value);
+    }
+
+    public void getBytes(long offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = segment(offset + i).get(position(offset + i));
+        }
+    }
+
+    public void putBytes(long offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            segment(offset + i).put(position(offset + i), bytes[i]);
+        }
+    }
+
+    public boolean equalBytes(long offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (segment(offset + i).get(position(offset + i)) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write changed pages to the file
+     */
+    public void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private MappedByteBuffer segment(long offset) {
+        return segments[(int) (offset >>> segmentShift)];
+    }
+
+    private int position(long offset) {
+        return (int) (offset & segmentMask);
+    }
+}
@@ -0,0 +1,107 @@
+package dev.maltsev.atm.offheap;
+
+import dev.maltsev.atm.domain.Account;
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+
+/**
+ * A customer of an {@link OffHeapStore}, a flyweight of a customer record reading the store on every call.
+ * Debt maps are copies taken under the customer's lock, statements are cached until a debt of the customer's lock
+ * stripe changes.
+ */
+public class OffHeapCustomer implements CustomerView {
+
+    private final OffHeapStore store;
+
+    private final int id;
+
+    private final String loginName;
+
+    /**
+     * cached statements and the stripe versions they were built at, guarded by the stripe lock of the customer
+     */
+    String creditStatement;
+
+    long creditVersion;
+
+    String debitStatement;
+
+    long debitVersion;
+
+    OffHeapCustomer(@NotNull OffHeapStore store, int id, @NotNull String loginName) {
+        this.store = store;
+        this.id = id;
+        this.loginName = loginName;
+    }
+
+    /**
+     * @return the number of the customer's record in the store
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return true if the customer is kept in the given store
+     */
+    public boolean belongsTo(@NotNull OffHeapStore store) {
+        return this.store == store;
+    }
+
+    @Override
+    @NotNull
+    public String getLoginName() {
+        return loginName;
+    }
+
+    @Override
+    @NotNull
+    public Money getAccountBalance() {
+        return Money.ofCents(store.getBalance(id));
+    }
+
+    @Override
+    @NotNull
+    public String getCreditStatement() {
+        return store.getCreditStatement(this);
+    }
+
+    @Override
+    @NotNull
+    public String getDebitStatement() {
+        return store.getDebitStatement(this);
+    }
+
+    @Override
+    @NotNull
+    public Map<OffHeapCustomer, Account> getCreditAccountMap() {
+        return store.getCredits(id);
+    }
+
+    @Override
+    @NotNull
+    public Map<OffHeapCustomer, Account> getDebitAccountMap() {
+        return store.getDebits(id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        OffHeapCustomer customer = (OffHeapCustomer) o;
+        return store == customer.store && id == customer.id;
+    }
+}
@@ -0,0 +1,876 @@
+package dev.maltsev.atm.offheap;
+
+import dev.maltsev.atm.domain.Account;
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.StatementFormatter;
+import dev.maltsev.atm.domain.Transaction;
+import dev.maltsev.atm.domain.TransferSummary;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+
+/**
+ * A store of customers' balances and debts in fixed-width records outside of the heap.
+ * <p>
+ * Customers and debts are records of memory-mapped files, so the heap holds no objects per customer. A customer
+ * is identified by the number of its record. Login names are kept in a names region and indexed by an open addressing
+ * hash table, which is a mapped file too and is rebuilt when the store is opened. Debts of a debtor and debts to
+ * a creditor are doubly linked lists of debt records, debts of a debtor are kept in the order they were made, so they
+ * are repaid first in, first out.
+ * <p>
+ * Customers are guarded by striped locks. A customer record is changed under the lock of its stripe and a debt is
+ * changed under the locks of both its debtor and creditor, two locks are always acquired in the order of stripes.
+ * <pre>
+ * customer  balance:long | first credit:int | last credit:int | first debit:int | last debit:int | name hash:int
+ *           | name offset in 8 byte words:int
+ * debt      debtor:int | creditor:int | cents:long | next credit:int | previous credit:int | next debit:int
+ *           | previous debit:int
+ * name      length:int | name:UTF-8
+ * </pre>
+ * Customer record 0 keeps the store header and debt record 0 is not used, so 0 means no record in links.
+ * Changed pages are written to the files by the operating system, the store survives a restart of the application
+ * but is not crash-safe.
+ * <p>
+ * Records have no room for cached statements, so {@link OffHeapCustomer} flyweights of logged in customers keep
+ * them and a version per lock stripe tells whether any debt of the stripe has changed since.
+ */
+public class OffHeapStore implements Closeable {
+
+    private static final int MAGIC = 0x41544d4f;
+
+    private static final int RECORD_SHIFT = 5;
+
+    private static final int RECORD_SIZE = 1 << RECORD_SHIFT;
+
+    private static final int DEFAULT_SEGMENT_SHIFT = 26;
+
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 10;
+
+    private static final int STRIPE_COUNT = 1 << 12;
+
+    private static final int HEADER_MAGIC = 0;
+
+    private static final int HEADER_CUSTOMER_COUNT = 4;
+
+    private static final int HEADER_DEBT_COUNT = 8;
+
+    private static final int HEADER_FREE_DEBT = 12;
+
+    private static final int HEADER_NAMES_SIZE = 16;
+
+    private static final int BALANCE = 0;
+
+    private static final int FIRST_CREDIT = 8;
+
+    private static final int LAST_CREDIT = 12;
+
+    private static final int FIRST_DEBIT = 16;
+
+    private static final int LAST_DEBIT = 20;
+
+    private static final int NAME_HASH = 24;
+
+    private static final int NAME = 28;
+
+    private static final int DEBTOR = 0;
+
+    private static final int CREDITOR = 4;
+
+    private static final int CENTS = 8;
+
+    private static final int NEXT_CREDIT = 16;
+
+    private static final int PREVIOUS_CREDIT = 20;
+
+    private static final int NEXT_DEBIT = 24;
+
+    private static final int PREVIOUS_DEBIT = 28;
+
+    private final Path directory;
+
+    private final boolean temporary;
+
+    private final int segmentShift;
+
+    private final MappedMemory customers;
+
+    private final MappedMemory debts;
+
+    private final MappedMemory names;
+
+    private final StampedLock indexLock = new StampedLock();
+
+    private MappedMemory index;
+
+    private Path indexPath;
+
+    private int indexCapacity;
+
+    private int indexGeneration;
+
+    private final Object debtAllocationLock = new Object();
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPE_COUNT];
+
+    /**
+     * versions of debts of every stripe guarded by the stripe's lock, a flyweight's cached statement is valid while
+     * the version of its stripe is the same
+     */
+    private final long[] statementVersions = new long[STRIPE_COUNT];
+
+    /**
+     * Open the store kept in the directory or create a new one
+     */
+    @NotNull
+    public static OffHeapStore open(@NotNull Path directory) throws IOException {
+        return new OffHeapStore(directory, DEFAULT_SEGMENT_SHIFT, false);
+    }
+
+    /**
+     * Create a store in a temporary directory which is deleted when the store is closed
+     */
+    @NotNull
+    public static OffHeapStore temporary() throws IOException {
+        return new OffHeapStore(Files.createTempDirectory("atm-store"), DEFAULT_SEGMENT_SHIFT, true);
+    }
+
+    /**
+     * @param segmentShift a binary logarithm of the size of the mapped segments
+     * @param temporary    whether the directory is deleted when the store is closed
+     */
+    public OffHeapStore(@NotNull Path directory, int segmentShift, boolean temporary) throws IOException {
+        if (segmentShift < RECORD_SHIFT) {
+            throw new IllegalArgumentException("Segment can't be smaller than a record");
+        }
+
+        this.directory = directory;
+        this.temporary = temporary;
+        this.segmentShift = segmentShift;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+
+        Files.createDirectories(directory);
+        customers = new MappedMemory(directory.resolve("customers"), segmentShift);
+        debts = new MappedMemory(directory.resolve("debts"), segmentShift);
+        names = new MappedMemory(directory.resolve("names"), segmentShift);
+        customers.ensureCapacity(RECORD_SIZE);
+        debts.ensureCapacity(RECORD_SIZE);
+
+        int magic = customers.getInt(HEADER_MAGIC);
+        if (magic == 0) {
+            customers.putInt(HEADER_CUSTOMER_COUNT, 1);
+            customers.putInt(HEADER_DEBT_COUNT, 1);
+            customers.putInt(HEADER_FREE_DEBT, 0);
+            customers.putLong(HEADER_NAMES_SIZE, 0);
+            customers.putInt(HEADER_MAGIC, MAGIC);
+        } else if (magic != MAGIC) {
+            close();
+            throw new IOException(directory + " is not a customer store");
+        }
+
+        deleteIndexFiles();
+        int capacity = INITIAL_INDEX_CAPACITY;
+        while (capacity < getCustomerCount() * 2L + 2) {
+            capacity *= 2;
+        }
+        rebuildIndex(capacity);
+    }
+
+    public int getCustomerCount() {
+        return customers.getInt(HEADER_CUSTOMER_COUNT) - 1;
+    }
+
+    /**
+     * @return the id of the customer with the login name or 0 if there is no such customer
+     */
+    public int find(@NotNull String loginName) {
+        byte[] name = loginName.getBytes(StandardCharsets.UTF_8);
+        long stamp = indexLock.readLock();
+        try {
+            return probe(hash(loginName), name);
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return the id of the customer with the login name, the customer is created if it doesn't exist
+     */
+    public int findOrCreate(@NotNull String loginName) throws IOException {
+        int id = find(loginName);
+        if (id != 0) {
+            return id;
+        }
+
+        byte[] name = loginName.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(loginName);
+        long stamp = indexLock.writeLock();
+        try {
+            id = probe(hash, name);
+            if (id != 0) {
+                return id;
+            }
+
+            id = customers.getInt(HEADER_CUSTOMER_COUNT);
+            if (id == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Customer store is full");
+            }
+            long nameOffset = customers.getLong(HEADER_NAMES_SIZE);
+            long nameSize = (4 + name.length + 7) & ~7L;
+            if ((nameOffset >>> 3) > 0xffffffffL) {
+                throw new IllegalStateException("Customer names region is full");
+            }
+            names.ensureCapacity(nameOffset + nameSize);
+            names.putInt(nameOffset, name.length);
+            names.putBytes(nameOffset + 4, name);
+
+            long record = record(id);
+            customers.ensureCapacity(record + RECORD_SIZE);
+            customers.putLong(record + BALANCE, 0);
+            customers.putInt(record + FIRST_CREDIT, 0);
+            customers.putInt(record + LAST_CREDIT, 0);
+            customers.putInt(record + FIRST_DEBIT, 0);
+            customers.putInt(record + LAST_DEBIT, 0);
+            customers.putInt(record + NAME_HASH, hash);
+            customers.putInt(record + NAME, (int) (nameOffset >>> 3));
+            customers.putLong(HEADER_NAMES_SIZE, nameOffset + nameSize);
+            customers.putInt(HEADER_CUSTOMER_COUNT, id + 1);
+
+            if (id * 2L >= indexCapacity) {
+                rebuildIndex(indexCapacity * 2);
+            } else {
+                insert(id, hash);
+            }
+            return id;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    @NotNull
+    public OffHeapCustomer getCustomer(int id) {
+        return new OffHeapCustomer(this, id, getLoginName(id));
+    }
+
+    @NotNull
+    public String getLoginName(int id) {
+        long nameOffset = (customers.getInt(record(id) + NAME) & 0xffffffffL) << 3;
+        byte[] name = new byte[names.getInt(nameOffset)];
+        names.getBytes(nameOffset + 4, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    public long getBalance(int id) {
+        lock(id);
+        try {
+            return customers.getLong(record(id) + BALANCE);
+        } finally {
+            unlock(id);
+        }
+    }
+
+    /**
+     * Deposit the amount repaying debts first, every repayment is deposited to the creditor the same way
+     *
+     * @return transactions made by the depositor
+     * @see dev.maltsev.atm.domain.Customer#deposit(Money)
+     */
+    @NotNull
+    public List<Transaction> deposit(int depositor, @NotNull String depositorName, @NotNull Money amount) {
+        return new Settlement().deposit(depositor, depositorName, amount);
+    }
+
+    @NotNull
+    public Transaction withdraw(int id, @NotNull String loginName, @NotNull Money amount)
+            throws BankServiceException {
+        long record = record(id);
+        lock(id);
+        try {
+            long balance = customers.getLong(record + BALANCE);
+            if (balance < amount.getCents()) {
+                throw new BankServiceException("not enough money");
+            }
+            customers.putLong(record + BALANCE, balance - amount.getCents());
+            return new Transaction(loginName, null, amount);
+        } finally {
+            unlock(id);
+        }
+    }
+
+    /**
+     * Transfer the amount offsetting the debt of the destination first and owing what is not covered by the balance
+     *
+     * @return transactions made by the customer
+     * @see dev.maltsev.atm.domain.Customer#transfer(dev.maltsev.atm.domain.Customer, Money)
+     */
+    @NotNull
+    public List<Transaction> transfer(int from, @NotNull String fromName, int to, @NotNull String toName,
+                                      @NotNull Money amount) {
+        List<Transaction> transactions = new ArrayList<>();
+
+        lock(from, to);
+        try {
+            Transaction transaction = transferLocked(from, fromName, to, toName, amount.getCents(), new long[3]);
+            if (transaction != null) {
+                transactions.add(transaction);
+            }
+        } finally {
+            unlock(from, to);
+        }
+
+        return transactions;
+    }
+
+    /**
+     * Make the payments in the given order as one batch, the stripes of the payer and all the recipients are locked
+     * once in ascending order
+     *
+     * @param to      ids of the recipients, a recipient may repeat but can't be the payer
+     * @param toNames names of the recipients for the transactions
+     * @param cents   amounts of the payments
+     * @return totals of the batch
+     * @see dev.maltsev.atm.domain.Customer#transferAll(List, List)
+     */
+    @NotNull
+    public TransferSummary transferAll(int from, @NotNull String fromName, int[] to, @NotNull String[] toNames,
+                                       long[] cents) {
+        if (to.length != cents.length || to.length != toNames.length) {
+            throw new IllegalArgumentException("every recipient has to have an amount");
+        }
+
+        BitSet lockedStripes = new BitSet(STRIPE_COUNT);
+        lockedStripes.set(from & (STRIPE_COUNT - 1));
+        Set<Integer> recipients = new HashSet<>();
+        for (int id : to) {
+            if (id == from) {
+                throw new IllegalArgumentException("customer can't pay to itself");
+            }
+            lockedStripes.set(id & (STRIPE_COUNT - 1));
+            recipients.add(id);
+        }
+
+        // offset, transferred and owed amounts
+        long[] totals = new long[3];
+        List<Transaction> transactions = new ArrayList<>();
+        for (int stripe = lockedStripes.nextSetBit(0); stripe >= 0; stripe = lockedStripes.nextSetBit(stripe + 1)) {
+            stripes[stripe].lock();
+        }
+        try {
+            for (int i = 0; i < to.length; i++) {
+                Transaction transaction = transferLocked(from, fromName, to[i], toNames[i], cents[i], totals);
+                if (transaction != null) {
+                    transactions.add(transaction);
+                }
+            }
+        } finally {
+            for (int stripe = lockedStripes.nextSetBit(0); stripe >= 0;
+                 stripe = lockedStripes.nextSetBit(stripe + 1)) {
+                stripes[stripe].unlock();
+            }
+        }
+
+        return new TransferSummary(to.length, recipients.size(), Money.ofCents(totals[0]), Money.ofCents(totals[1]),
+                Money.ofCents(totals[2]), transactions);
+    }
+
+    /**
+     * Offset the destination's debt, transfer what the balance allows and owe the rest, the stripes of both
+     * customers have to be locked
+     *
+     * @param totals offset, transferred and owed amounts to add the parts of the payment to
+     * @return a transaction of the transferred part or null if nothing has been transferred from the balance
+     */
+    @Nullable
+    private Transaction transferLocked(int from, @NotNull String fromName, int to, @NotNull String toName,
+                                       long remaining, long[] totals) {
+        Transaction transaction = null;
+
+        // owe from destination
+        int reverseDebt = findDebt(to, from);
+        if (reverseDebt != 0) {
+            long offsetAmount = Math.min(debts.getLong(debt(reverseDebt) + CENTS), remaining);
+            decreaseDebt(reverseDebt, offsetAmount);
+            totals[0] += offsetAmount;
+            remaining -= offsetAmount;
+        }
+
+        // make transfer to destination
+        long balance = customers.getLong(record(from) + BALANCE);
+        if (remaining > 0 && balance > 0) {
+            long transferAmount = Math.min(balance, remaining);
+            customers.putLong(record(from) + BALANCE, balance - transferAmount);
+            customers.putLong(record(to) + BALANCE,
+                    Math.addExact(customers.getLong(record(to) + BALANCE), transferAmount));
+            transaction = new Transaction(fromName, toName, Money.ofCents(transferAmount));
+            totals[1] += transferAmount;
+            remaining -= transferAmount;
+        }
+
+        // owe to destination
+        if (remaining > 0) {
+            increaseDebt(from, to, remaining);
+            totals[2] += remaining;
+        }
+
+        return transaction;
+    }
+
+    @NotNull
+    public String getCreditStatement(int id) {
+        lock(id);
+        try {
+            return buildStatement(id, FIRST_CREDIT, NEXT_CREDIT, CREDITOR, StatementFormatter.CREDIT);
+        } finally {
+            unlock(id);
+        }
+    }
+
+    @NotNull
+    public String getDebitStatement(int id) {
+        lock(id);
+        try {
+            return buildStatement(id, FIRST_DEBIT, NEXT_DEBIT, DEBTOR, StatementFormatter.DEBIT);
+        } finally {
+            unlock(id);
+        }
+    }
+
+    /**
+     * @return the credit statement cached by the customer or a new one if a debt of the customer's stripe has changed
+     * since it was built
+     */
+    @NotNull
+    String getCreditStatement(@NotNull OffHeapCustomer customer) {
+        int id = customer.getId();
+        lock(id);
+        try {
+            long version = statementVersions[id & (STRIPE_COUNT - 1)];
+            if (customer.creditStatement == null || customer.creditVersion != version) {
+                customer.creditStatement = buildStatement(id, FIRST_CREDIT, NEXT_CREDIT, CREDITOR,
+                        StatementFormatter.CREDIT);
+                customer.creditVersion = version;
+            }
+            return customer.creditStatement;
+        } finally {
+            unlock(id);
+        }
+    }
+
+    /**
+     * @return the debit statement cached by the customer or a new one if a debt of the customer's stripe has changed
+     * since it was built
+     */
+    @NotNull
+    String getDebitStatement(@NotNull OffHeapCustomer customer) {
+        int id = customer.getId();
+        lock(id);
+        try {
+            long version = statementVersions[id & (STRIPE_COUNT - 1)];
+            if (customer.debitStatement == null || customer.debitVersion != version) {
+                customer.debitStatement = buildStatement(id, FIRST_DEBIT, NEXT_DEBIT, DEBTOR,
+                        StatementFormatter.DEBIT);
+                customer.debitVersion = version;
+            }
+            return customer.debitStatement;
+        } finally {
+            unlock(id);
+        }
+    }
+
+    /**
+     * @return a copy of the customer's debts keyed by creditor in the order they were made
+     */
+    @NotNull
+    public Map<OffHeapCustomer, Account> getCredits(int id) {
+        return copyDebts(id, FIRST_CREDIT, NEXT_CREDIT, CREDITOR);
+    }
+
+    /**
+     * @return a copy of the debts to the customer keyed by debtor
+     */
+    @NotNull
+    public Map<OffHeapCustomer, Account> getDebits(int id) {
+        return copyDebts(id, FIRST_DEBIT, NEXT_DEBIT, DEBTOR);
+    }
+
+    @Override
+    public void close() throws IOException {
+        customers.close();
+        debts.close();
+        names.close();
+        if (index != null) {
+            index.close();
+        }
+
+        deleteIndexFiles();
+        if (temporary) {
+            Files.deleteIfExists(directory.resolve("customers"));
+            Files.deleteIfExists(directory.resolve("debts"));
+            Files.deleteIfExists(directory.resolve("names"));
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private Map<OffHeapCustomer, Account> copyDebts(int id, int first, int next, int counterpart) {
+        Map<OffHeapCustomer, Account> copy = new LinkedHashMap<>();
+
+        lock(id);
+        try {
+            for (int debt = customers.getInt(record(id) + first); debt != 0; debt = debts.getInt(debt(debt) + next)) {
+                int counterpartId = debts.getInt(debt(debt) + counterpart);
+                Account account = new Account();
+                account.add(debts.getLong(debt(debt) + CENTS));
+                copy.put(getCustomer(counterpartId), account);
+            }
+        } finally {
+            unlock(id);
+        }
+
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Repay at most the given amount to the first creditor or put the amount on the balance if there are no debts
+     *
+     * @return true if a debt has been repaid, false if the amount has been put on the balance
+     */
+    private boolean repayFirstDebt(int id, long amount, @NotNull Settlement settlement) {
+        long record = record(id);
+        while (true) {
+            int creditor;
+
+            // do deposit if there are no debts
+            lock(id);
+            try {
+                int debt = customers.getInt(record + FIRST_CREDIT);
+                if (debt == 0) {
+                    customers.putLong(record + BALANCE, Math.addExact(customers.getLong(record + BALANCE), amount));
+                    return false;
+                }
+                creditor = debts.getInt(debt(debt) + CREDITOR);
+            } finally {
+                unlock(id);
+            }
+
+            // pay debt to the first creditor
+            lock(id, creditor);
+            try {
+                int debt = findDebt(id, creditor);
+                if (debt == 0) {
+                    // the debt has been repaid concurrently
+                    continue;
+                }
+                long payment = Math.min(debts.getLong(debt(debt) + CENTS), amount);
+                decreaseDebt(debt, payment);
+                settlement.creditor = creditor;
+                settlement.payment = payment;
+                return true;
+            } finally {
+                unlock(id, creditor);
+            }
+        }
+    }
+
+    @NotNull
+    private String buildStatement(int id, int first, int next, int counterpart,
+                                  @NotNull StatementFormatter formatter) {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int debt = customers.getInt(record(id) + first); debt != 0; debt = debts.getInt(debt(debt) + next)) {
+            formatter.append(stringBuilder, debts.getLong(debt(debt) + CENTS),
+                    getLoginName(debts.getInt(debt(debt) + counterpart)));
+        }
+        return stringBuilder.toString();
+    }
+
+    private int findDebt(int debtor, int creditor) {
+        for (int debt = customers.getInt(record(debtor) + FIRST_CREDIT); debt != 0;
+             debt = debts.getInt(debt(debt) + NEXT_CREDIT)) {
+            if (debts.getInt(debt(debt) + CREDITOR) == creditor) {
+                return debt;
+            }
+        }
+        return 0;
+    }
+
+    private void increaseDebt(int debtor, int creditor, long cents) {
+        debtsChanged(debtor, creditor);
+        int debt = findDebt(debtor, creditor);
+        if (debt == 0) {
+            debt = allocateDebt();
+            long offset = debt(debt);
+            debts.putInt(offset + DEBTOR, debtor);
+            debts.putInt(offset + CREDITOR, creditor);
+            debts.putLong(offset + CENTS, cents);
+            link(debt, record(debtor), FIRST_CREDIT, LAST_CREDIT, NEXT_CREDIT, PREVIOUS_CREDIT);
+            link(debt, record(creditor), FIRST_DEBIT, LAST_DEBIT, NEXT_DEBIT, PREVIOUS_DEBIT);
+        } else {
+            debts.putLong(debt(debt) + CENTS, Math.addExact(debts.getLong(debt(debt) + CENTS), cents));
+        }
+    }
+
+    private void decreaseDebt(int debt, long cents) {
+        long offset = debt(debt);
+        long balance = debts.getLong(offset + CENTS);
+        if (balance < cents) {
+            throw new IllegalArgumentException("Not enough balance");
+        }
+
+        debts.putLong(offset + CENTS, balance - cents);
+        debtsChanged(debts.getInt(offset + DEBTOR), debts.getInt(offset + CREDITOR));
+        if (balance == cents) {
+            unlink(debt, record(debts.getInt(offset + DEBTOR)), FIRST_CREDIT, LAST_CREDIT, NEXT_CREDIT,
+                    PREVIOUS_CREDIT);
+            unlink(debt, record(debts.getInt(offset + CREDITOR)), FIRST_DEBIT, LAST_DEBIT, NEXT_DEBIT,
+                    PREVIOUS_DEBIT);
+            freeDebt(debt);
+        }
+    }
+
+    /**
+     * Drop statements cached by flyweights of the debtor and the creditor, both stripes have to be locked
+     */
+    private void debtsChanged(int debtor, int creditor) {
+        statementVersions[debtor & (STRIPE_COUNT - 1)]++;
+        statementVersions[creditor & (STRIPE_COUNT - 1)]++;
+    }
+
+    /**
+     * Append the debt to the end of a customer's list
+     */
+    private void link(int debt, long record, int first, int last, int next, int previous) {
+        int tail = customers.getInt(record + last);
+        debts.putInt(debt(debt) + previous, tail);
+        debts.putInt(debt(debt) + next, 0);
+        if (tail == 0) {
+            customers.putInt(record + first, debt);
+        } else {
+            debts.putInt(debt(tail) + next, debt);
+        }
+        customers.putInt(record + last, debt);
+    }
+
+    private void unlink(int debt, long record, int first, int last, int next, int previous) {
+        int previousDebt = debts.getInt(debt(debt) + previous);
+        int nextDebt = debts.getInt(debt(debt) + next);
+        if (previousDebt == 0) {
+            customers.putInt(record + first, nextDebt);
+        } else {
+            debts.putInt(debt(previousDebt) + next, nextDebt);
+        }
+        if (nextDebt == 0) {
+            customers.putInt(record + last, previousDebt);
+        } else {
+            debts.putInt(debt(nextDebt) + previous, previousDebt);
+        }
+    }
+
+    private int allocateDebt() {
+        synchronized (debtAllocationLock) {
+            int debt = customers.getInt(HEADER_FREE_DEBT);
+            if (debt != 0) {
+                customers.putInt(HEADER_FREE_DEBT, debts.getInt(debt(debt) + NEXT_CREDIT));
+                return debt;
+            }
+
+            debt = customers.getInt(HEADER_DEBT_COUNT);
+            if (debt == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Debt store is full");
+            }
+            try {
+                debts.ensureCapacity(debt(debt) + RECORD_SIZE);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to extend debt store", e);
+            }
+            customers.putInt(HEADER_DEBT_COUNT, debt + 1);
+            return debt;
+        }
+    }
+
+    private void freeDebt(int debt) {
+        synchronized (debtAllocationLock) {
+            debts.putInt(debt(debt) + NEXT_CREDIT, customers.getInt(HEADER_FREE_DEBT));
+            customers.putInt(HEADER_FREE_DEBT, debt);
+        }
+    }
+
+    private int probe(int hash, byte[] name) {
+        int mask = indexCapacity - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = index.getInt((long) slot << 2);
+            if (id == 0) {
+                return 0;
+            }
+            long record = record(id);
+            if (customers.getInt(record + NAME_HASH) == hash) {
+                long nameOffset = (customers.getInt(record + NAME) & 0xffffffffL) << 3;
+                if (names.getInt(nameOffset) == name.length && names.equalBytes(nameOffset + 4, name)) {
+                    return id;
+                }
+            }
+        }
+    }
+
+    private void insert(int id, int hash) {
+        int mask = indexCapacity - 1;
+        int slot = hash & mask;
+        while (index.getInt((long) slot << 2) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.putInt((long) slot << 2, id);
+    }
+
+    /**
+     * Create a new index of the given capacity and put all the customers to it
+     */
+    private void rebuildIndex(int capacity) throws IOException {
+        MappedMemory previousIndex = index;
+        Path previousPath = indexPath;
+
+        indexPath = directory.resolve("index." + indexGeneration++);
+        index = new MappedMemory(indexPath, Math.min(segmentShift, 30));
+        index.ensureCapacity((long) capacity << 2);
+        indexCapacity = capacity;
+        int count = customers.getInt(HEADER_CUSTOMER_COUNT);
+        for (int id = 1; id < count; id++) {
+            insert(id, customers.getInt(record(id) + NAME_HASH));
+        }
+
+        if (previousIndex != null) {
+            previousIndex.close();
+            Files.deleteIfExists(previousPath);
+        }
+    }
+
+    private void deleteIndexFiles() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "index.*")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private void lock(int id) {
+        stripes[id & (STRIPE_COUNT - 1)].lock();
+    }
+
+    private void unlock(int id) {
+        stripes[id & (STRIPE_COUNT - 1)].unlock();
+    }
+
+    private void lock(int first, int second) {
+        int firstStripe = first & (STRIPE_COUNT - 1);
+        int secondStripe = second & (STRIPE_COUNT - 1);
+        if (firstStripe == secondStripe) {
+            stripes[firstStripe].lock();
+        } else if (firstStripe < secondStripe) {
+            stripes[firstStripe].lock();
+            stripes[secondStripe].lock();
+        } else {
+            stripes[secondStripe].lock();
+            stripes[firstStripe].lock();
+        }
+    }
+
+    private void unlock(int first, int second) {
+        int firstStripe = first & (STRIPE_COUNT - 1);
+        int secondStripe = second & (STRIPE_COUNT - 1);
+        stripes[firstStripe].unlock();
+        if (firstStripe != secondStripe) {
+            stripes[secondStripe].unlock();
+        }
+    }
+
+    private static long record(int id) {
+        return (long) id << RECORD_SHIFT;
+    }
+
+    private static long debt(int debt) {
+        return (long) debt << RECORD_SHIFT;
+    }
+
+    private static int hash(String loginName) {
+        int hash = loginName.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A depth-first settlement of a deposit through the debt graph over customer ids
+     *
+     * @see dev.maltsev.atm.domain.Customer#deposit(Money)
+     */
+    private class Settlement {
+
+        private int[] ids = new int[8];
+
+        private long[] amounts = new long[8];
+
+        private int size;
+
+        int creditor;
+
+        long payment;
+
+        @NotNull
+        List<Transaction> deposit(int depositor, @NotNull String depositorName, @NotNull Money amount) {
+            List<Transaction> transactions = new ArrayList<>();
+            transactions.add(new Transaction(null, depositorName, amount));
+            push(depositor, amount.getCents());
+
+            while (size > 0) {
+                int top = size - 1;
+                int id = ids[top];
+                long remaining = amounts[top];
+
+                if (remaining == 0) {
+                    size--;
+                } else if (repayFirstDebt(id, remaining, this)) {
+                    amounts[top] = remaining - payment;
+                    transactions.add(new Transaction(top == 0 ? depositorName : getLoginName(id),
+                            getLoginName(creditor), Money.ofCents(payment)));
+                    if (top > 0 && amounts[top] == 0) {
+                        // nothing is left to the customer, so the creditor takes its place in the stack
+                        ids[top] = creditor;
+                        amounts[top] = payment;
+                    } else {
+                        push(creditor, payment);
+                    }
+                } else {
+                    // the rest has been put on the balance
+                    size--;
+                }
+            }
+
+            return transactions;
+        }
+
+        private void push(int id, long amount) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+            }
+            ids[size] = id;
+            amounts[size] = amount;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package dev.maltsev.atm.replica;
+
+import dev.maltsev.atm.domain.ChangeListener;
+import dev.maltsev.atm.domain.Customer;
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.util.Loggable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * A read model of customers' balances and debts kept apart from the bank's customers.
+ * <p>
+ * The bank reports every change it applies as a {@link ChangeListener}, the replica only queues the change, so
+ * an operation pays for an allocation and a queue insert under its locks. The changes of a customer are queued
+ * in the order they are applied, since they are reported under the customer's lock. A background thread applies
+ * the queued changes to replica customers, and statements are read from them without touching the bank's customers,
+ * so reports never wait for operations and operations never wait for reports. The replica is eventually consistent:
+ * it lags behind the bank by the changes still queued. The applier polls the queue every millisecond, backing off
+ * up to 10 ms while the bank is idle, so operations never have to wake it up.
+ */
+public class ReadReplica implements ChangeListener, Closeable, Loggable {
+
+    private static final long MIN_APPLIER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long MAX_APPLIER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final long AWAIT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final Queue<Change> changes = new ConcurrentLinkedQueue<>();
+
+    private final ConcurrentMap<String, ReplicaCustomer> customers = new ConcurrentHashMap<>();
+
+    private final LongAdder published = new LongAdder();
+
+    /**
+     * a number of the changes applied, it is written by the applier only
+     */
+    private volatile long applied;
+
+    private final Thread applier;
+
+    private volatile boolean closed;
+
+    public ReadReplica() {
+        this.applier = new Thread(this::applyChanges, "bank-replica");
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    @Override
+    public void customerCreated(@NotNull Customer customer) {
+        publish(new Change(customer.getLoginName(), null, 0));
+    }
+
+    @Override
+    public void balanceChanged(@NotNull Customer customer, long cents) {
+        publish(new Change(customer.getLoginName(), null, cents));
+    }
+
+    @Override
+    public void debtChanged(@NotNull Customer debtor, @NotNull Customer creditor, long cents) {
+        publish(new Change(debtor.getLoginName(), creditor.getLoginName(), cents));
+    }
+
+    /**
+     * Copy the customer as it is, the bank restores the replica this way after recovering its own state
+     */
+    public void restore(@NotNull CustomerView customer) {
+        ReplicaCustomer copy = new ReplicaCustomer(customer.getLoginName(), this);
+        copy.restore(customer);
+        publish(new Change(copy));
+    }
+
+    /**
+     * @return the customer as the replica sees it, a customer the replica knows nothing of has no money and no debts
+     */
+    @NotNull
+    public CustomerView getCustomer(@NotNull String loginName) {
+        ReplicaCustomer customer = customers.get(loginName);
+        return customer != null ? customer : new ReplicaCustomer(loginName, this);
+    }
+
+    /**
+     * @return a number of the changes made by the bank but not yet applied to the replica
+     */
+    public long getLag() {
+        return Math.max(0, published.sum() - applied);
+    }
+
+    /**
+     * @return milliseconds since the oldest change not yet applied to the replica has been made
+     */
+    public long getLagMillis() {
+        Change change = changes.peek();
+        return change != null ? Math.max(0, (System.nanoTime() - change.nanoTime) / 1_000_000) : 0;
+    }
+
+    /**
+     * Wait until the replica has applied all the changes made before the call
+     *
+     * @return false if the time has elapsed first
+     */
+    public boolean awaitApplied(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        long target = published.sum();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (applied < target) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, AWAIT_PARK_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply the changes already queued and stop the applier, later changes are ignored
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(applier);
+        try {
+            applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Nullable
+    ReplicaCustomer find(@NotNull String loginName) {
+        return customers.get(loginName);
+    }
+
+    private void publish(@NotNull Change change) {
+        if (!closed) {
+            changes.offer(change);
+            published.increment();
+        }
+    }
+
+    private void applyChanges() {
+        long parkNanos = MIN_APPLIER_PARK_NANOS;
+        while (true) {
+            Change change = changes.poll();
+            if (change != null) {
+                apply(change);
+                applied++;
+                parkNanos = MIN_APPLIER_PARK_NANOS;
+                continue;
+            }
+            if (closed) {
+                logger().info("Replica stopped after {} changes", applied);
+                return;
+            }
+            LockSupport.parkNanos(this, parkNanos);
+            parkNanos = Math.min(parkNanos * 2, MAX_APPLIER_PARK_NANOS);
+        }
+    }
+
+    private void apply(@NotNull Change change) {
+        if (change.restored != null) {
+            customers.put(change.loginName, change.restored);
+            return;
+        }
+
+        ReplicaCustomer customer = customers.computeIfAbsent(change.loginName,
+                name -> new ReplicaCustomer(name, this));
+        if (change.creditor == null) {
+            customer.changeBalance(change.cents);
+        } else {
+            ReplicaCustomer creditor = customers.computeIfAbsent(change.creditor,
+                    name -> new ReplicaCustomer(name, this));
+            customer.changeCredit(change.creditor, change.cents);
+            creditor.changeDebit(change.loginName, change.cents);
+        }
+    }
+
+    /**
+     * A change of a balance or, if the creditor is set, of a debt or, if the restored customer is set, a copy of
+     * the customer replacing the replica's one
+     */
+    private static class Change {
+
+        private final String loginName;
+
+        private final String creditor;
+
+        private final long cents;
+
+        private final ReplicaCustomer restored;
+
+        private final long nanoTime = System.nanoTime();
+
+        Change(@NotNull String loginName, @Nullable String creditor, long cents) {
+            this.loginName = loginName;
+            this.creditor = creditor;
+            this.cents = cents;
+            this.restored = null;
+        }
+
+        Change(@NotNull ReplicaCustomer restored) {
+            this.loginName = restored.getLoginName();
+            this.creditor = null;
+            this.cents = 0;
+            this.restored = restored;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package dev.maltsev.atm.replica;
+
+import dev.maltsev.atm.command.CommandDefinition;
+import dev.maltsev.atm.command.StatementCommand;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+
+/**
+ * Creates the read replica and 'statement' command when {@code atm.replica.enabled} is true. Only the heap and
+ * the single-writer engines report their changes to the replica.
+ */
+@Configuration
+@ConditionalOnProperty(name = "atm.replica.enabled", havingValue = "true")
+public class ReplicaConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public ReadReplica readReplica(@Value("${atm.bank.engine:heap}") String engine) {
+        if (!engine.equals("heap") && !engine.equals("single-writer")) {
+            throw new IllegalStateException(String.format("the %s engine doesn't support a replica", engine));
+        }
+        return new ReadReplica();
+    }
+
+    @Bean
+    public CommandDefinition statementCommand(ReadReplica replica) {
+        return CommandDefinition.of("statement", args -> new StatementCommand(args, replica));
+    }
+}
@@ -0,0 +1,139 @@
+package dev.maltsev.atm.replica;
+
+import dev.maltsev.atm.domain.Account;
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.StatementFormatter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A customer of a {@link ReadReplica}. It is changed by the replica's applier only and read by reports, both under
+ * the customer's monitor, statements are cached until the customer's debts change.
+ */
+class ReplicaCustomer implements CustomerView {
+
+    private final String loginName;
+
+    private final ReadReplica replica;
+
+    private long cents;
+
+    /**
+     * debts of the customer keyed by creditor in the order they were made
+     */
+    private final Map<String, Long> credits = new LinkedHashMap<>();
+
+    /**
+     * debts to the customer keyed by debtor
+     */
+    private final Map<String, Long> debits = new LinkedHashMap<>();
+
+    private String creditStatement;
+
+    private String debitStatement;
+
+    ReplicaCustomer(@NotNull String loginName, @NotNull ReadReplica replica) {
+        this.loginName = loginName;
+        this.replica = replica;
+    }
+
+    @Override
+    @NotNull
+    public String getLoginName() {
+        return loginName;
+    }
+
+    @Override
+    @NotNull
+    public synchronized Money getAccountBalance() {
+        return Money.ofCents(cents);
+    }
+
+    @Override
+    @NotNull
+    public synchronized String getCreditStatement() {
+        if (creditStatement == null) {
+            creditStatement = statement(credits, StatementFormatter.CREDIT);
+        }
+        return creditStatement;
+    }
+
+    @Override
+    @NotNull
+    public synchronized String getDebitStatement() {
+        if (debitStatement == null) {
+            debitStatement = statement(debits, StatementFormatter.DEBIT);
+        }
+        return debitStatement;
+    }
+
+    @Override
+    @NotNull
+    public Map<ReplicaCustomer, Account> getCreditAccountMap() {
+        return copy(credits);
+    }
+
+    @Override
+    @NotNull
+    public Map<ReplicaCustomer, Account> getDebitAccountMap() {
+        return copy(debits);
+    }
+
+    synchronized void restore(@NotNull CustomerView customer) {
+        cents = customer.getAccountBalance().getCents();
+        for (Map.Entry<? extends CustomerView, ? extends Account> debt : customer.getCreditAccountMap().entrySet()) {
+            credits.put(debt.getKey().getLoginName(), debt.getValue().getCents());
+        }
+        for (Map.Entry<? extends CustomerView, ? extends Account> debt : customer.getDebitAccountMap().entrySet()) {
+            debits.put(debt.getKey().getLoginName(), debt.getValue().getCents());
+        }
+    }
+
+    synchronized void changeBalance(long cents) {
+        this.cents += cents;
+    }
+
+    synchronized void changeCredit(@NotNull String creditor, long cents) {
+        changeDebt(credits, creditor, cents);
+        creditStatement = null;
+    }
+
+    synchronized void changeDebit(@NotNull String debtor, long cents) {
+        changeDebt(debits, debtor, cents);
+        debitStatement = null;
+    }
+
+    private static void changeDebt(@NotNull Map<String, Long> debts, @NotNull String counterpart, long cents) {
+        if (debts.merge(counterpart, cents, Long::sum) == 0) {
+            debts.remove(counterpart);
+        }
+    }
+
+    @NotNull
+    private static String statement(@NotNull Map<String, Long> debts, @NotNull StatementFormatter formatter) {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (Map.Entry<String, Long> entry : debts.entrySet()) {
+            formatter.append(stringBuilder, entry.getValue(), entry.getKey());
+        }
+        return stringBuilder.toString();
+    }
+
+    @NotNull
+    private Map<ReplicaCustomer, Account> copy(@NotNull Map<String, Long> debts) {
+        Map<ReplicaCustomer, Account> copy = new LinkedHashMap<>();
+        synchronized (this) {
+            for (Map.Entry<String, Long> entry : debts.entrySet()) {
+                ReplicaCustomer counterpart = replica.find(entry.getKey());
+                Account debt = new Account();
+                debt.add(entry.getValue());
+                copy.put(counterpart != null ? counterpart : new ReplicaCustomer(entry.getKey(), replica), debt);
+            }
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+}
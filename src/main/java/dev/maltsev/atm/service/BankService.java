@@ -1,16 +1,21 @@
 package dev.maltsev.atm.service;
 
-import dev.maltsev.atm.domain.Customer;
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.Payment;
 import dev.maltsev.atm.domain.Transaction;
+import dev.maltsev.atm.domain.TransferSummary;
 import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.exceptions.PaymentException;
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
 import java.util.List;
 
 
 /**
- * A service to implement bank accounting functionality
+ * A service to implement bank accounting functionality.
+ * Every customer operation is performed within a session returned by {@link #login(String)},
+ * so the service can be shared by any number of concurrent sessions.
  */
 public interface BankService {
 
@@ -18,64 +23,79 @@ public interface BankService {
      * Authenticate customer to system with provided login name and create it if not exist
      *
      * @param loginName
-     * @return a customer instance
+     * @return a new session of the customer
      * @throws BankServiceException if given customer is already authenticated
      */
     @NotNull
-    Customer login(@NotNull String loginName) throws BankServiceException;
-
-    /**
-     * Get current authenticated customer
-     *
-     * @return a customer instance
-     * @throws BankServiceException if there is no authenticated customer
-     */
-    @NotNull
-    Customer getCurrentCustomer() throws BankServiceException;
+    Session login(@NotNull String loginName) throws BankServiceException;
 
     /**
-     * Deposit given amount of money to current authenticated customer's account
+     * Deposit given amount of money to session customer's account
      *
-     * @param amount of money to deposit
-     * @return a list of transactions made
-     * @throws BankServiceException if there is no authenticated customer
+     * @param session a session of authenticated customer
+     * @param amount  of money to deposit
+     * @return the deposit and then every repayment it has caused in the order they were made, the repayments
+     * made by creditors down the chain of debts included
+     * @throws BankServiceException if the session is closed
      * @throws BankServiceException if negative or zero amount of money passed
      */
     @NotNull
-    List<Transaction> deposit(@NotNull BigDecimal amount) throws BankServiceException;
+    List<Transaction> deposit(@NotNull Session session, @NotNull Money amount) throws BankServiceException;
 
     /**
-     * Withdraw given amount of money from current authenticated customer's account
+     * Withdraw given amount of money from session customer's account
      *
-     * @param amount an amount of money to withdraw
+     * @param session a session of authenticated customer
+     * @param amount  an amount of money to withdraw
      * @return a list of transactions made
-     * @throws BankServiceException if there is no authenticated customer
+     * @throws BankServiceException if the session is closed
      * @throws BankServiceException if negative or zero amount of money passed
      * @throws BankServiceException if there is not enough money on customer's account
      */
     @NotNull
-    Transaction withdraw(@NotNull BigDecimal amount) throws BankServiceException;
+    Transaction withdraw(@NotNull Session session, @NotNull Money amount) throws BankServiceException;
 
     /**
-     * Transfer given amount of money from current authenticated customer's account to the given customer's account
+     * Transfer given amount of money from session customer's account to the given customer's account
      *
+     * @param session     a session of authenticated customer
      * @param toLoginName a destination customer
      * @param amount      an amount of money to transfer
      * @return a list of transactions made
-     * @throws BankServiceException if there is no authenticated customer
+     * @throws BankServiceException if the session is closed
      * @throws BankServiceException if negative or zero amount of money passed
      * @throws BankServiceException if there is no destination customer with name provided
      * @throws BankServiceException if destination customer is the same as current customer
      */
     @NotNull
-    List<Transaction> transfer(@NotNull String toLoginName, @NotNull BigDecimal amount) throws BankServiceException;
+    List<Transaction> transfer(@NotNull Session session, @NotNull String toLoginName, @NotNull Money amount)
+            throws BankServiceException;
+
+    /**
+     * Transfer money from session customer's account to many customers as one atomic batch.
+     * Every payment is applied like {@link #transfer(Session, String, Money)}, in the given order, while the customer
+     * and all the recipients are locked, so no other operation sees a part of the batch.
+     *
+     * @param session  a session of authenticated customer
+     * @param payments recipients and amounts, a recipient may be paid several times
+     * @return totals of the batch
+     * @throws BankServiceException if the session is closed
+     * @throws BankServiceException if there are no payments
+     * @throws PaymentException    if negative or zero amount of money passed, nothing is transferred then
+     * @throws PaymentException    if there is no recipient with name provided, nothing is transferred then
+     * @throws PaymentException    if a recipient is the same as current customer, nothing is transferred then
+     */
+    @NotNull
+    TransferSummary transferAll(@NotNull Session session, @NotNull List<Payment> payments)
+            throws BankServiceException;
 
     /**
-     * Logout current authenticated customer
+     * Logout session customer and close the session
      *
+     * @param session a session of authenticated customer
      * @return a customer instance
-     * @throws BankServiceException if there is no authenticated customer
+     * @throws BankServiceException if the session is already closed
      */
     @NotNull
-    Customer logout() throws BankServiceException;
+    CustomerView logout(@NotNull Session session) throws BankServiceException;
 }
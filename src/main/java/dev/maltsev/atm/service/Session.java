@@ -0,0 +1,39 @@
+package dev.maltsev.atm.service;
+
+import dev.maltsev.atm.domain.CustomerView;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * A handle of an authenticated customer's session
+ */
+public class Session {
+
+    private final CustomerView customer;
+
+    private final AtomicBoolean active = new AtomicBoolean(true);
+
+    public Session(@NotNull CustomerView customer) {
+        this.customer = customer;
+    }
+
+    @NotNull
+    public CustomerView getCustomer() {
+        return customer;
+    }
+
+    public boolean isActive() {
+        return active.get();
+    }
+
+    /**
+     * Close the session
+     *
+     * @return true if the session was active before the call
+     */
+    public boolean close() {
+        return active.compareAndSet(true, false);
+    }
+}
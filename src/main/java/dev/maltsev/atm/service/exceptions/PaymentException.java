@@ -0,0 +1,25 @@
+package dev.maltsev.atm.service.exceptions;
+
+import lombok.Getter;
+
+
+/**
+ * A payment of a batch can't be made, the payment is referred to by its position and the reason never repeats
+ * the recipient, so a caller may refer to the payment its own way
+ */
+@Getter
+public class PaymentException extends BankServiceException {
+
+    /**
+     * an index of the payment in the batch, starting from 0
+     */
+    private final int index;
+
+    private final String reason;
+
+    public PaymentException(int index, String reason) {
+        super(String.format("%s in payment %d", reason, index + 1));
+        this.index = index;
+        this.reason = reason;
+    }
+}
@@ -1,108 +1,433 @@
 package dev.maltsev.atm.service.impl;
 
+import dev.maltsev.atm.domain.Account;
+import dev.maltsev.atm.domain.ChangeListener;
 import dev.maltsev.atm.domain.Customer;
+import dev.maltsev.atm.domain.DebtLedger;
+import dev.maltsev.atm.domain.DebtNetting;
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.NettingResult;
+import dev.maltsev.atm.domain.Payment;
 import dev.maltsev.atm.domain.Transaction;
+import dev.maltsev.atm.domain.TransferSummary;
+import dev.maltsev.atm.journal.Journal;
+import dev.maltsev.atm.journal.JournalPosition;
+import dev.maltsev.atm.journal.Snapshot;
+import dev.maltsev.atm.journal.SnapshotStore;
+import dev.maltsev.atm.replica.ReadReplica;
 import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
 import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.exceptions.PaymentException;
+import dev.maltsev.atm.util.Loggable;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
+/**
+ * A bank service keeping customers in memory.
+ * <p>
+ * If a {@link Journal} is configured, the state is rebuilt from it on start and every mutating operation is
+ * committed to it before it returns. If a {@link SnapshotStore} is configured too, the state is loaded from
+ * the latest snapshot and only the journal tail after it is replayed. If a {@link ReadReplica} is configured, every
+ * change is reported to it too.
+ * This is the default engine, {@code atm.bank.engine=heap}.
+ */
 @Service
-public class BankServiceImpl implements BankService {
+@ConditionalOnProperty(name = "atm.bank.engine", havingValue = "heap", matchIfMissing = true)
+public class BankServiceImpl implements BankService, Loggable {
 
-    private final Map<String, Customer> customers = new HashMap<>();
-    private Customer currentCustomer;
+    private final ConcurrentMap<String, Customer> customers = new ConcurrentHashMap<>();
+
+    private final DebtLedger ledger = new DebtLedger();
+
+    private final Set<String> authenticated = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger nextCustomerId = new AtomicInteger();
+
+    @Nullable
+    private final Journal journal;
+
+    private final ChangeListener listener;
+
+    @Nullable
+    private final SnapshotStore snapshotStore;
+
+    /**
+     * whether every operation commits the journal before it returns, otherwise the caller commits
+     * with {@link #commitBatch()}
+     */
+    private final boolean commitOperations;
+
+    public BankServiceImpl() {
+        this((Journal) null);
+    }
+
+    @Autowired
+    public BankServiceImpl(@NotNull ObjectProvider<Journal> journalProvider,
+                           @NotNull ObjectProvider<SnapshotStore> snapshotStoreProvider,
+                           @NotNull ObjectProvider<ReadReplica> replicaProvider) {
+        this(journalProvider.getIfAvailable(), snapshotStoreProvider.getIfAvailable(),
+                replicaProvider.getIfAvailable());
+    }
+
+    public BankServiceImpl(@Nullable Journal journal) {
+        this(journal, null);
+    }
+
+    public BankServiceImpl(@Nullable Journal journal, @Nullable SnapshotStore snapshotStore) {
+        this(journal, snapshotStore, null);
+    }
+
+    /**
+     * @param replica a replica to report the changes to or null, it gets the recovered state as changes first
+     */
+    public BankServiceImpl(@Nullable Journal journal, @Nullable SnapshotStore snapshotStore,
+                           @Nullable ReadReplica replica) {
+        this(journal, snapshotStore, replica, true);
+    }
+
+    BankServiceImpl(@Nullable Journal journal, @Nullable SnapshotStore snapshotStore, @Nullable ReadReplica replica,
+                    boolean commitOperations) {
+        if (snapshotStore != null && journal == null) {
+            throw new IllegalArgumentException("snapshots require a journal");
+        }
+
+        ChangeListener journalListener = journal != null ? journal : ChangeListener.NONE;
+        this.journal = journal;
+        this.listener = replica != null ? journalListener.andThen(replica) : journalListener;
+        this.snapshotStore = snapshotStore;
+        this.commitOperations = commitOperations;
+
+        if (journal != null) {
+            long startTime = System.nanoTime();
+            try {
+                Recovery recovery = new Recovery();
+                Snapshot snapshot = snapshotStore != null ? snapshotStore.load() : null;
+                long records;
+                if (snapshot != null) {
+                    recovery.restore(snapshot);
+                    records = journal.replay(recovery, snapshot.getPosition());
+                } else {
+                    records = journal.replay(recovery);
+                }
+                logger().info("Recovered {} customers from {} and {} journal records in {} ms", customers.size(),
+                        snapshot != null ? "snapshot" : "no snapshot", records,
+                        (System.nanoTime() - startTime) / 1_000_000);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to recover from journal", e);
+            }
+        }
+
+        if (replica != null) {
+            for (Customer customer : customers.values()) {
+                replica.restore(customer);
+            }
+        }
+    }
 
     @Override
     @NotNull
-    public Customer login(@NotNull String loginName) throws BankServiceException {
-        if (currentCustomer == null) {
-            if (!customers.containsKey(loginName)) {
-                customers.putIfAbsent(loginName, new Customer(loginName));
-            }
-            currentCustomer = customers.get(loginName);
-            return currentCustomer;
-        } else {
-            throw new BankServiceException("login name is empty");
+    public Session login(@NotNull String loginName) throws BankServiceException {
+        if (!authenticated.add(loginName)) {
+            throw new BankServiceException(String.format("customer %s is already authenticated", loginName));
+        }
+
+        Customer customer;
+        try {
+            customer = customers.computeIfAbsent(loginName, this::createCustomer);
+            commit();
+        } catch (RuntimeException e) {
+            authenticated.remove(loginName);
+            throw e;
         }
+        return new Session(customer);
     }
 
+    @Override
     @NotNull
+    public List<Transaction> deposit(@NotNull Session session, @NotNull Money amount)
+            throws BankServiceException {
+        if (amount.signum() <= 0) {
+            throw new BankServiceException(amount + " should be greater than zero");
+        }
+
+        List<Transaction> transactions = getCustomer(session).deposit(amount);
+        commit();
+        return transactions;
+    }
+
     @Override
-    public Customer getCurrentCustomer() throws BankServiceException {
-        if (currentCustomer == null) {
-            throw new BankServiceException("there is no authenticated customer");
-        } else {
-            return currentCustomer;
+    @NotNull
+    public Transaction withdraw(@NotNull Session session, @NotNull Money amount) throws BankServiceException {
+        if (amount.signum() <= 0) {
+            throw new BankServiceException(amount + " should be greater than zero");
         }
+
+        Transaction transaction = getCustomer(session).withdraw(amount);
+        commit();
+        return transaction;
     }
 
     @Override
     @NotNull
-    public List<Transaction> deposit(@NotNull BigDecimal amount) throws BankServiceException {
-        if (amount.doubleValue() <= 0) {
+    public List<Transaction> transfer(@NotNull Session session, @NotNull String to, @NotNull Money amount)
+            throws BankServiceException {
+        if (amount.signum() <= 0) {
             throw new BankServiceException(amount + " should be greater than zero");
         }
 
-        if (currentCustomer == null) {
-            throw new BankServiceException("there is no authenticated customer");
+        Customer customer = getCustomer(session);
+        Customer toCustomer = customers.get(to);
+
+        if (toCustomer == null) {
+            throw new BankServiceException(String.format("no customer with login name %s found", to));
         }
 
-        return currentCustomer.deposit(amount);
+        if (toCustomer == customer) {
+            throw new BankServiceException("you can't transfer money to yourself");
+        }
+
+        List<Transaction> transactions = customer.transfer(toCustomer, amount);
+        commit();
+        return transactions;
     }
 
     @Override
     @NotNull
-    public Transaction withdraw(@NotNull BigDecimal amount) throws BankServiceException {
-        if (amount.doubleValue() <= 0) {
-            throw new BankServiceException(amount + " should be greater than zero");
+    public TransferSummary transferAll(@NotNull Session session, @NotNull List<Payment> payments)
+            throws BankServiceException {
+        Customer customer = getCustomer(session);
+        if (payments.isEmpty()) {
+            throw new BankServiceException("there are no payments");
         }
 
-        if (currentCustomer == null) {
-            throw new BankServiceException("there is no authenticated customer");
+        List<Customer> recipients = new ArrayList<>(payments.size());
+        List<Money> amounts = new ArrayList<>(payments.size());
+        for (int i = 0; i < payments.size(); i++) {
+            Payment payment = payments.get(i);
+            if (payment.getAmount().signum() <= 0) {
+                throw new PaymentException(i, payment.getAmount() + " should be greater than zero");
+            }
+
+            Customer toCustomer = customers.get(payment.getTo());
+            if (toCustomer == null) {
+                throw new PaymentException(i, "no customer with the login name found");
+            }
+            if (toCustomer == customer) {
+                throw new PaymentException(i, "you can't transfer money to yourself");
+            }
+
+            recipients.add(toCustomer);
+            amounts.add(payment.getAmount());
         }
 
-        return currentCustomer.withdraw(amount);
+        TransferSummary summary = customer.transferAll(recipients, amounts);
+        commit();
+        return summary;
     }
 
     @Override
     @NotNull
-    public List<Transaction> transfer(@NotNull String to, @NotNull BigDecimal amount) throws BankServiceException {
-        if (amount.doubleValue() <= 0) {
-            throw new BankServiceException(amount + " should be greater than zero");
+    public Customer logout(@NotNull Session session) throws BankServiceException {
+        Customer customer = customerOf(session);
+        if (!session.close()) {
+            throw new BankServiceException("there is no authenticated customer");
         }
 
-        if (currentCustomer == null) {
+        authenticated.remove(customer.getLoginName());
+        return customer;
+    }
+
+    @NotNull
+    private Customer getCustomer(@NotNull Session session) throws BankServiceException {
+        if (!session.isActive()) {
             throw new BankServiceException("there is no authenticated customer");
         }
 
-        if (!customers.containsKey(to)) {
-            throw new BankServiceException(String.format("no customer with login name %s found", to));
+        return customerOf(session);
+    }
+
+    @NotNull
+    private static Customer customerOf(@NotNull Session session) throws BankServiceException {
+        if (!(session.getCustomer() instanceof Customer)) {
+            throw new BankServiceException("the session belongs to another bank");
         }
 
-        if (to.equals(currentCustomer.getLoginName())) {
-            throw new BankServiceException("you can't transfer money to yourself");
+        return (Customer) session.getCustomer();
+    }
 
+    /**
+     * Cancel cycles of debts between customers without stopping operations
+     *
+     * @see DebtNetting
+     */
+    @NotNull
+    public NettingResult netDebts() {
+        long startTime = System.nanoTime();
+        NettingResult result = DebtNetting.net(customers.values());
+        commitBatch();
+
+        logger().info("Netted {} debts in {} ms: {} cycles cancelled, ${} of debts", result.getDebtCount(),
+                (System.nanoTime() - startTime) / 1_000_000, result.getCycleCount(), result.getCancelled());
+        return result;
+    }
+
+    /**
+     * Save a snapshot of all customers without stopping operations.
+     * <p>
+     * Customers are copied one by one under their own locks after a journal checkpoint, every copy is marked with
+     * the last journal record of the customer, so replay after the checkpoint skips records already in the copy.
+     */
+    public void snapshot() throws IOException {
+        if (journal == null || snapshotStore == null) {
+            throw new IllegalStateException("snapshots require a journal and a snapshot store");
+        }
+
+        long startTime = System.nanoTime();
+        Snapshot snapshot = new Snapshot(journal.checkpoint());
+        BitSet copied = new BitSet();
+        Map<Integer, Customer> creditors = new HashMap<>();
+
+        for (Customer customer : customers.values()) {
+            customer.runLocked(() -> {
+                snapshot.addCustomer(customer.getId(), customer.getLoginName().getBytes(StandardCharsets.UTF_8),
+                        customer.getAccountBalance().getCents(), journal.getLastSequence(customer));
+                for (Map.Entry<Customer, Account> debt : customer.getCreditAccountMap().entrySet()) {
+                    snapshot.addDebt(debt.getKey().getId(), debt.getValue().getCents());
+                    creditors.put(debt.getKey().getId(), debt.getKey());
+                }
+            });
+            copied.set(customer.getId());
+        }
+
+        // creditors created after the iteration had started, all their records are after the checkpoint
+        for (Customer creditor : creditors.values()) {
+            if (!copied.get(creditor.getId())) {
+                snapshot.addCustomer(creditor.getId(), creditor.getLoginName().getBytes(StandardCharsets.UTF_8), 0,
+                        snapshot.getPosition().getSequence());
+            }
         }
 
-        return currentCustomer.transfer(customers.get(to), amount);
+        // records the snapshot contains have to outlive it in the journal
+        journal.force();
+        snapshotStore.save(snapshot);
+
+        logger().info("Saved snapshot of {} customers at journal {} in {} ms", snapshot.getCustomerCount(),
+                snapshot.getPosition(), (System.nanoTime() - startTime) / 1_000_000);
     }
 
-    @Override
     @NotNull
-    public Customer logout() throws BankServiceException {
-        if (currentCustomer != null) {
-            Customer loggedOutCustomer = currentCustomer;
-            currentCustomer = null;
-            return loggedOutCustomer;
-        } else {
-            throw new BankServiceException("there is no authenticated customer");
+    private Customer createCustomer(@NotNull String loginName) {
+        Customer customer = new Customer(nextCustomerId.getAndIncrement(), loginName, ledger, listener);
+        listener.customerCreated(customer);
+        return customer;
+    }
+
+    private void commit() {
+        if (commitOperations) {
+            commitBatch();
+        }
+    }
+
+    /**
+     * Commit the journal records of all operations made so far
+     */
+    void commitBatch() {
+        if (journal != null) {
+            journal.commit();
+        }
+    }
+
+    /**
+     * Rebuilds customers from a snapshot and journal records, both refer to customers by ids.
+     * A record is skipped if the snapshot copy of the customer it belongs to already contains it.
+     */
+    private class Recovery implements Journal.Handler {
+
+        private Customer[] customersById = new Customer[16];
+
+        private long[] snapshotSequences = new long[16];
+
+        void restore(@NotNull Snapshot snapshot) {
+            for (int i = 0; i < snapshot.getCustomerCount(); i++) {
+                int id = snapshot.getId(i);
+                Customer customer = create(id, new String(snapshot.getName(i), StandardCharsets.UTF_8));
+                customer.restoreBalance(snapshot.getBalance(i));
+                snapshotSequences[id] = snapshot.getLastSequence(i);
+            }
+
+            int debt = 0;
+            for (int i = 0; i < snapshot.getCustomerCount(); i++) {
+                Customer debtor = customerById(snapshot.getId(i));
+                for (int j = snapshot.getDebtCount(i); j > 0; j--, debt++) {
+                    debtor.restoreDebt(customerById(snapshot.getCreditorId(debt)), snapshot.getDebt(debt));
+                }
+            }
+        }
+
+        @Override
+        public void customerCreated(long sequence, int id, @NotNull String loginName) {
+            if (id >= customersById.length || customersById[id] == null) {
+                create(id, loginName);
+            }
+        }
+
+        @Override
+        public void balanceChanged(long sequence, int id, long cents) {
+            Customer customer = customerById(id);
+            if (sequence > snapshotSequences[id]) {
+                customer.restoreBalance(cents);
+            }
+        }
+
+        @Override
+        public void debtChanged(long sequence, int debtorId, int creditorId, long cents) {
+            Customer debtor = customerById(debtorId);
+            if (sequence > snapshotSequences[debtorId]) {
+                debtor.restoreDebt(customerById(creditorId), cents);
+            }
+        }
+
+        @NotNull
+        private Customer create(int id, @NotNull String loginName) {
+            if (id >= customersById.length) {
+                int capacity = Math.max(id + 1, customersById.length * 2);
+                customersById = Arrays.copyOf(customersById, capacity);
+                snapshotSequences = Arrays.copyOf(snapshotSequences, capacity);
+            }
+            Customer customer = new Customer(id, loginName, ledger, listener);
+            customersById[id] = customer;
+            customers.put(loginName, customer);
+            nextCustomerId.set(Math.max(nextCustomerId.get(), id + 1));
+            return customer;
+        }
+
+        @NotNull
+        private Customer customerById(int id) {
+            Customer customer = id < customersById.length ? customersById[id] : null;
+            if (customer == null) {
+                throw new IllegalStateException("Journal refers to unknown customer " + id);
+            }
+            return customer;
         }
     }
 }
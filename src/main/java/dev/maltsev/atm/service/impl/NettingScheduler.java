@@ -0,0 +1,56 @@
+package dev.maltsev.atm.service.impl;
+
+import dev.maltsev.atm.util.Loggable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cancels cycles of debts in the background every {@code atm.netting.interval-seconds}, only the default engine
+ * supports netting
+ */
+@Component
+@ConditionalOnProperty("atm.netting.interval-seconds")
+public class NettingScheduler implements DisposableBean, Loggable {
+
+    private final BankServiceImpl bankService;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "debt-netting");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public NettingScheduler(ObjectProvider<BankServiceImpl> bankServiceProvider,
+                            @Value("${atm.netting.interval-seconds}") long intervalSeconds) {
+        this.bankService = bankServiceProvider.getIfAvailable();
+        if (bankService == null) {
+            logger().warn("Debt netting is not supported by the configured bank engine");
+            return;
+        }
+        executor.scheduleWithFixedDelay(this::net, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private void net() {
+        try {
+            bankService.netDebts();
+        } catch (RuntimeException e) {
+            logger().error("Failed to net debts", e);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package dev.maltsev.atm.service.impl;
+
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.Payment;
+import dev.maltsev.atm.domain.Transaction;
+import dev.maltsev.atm.domain.TransferSummary;
+import dev.maltsev.atm.journal.Journal;
+import dev.maltsev.atm.offheap.OffHeapCustomer;
+import dev.maltsev.atm.offheap.OffHeapStore;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.exceptions.PaymentException;
+import dev.maltsev.atm.util.Loggable;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A bank service keeping customers in an {@link OffHeapStore}, selected by {@code atm.bank.engine=offheap}.
+ * <p>
+ * The store is kept in {@code atm.offheap.path} and outlives the application, if the path is not set a temporary
+ * store is used. The store is the persistent state itself, so the engine doesn't support a journal.
+ */
+@Service
+@ConditionalOnProperty(name = "atm.bank.engine", havingValue = "offheap")
+public class OffHeapBankService implements BankService, Closeable, Loggable {
+
+    private final OffHeapStore store;
+
+    private final Set<Integer> authenticated = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public OffHeapBankService(@Value("${atm.offheap.path:}") String path,
+                              @NotNull ObjectProvider<Journal> journalProvider) throws IOException {
+        this(path.isEmpty() ? OffHeapStore.temporary() : OffHeapStore.open(Paths.get(path)));
+        if (journalProvider.getIfAvailable() != null) {
+            store.close();
+            throw new IllegalStateException("the off-heap engine doesn't support a journal");
+        }
+    }
+
+    public OffHeapBankService(@NotNull OffHeapStore store) {
+        this.store = store;
+        logger().info("Opened off-heap store of {} customers", store.getCustomerCount());
+    }
+
+    @Override
+    @NotNull
+    public Session login(@NotNull String loginName) throws BankServiceException {
+        int id;
+        try {
+            id = store.findOrCreate(loginName);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to extend off-heap store", e);
+        }
+
+        if (!authenticated.add(id)) {
+            throw new BankServiceException(String.format("customer %s is already authenticated", loginName));
+        }
+        return new Session(store.getCustomer(id));
+    }
+
+    @Override
+    @NotNull
+    public List<Transaction> deposit(@NotNull Session session, @NotNull Money amount)
+            throws BankServiceException {
+        if (amount.signum() <= 0) {
+            throw new BankServiceException(amount + " should be greater than zero");
+        }
+
+        OffHeapCustomer customer = getCustomer(session);
+        return store.deposit(customer.getId(), customer.getLoginName(), amount);
+    }
+
+    @Override
+    @NotNull
+    public Transaction withdraw(@NotNull Session session, @NotNull Money amount) throws BankServiceException {
+        if (amount.signum() <= 0) {
+            throw new BankServiceException(amount + " should be greater than zero");
+        }
+
+        OffHeapCustomer customer = getCustomer(session);
+        return store.withdraw(customer.getId(), customer.getLoginName(), amount);
+    }
+
+    @Override
+    @NotNull
+    public List<Transaction> transfer(@NotNull Session session, @NotNull String to, @NotNull Money amount)
+            throws BankServiceException {
+        if (amount.signum() <= 0) {
+            throw new BankServiceException(amount + " should be greater than zero");
+        }
+
+        OffHeapCustomer customer = getCustomer(session);
+        int toId = store.find(to);
+
+        if (toId == 0) {
+            throw new BankServiceException(String.format("no customer with login name %s found", to));
+        }
+
+        if (toId == customer.getId()) {
+            throw new BankServiceException("you can't transfer money to yourself");
+        }
+
+        return store.transfer(customer.getId(), customer.getLoginName(), toId, to, amount);
+    }
+
+    @Override
+    @NotNull
+    public TransferSummary transferAll(@NotNull Session session, @NotNull List<Payment> payments)
+            throws BankServiceException {
+        OffHeapCustomer customer = getCustomer(session);
+        if (payments.isEmpty()) {
+            throw new BankServiceException("there are no payments");
+        }
+
+        int[] toIds = new int[payments.size()];
+        String[] toNames = new String[payments.size()];
+        long[] cents = new long[payments.size()];
+        for (int i = 0; i < payments.size(); i++) {
+            Payment payment = payments.get(i);
+            if (payment.getAmount().signum() <= 0) {
+                throw new PaymentException(i, payment.getAmount() + " should be greater than zero");
+            }
+
+            toIds[i] = store.find(payment.getTo());
+            if (toIds[i] == 0) {
+                throw new PaymentException(i, "no customer with the login name found");
+            }
+            if (toIds[i] == customer.getId()) {
+                throw new PaymentException(i, "you can't transfer money to yourself");
+            }
+            toNames[i] = payment.getTo();
+            cents[i] = payment.getAmount().getCents();
+        }
+
+        return store.transferAll(customer.getId(), customer.getLoginName(), toIds, toNames, cents);
+    }
+
+    @Override
+    @NotNull
+    public OffHeapCustomer logout(@NotNull Session session) throws BankServiceException {
+        OffHeapCustomer customer = customerOf(session);
+        if (!session.close()) {
+            throw new BankServiceException("there is no authenticated customer");
+        }
+
+        authenticated.remove(customer.getId());
+        return customer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    @NotNull
+    private OffHeapCustomer getCustomer(@NotNull Session session) throws BankServiceException {
+        if (!session.isActive()) {
+            throw new BankServiceException("there is no authenticated customer");
+        }
+
+        return customerOf(session);
+    }
+
+    @NotNull
+    private OffHeapCustomer customerOf(@NotNull Session session) throws BankServiceException {
+        if (!(session.getCustomer() instanceof OffHeapCustomer)
+                || !((OffHeapCustomer) session.getCustomer()).belongsTo(store)) {
+            throw new BankServiceException("the session belongs to another bank");
+        }
+
+        return (OffHeapCustomer) session.getCustomer();
+    }
+}
@@ -0,0 +1,418 @@
+package dev.maltsev.atm.service.impl;
+
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.Payment;
+import dev.maltsev.atm.domain.Transaction;
+import dev.maltsev.atm.domain.TransferSummary;
+import dev.maltsev.atm.journal.Journal;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.exceptions.PaymentException;
+import dev.maltsev.atm.shard.CustomerState;
+import dev.maltsev.atm.shard.LoopbackTransport;
+import dev.maltsev.atm.shard.Shard;
+import dev.maltsev.atm.shard.ShardCustomer;
+import dev.maltsev.atm.shard.ShardOperation;
+import dev.maltsev.atm.shard.ShardTransaction;
+import dev.maltsev.atm.shard.ShardTransport;
+import dev.maltsev.atm.util.Loggable;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A bank service partitioning customers across {@link Shard}s by hashes of login names, selected by
+ * {@code atm.bank.engine=sharded} with {@code atm.shard.count} shards.
+ * <p>
+ * An operation on customers of one shard takes the fast path, the shard executes it in one call. A transfer or
+ * a repayment between customers of different shards is a two-phase commit: every shard locks its customers and
+ * votes by returning them, the operation runs against them with its changes kept aside, then every shard applies
+ * its part of the changes and releases its customers, or all of them release the customers if the operation
+ * has failed. A debt between shards is changed by both shards in the same commit, so money is conserved and
+ * the copies of the debt agree. Shards are reached through a {@link ShardTransport}, the in-process one calls them
+ * on the session's thread. The engine doesn't support the journal.
+ */
+@Service
+@ConditionalOnProperty(name = "atm.bank.engine", havingValue = "sharded")
+public class ShardedBankService implements BankService, Loggable {
+
+    private final ShardTransport transport;
+
+    private final AtomicLong nextTransactionId = new AtomicLong();
+
+    private final LongAdder localCount = new LongAdder();
+
+    private final LongAdder crossShardCount = new LongAdder();
+
+    @Autowired
+    public ShardedBankService(@Value("${atm.shard.count:4}") int shardCount,
+                              @NotNull ObjectProvider<Journal> journalProvider) {
+        this(new LoopbackTransport(shardCount));
+        if (journalProvider.getIfAvailable() != null) {
+            throw new IllegalStateException("the sharded engine doesn't support a journal");
+        }
+    }
+
+    public ShardedBankService(@NotNull ShardTransport transport) {
+        this.transport = transport;
+        logger().info("Opened bank of {} shards", transport.getShardCount());
+    }
+
+    @Override
+    @NotNull
+    public Session login(@NotNull String loginName) throws BankServiceException {
+        return new Session(transport.getShardOf(loginName).login(loginName));
+    }
+
+    @Override
+    @NotNull
+    public List<Transaction> deposit(@NotNull Session session, @NotNull Money amount) throws BankServiceException {
+        if (amount.signum() <= 0) {
+            throw new BankServiceException(amount + " should be greater than zero");
+        }
+
+        return settle(getCustomer(session).getLoginName(), amount);
+    }
+
+    @Override
+    @NotNull
+    public Transaction withdraw(@NotNull Session session, @NotNull Money amount) throws BankServiceException {
+        if (amount.signum() <= 0) {
+            throw new BankServiceException(amount + " should be greater than zero");
+        }
+
+        String loginName = getCustomer(session).getLoginName();
+        return execute(customers(loginName), transaction -> {
+            if (transaction.getBalance(loginName) < amount.getCents()) {
+                throw new BankServiceException("not enough money");
+            }
+            transaction.changeBalance(loginName, -amount.getCents());
+            return new Transaction(loginName, null, amount);
+        });
+    }
+
+    @Override
+    @NotNull
+    public List<Transaction> transfer(@NotNull Session session, @NotNull String to, @NotNull Money amount)
+            throws BankServiceException {
+        if (amount.signum() <= 0) {
+            throw new BankServiceException(amount + " should be greater than zero");
+        }
+
+        String from = getCustomer(session).getLoginName();
+        checkRecipient(from, to);
+
+        return execute(customers(from, to), transaction -> {
+            List<Transaction> transactions = new ArrayList<>();
+            Transaction transferred = transfer(transaction, from, to, amount.getCents(), new long[3]);
+            if (transferred != null) {
+                transactions.add(transferred);
+            }
+            return transactions;
+        });
+    }
+
+    @Override
+    @NotNull
+    public TransferSummary transferAll(@NotNull Session session, @NotNull List<Payment> payments)
+            throws BankServiceException {
+        String from = getCustomer(session).getLoginName();
+        if (payments.isEmpty()) {
+            throw new BankServiceException("there are no payments");
+        }
+
+        SortedSet<String> customers = customers(from);
+        for (int i = 0; i < payments.size(); i++) {
+            Payment payment = payments.get(i);
+            if (payment.getAmount().signum() <= 0) {
+                throw new PaymentException(i, payment.getAmount() + " should be greater than zero");
+            }
+            if (transport.getShardOf(payment.getTo()).find(payment.getTo()) == null) {
+                throw new PaymentException(i, "no customer with the login name found");
+            }
+            if (payment.getTo().equals(from)) {
+                throw new PaymentException(i, "you can't transfer money to yourself");
+            }
+            customers.add(payment.getTo());
+        }
+
+        return execute(customers, transaction -> {
+            // offset, transferred and owed amounts
+            long[] totals = new long[3];
+            List<Transaction> transactions = new ArrayList<>();
+            for (Payment payment : payments) {
+                Transaction transferred = transfer(transaction, from, payment.getTo(),
+                        payment.getAmount().getCents(), totals);
+                if (transferred != null) {
+                    transactions.add(transferred);
+                }
+            }
+            return new TransferSummary(payments.size(), customers.size() - 1, Money.ofCents(totals[0]),
+                    Money.ofCents(totals[1]), Money.ofCents(totals[2]), transactions);
+        });
+    }
+
+    @Override
+    @NotNull
+    public ShardCustomer logout(@NotNull Session session) throws BankServiceException {
+        ShardCustomer customer = customerOf(session);
+        if (!session.close()) {
+            throw new BankServiceException("there is no authenticated customer");
+        }
+
+        transport.getShardOf(customer.getLoginName()).logout(customer.getLoginName());
+        return customer;
+    }
+
+    /**
+     * @return a number of operations executed by one shard
+     */
+    public long getLocalCount() {
+        return localCount.sum();
+    }
+
+    /**
+     * @return a number of operations committed in two phases by several shards
+     */
+    public long getCrossShardCount() {
+        return crossShardCount.sum();
+    }
+
+    @NotNull
+    private ShardCustomer getCustomer(@NotNull Session session) throws BankServiceException {
+        if (!session.isActive()) {
+            throw new BankServiceException("there is no authenticated customer");
+        }
+
+        return customerOf(session);
+    }
+
+    @NotNull
+    private ShardCustomer customerOf(@NotNull Session session) throws BankServiceException {
+        if (!(session.getCustomer() instanceof ShardCustomer)
+                || !((ShardCustomer) session.getCustomer()).belongsTo(transport)) {
+            throw new BankServiceException("the session belongs to another bank");
+        }
+
+        return (ShardCustomer) session.getCustomer();
+    }
+
+    private void checkRecipient(@NotNull String from, @NotNull String to) throws BankServiceException {
+        if (transport.getShardOf(to).find(to) == null) {
+            throw new BankServiceException(String.format("no customer with login name %s found", to));
+        }
+
+        if (to.equals(from)) {
+            throw new BankServiceException("you can't transfer money to yourself");
+        }
+    }
+
+    /**
+     * Offset the recipient's debt to the customer, transfer what the balance allows and owe the rest, like
+     * the default engine does
+     *
+     * @param totals offset, transferred and owed amounts to add the parts of the payment to
+     * @return a transaction of the transferred part or null if nothing has been transferred from the balance
+     */
+    @Nullable
+    private static Transaction transfer(@NotNull ShardTransaction transaction, @NotNull String from,
+                                        @NotNull String to, long remaining, long[] totals) {
+        Transaction transferred = null;
+
+        // owe from destination
+        long offsetAmount = Math.min(transaction.getDebt(to, from), remaining);
+        if (offsetAmount > 0) {
+            transaction.changeDebt(to, from, -offsetAmount);
+            totals[0] += offsetAmount;
+            remaining -= offsetAmount;
+        }
+
+        // make transfer to destination
+        long balance = transaction.getBalance(from);
+        if (remaining > 0 && balance > 0) {
+            long transferAmount = Math.min(balance, remaining);
+            transaction.changeBalance(from, -transferAmount);
+            transaction.changeBalance(to, transferAmount);
+            transferred = new Transaction(from, to, Money.ofCents(transferAmount));
+            totals[1] += transferAmount;
+            remaining -= transferAmount;
+        }
+
+        // owe to destination
+        if (remaining > 0) {
+            transaction.changeDebt(from, to, remaining);
+            totals[2] += remaining;
+        }
+
+        return transferred;
+    }
+
+    /**
+     * Deposit the amount repaying debts first, every repayment is deposited to the creditor the same way. Like
+     * the default engine's settlement the cascade is walked depth-first with an explicit stack, every repayment is
+     * a transaction of the debtor and the creditor, which may belong to different shards.
+     *
+     * @return the deposit and then every repayment of the cascade in the order they were made
+     */
+    @NotNull
+    private List<Transaction> settle(@NotNull String depositor, @NotNull Money amount) throws BankServiceException {
+        List<Transaction> transactions = new ArrayList<>();
+        transactions.add(new Transaction(null, depositor, amount));
+        List<String> names = new ArrayList<>();
+        long[] amounts = new long[8];
+        names.add(depositor);
+        amounts[0] = amount.getCents();
+
+        while (!names.isEmpty()) {
+            int top = names.size() - 1;
+            String customer = names.get(top);
+            long remaining = amounts[top];
+
+            if (remaining == 0) {
+                names.remove(top);
+                continue;
+            }
+
+            Repayment repayment = repayFirstDebt(customer, remaining);
+            if (repayment == null) {
+                // the rest has been put on the balance
+                names.remove(top);
+                continue;
+            }
+
+            amounts[top] = remaining - repayment.payment;
+            transactions.add(new Transaction(customer, repayment.creditor, Money.ofCents(repayment.payment)));
+            if (top > 0 && amounts[top] == 0) {
+                // nothing is left to the customer, so the creditor takes its place in the stack
+                names.set(top, repayment.creditor);
+                amounts[top] = repayment.payment;
+            } else {
+                if (names.size() == amounts.length) {
+                    amounts = Arrays.copyOf(amounts, amounts.length * 2);
+                }
+                amounts[names.size()] = repayment.payment;
+                names.add(repayment.creditor);
+            }
+        }
+        return transactions;
+    }
+
+    /**
+     * Repay at most the given amount to the first creditor or put the amount on the balance if there are no debts
+     *
+     * @return the repayment made or null if the amount has been put on the balance
+     */
+    @Nullable
+    private Repayment repayFirstDebt(@NotNull String customer, long amount) throws BankServiceException {
+        while (true) {
+            // do deposit if there are no debts
+            String creditor = execute(customers(customer), transaction -> {
+                String first = transaction.getFirstCreditor(customer);
+                if (first == null) {
+                    transaction.changeBalance(customer, amount);
+                }
+                return Optional.ofNullable(first);
+            }).orElse(null);
+            if (creditor == null) {
+                return null;
+            }
+
+            // pay debt to the first creditor
+            Repayment repayment = execute(customers(customer, creditor), transaction -> {
+                long payment = Math.min(transaction.getDebt(customer, creditor), amount);
+                if (payment == 0) {
+                    // the debt has been repaid concurrently
+                    return Optional.<Repayment>empty();
+                }
+                transaction.changeDebt(customer, creditor, -payment);
+                return Optional.of(new Repayment(creditor, payment));
+            }).orElse(null);
+            if (repayment != null) {
+                return repayment;
+            }
+        }
+    }
+
+    @NotNull
+    private <R> R execute(@NotNull SortedSet<String> customers, @NotNull ShardOperation<R> operation)
+            throws BankServiceException {
+        Shard shard = null;
+        for (String customer : customers) {
+            Shard customerShard = transport.getShardOf(customer);
+            if (shard != null && customerShard != shard) {
+                crossShardCount.increment();
+                return executeTwoPhase(customers, operation);
+            }
+            shard = customerShard;
+        }
+
+        localCount.increment();
+        return shard.execute(customers, operation);
+    }
+
+    @NotNull
+    private <R> R executeTwoPhase(@NotNull SortedSet<String> customers, @NotNull ShardOperation<R> operation)
+            throws BankServiceException {
+        long transactionId = nextTransactionId.incrementAndGet();
+        Map<Shard, Set<String>> participants = new LinkedHashMap<>();
+        boolean committed = false;
+        try {
+            // phase one, customers are locked in the order of login names whatever shards they belong to
+            Map<String, CustomerState> states = new HashMap<>();
+            for (String customer : customers) {
+                Shard shard = transport.getShardOf(customer);
+                participants.computeIfAbsent(shard, s -> new HashSet<>()).add(customer);
+                states.put(customer, shard.prepare(transactionId, customer));
+            }
+
+            ShardTransaction transaction = new ShardTransaction(states);
+            R result = operation.apply(transaction);
+
+            // phase two
+            for (Map.Entry<Shard, Set<String>> participant : participants.entrySet()) {
+                participant.getKey().commit(transactionId, transaction.getChanges(participant.getValue()));
+            }
+            committed = true;
+            return result;
+        } finally {
+            if (!committed) {
+                for (Shard shard : participants.keySet()) {
+                    shard.abort(transactionId);
+                }
+            }
+        }
+    }
+
+    @NotNull
+    private static SortedSet<String> customers(@NotNull String... loginNames) {
+        return new TreeSet<>(Arrays.asList(loginNames));
+    }
+
+    @RequiredArgsConstructor
+    private static class Repayment {
+
+        private final String creditor;
+        private final long payment;
+    }
+}
@@ -0,0 +1,367 @@
+package dev.maltsev.atm.service.impl;
+
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.Payment;
+import dev.maltsev.atm.domain.Transaction;
+import dev.maltsev.atm.domain.TransferSummary;
+import dev.maltsev.atm.journal.Journal;
+import dev.maltsev.atm.journal.SnapshotStore;
+import dev.maltsev.atm.replica.ReadReplica;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.util.Loggable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * A bank service applying all operations on one writer thread, selected by {@code atm.bank.engine=single-writer}.
+ * <p>
+ * Sessions publish operations to a ring buffer of preallocated slots and wait for their completion handles, the writer
+ * takes them in order of publication and applies them to an in-memory bank like the default engine's. Customers are
+ * changed by one thread only, so their locks are never contended and the journal gets the operations in one
+ * deterministic order. The writer applies all published operations before it commits the journal once for them and
+ * completes their handles, so a busy bank syncs the journal once per batch rather than once per operation.
+ * <p>
+ * Both the writer and the waiting sessions spin and yield for a while before parking, a session is woken up by
+ * the writer and the writer by the session publishing to an empty buffer. Netting and periodic snapshots are not supported.
+ */
+@Service
+@ConditionalOnProperty(name = "atm.bank.engine", havingValue = "single-writer")
+public class SingleWriterBankService implements BankService, Closeable, Loggable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    /**
+     * spinning on a single processor only keeps the thread being waited for from running
+     */
+    private static final int SPIN_COUNT = Runtime.getRuntime().availableProcessors() > 1 ? 1000 : 0;
+
+    private static final int YIELD_COUNT = 100;
+
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final long WRITER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final BankServiceImpl bank;
+
+    private final Operation<?>[] slots;
+
+    private final int mask;
+
+    /**
+     * the sequence of the operation in every slot once it is published
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * the sequence of the next operation to claim
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * the sequence of the next operation to apply
+     */
+    private final AtomicLong consumed = new AtomicLong();
+
+    /**
+     * operations applied and waiting for the journal commit
+     */
+    private final Operation<?>[] batch;
+
+    private final Thread writer;
+
+    private volatile boolean writerParked;
+
+    private volatile boolean closed;
+
+    public SingleWriterBankService() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public SingleWriterBankService(int bufferSize) {
+        this((Journal) null, null, bufferSize);
+    }
+
+    @Autowired
+    public SingleWriterBankService(@NotNull ObjectProvider<Journal> journalProvider,
+                                   @NotNull ObjectProvider<SnapshotStore> snapshotStoreProvider,
+                                   @NotNull ObjectProvider<ReadReplica> replicaProvider,
+                                   @Value("${atm.single-writer.buffer-size:1024}") int bufferSize) {
+        this(journalProvider.getIfAvailable(), snapshotStoreProvider.getIfAvailable(),
+                replicaProvider.getIfAvailable(), bufferSize);
+    }
+
+    public SingleWriterBankService(@Nullable Journal journal, @Nullable SnapshotStore snapshotStore, int bufferSize) {
+        this(journal, snapshotStore, null, bufferSize);
+    }
+
+    /**
+     * @param replica    a replica to report the changes to or null
+     * @param bufferSize a number of operations the buffer holds, rounded up to a power of two
+     */
+    public SingleWriterBankService(@Nullable Journal journal, @Nullable SnapshotStore snapshotStore,
+                                   @Nullable ReadReplica replica, int bufferSize) {
+        if (bufferSize <= 0 || bufferSize > 1 << 30) {
+            throw new IllegalArgumentException("buffer size has to be from 1 to 2^30");
+        }
+        int capacity = Integer.highestOneBit(bufferSize * 2 - 1);
+        this.bank = new BankServiceImpl(journal, snapshotStore, replica, false);
+        this.slots = new Operation<?>[capacity];
+        this.batch = new Operation<?>[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        this.mask = capacity - 1;
+        this.writer = new Thread(this::write, "bank-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    @NotNull
+    public Session login(@NotNull String loginName) throws BankServiceException {
+        return execute(bank -> bank.login(loginName));
+    }
+
+    @Override
+    @NotNull
+    public List<Transaction> deposit(@NotNull Session session, @NotNull Money amount) throws BankServiceException {
+        return execute(bank -> bank.deposit(session, amount));
+    }
+
+    @Override
+    @NotNull
+    public Transaction withdraw(@NotNull Session session, @NotNull Money amount) throws BankServiceException {
+        return execute(bank -> bank.withdraw(session, amount));
+    }
+
+    @Override
+    @NotNull
+    public List<Transaction> transfer(@NotNull Session session, @NotNull String toLoginName, @NotNull Money amount)
+            throws BankServiceException {
+        return execute(bank -> bank.transfer(session, toLoginName, amount));
+    }
+
+    @Override
+    @NotNull
+    public TransferSummary transferAll(@NotNull Session session, @NotNull List<Payment> payments)
+            throws BankServiceException {
+        return execute(bank -> bank.transferAll(session, payments));
+    }
+
+    @Override
+    @NotNull
+    public CustomerView logout(@NotNull Session session) throws BankServiceException {
+        return execute(bank -> bank.logout(session));
+    }
+
+    /**
+     * Apply the operations already published and stop the writer, operations executed afterwards fail
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @NotNull
+    private <T> T execute(@NotNull Action<T> action) throws BankServiceException {
+        Operation<T> operation = new Operation<>(action);
+        long sequence;
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("the bank service is closed");
+            }
+            sequence = claimed.get();
+            if (sequence - consumed.get() > mask) {
+                LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        int index = (int) sequence & mask;
+        slots[index] = operation;
+        published.set(index, sequence);
+        if (writerParked) {
+            writerParked = false;
+            LockSupport.unpark(writer);
+        }
+        return operation.await();
+    }
+
+    private void write() {
+        int attempts = 0;
+        while (true) {
+            long sequence = consumed.get();
+            int count = 0;
+            // apply everything published, the slots are released right away, the handles after the commit
+            while (published.get((int) sequence & mask) == sequence) {
+                int index = (int) sequence & mask;
+                Operation<?> operation = slots[index];
+                slots[index] = null;
+                consumed.lazySet(++sequence);
+                operation.apply(bank);
+                batch[count++] = operation;
+                if (count == batch.length) {
+                    break;
+                }
+            }
+
+            if (count > 0) {
+                commit(count);
+                attempts = 0;
+                continue;
+            }
+            // an operation claimed before closing may still be being published, once all of them are applied
+            // the claimed sequence is moved a buffer ahead, so late sessions find the buffer full and fail
+            if (closed && claimed.compareAndSet(sequence, sequence + slots.length)) {
+                return;
+            }
+
+            if (idle(attempts++)) {
+                continue;
+            }
+            writerParked = true;
+            if (published.get((int) sequence & mask) != sequence && !closed) {
+                LockSupport.parkNanos(this, WRITER_PARK_NANOS);
+            }
+            writerParked = false;
+        }
+    }
+
+    private void commit(int count) {
+        RuntimeException failure = null;
+        try {
+            bank.commitBatch();
+        } catch (RuntimeException e) {
+            logger().error("Failed to commit journal", e);
+            failure = e;
+        }
+        for (int i = 0; i < count; i++) {
+            batch[i].complete(failure);
+            batch[i] = null;
+        }
+    }
+
+    /**
+     * Spin, then yield the processor while waiting for another thread
+     *
+     * @param attempt a number of the previous attempts
+     * @return false if the thread has waited long enough and should park
+     */
+    private static boolean idle(int attempt) {
+        if (attempt < SPIN_COUNT) {
+            Thread.onSpinWait();
+            return true;
+        }
+        if (attempt < SPIN_COUNT + YIELD_COUNT) {
+            Thread.yield();
+            return true;
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    private interface Action<T> {
+
+        T apply(@NotNull BankServiceImpl bank) throws BankServiceException;
+    }
+
+    /**
+     * An operation and its completion handle, the result is set by the writer before the handle is completed
+     */
+    private static class Operation<T> {
+
+        private final Action<T> action;
+
+        private final Thread waiter = Thread.currentThread();
+
+        private T result;
+
+        private Throwable failure;
+
+        private volatile boolean done;
+
+        private volatile boolean waiterParked;
+
+        Operation(@NotNull Action<T> action) {
+            this.action = action;
+        }
+
+        void apply(@NotNull BankServiceImpl bank) {
+            try {
+                result = action.apply(bank);
+            } catch (BankServiceException | RuntimeException | Error e) {
+                failure = e;
+            }
+        }
+
+        /**
+         * @param commitFailure a failure of the journal commit, it fails the operations succeeded
+         */
+        void complete(@Nullable RuntimeException commitFailure) {
+            if (failure == null && commitFailure != null) {
+                failure = commitFailure;
+            }
+            done = true;
+            if (waiterParked) {
+                LockSupport.unpark(waiter);
+            }
+        }
+
+        @NotNull
+        T await() throws BankServiceException {
+            boolean interrupted = false;
+            for (int attempts = 0; !done; attempts++) {
+                if (idle(attempts)) {
+                    continue;
+                }
+                waiterParked = true;
+                if (!done) {
+                    LockSupport.park(this);
+                }
+                // the operation is applied anyway, an interrupt is kept for the caller
+                interrupted |= Thread.interrupted();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (failure instanceof BankServiceException) {
+                throw (BankServiceException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package dev.maltsev.atm.service.impl;
+
+import dev.maltsev.atm.util.Loggable;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Takes snapshots of the bank in the background every {@code atm.snapshot.interval-seconds} and once more on
+ * shutdown, so the next start replays a short journal tail. Only the default engine takes snapshots, others
+ * still load the latest one on start.
+ */
+@Component
+@ConditionalOnProperty({"atm.journal.path", "atm.snapshot.path"})
+public class SnapshotScheduler implements DisposableBean, Loggable {
+
+    private final BankServiceImpl bankService;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public SnapshotScheduler(@NotNull ObjectProvider<BankServiceImpl> bankServiceProvider,
+                             @Value("${atm.snapshot.interval-seconds:60}") long intervalSeconds) {
+        this.bankService = bankServiceProvider.getIfAvailable();
+        if (bankService == null) {
+            logger().warn("Snapshots are not taken by the configured bank engine");
+            return;
+        }
+        executor.scheduleWithFixedDelay(this::snapshot, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        if (bankService != null) {
+            snapshot();
+        }
+    }
+
+    private void snapshot() {
+        try {
+            bankService.snapshot();
+        } catch (IOException | RuntimeException e) {
+            logger().error("Failed to save snapshot", e);
+        }
+    }
+}
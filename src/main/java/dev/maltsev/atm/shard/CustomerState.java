@@ -0,0 +1,28 @@
+package dev.maltsev.atm.shard;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+
+
+/**
+ * A customer as an operation reads it while the customer is locked for the operation
+ */
+public interface CustomerState {
+
+    /**
+     * @return the balance in cents
+     */
+    long getCents();
+
+    /**
+     * @return the debt of the customer to the creditor in cents, 0 if there is none
+     */
+    long getDebtTo(@NotNull String creditor);
+
+    /**
+     * @return creditors of the customer in the order the debts were made
+     */
+    @NotNull
+    Collection<String> getCreditors();
+}
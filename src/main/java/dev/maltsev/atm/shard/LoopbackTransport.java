@@ -0,0 +1,34 @@
+package dev.maltsev.atm.shard;
+
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * A transport to shards living in the same process, a call to a shard runs on the caller's thread. A network
+ * transport would send the same calls as messages, so the protocol is testable without a network.
+ */
+public class LoopbackTransport implements ShardTransport {
+
+    private final Shard[] shards;
+
+    public LoopbackTransport(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shard count has to be positive");
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, this);
+        }
+    }
+
+    @Override
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    @Override
+    @NotNull
+    public Shard getShard(int index) {
+        return shards[index];
+    }
+}
@@ -0,0 +1,195 @@
+package dev.maltsev.atm.shard;
+
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.shard.ShardChanges.DebtChange;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * A partition of a bank's customers.
+ * <p>
+ * An operation on customers of one shard is executed by the shard in one call: the customers are locked,
+ * the operation runs and its changes are applied. An operation on customers of several shards is a two-phase
+ * commit driven by the caller: {@link #prepare(long, String)} locks a customer and returns it to the operation,
+ * then {@link #commit(long, ShardChanges)} applies the changes and releases the customers of the transaction or
+ * {@link #abort(long)} just releases them. Customers are always locked in the order of login names, both within
+ * a shard and across shards, so transactions never deadlock.
+ */
+public class Shard {
+
+    private final int index;
+
+    private final ShardTransport transport;
+
+    private final ConcurrentMap<String, ShardCustomer> customers = new ConcurrentHashMap<>();
+
+    private final Set<String> authenticated = ConcurrentHashMap.newKeySet();
+
+    /**
+     * customers locked by prepared transactions
+     */
+    private final ConcurrentMap<Long, List<ShardCustomer>> prepared = new ConcurrentHashMap<>();
+
+    public Shard(int index, @NotNull ShardTransport transport) {
+        this.index = index;
+        this.transport = transport;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    @NotNull
+    public ShardTransport getTransport() {
+        return transport;
+    }
+
+    public int getCustomerCount() {
+        return customers.size();
+    }
+
+    /**
+     * Authenticate the customer creating it if it doesn't exist
+     *
+     * @throws BankServiceException if the customer is already authenticated
+     */
+    @NotNull
+    public ShardCustomer login(@NotNull String loginName) throws BankServiceException {
+        if (!authenticated.add(loginName)) {
+            throw new BankServiceException(String.format("customer %s is already authenticated", loginName));
+        }
+        return customers.computeIfAbsent(loginName, name -> new ShardCustomer(this, name));
+    }
+
+    public void logout(@NotNull String loginName) {
+        authenticated.remove(loginName);
+    }
+
+    @Nullable
+    public ShardCustomer find(@NotNull String loginName) {
+        return customers.get(loginName);
+    }
+
+    /**
+     * Execute the operation on customers of this shard
+     *
+     * @param loginNames customers the operation reads and changes
+     */
+    public <R> R execute(@NotNull SortedSet<String> loginNames, @NotNull ShardOperation<R> operation)
+            throws BankServiceException {
+        List<ShardCustomer> locked = new ArrayList<>(loginNames.size());
+        try {
+            Map<String, CustomerState> states = new LinkedHashMap<>();
+            for (String loginName : loginNames) {
+                ShardCustomer customer = get(loginName);
+                customer.lock.lock();
+                locked.add(customer);
+                states.put(loginName, customer);
+            }
+
+            ShardTransaction transaction = new ShardTransaction(states);
+            R result = operation.apply(transaction);
+            apply(transaction.getChanges(loginNames), locked);
+            return result;
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    /**
+     * Lock the customer for the transaction until it is committed or aborted
+     *
+     * @return the customer as the transaction sees it
+     */
+    @NotNull
+    public CustomerState prepare(long transactionId, @NotNull String loginName) {
+        ShardCustomer customer = get(loginName);
+        customer.lock.lock();
+        prepared.computeIfAbsent(transactionId, id -> new ArrayList<>()).add(customer);
+        return customer;
+    }
+
+    /**
+     * Apply the changes of the transaction and release its customers
+     */
+    public void commit(long transactionId, @NotNull ShardChanges changes) {
+        List<ShardCustomer> locked = prepared.remove(transactionId);
+        if (locked == null) {
+            throw new IllegalStateException("transaction " + transactionId + " is not prepared");
+        }
+        try {
+            apply(changes, locked);
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    /**
+     * Release the customers of the transaction, a transaction unknown to the shard is ignored
+     */
+    public void abort(long transactionId) {
+        List<ShardCustomer> locked = prepared.remove(transactionId);
+        if (locked != null) {
+            unlock(locked);
+        }
+    }
+
+    /**
+     * @return a customer of any shard, debts of customers refer to customers of other shards
+     */
+    @NotNull
+    ShardCustomer getCounterpart(@NotNull String loginName) {
+        ShardCustomer customer = transport.getShardOf(loginName).find(loginName);
+        if (customer == null) {
+            throw new IllegalStateException("unknown customer " + loginName);
+        }
+        return customer;
+    }
+
+    @NotNull
+    private ShardCustomer get(@NotNull String loginName) {
+        ShardCustomer customer = customers.get(loginName);
+        if (customer == null) {
+            throw new IllegalStateException(String.format("customer %s doesn't belong to shard %d", loginName,
+                    index));
+        }
+        return customer;
+    }
+
+    private static void apply(@NotNull ShardChanges changes, @NotNull List<ShardCustomer> locked) {
+        Map<String, ShardCustomer> customers = new LinkedHashMap<>();
+        for (ShardCustomer customer : locked) {
+            customers.put(customer.getLoginName(), customer);
+        }
+
+        for (Map.Entry<String, Long> change : changes.getBalances().entrySet()) {
+            customers.get(change.getKey()).changeBalance(change.getValue());
+        }
+        for (DebtChange change : changes.getDebts()) {
+            ShardCustomer debtor = customers.get(change.getDebtor());
+            if (debtor != null) {
+                debtor.changeCredit(change.getCreditor(), change.getCents());
+            }
+            ShardCustomer creditor = customers.get(change.getCreditor());
+            if (creditor != null) {
+                creditor.changeDebit(change.getDebtor(), change.getCents());
+            }
+        }
+    }
+
+    private static void unlock(@NotNull List<ShardCustomer> locked) {
+        for (ShardCustomer customer : locked) {
+            customer.lock.unlock();
+        }
+    }
+}
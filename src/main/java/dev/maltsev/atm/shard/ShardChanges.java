@@ -0,0 +1,33 @@
+package dev.maltsev.atm.shard;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Changes a transaction makes to the customers of one shard. A debt between customers of different shards is
+ * changed by both shards, the debtor's shard changes the debt and the creditor's shard its copy.
+ */
+@RequiredArgsConstructor
+@Getter
+public class ShardChanges {
+
+    /**
+     * balance changes in cents by login name
+     */
+    private final Map<String, Long> balances;
+
+    private final List<DebtChange> debts;
+
+    @RequiredArgsConstructor
+    @Getter
+    public static class DebtChange {
+
+        private final String debtor;
+        private final String creditor;
+        private final long cents;
+    }
+}
@@ -0,0 +1,188 @@
+package dev.maltsev.atm.shard;
+
+import dev.maltsev.atm.domain.Account;
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.StatementFormatter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * A customer of a {@link Shard}. The customer's debts belong to its shard, debts to the customer belong to
+ * the shards of the debtors and the customer keeps copies of them, which the transactions changing the debts change
+ * too. Everything is guarded by the customer's lock, debt maps are copies taken under it.
+ */
+public class ShardCustomer implements CustomerView, CustomerState {
+
+    private final Shard shard;
+
+    private final String loginName;
+
+    private final Account account = new Account();
+
+    /**
+     * debts of the customer keyed by creditor in the order they were made
+     */
+    private final Map<String, Account> credits = new LinkedHashMap<>();
+
+    /**
+     * copies of debts to the customer keyed by debtor
+     */
+    private final Map<String, Account> debits = new LinkedHashMap<>();
+
+    final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * cached statements, they are guarded by the lock and dropped when the customer's debts change
+     */
+    private String creditStatement;
+
+    private String debitStatement;
+
+    ShardCustomer(@NotNull Shard shard, @NotNull String loginName) {
+        this.shard = shard;
+        this.loginName = loginName;
+    }
+
+    /**
+     * @return true if the customer is kept by a shard of the given transport
+     */
+    public boolean belongsTo(@NotNull ShardTransport transport) {
+        return shard.getTransport() == transport;
+    }
+
+    @Override
+    @NotNull
+    public String getLoginName() {
+        return loginName;
+    }
+
+    @Override
+    @NotNull
+    public Money getAccountBalance() {
+        lock.lock();
+        try {
+            return account.getBalance();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getCents() {
+        return account.getCents();
+    }
+
+    @Override
+    public long getDebtTo(@NotNull String creditor) {
+        Account debt = credits.get(creditor);
+        return debt != null ? debt.getCents() : 0;
+    }
+
+    @Override
+    @NotNull
+    public Collection<String> getCreditors() {
+        return Collections.unmodifiableCollection(credits.keySet());
+    }
+
+    @Override
+    @NotNull
+    public String getCreditStatement() {
+        lock.lock();
+        try {
+            if (creditStatement == null) {
+                creditStatement = statement(credits, StatementFormatter.CREDIT);
+            }
+            return creditStatement;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @NotNull
+    public String getDebitStatement() {
+        lock.lock();
+        try {
+            if (debitStatement == null) {
+                debitStatement = statement(debits, StatementFormatter.DEBIT);
+            }
+            return debitStatement;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @NotNull
+    public Map<ShardCustomer, Account> getCreditAccountMap() {
+        return copy(credits);
+    }
+
+    @Override
+    @NotNull
+    public Map<ShardCustomer, Account> getDebitAccountMap() {
+        return copy(debits);
+    }
+
+    void changeBalance(long cents) {
+        change(account, cents);
+    }
+
+    void changeCredit(@NotNull String creditor, long cents) {
+        changeDebt(credits, creditor, cents);
+        creditStatement = null;
+    }
+
+    void changeDebit(@NotNull String debtor, long cents) {
+        changeDebt(debits, debtor, cents);
+        debitStatement = null;
+    }
+
+    private static void changeDebt(@NotNull Map<String, Account> debts, @NotNull String counterpart, long cents) {
+        Account debt = debts.computeIfAbsent(counterpart, name -> new Account());
+        change(debt, cents);
+        if (debt.isEmpty()) {
+            debts.remove(counterpart);
+        }
+    }
+
+    private static void change(@NotNull Account account, long cents) {
+        if (cents >= 0) {
+            account.add(cents);
+        } else {
+            account.subtract(-cents);
+        }
+    }
+
+    @NotNull
+    private static String statement(@NotNull Map<String, Account> debts, @NotNull StatementFormatter formatter) {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (Map.Entry<String, Account> entry : debts.entrySet()) {
+            formatter.append(stringBuilder, entry.getValue().getCents(), entry.getKey());
+        }
+        return stringBuilder.toString();
+    }
+
+    @NotNull
+    private Map<ShardCustomer, Account> copy(@NotNull Map<String, Account> debts) {
+        Map<ShardCustomer, Account> copy = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            for (Map.Entry<String, Account> entry : debts.entrySet()) {
+                Account debt = new Account();
+                debt.add(entry.getValue().getCents());
+                copy.put(shard.getCounterpart(entry.getKey()), debt);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+}
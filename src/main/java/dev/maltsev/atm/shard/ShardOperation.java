@@ -0,0 +1,14 @@
+package dev.maltsev.atm.shard;
+
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * An operation on customers locked for a {@link ShardTransaction}, it changes them only through the transaction
+ */
+@FunctionalInterface
+public interface ShardOperation<R> {
+
+    R apply(@NotNull ShardTransaction transaction) throws BankServiceException;
+}
@@ -0,0 +1,126 @@
+package dev.maltsev.atm.shard;
+
+import dev.maltsev.atm.shard.ShardChanges.DebtChange;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Changes of an operation kept aside until they are committed. The operation reads its customers through
+ * the transaction, so it sees its own changes, and the shards apply them all at once when the operation has
+ * succeeded, so a failed operation changes nothing.
+ */
+public class ShardTransaction {
+
+    private final Map<String, CustomerState> states;
+
+    private final Map<String, Long> balanceChanges = new LinkedHashMap<>();
+
+    private final Map<DebtKey, Long> debtChanges = new LinkedHashMap<>();
+
+    /**
+     * @param states the customers locked for the transaction by login name
+     */
+    public ShardTransaction(@NotNull Map<String, CustomerState> states) {
+        this.states = states;
+    }
+
+    public long getBalance(@NotNull String loginName) {
+        return state(loginName).getCents() + balanceChanges.getOrDefault(loginName, 0L);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the balance would become negative
+     */
+    public void changeBalance(@NotNull String loginName, long cents) {
+        if (Math.addExact(getBalance(loginName), cents) < 0) {
+            throw new IllegalArgumentException("Not enough balance");
+        }
+        balanceChanges.merge(loginName, cents, Math::addExact);
+    }
+
+    public long getDebt(@NotNull String debtor, @NotNull String creditor) {
+        return state(debtor).getDebtTo(creditor) + debtChanges.getOrDefault(new DebtKey(debtor, creditor), 0L);
+    }
+
+    /**
+     * Change a debt, both customers have to be locked for the transaction
+     *
+     * @throws IllegalArgumentException if the debt would become negative
+     */
+    public void changeDebt(@NotNull String debtor, @NotNull String creditor, long cents) {
+        state(creditor);
+        if (Math.addExact(getDebt(debtor, creditor), cents) < 0) {
+            throw new IllegalArgumentException("Not enough debt");
+        }
+        debtChanges.merge(new DebtKey(debtor, creditor), cents, Math::addExact);
+    }
+
+    /**
+     * @return the creditor of the customer's oldest debt or null if the customer owes nothing
+     */
+    @Nullable
+    public String getFirstCreditor(@NotNull String debtor) {
+        for (String creditor : state(debtor).getCreditors()) {
+            if (getDebt(debtor, creditor) > 0) {
+                return creditor;
+            }
+        }
+        // debts made by the transaction come after the existing ones
+        for (Map.Entry<DebtKey, Long> change : debtChanges.entrySet()) {
+            DebtKey key = change.getKey();
+            if (key.debtor.equals(debtor) && getDebt(debtor, key.creditor) > 0) {
+                return key.creditor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param loginNames customers of a shard
+     * @return the changes the shard has to apply
+     */
+    @NotNull
+    public ShardChanges getChanges(@NotNull Set<String> loginNames) {
+        Map<String, Long> balances = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> change : balanceChanges.entrySet()) {
+            if (loginNames.contains(change.getKey()) && change.getValue() != 0) {
+                balances.put(change.getKey(), change.getValue());
+            }
+        }
+        List<DebtChange> debts = new ArrayList<>();
+        for (Map.Entry<DebtKey, Long> change : debtChanges.entrySet()) {
+            DebtKey key = change.getKey();
+            if ((loginNames.contains(key.debtor) || loginNames.contains(key.creditor)) && change.getValue() != 0) {
+                debts.add(new DebtChange(key.debtor, key.creditor, change.getValue()));
+            }
+        }
+        return new ShardChanges(balances, debts);
+    }
+
+    @NotNull
+    private CustomerState state(@NotNull String loginName) {
+        CustomerState state = states.get(loginName);
+        if (state == null) {
+            throw new IllegalStateException(String.format("customer %s is not locked for the transaction",
+                    loginName));
+        }
+        return state;
+    }
+
+    @RequiredArgsConstructor
+    @EqualsAndHashCode
+    private static class DebtKey {
+
+        private final String debtor;
+        private final String creditor;
+    }
+}
@@ -0,0 +1,29 @@
+package dev.maltsev.atm.shard;
+
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * A way to reach the shards of a bank, a customer belongs to the shard its login name hashes to
+ */
+public interface ShardTransport {
+
+    int getShardCount();
+
+    @NotNull
+    Shard getShard(int index);
+
+    @NotNull
+    default Shard getShardOf(@NotNull String loginName) {
+        return getShard(partitionOf(loginName, getShardCount()));
+    }
+
+    /**
+     * @return a number of the shard from 0 to the shard count, exclusive
+     */
+    static int partitionOf(@NotNull String loginName, int shardCount) {
+        // mix the hash, so names differing in the last characters spread evenly, and scale it to the count
+        int hash = loginName.hashCode() * 0x9e3779b9;
+        return (int) (((hash & 0xffffffffL) * shardCount) >>> 32);
+    }
+}
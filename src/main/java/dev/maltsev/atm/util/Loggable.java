@@ -1,12 +1,14 @@
 package dev.maltsev.atm.util;
 
 import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 
 public interface Loggable {
 
+    /**
+     * @return a logger of the class, it is looked up once per class
+     */
     default Logger logger() {
-        return LoggerFactory.getLogger(this.getClass());
+        return Loggers.LOGGERS.get(getClass());
     }
 }
@@ -0,0 +1,21 @@
+package dev.maltsev.atm.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Loggers of {@link Loggable} classes
+ */
+final class Loggers {
+
+    static final ClassValue<Logger> LOGGERS = new ClassValue<Logger>() {
+        @Override
+        protected Logger computeValue(Class<?> type) {
+            return LoggerFactory.getLogger(type);
+        }
+    };
+
+    private Loggers() {
+    }
+}
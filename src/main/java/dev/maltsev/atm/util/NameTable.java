@@ -0,0 +1,79 @@
+package dev.maltsev.atm.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+
+
+/**
+ * An immutable hash table of values keyed by names. A value can be looked up by a range of characters,
+ * so a name does not need to be copied to a string first.
+ */
+public class NameTable<V> {
+
+    private final String[] names;
+
+    private final Object[] values;
+
+    private final int mask;
+
+    public NameTable(@NotNull Map<String, ? extends V> map) {
+        int capacity = Integer.highestOneBit(Math.max(map.size(), 1) * 4 - 1) << 1;
+        names = new String[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+
+        for (Map.Entry<String, ? extends V> entry : map.entrySet()) {
+            String name = entry.getKey();
+            int slot = hash(name, 0, name.length()) & mask;
+            while (names[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = name;
+            values[slot] = entry.getValue();
+        }
+    }
+
+    @Nullable
+    public V get(@NotNull String name) {
+        return get(name, 0, name.length());
+    }
+
+    /**
+     * @param chars characters containing a name
+     * @param start an index of the first character of the name, inclusive
+     * @param end   an index of the last character of the name, exclusive
+     * @return a value or null if there is no such name
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(@NotNull CharSequence chars, int start, int end) {
+        for (int slot = hash(chars, start, end) & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            if (matches(names[slot], chars, start, end)) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String name, CharSequence chars, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (name.charAt(i - start) != chars.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
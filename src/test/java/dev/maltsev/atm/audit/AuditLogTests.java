@@ -0,0 +1,160 @@
+package dev.maltsev.atm.audit;
+
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class AuditLogTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testAuditedBankService_OperationsWrittenInOrder() throws IOException, BankServiceException {
+        Path path = directory.resolve("audit.log");
+        AuditLog auditLog = new AuditLog(path, 16, OverflowPolicy.BLOCK);
+        BankService service = new AuditedBankService(new BankServiceImpl(), auditLog);
+
+        service.logout(service.login("Bob"));
+        Session session = service.login("Alice");
+        service.deposit(session, valueOf(100));
+        service.transfer(session, "Bob", valueOf(30));
+        assertThrows(BankServiceException.class, () -> service.withdraw(session, valueOf(1000)));
+        service.logout(session);
+        auditLog.close();
+
+        List<String> lines = Files.readAllLines(path);
+        assertEquals(7, lines.size());
+        assertTrue(lines.get(0).matches("\\d{4}-\\d\\d-\\d\\dT[\\d:.]+Z LOGIN Bob - 0 ok"), lines.get(0));
+        assertTrue(lines.get(3).endsWith(" DEPOSIT Alice - 100 ok"), lines.get(3));
+        assertTrue(lines.get(4).endsWith(" TRANSFER Alice Bob 30 ok"), lines.get(4));
+        assertTrue(lines.get(5).contains(" WITHDRAW Alice - 1000 failed: "), lines.get(5));
+        assertTrue(lines.get(6).endsWith(" LOGOUT Alice - 0 ok"), lines.get(6));
+        assertEquals(7, auditLog.getWrittenCount());
+        assertEquals(0, auditLog.getDroppedCount());
+    }
+
+    @Test
+    void testRecord_DropPolicyBufferFull_Dropped() throws IOException, InterruptedException {
+        BlockingChannel out = new BlockingChannel();
+        AuditLog auditLog = new AuditLog(out, 4, OverflowPolicy.DROP);
+        auditLog.record(AuditEvent.LOGIN, "Alice", null, 0, null);
+        out.awaitStalled();
+
+        for (int i = 0; i < 10; i++) {
+            auditLog.record(AuditEvent.DEPOSIT, "Alice", null, i, null);
+        }
+        assertEquals(6, auditLog.getDroppedCount());
+
+        out.release.countDown();
+        auditLog.close();
+        assertEquals(5, auditLog.getWrittenCount());
+        assertEquals(5, out.toString().split("\n").length);
+    }
+
+    @Test
+    void testRecord_BlockPolicyBufferFull_Waits() throws IOException, InterruptedException {
+        BlockingChannel out = new BlockingChannel();
+        AuditLog auditLog = new AuditLog(out, 2, OverflowPolicy.BLOCK);
+        auditLog.record(AuditEvent.LOGIN, "Alice", null, 0, null);
+        out.awaitStalled();
+
+        Thread session = new Thread(() -> {
+            for (int i = 0; i < 5; i++) {
+                auditLog.record(AuditEvent.DEPOSIT, "Alice", null, i, null);
+            }
+        });
+        session.start();
+        session.join(200);
+        assertTrue(session.isAlive());
+
+        out.release.countDown();
+        session.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(session.isAlive());
+        auditLog.close();
+        assertEquals(6, auditLog.getWrittenCount());
+        assertEquals(0, auditLog.getDroppedCount());
+    }
+
+    @Test
+    void testRecord_Closed_Dropped() throws IOException {
+        AuditLog auditLog = new AuditLog(Channels.newChannel(new ByteArrayOutputStream()), 4, OverflowPolicy.BLOCK);
+        auditLog.close();
+
+        auditLog.record(AuditEvent.LOGIN, "Alice", null, 0, null);
+
+        assertEquals(1, auditLog.getDroppedCount());
+    }
+
+    /**
+     * A channel blocking writes until released
+     */
+    private static class BlockingChannel implements WritableByteChannel {
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        private final CountDownLatch stalled = new CountDownLatch(1);
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            stalled.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            int count = source.remaining();
+            synchronized (bytes) {
+                while (source.hasRemaining()) {
+                    bytes.write(source.get());
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Wait until the writer is blocked writing
+         */
+        void awaitStalled() throws InterruptedException {
+            assertTrue(stalled.await(10, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            synchronized (bytes) {
+                return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+}
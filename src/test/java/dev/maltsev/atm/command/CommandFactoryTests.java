@@ -1,8 +1,12 @@
 package dev.maltsev.atm.command;
 
+import dev.maltsev.atm.service.exceptions.BankServiceException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.Collections;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 
@@ -25,4 +29,21 @@ public class CommandFactoryTests {
     public void testCreateCommand_UnknownCommand_Exception() {
         assertThrows(IllegalArgumentException.class, () -> commandFactory.create("hello", "world!"));
     }
+
+    @Test
+    public void testCreateCommand_RegisteredCommand_Ok() throws BankServiceException {
+        CommandFactory factory = new CommandFactory(
+                Collections.singletonList(CommandDefinition.of("ping", args -> (service, context) -> "pong")));
+
+        Command command = factory.create("ping");
+
+        Assertions.assertEquals("pong", command.execute(null, null));
+    }
+
+    @Test
+    public void testCreateCommand_DuplicateCommand_Exception() {
+        List<CommandDefinition> definitions =
+                Collections.singletonList(CommandDefinition.of("login", args -> (service, context) -> ""));
+        assertThrows(IllegalStateException.class, () -> new CommandFactory(definitions));
+    }
 }
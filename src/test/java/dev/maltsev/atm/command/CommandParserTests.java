@@ -0,0 +1,101 @@
+package dev.maltsev.atm.command;
+
+import dev.maltsev.atm.domain.Money;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class CommandParserTests {
+
+    private final CommandFactory commandFactory = new CommandFactory();
+
+    @Test
+    void testNext_Tokens() {
+        CommandParser commandParser = parser("  transfer \t Alice   12.50 \r\n");
+
+        Command command = next(commandParser);
+
+        assertTrue(command instanceof TransferCommand);
+        CommandArguments args = ((AbstractCommand) command).args;
+        assertEquals(2, args.size());
+        assertEquals("Alice", args.getString(0));
+        assertEquals(Money.ofCents(1250), args.getMoney(1));
+        assertFalse(commandParser.hasNext());
+    }
+
+    @Test
+    void testNext_BlankLines() {
+        CommandParser commandParser = parser("\n   \nlogout");
+
+        assertEquals(Optional.empty(), commandParser.next());
+        assertEquals(Optional.empty(), commandParser.next());
+        assertTrue(next(commandParser) instanceof LogoutCommand);
+        assertFalse(commandParser.hasNext());
+    }
+
+    @Test
+    void testNext_LinesLongerThanBuffer() {
+        String loginName = "very_long_login_name_which_does_not_fit_into_the_buffer";
+        CommandParser commandParser = parser("login " + loginName + "\ndeposit 100\nlogin " + loginName + "2\n");
+
+        assertEquals(loginName, ((AbstractCommand) next(commandParser)).args.getString(0));
+        assertEquals(Money.valueOf(100), ((AbstractCommand) next(commandParser)).args.getMoney(0));
+        assertEquals(loginName + "2", ((AbstractCommand) next(commandParser)).args.getString(0));
+        assertFalse(commandParser.hasNext());
+    }
+
+    @Test
+    void testNext_ExceptionThrown_IfUnknownCommand() {
+        CommandParser commandParser = parser("hello world\nexit\n");
+
+        assertThrows(IllegalArgumentException.class, commandParser::next);
+        assertTrue(next(commandParser) instanceof ExitCommand);
+    }
+
+    @Test
+    void testGetMoney_ExceptionThrown_IfNotAnAmount() {
+        CommandParser commandParser = parser("deposit abc\n");
+
+        CommandArguments args = ((AbstractCommand) next(commandParser)).args;
+
+        assertThrows(NumberFormatException.class, () -> args.getMoney(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> args.getMoney(1));
+    }
+
+    @Test
+    void testFeed_LinesSplitAcrossChunks() {
+        CommandParser commandParser = new CommandParser(commandFactory, 16);
+        CharBuffer chunk = CharBuffer.wrap("login Alice\ndeposit 1");
+
+        commandParser.feed(chunk);
+        assertEquals(5, chunk.remaining());
+        assertTrue(commandParser.hasLine());
+        assertEquals("Alice", ((AbstractCommand) next(commandParser)).args.getString(0));
+        assertFalse(commandParser.hasLine());
+
+        commandParser.feed(chunk);
+        assertFalse(chunk.hasRemaining());
+        assertFalse(commandParser.hasLine());
+        assertEquals(7, commandParser.getFreeSpace());
+
+        commandParser.feed(CharBuffer.wrap("2\n"));
+        assertTrue(commandParser.hasLine());
+        assertEquals(Money.valueOf(12), ((AbstractCommand) next(commandParser)).args.getMoney(0));
+        assertFalse(commandParser.hasNext());
+    }
+
+    private CommandParser parser(String input) {
+        return new CommandParser(new StringReader(input), commandFactory, 4);
+    }
+
+    private static Command next(CommandParser commandParser) {
+        Optional<Command> command = commandParser.next();
+        assertTrue(command.isPresent());
+        return command.get();
+    }
+}
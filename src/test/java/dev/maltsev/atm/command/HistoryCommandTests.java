@@ -0,0 +1,104 @@
+package dev.maltsev.atm.command;
+
+import dev.maltsev.atm.history.HistoryBankService;
+import dev.maltsev.atm.history.TransactionHistory;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HistoryCommandTests {
+
+    private static final String TIME = "\\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\dZ";
+
+    @TempDir
+    Path directory;
+
+    private TransactionHistory history;
+
+    private BankService service;
+
+    private final CommandContext context = new CommandContext();
+
+    @BeforeEach
+    void setUp() throws IOException, BankServiceException {
+        history = new TransactionHistory(directory, 12);
+        service = new HistoryBankService(new BankServiceImpl(), history);
+        service.logout(service.login("Bob"));
+        context.setSession(service.login("Alice"));
+        service.deposit(context.getSession(), valueOf(100));
+        service.transfer(context.getSession(), "Bob", valueOf(30));
+        service.withdraw(context.getSession(), valueOf(20));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        history.close();
+    }
+
+    @Test
+    void testExecute_Latest() throws BankServiceException {
+        String output = execute("2");
+
+        String[] lines = output.split("\n");
+        assertEquals(3, lines.length, output);
+        assertTrue(lines[0].matches(TIME + " Transferred \\$30 to Bob"), lines[0]);
+        assertTrue(lines[1].matches(TIME + " Withdrew \\$20"), lines[1]);
+        assertEquals("Shown 2 of 3 transactions", lines[2]);
+    }
+
+    @Test
+    void testExecute_Period() throws BankServiceException {
+        String today = LocalDate.now(ZoneOffset.UTC).toString();
+
+        String output = execute(today, today);
+
+        assertTrue(output.matches(TIME + " Deposited \\$100\n" + TIME + " Transferred \\$30 to Bob\n" + TIME +
+                " Withdrew \\$20\n"), output);
+        assertEquals("No transactions\n", execute("2000-01-01", "2000-01-02T10:00"));
+    }
+
+    @Test
+    void testExecute_PeriodPages() throws BankServiceException {
+        String today = LocalDate.now(ZoneOffset.UTC).toString();
+
+        String[] lines = execute(2, today, today).split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].matches(TIME + " Deposited \\$100"), lines[0]);
+        assertEquals("Shown 1-2 of 3 transactions, next page 'history " + today + " " + today + " 2'", lines[2]);
+
+        lines = execute(2, today, today, "2").split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].matches(TIME + " Withdrew \\$20"), lines[0]);
+        assertEquals("Shown 3-3 of 3 transactions", lines[1]);
+
+        assertEquals("No transactions after 3 of 3\n", execute(2, today, today, "3"));
+    }
+
+    @Test
+    void testExecute_WrongArguments_Exception() {
+        assertThrows(IllegalArgumentException.class, () -> execute("0"));
+        assertThrows(IllegalArgumentException.class, () -> execute("yesterday", "today"));
+        assertThrows(IllegalArgumentException.class, () -> execute("2021-09-01", "2021-09-02", "-1"));
+    }
+
+    private String execute(String... args) throws BankServiceException {
+        return execute(20, args);
+    }
+
+    private String execute(int pageSize, String... args) throws BankServiceException {
+        return new HistoryCommand(CommandArguments.of(args), history, pageSize).execute(service, context);
+    }
+}
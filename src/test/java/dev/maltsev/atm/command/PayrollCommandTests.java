@@ -0,0 +1,84 @@
+package dev.maltsev.atm.command;
+
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.Payment;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class PayrollCommandTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReadPayments_SkipsBlankAndCommentLines() throws IOException {
+        Path file = Files.write(directory.resolve("payroll.txt"),
+                Arrays.asList("# March", "Alice 100", "", "  Bob\t25.5  "));
+
+        List<Integer> lines = new ArrayList<>();
+        assertEquals(Arrays.asList(new Payment("Alice", valueOf(100)), new Payment("Bob", Money.parse("25.5"))),
+                PayrollCommand.readPayments(file, lines));
+        assertEquals(Arrays.asList(2, 4), lines);
+    }
+
+    @Test
+    void testReadPayments_WrongLine_LineNumberReported() throws IOException {
+        Path file = Files.write(directory.resolve("payroll.txt"), Arrays.asList("Alice 100", "Bob", "Carol ten"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> PayrollCommand.readPayments(file, new ArrayList<>()));
+        assertEquals("Wrong payment at line 2, correct format '[to_login_name] [amount]'", e.getMessage());
+
+        Files.write(file, Arrays.asList("Alice 100", "Carol ten"));
+        e = assertThrows(IllegalArgumentException.class, () -> PayrollCommand.readPayments(file, new ArrayList<>()));
+        assertEquals("Wrong amount at line 2", e.getMessage());
+    }
+
+    @Test
+    void testReadPayments_NoFile_Exception() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> PayrollCommand.readPayments(directory.resolve("missing.txt"), new ArrayList<>()));
+        assertEquals("Can't read payroll file", e.getMessage());
+    }
+
+    @Test
+    void testResolve_ExceptionThrown_IfFileIsOutOfDirectory() {
+        Path payrolls = directory.resolve("payrolls");
+
+        assertEquals(payrolls.resolve("march.txt").toAbsolutePath(), PayrollCommand.resolve(payrolls, "march.txt"));
+        assertEquals(payrolls.resolve("march.txt").toAbsolutePath(),
+                PayrollCommand.resolve(payrolls, "old/../march.txt"));
+        for (String file : Arrays.asList("../secret.txt", directory.resolve("secret.txt").toString(), ".", "a\0b")) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> PayrollCommand.resolve(payrolls, file), file);
+            assertEquals("Can't read payroll file", e.getMessage());
+        }
+    }
+
+    @Test
+    void testExecute_UnknownRecipient_LineNumberReported() throws IOException, BankServiceException {
+        Files.write(directory.resolve("payroll.txt"), Arrays.asList("# March", "Bob 10", "", "Mallory 20"));
+        BankService service = new BankServiceImpl();
+        service.logout(service.login("Bob"));
+        CommandContext context = new CommandContext();
+        context.setSession(service.login("Alice"));
+
+        PayrollCommand command = new PayrollCommand(CommandArguments.of("payroll.txt"), directory);
+        BankServiceException e = assertThrows(BankServiceException.class, () -> command.execute(service, context));
+        assertEquals("no customer with the login name found at line 4", e.getMessage());
+    }
+}
@@ -2,6 +2,7 @@ package dev.maltsev.atm.controller;
 
 import dev.maltsev.atm.util.Loggable;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
@@ -13,6 +14,7 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.util.ResourceUtils;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
@@ -53,6 +55,60 @@ public class AtmControllerBddTests implements Loggable {
         Assertions.assertEquals(expectedResult, actualResult);
     }
 
+    @ParameterizedTest
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    @ValueSource(
+            strings = {
+                    "scenario-readme",
+                    "scenario-circle-deposit",
+                    "scenario-deposit-then-withdraw",
+                    "scenario-circle-transfer"
+            })
+    public void testBatch(String directory) throws IOException {
+        File input = ResourceUtils.getFile("src/test/resources/" + directory + "/input.txt");
+        File expectedOutput = ResourceUtils.getFile("src/test/resources/" + directory + "/output.txt");
+
+        // batch output is the same as interactive one without the greeting
+        String expectedResult = new String(Files.readAllBytes(Paths.get(expectedOutput.getPath())))
+                .replaceFirst("ATM started\\..*\\R\\R", "")
+                .trim();
+        long expectedCommandCount = Files.readAllLines(Paths.get(input.getPath())).stream()
+                .filter(line -> !line.trim().isEmpty())
+                .count();
+
+        InputStream in = new FileInputStream(input);
+        OutputStream out = new ByteArrayOutputStream();
+
+        BatchReport report = atmController.doBatchProcess(in, out, 3);
+
+        Assertions.assertEquals(expectedResult, out.toString().trim());
+        Assertions.assertEquals(expectedCommandCount, report.getCommandCount());
+        Assertions.assertEquals(0, report.getErrorCount());
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    public void testBatch_ErrorsCounted() {
+        String script = "login Alice\nwithdraw 10\nhello\n\ndeposit 10\nlogout\n";
+        InputStream in = new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8));
+        OutputStream out = new ByteArrayOutputStream();
+
+        BatchReport report = atmController.doBatchProcess(in, out, 1000);
+
+        Assertions.assertEquals(5, report.getCommandCount());
+        Assertions.assertEquals(2, report.getErrorCount());
+        Assertions.assertTrue(out.toString().contains("Goodbye, Alice!"));
+    }
+
+    @Test
+    public void testBatch_ExceptionThrown_IfFlushEveryIsNotPositive() {
+        InputStream in = new ByteArrayInputStream("login Alice\n".getBytes(StandardCharsets.UTF_8));
+        OutputStream out = new ByteArrayOutputStream();
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> atmController.doBatchProcess(in, out, 0));
+        Assertions.assertEquals("", out.toString());
+    }
+
     @ComponentScan(basePackages = {"dev.maltsev.atm"})
     public static class Config {
 
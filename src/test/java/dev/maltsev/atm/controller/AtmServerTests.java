@@ -0,0 +1,222 @@
+package dev.maltsev.atm.controller;
+
+import dev.maltsev.atm.command.CommandDefinition;
+import dev.maltsev.atm.command.CommandFactory;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class AtmServerTests {
+
+    private static final int TIMEOUT_MILLIS = 10_000;
+
+    private final CommandFactory commandFactory = new CommandFactory();
+
+    private final AtmController controller = new AtmController(commandFactory, new BankServiceImpl());
+
+    private AtmServer server;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void testSession_SameOutputAsTerminal() throws IOException {
+        int port = start(2, 64, 10);
+        String script = "login Alice\ndeposit 100\n\nlogin Bob\r\ntransfer Bob 150\nhello\nlogout\nlogin Bob\nexit\n";
+
+        String output = talk(port, script);
+
+        assertEquals(terminal(script), output);
+        assertTrue(output.contains("Goodbye, Alice!"));
+    }
+
+    @Test
+    void testSession_SameOutputAsTerminal_IfSessionThreads() throws Exception {
+        server = new AtmServer(controller, commandFactory, new SessionExecutor(controller), 0, 0, 64, 10, 1);
+        int port = server.start();
+        String script = "login Alice\ndeposit 100\n\nlogin Bob\r\ntransfer Bob 150\nhello\nlogout\nlogin Bob\nexit\n";
+
+        try (Socket socket = connect(port)) {
+            readGreeting(socket.getInputStream());
+            socket.getOutputStream().write("login Carol\n".getBytes(StandardCharsets.UTF_8));
+            socket.getInputStream().read();
+        }
+
+        awaitNoConnections();
+        assertTrue(talk(port, "login Carol\n").contains("Hello, Carol!"));
+        assertEquals(terminal(script), talk(port, script));
+    }
+
+    @Test
+    void testSession_LastLineWithoutLineFeedExecuted() throws IOException {
+        int port = start(1, 64, 10);
+
+        assertTrue(talk(port, "login Alice\nlogout").contains("Goodbye, Alice!"));
+    }
+
+    @Test
+    void testSessions_Ok_IfConcurrent() throws Exception {
+        int port = start(4, 64, 1000);
+        int sessionCount = 200;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        try {
+            List<Future<String>> outputs = new ArrayList<>();
+            for (int i = 0; i < sessionCount; i++) {
+                String loginName = "user" + i;
+                outputs.add(executorService.submit(() -> talk(port,
+                        "login " + loginName + "\ndeposit 10\nwithdraw 5\nlogout\nexit\n")));
+            }
+            for (int i = 0; i < sessionCount; i++) {
+                String output = outputs.get(i).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                assertTrue(output.contains("Goodbye, user" + i + "!"), output);
+                assertFalse(output.contains("Error occurred"), output);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        String output = talk(port, "login user7\nexit\n");
+        assertTrue(output.contains("Your balance is $5"), output);
+    }
+
+    @Test
+    void testConnection_Refused_IfTooManyConnections() throws Exception {
+        int port = start(1, 64, 1);
+
+        try (Socket socket = connect(port)) {
+            readGreeting(socket.getInputStream());
+
+            assertEquals("Error occurred: too many connections\n", talk(port, ""));
+        }
+    }
+
+    @Test
+    void testConnection_Closed_IfLineTooLong() throws IOException {
+        int port = start(1, 16, 10);
+
+        String output = talk(port, "login a_very_long_login_name\nlogout\n");
+
+        assertTrue(output.endsWith("Error occurred: line is too long" + System.lineSeparator()), output);
+    }
+
+    @Test
+    void testSession_NotStalled_IfCommandOfAnotherConnectionBlocks() throws Exception {
+        CountDownLatch released = new CountDownLatch(1);
+        CommandFactory factory = new CommandFactory(Collections.singletonList(CommandDefinition.of("block",
+                args -> (service, context) -> {
+                    try {
+                        return released.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS) ? "released" : "timed out";
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                })));
+        server = new AtmServer(new AtmController(factory, new BankServiceImpl()), factory, 0, 1, 64, 10);
+        int port = server.start();
+
+        try (Socket socket = connect(port)) {
+            readGreeting(socket.getInputStream());
+            socket.getOutputStream().write("block\n".getBytes(StandardCharsets.UTF_8));
+
+            // both connections are served by the only worker
+            assertTrue(talk(port, "login Bob\nexit\n").contains("Hello, Bob!"));
+
+            released.countDown();
+            socket.shutdownOutput();
+            assertTrue(readAll(socket.getInputStream()).startsWith("released"));
+        }
+    }
+
+    @Test
+    void testCustomerLoggedOut_IfConnectionLost() throws Exception {
+        int port = start(1, 64, 10);
+
+        try (Socket socket = connect(port)) {
+            readGreeting(socket.getInputStream());
+            socket.getOutputStream().write("login Alice\n".getBytes(StandardCharsets.UTF_8));
+            socket.getInputStream().read();
+        }
+
+        awaitNoConnections();
+        String output = talk(port, "login Alice\n");
+        assertTrue(output.contains("Hello, Alice!"), output);
+    }
+
+    /**
+     * Wait until the server closes the connections of the clients which are gone
+     */
+    private void awaitNoConnections() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (server.getConnectionCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private int start(int threads, int bufferSize, int maxConnections) throws IOException {
+        server = new AtmServer(controller, commandFactory, 0, threads, bufferSize, maxConnections);
+        return server.start();
+    }
+
+    /**
+     * Send the script and read everything the server sends until it closes the connection
+     */
+    private static String talk(int port, String script) throws IOException {
+        try (Socket socket = connect(port)) {
+            socket.getOutputStream().write(script.getBytes(StandardCharsets.UTF_8));
+            socket.shutdownOutput();
+            return readAll(socket.getInputStream());
+        }
+    }
+
+    private String terminal(String script) {
+        OutputStream out = new ByteArrayOutputStream();
+        new AtmController(new CommandFactory(), new BankServiceImpl())
+                .doProcess(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)), out);
+        return out.toString();
+    }
+
+    private static Socket connect(int port) throws IOException {
+        Socket socket = new Socket("localhost", port);
+        socket.setSoTimeout(TIMEOUT_MILLIS);
+        return socket;
+    }
+
+    private static void readGreeting(InputStream in) throws IOException {
+        String greeting = AtmController.GREETING + System.lineSeparator() + System.lineSeparator();
+        byte[] bytes = new byte[greeting.length()];
+        for (int read = 0; read < bytes.length; ) {
+            read += in.read(bytes, read, bytes.length - read);
+        }
+        assertEquals(greeting, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int count; (count = in.read(buffer)) >= 0; ) {
+            out.write(buffer, 0, count);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,240 @@
+package dev.maltsev.atm.controller;
+
+import dev.maltsev.atm.command.CommandFactory;
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import dev.maltsev.atm.util.Loggable;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Opens simulated terminal sessions on the {@link SessionExecutor} and drives them through login, deposit, transfer
+ * and logout, reporting p50 and p99 latencies of the commands.
+ * <p>
+ * All the sessions are opened before the first command, so they are blocked reading their input at once. The number
+ * of sessions is set with '-PloadSessions=N', 2000 by default. Full runs of 100000 sessions need virtual threads,
+ * that is Java 21 or later.
+ */
+public class SessionLoadTests implements Loggable {
+
+    private static final int SESSION_COUNT = Integer.getInteger("atm.load.sessions", 2000);
+
+    private static final int DRIVER_COUNT = 16;
+
+    private static final int PAYEE_COUNT = 100;
+
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private static final String[] COMMANDS = {"login", "deposit", "transfer", "logout"};
+
+    @Test
+    void testSessions_LatenciesReported() throws Exception {
+        BankService bankService = new BankServiceImpl();
+        AtmController controller = new AtmController(new CommandFactory(), bankService);
+        SessionExecutor sessionExecutor = new SessionExecutor(controller);
+        for (int i = 0; i < PAYEE_COUNT; i++) {
+            bankService.logout(bankService.login("payee" + i));
+        }
+
+        long startTime = System.nanoTime();
+        Terminal[] terminals = new Terminal[SESSION_COUNT];
+        List<CompletableFuture<Void>> sessions = new ArrayList<>();
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            terminals[i] = new Terminal();
+            sessions.add(sessionExecutor.submit(terminals[i].in, terminals[i].out));
+        }
+        for (Terminal terminal : terminals) {
+            assertTrue(terminal.awaitResponse().startsWith(AtmController.GREETING));
+        }
+        assertEquals(SESSION_COUNT, sessionExecutor.getActiveSessionCount());
+        logger().info("Opened {} sessions in {} ms, virtual threads: {}", SESSION_COUNT,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), sessionExecutor.isVirtual());
+
+        long[][] latencies = drive(terminals);
+
+        for (Terminal terminal : terminals) {
+            terminal.close();
+        }
+        CompletableFuture.allOf(sessions.toArray(CompletableFuture<?>[]::new)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(0, sessionExecutor.getActiveSessionCount());
+
+        for (int i = 0; i < COMMANDS.length; i++) {
+            long[] commandLatencies = latencies[i];
+            Arrays.sort(commandLatencies);
+            logger().info("{}: p50 {} us, p99 {} us, max {} us", COMMANDS[i],
+                    percentile(commandLatencies, 0.5), percentile(commandLatencies, 0.99),
+                    percentile(commandLatencies, 1));
+        }
+
+        Money payeeBalance = Money.ZERO;
+        for (int i = 0; i < PAYEE_COUNT; i++) {
+            payeeBalance = payeeBalance.add(balance(bankService, "payee" + i));
+        }
+        assertEquals(valueOf(10).multiply(SESSION_COUNT), payeeBalance);
+        assertEquals(valueOf(90), balance(bankService, "user" + (SESSION_COUNT - 1)));
+    }
+
+    /**
+     * Run the commands of every session by a few driver threads, each one goes through its sessions command
+     * after command
+     *
+     * @return latencies in nanoseconds by command
+     */
+    private static long[][] drive(Terminal[] terminals) throws Exception {
+        long[][] latencies = new long[COMMANDS.length][SESSION_COUNT];
+        ExecutorService drivers = Executors.newFixedThreadPool(DRIVER_COUNT);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int driver = 0; driver < DRIVER_COUNT; driver++) {
+                int firstSession = driver;
+                results.add(drivers.submit(() -> {
+                    for (int command = 0; command < COMMANDS.length; command++) {
+                        for (int i = firstSession; i < SESSION_COUNT; i += DRIVER_COUNT) {
+                            String line = commandLine(command, i);
+                            long startTime = System.nanoTime();
+                            String response = terminals[i].execute(line);
+                            latencies[command][i] = System.nanoTime() - startTime;
+                            assertFalse(response.contains("Error occurred"), line + ": " + response);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(TIMEOUT_SECONDS * 10, TimeUnit.SECONDS);
+            }
+        } finally {
+            drivers.shutdownNow();
+        }
+        return latencies;
+    }
+
+    private static String commandLine(int command, int session) {
+        switch (command) {
+            case 0:
+                return "login user" + session;
+            case 1:
+                return "deposit 100";
+            case 2:
+                return "transfer payee" + (session % PAYEE_COUNT) + " 10";
+            default:
+                return "logout";
+        }
+    }
+
+    private static long percentile(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(sortedLatencies.length * percentile) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(sortedLatencies[Math.max(index, 0)]);
+    }
+
+    private static Money balance(BankService bankService, String loginName) throws BankServiceException {
+        return bankService.logout(bankService.login(loginName)).getAccountBalance();
+    }
+
+    /**
+     * A terminal talking to a session through queues, every flush of the session's output is a response
+     */
+    private static class Terminal {
+
+        private static final byte[] END_OF_INPUT = new byte[0];
+
+        private final BlockingQueue<byte[]> lines = new LinkedBlockingQueue<>();
+
+        private final BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+
+        final InputStream in = new InputStream() {
+
+            private byte[] line = new byte[0];
+
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (line == END_OF_INPUT) {
+                    return -1;
+                }
+                if (position == line.length) {
+                    try {
+                        line = lines.take();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                    position = 0;
+                    if (line == END_OF_INPUT) {
+                        return -1;
+                    }
+                }
+                int count = Math.min(len, line.length - position);
+                System.arraycopy(line, position, b, off, count);
+                position += count;
+                return count;
+            }
+        };
+
+        final OutputStream out = new OutputStream() {
+
+            private final ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+            @Override
+            public void write(int b) {
+                response.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                response.write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                if (response.size() > 0) {
+                    responses.add(new String(response.toByteArray(), StandardCharsets.UTF_8));
+                    response.reset();
+                }
+            }
+        };
+
+        String execute(String line) throws InterruptedException {
+            lines.add((line + "\n").getBytes(StandardCharsets.UTF_8));
+            return awaitResponse();
+        }
+
+        String awaitResponse() throws InterruptedException {
+            String response = responses.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(response, "no response");
+            return response;
+        }
+
+        void close() {
+            lines.add(END_OF_INPUT);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package dev.maltsev.atm.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class AccountTests {
+
+    private static final int THREAD_COUNT = 4;
+
+    private static final int OPERATION_COUNT = 20_000;
+
+    @Test
+    void testTryWithdraw_BalanceNotChanged_IfNotEnoughMoney() {
+        Account account = new Account();
+        account.add(100);
+
+        assertFalse(account.tryWithdraw(101));
+        assertEquals(100, account.getCents());
+        assertTrue(account.tryWithdraw(100));
+        assertTrue(account.isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> account.subtract(1));
+        assertThrows(ArithmeticException.class, () -> {
+            account.add(Long.MAX_VALUE);
+            account.add(1);
+        });
+    }
+
+    @Test
+    void testTransferUpTo_OwingMarked_IfBalanceIsNotEnough() {
+        CustomerAccount account = new CustomerAccount();
+        account.add(100);
+
+        assertEquals(60, account.transferUpTo(60));
+        assertTrue(account.tryDeposit(10));
+        assertEquals(50, account.transferUpTo(70));
+        assertFalse(account.tryDeposit(10));
+
+        // the mark is not a part of the balance
+        account.add(30);
+        assertEquals(30, account.getCents());
+        assertTrue(account.tryWithdraw(30));
+        assertFalse(account.tryDeposit(10));
+
+        account.clearOwing();
+        assertTrue(account.tryDeposit(10));
+        assertEquals(10, account.getCents());
+    }
+
+    @Test
+    void testTryWithdraw_NeverOverdrawn_IfWithdrawnConcurrently() throws Exception {
+        Account account = new Account();
+        account.add(OPERATION_COUNT);
+
+        List<Integer> withdrawals = runConcurrently(() -> {
+            int count = 0;
+            for (int i = 0; i < OPERATION_COUNT; i++) {
+                if (account.tryWithdraw(1)) {
+                    count++;
+                }
+            }
+            return count;
+        });
+
+        assertEquals(OPERATION_COUNT, withdrawals.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(account.isEmpty());
+    }
+
+    @Test
+    void testDeposit_DebtRepaid_IfDepositedWhileTransferring() throws Exception {
+        DebtLedger ledger = new DebtLedger();
+        Customer alice = new Customer("alice", ledger);
+        Customer bob = new Customer("bob", ledger);
+
+        // a deposit made without the lock must not land on the balance after a transfer has drained it to owe
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> transfers = executor.submit(() -> {
+            for (int i = 0; i < OPERATION_COUNT; i++) {
+                bob.transfer(alice, valueOf(1));
+            }
+        });
+        Future<?> deposits = executor.submit(() -> {
+            for (int i = 0; i < OPERATION_COUNT; i++) {
+                bob.deposit(valueOf(1));
+            }
+        });
+        transfers.get(1, TimeUnit.MINUTES);
+        deposits.get(1, TimeUnit.MINUTES);
+        executor.shutdown();
+
+        assertEquals(Money.ZERO, bob.getAccountBalance());
+        assertFalse(ledger.hasDebts(bob));
+        assertEquals(valueOf(OPERATION_COUNT), alice.getAccountBalance());
+    }
+
+    private static <T> List<T> runConcurrently(Callable<T> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                futures.add(executor.submit(task));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(1, TimeUnit.MINUTES));
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package dev.maltsev.atm.domain;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class DebtLedgerTests {
+
+    private DebtLedger ledger;
+
+    private Customer debtor;
+
+    private Customer creditor1;
+
+    private Customer creditor2;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new DebtLedger();
+        debtor = new Customer("debtor", ledger);
+        creditor1 = new Customer("creditor1", ledger);
+        creditor2 = new Customer("creditor2", ledger);
+    }
+
+    @Test
+    void testIncrease_IndexedByDebtorAndCreditor() {
+        ledger.increase(debtor, creditor1, 100);
+        ledger.increase(debtor, creditor1, 50);
+
+        assertTrue(ledger.isOwedTo(debtor, creditor1));
+        assertFalse(ledger.isOwedTo(creditor1, debtor));
+        assertTrue(ledger.hasDebts(debtor));
+        assertFalse(ledger.hasDebts(creditor1));
+
+        Debt debt = ledger.getDebt(debtor, creditor1);
+        assertNotNull(debt);
+        assertEquals(150, debt.getCents());
+        assertSame(debt, ledger.getCredits(debtor).get(creditor1));
+        assertSame(debt, ledger.getDebits(creditor1).get(debtor));
+    }
+
+    @Test
+    void testGetFirstDebt_InOrderOfCreation() {
+        ledger.increase(debtor, creditor2, 100);
+        ledger.increase(debtor, creditor1, 100);
+        ledger.increase(debtor, creditor2, 100);
+
+        assertEquals(creditor2, ledger.getFirstDebt(debtor).getCreditor());
+        assertEquals(Arrays.asList(creditor2, creditor1), new ArrayList<>(ledger.getCredits(debtor).keySet()));
+
+        ledger.decrease(ledger.getDebt(debtor, creditor2), 200);
+
+        assertEquals(creditor1, ledger.getFirstDebt(debtor).getCreditor());
+    }
+
+    @Test
+    void testDecrease_RemovedWhenRepaid() {
+        Map<Customer, Account> credits = ledger.getCredits(debtor);
+        Map<Customer, Account> debits = ledger.getDebits(creditor1);
+        ledger.increase(debtor, creditor1, 100);
+        assertEquals(1, credits.size());
+        assertEquals(1, debits.size());
+
+        ledger.decrease(ledger.getDebt(debtor, creditor1), 100);
+
+        assertFalse(ledger.isOwedTo(debtor, creditor1));
+        assertNull(ledger.getFirstDebt(debtor));
+        assertTrue(credits.isEmpty());
+        assertTrue(debits.isEmpty());
+    }
+
+    @Test
+    void testDecrease_ExceptionThrown_IfGreaterThanDebt() {
+        ledger.increase(debtor, creditor1, 100);
+        Debt debt = ledger.getDebt(debtor, creditor1);
+
+        assertThrows(IllegalArgumentException.class, () -> ledger.decrease(debt, 101));
+        assertEquals(100, debt.getCents());
+    }
+
+    @Test
+    void testViews_ReadOnly() {
+        assertThrows(UnsupportedOperationException.class, () -> ledger.getCredits(debtor).clear());
+        assertThrows(UnsupportedOperationException.class, () -> ledger.getDebits(debtor).clear());
+    }
+}
@@ -0,0 +1,98 @@
+package dev.maltsev.atm.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class DebtNettingTests {
+
+    private final DebtLedger ledger = new DebtLedger();
+
+    private final List<Customer> customers = new ArrayList<>();
+
+    @Test
+    void testNet_CycleCancelled() {
+        createCustomers(4);
+        ledger.increase(customer(0), customer(1), 1000);
+        ledger.increase(customer(1), customer(2), 2000);
+        ledger.increase(customer(2), customer(0), 500);
+        ledger.increase(customer(2), customer(3), 700);
+
+        NettingResult result = DebtNetting.net(customers);
+
+        assertEquals(4, result.getDebtCount());
+        assertEquals(1, result.getCycleCount());
+        assertEquals(Money.ofCents(1500), result.getCancelled());
+        assertEquals(500, ledger.getDebt(customer(0), customer(1)).getCents());
+        assertEquals(1500, ledger.getDebt(customer(1), customer(2)).getCents());
+        assertNull(ledger.getDebt(customer(2), customer(0)));
+        assertEquals(700, ledger.getDebt(customer(2), customer(3)).getCents());
+    }
+
+    @Test
+    void testNet_CyclesSharingDebtsCancelled() {
+        createCustomers(3);
+        ledger.increase(customer(0), customer(1), 1000);
+        ledger.increase(customer(1), customer(0), 300);
+        ledger.increase(customer(1), customer(2), 400);
+        ledger.increase(customer(2), customer(0), 900);
+
+        NettingResult result = DebtNetting.net(customers);
+
+        assertEquals(2, result.getCycleCount());
+        assertEquals(300, ledger.getDebt(customer(0), customer(1)).getCents());
+        assertNull(ledger.getDebt(customer(1), customer(0)));
+        assertNull(ledger.getDebt(customer(1), customer(2)));
+        assertEquals(500, ledger.getDebt(customer(2), customer(0)).getCents());
+    }
+
+    @Test
+    void testNet_LargeGraph_AcyclicAndPositionsKept() {
+        int customerCount = 20_000;
+        createCustomers(customerCount);
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            int debtor = random.nextInt(customerCount);
+            int creditor = random.nextInt(customerCount - 1);
+            ledger.increase(customer(debtor), customer(creditor < debtor ? creditor : creditor + 1),
+                    1 + random.nextInt(10_000));
+        }
+        long[] positions = positions();
+
+        NettingResult result = DebtNetting.net(customers);
+
+        assertTrue(result.getCycleCount() > 0);
+        assertArrayEquals(positions, positions());
+        assertEquals(0, DebtNetting.net(customers).getCycleCount());
+    }
+
+    private void createCustomers(int count) {
+        for (int i = 0; i < count; i++) {
+            customers.add(new Customer(i, "customer" + i, ledger, ChangeListener.NONE));
+        }
+    }
+
+    private Customer customer(int id) {
+        return customers.get(id);
+    }
+
+    /**
+     * @return what every customer is owed minus what it owes
+     */
+    private long[] positions() {
+        long[] positions = new long[customers.size()];
+        for (Customer customer : customers) {
+            for (Map.Entry<Customer, Account> debt : ledger.getCredits(customer).entrySet()) {
+                positions[customer.getId()] -= debt.getValue().getCents();
+                positions[debt.getKey().getId()] += debt.getValue().getCents();
+            }
+        }
+        return positions;
+    }
+}
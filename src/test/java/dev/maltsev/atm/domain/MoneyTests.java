@@ -0,0 +1,56 @@
+package dev.maltsev.atm.domain;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class MoneyTests {
+
+    @Test
+    void testParse_Ok() {
+        assertEquals(Money.ofCents(10000), Money.parse("100"));
+        assertEquals(Money.ofCents(1250), Money.parse("12.5"));
+        assertEquals(Money.ofCents(1205), Money.parse("12.05"));
+        assertEquals(Money.ofCents(-100), Money.parse("-1"));
+        assertEquals(Money.ofCents(50), Money.parse("0.50"));
+        assertSame(Money.ZERO, Money.parse("0"));
+    }
+
+    @Test
+    void testParseCents_Range() {
+        assertEquals(4200, Money.parseCents("deposit 42", 8, 10));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "-", ".", "abc", "1.234", "1.2.3", "1e5", "99999999999999999999"})
+    void testParse_ExceptionThrown_IfInvalid(String text) {
+        assertThrows(NumberFormatException.class, () -> Money.parse(text));
+    }
+
+    @Test
+    void testToString() {
+        assertEquals("100", Money.valueOf(100).toString());
+        assertEquals("12.50", Money.ofCents(1250).toString());
+        assertEquals("0.05", Money.ofCents(5).toString());
+        assertEquals("-0.50", Money.ofCents(-50).toString());
+        assertEquals("-3", Money.valueOf(-3).toString());
+    }
+
+    @Test
+    void testArithmetic() {
+        assertEquals(Money.valueOf(30), Money.valueOf(10).add(Money.valueOf(20)));
+        assertEquals(Money.valueOf(-10), Money.valueOf(10).subtract(Money.valueOf(20)));
+        assertEquals(Money.valueOf(10), Money.valueOf(10).min(Money.valueOf(20)));
+        assertTrue(Money.valueOf(10).compareTo(Money.ofCents(999)) > 0);
+    }
+
+    @Test
+    void testArithmetic_ExceptionThrown_IfOverflow() {
+        Money max = Money.ofCents(Long.MAX_VALUE);
+        assertThrows(ArithmeticException.class, () -> max.add(Money.ofCents(1)));
+        assertThrows(ArithmeticException.class, () -> Money.valueOf(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,24 @@
+package dev.maltsev.atm.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class StatementFormatterTests {
+
+    @Test
+    void testAppend_LinesJoined() {
+        StringBuilder stringBuilder = new StringBuilder();
+        StatementFormatter.CREDIT.append(stringBuilder, 7000, "Alice");
+        StatementFormatter.CREDIT.append(stringBuilder, 1005, "Carol");
+
+        assertEquals("Owed $70 to AliceOwed $10.05 to Carol", stringBuilder.toString());
+    }
+
+    @Test
+    void testAppend_DebtorNamed() {
+        assertEquals("Owed $0.50 from Bob",
+                StatementFormatter.DEBIT.append(new StringBuilder(), 50, "Bob").toString());
+    }
+}
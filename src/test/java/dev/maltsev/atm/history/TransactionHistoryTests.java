@@ -0,0 +1,164 @@
+package dev.maltsev.atm.history;
+
+import dev.maltsev.atm.domain.Transaction;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class TransactionHistoryTests {
+
+    private static final String BOB = "\u0411\u043e\u0431";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testGetLatest_Ok_IfIndexGrowsAcrossChunks() throws IOException {
+        try (TransactionHistory history = new TransactionHistory(directory, 6)) {
+            for (int i = 1; i <= 1000; i++) {
+                history.append(Collections.singletonList(new Transaction("Alice", i % 2 == 0 ? BOB : null,
+                        valueOf(i))), i);
+            }
+
+            HistoryPage page = history.getLatest("Alice", 3);
+            assertEquals(1000, page.getTotal());
+            assertEquals(Arrays.asList(
+                    new TransactionRecord(998, new Transaction("Alice", BOB, valueOf(998))),
+                    new TransactionRecord(999, new Transaction("Alice", null, valueOf(999))),
+                    new TransactionRecord(1000, new Transaction("Alice", BOB, valueOf(1000)))), page.getRecords());
+
+            page = history.getLatest(BOB, 1000);
+            assertEquals(500, page.getTotal());
+            assertEquals(500, page.getRecords().size());
+            assertEquals(valueOf(2), page.getRecords().get(0).getTransaction().getAmount());
+
+            assertEquals(0, history.getLatest("nobody", 10).getTotal());
+        }
+    }
+
+    @Test
+    void testGetBetween_PageAndTotal() throws IOException {
+        try (TransactionHistory history = new TransactionHistory(directory, 6)) {
+            for (int i = 0; i < 100; i++) {
+                history.append(Arrays.asList(new Transaction(null, "Alice", valueOf(i)),
+                        new Transaction("Alice", BOB, valueOf(i))), i * 10L);
+            }
+
+            HistoryPage page = history.getBetween("Alice", 200, 300, 0, 5);
+            assertEquals(20, page.getTotal());
+            assertEquals(5, page.getRecords().size());
+            assertEquals(new TransactionRecord(200, new Transaction(null, "Alice", valueOf(20))),
+                    page.getRecords().get(0));
+
+            page = history.getBetween("Alice", 200, 300, 15, 10);
+            assertEquals(20, page.getTotal());
+            assertEquals(5, page.getRecords().size());
+            assertEquals(new TransactionRecord(270, new Transaction("Alice", BOB, valueOf(27))),
+                    page.getRecords().get(0));
+            assertTrue(history.getBetween("Alice", 200, 300, 20, 10).getRecords().isEmpty());
+
+            page = history.getBetween(BOB, 995, 2000, 0, 5);
+            assertEquals(0, page.getTotal());
+            assertTrue(page.getRecords().isEmpty());
+            assertThrows(IllegalArgumentException.class, () -> history.getBetween("Alice", 200, 300, -1, 5));
+        }
+    }
+
+    @Test
+    void testAppend_TimeNeverDecreases() throws IOException {
+        try (TransactionHistory history = new TransactionHistory(directory, 6)) {
+            history.append(Collections.singletonList(new Transaction(null, "Alice", valueOf(1))), 100);
+            history.append(Collections.singletonList(new Transaction(null, "Alice", valueOf(2))), 50);
+
+            List<TransactionRecord> records = history.getLatest("Alice", 2).getRecords();
+            assertEquals(100, records.get(1).getTimeMillis());
+        }
+    }
+
+    @Test
+    void testOpen_Ok_IfHistoryHasBeenClosed() throws IOException {
+        try (TransactionHistory history = new TransactionHistory(directory, 6)) {
+            for (int i = 1; i <= 100; i++) {
+                history.append(Collections.singletonList(new Transaction("Alice", BOB, valueOf(i))), i);
+            }
+        }
+
+        try (TransactionHistory history = new TransactionHistory(directory, 6)) {
+            assertEquals(100, history.getTransactionCount());
+            history.append(Collections.singletonList(new Transaction(BOB, "Carol", valueOf(101))), 0);
+
+            HistoryPage page = history.getLatest(BOB, 2);
+            assertEquals(101, page.getTotal());
+            assertEquals(new TransactionRecord(100, new Transaction(BOB, "Carol", valueOf(101))),
+                    page.getRecords().get(1));
+            assertEquals(100, history.getLatest("Alice", 1).getTotal());
+        }
+    }
+
+    @Test
+    void testHistoryBankService_TransactionsAppended() throws IOException, BankServiceException {
+        try (TransactionHistory history = new TransactionHistory(directory, 6)) {
+            BankService service = new HistoryBankService(new BankServiceImpl(), history);
+            service.logout(service.login(BOB));
+            Session session = service.login("Alice");
+            service.deposit(session, valueOf(100));
+            service.transfer(session, BOB, valueOf(150));
+            assertThrows(BankServiceException.class, () -> service.withdraw(session, valueOf(10)));
+
+            List<TransactionRecord> records = history.getLatest("Alice", 10).getRecords();
+            assertEquals(2, records.size());
+            assertEquals(new Transaction(null, "Alice", valueOf(100)), records.get(0).getTransaction());
+            assertEquals(new Transaction("Alice", BOB, valueOf(100)), records.get(1).getTransaction());
+        }
+    }
+
+    @Test
+    void testHistoryBankService_BalancesReconciled_IfDepositRepaysChain() throws IOException, BankServiceException {
+        try (TransactionHistory history = new TransactionHistory(directory, 6)) {
+            BankService service = new HistoryBankService(new BankServiceImpl(), history);
+            Session alice = service.login("Alice");
+            Session bob = service.login(BOB);
+            Session carol = service.login("Carol");
+
+            // Alice owes Bob 50 and Bob owes Carol 30, so Bob passes a part of Alice's deposit on to Carol
+            service.transfer(alice, BOB, valueOf(50));
+            service.transfer(bob, "Carol", valueOf(30));
+            service.deposit(alice, valueOf(70));
+
+            assertEquals(Arrays.asList(
+                    new Transaction("Alice", BOB, valueOf(50)),
+                    new Transaction(BOB, "Carol", valueOf(30))), transactions(history.getLatest(BOB, 10)));
+            for (Session session : Arrays.asList(alice, bob, carol)) {
+                String loginName = session.getCustomer().getLoginName();
+                long cents = 0;
+                for (Transaction transaction : transactions(history.getLatest(loginName, 10))) {
+                    cents += loginName.equals(transaction.getTo()) ? transaction.getAmount().getCents() : 0;
+                    cents -= loginName.equals(transaction.getFrom()) ? transaction.getAmount().getCents() : 0;
+                }
+                assertEquals(session.getCustomer().getAccountBalance().getCents(), cents, loginName);
+            }
+        }
+    }
+
+    private static List<Transaction> transactions(HistoryPage page) {
+        List<Transaction> transactions = new ArrayList<>();
+        for (TransactionRecord record : page.getRecords()) {
+            transactions.add(record.getTransaction());
+        }
+        return transactions;
+    }
+}
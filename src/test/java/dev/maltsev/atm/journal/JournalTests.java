@@ -0,0 +1,290 @@
+package dev.maltsev.atm.journal;
+
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import dev.maltsev.atm.service.impl.SingleWriterBankService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class JournalTests {
+
+    private static final List<String> LOGIN_NAMES = new ArrayList<>();
+
+    static {
+        for (int i = 0; i < 8; i++) {
+            LOGIN_NAMES.add("user" + i);
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReplay_StateRestored() throws Exception {
+        Path path = directory.resolve("atm.journal");
+
+        String expected;
+        try (Journal journal = new Journal(path, FsyncPolicy.ALWAYS, 10)) {
+            BankService bankService = new BankServiceImpl(journal);
+            describe(bankService);
+            Session session = bankService.login("user0");
+            bankService.deposit(session, valueOf(100));
+            bankService.transfer(session, "user1", valueOf(30));
+            bankService.transfer(session, "user2", valueOf(50));
+            bankService.withdraw(session, valueOf(10));
+            bankService.transfer(session, "user3", valueOf(40));
+            bankService.transfer(session, "user4", valueOf(25));
+            bankService.logout(session);
+
+            session = bankService.login("user3");
+            bankService.transfer(session, "user0", valueOf(15));
+            bankService.logout(session);
+
+            expected = describe(bankService);
+        }
+
+        try (Journal journal = new Journal(path, FsyncPolicy.ALWAYS, 10)) {
+            assertEquals(expected, describe(new BankServiceImpl(journal)));
+        }
+    }
+
+    @Test
+    void testReplay_StateRestored_AfterNetting() throws Exception {
+        Path path = directory.resolve("atm.journal");
+
+        String expected;
+        try (Journal journal = new Journal(path, FsyncPolicy.ALWAYS, 10)) {
+            BankServiceImpl bankService = new BankServiceImpl(journal);
+            describe(bankService);
+            for (int i = 0; i < 3; i++) {
+                Session session = bankService.login(LOGIN_NAMES.get(i));
+                bankService.transfer(session, LOGIN_NAMES.get((i + 1) % 3), valueOf(10 * (i + 1)));
+                bankService.logout(session);
+            }
+
+            assertEquals(1, bankService.netDebts().getCycleCount());
+            expected = describe(bankService);
+        }
+
+        try (Journal journal = new Journal(path, FsyncPolicy.ALWAYS, 10)) {
+            assertEquals(expected, describe(new BankServiceImpl(journal)));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(FsyncPolicy.class)
+    void testReplay_StateRestored_AfterConcurrentSessions(FsyncPolicy fsyncPolicy) throws Exception {
+        Path path = directory.resolve("atm.journal");
+
+        String expected;
+        try (Journal journal = new Journal(path, fsyncPolicy, 1)) {
+            BankService bankService = new BankServiceImpl(journal);
+            describe(bankService);
+            runConcurrentSessions(bankService);
+
+            expected = describe(bankService);
+        }
+
+        try (Journal journal = new Journal(path, fsyncPolicy, 1)) {
+            assertEquals(expected, describe(new BankServiceImpl(journal)));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(FsyncPolicy.class)
+    void testReplay_StateRestored_AfterSingleWriterSessions(FsyncPolicy fsyncPolicy) throws Exception {
+        Path path = directory.resolve("atm.journal");
+
+        String expected;
+        try (Journal journal = new Journal(path, fsyncPolicy, 1)) {
+            SingleWriterBankService bankService = new SingleWriterBankService(journal, null, 16);
+            describe(bankService);
+            runConcurrentSessions(bankService);
+
+            expected = describe(bankService);
+            bankService.close();
+        }
+
+        try (Journal journal = new Journal(path, fsyncPolicy, 1)) {
+            assertEquals(expected, describe(new BankServiceImpl(journal)));
+        }
+    }
+
+    @Test
+    void testReplay_TornFrameDiscarded() throws Exception {
+        Path path = directory.resolve("atm.journal");
+
+        try (Journal journal = new Journal(path, FsyncPolicy.ALWAYS, 10)) {
+            BankService bankService = new BankServiceImpl(journal);
+            describe(bankService);
+            Session session = bankService.login("user0");
+            bankService.deposit(session, valueOf(100));
+            bankService.logout(session);
+        }
+
+        // a frame header claiming more bytes than were written
+        Files.write(path, new byte[]{0, 0, 0, 17, 1, 2, 3, 4, 2, 0}, StandardOpenOption.APPEND);
+        long tornSize = Files.size(path);
+
+        String expected;
+        try (Journal journal = new Journal(path, FsyncPolicy.ALWAYS, 10)) {
+            BankService bankService = new BankServiceImpl(journal);
+            assertTrue(Files.size(path) < tornSize);
+
+            Session session = bankService.login("user0");
+            bankService.transfer(session, "user1", valueOf(150));
+            bankService.logout(session);
+            expected = describe(bankService);
+        }
+
+        try (Journal journal = new Journal(path, FsyncPolicy.ALWAYS, 10)) {
+            assertEquals(expected, describe(new BankServiceImpl(journal)));
+        }
+    }
+
+    @Test
+    void testReplay_ZeroTailDiscarded() throws Exception {
+        Path path = directory.resolve("atm.journal");
+        String expected = writeSessions(path);
+
+        // a tail the file system has allocated but the crash has kept from being written
+        Files.write(path, new byte[4096], StandardOpenOption.APPEND);
+        long tornSize = Files.size(path);
+
+        try (Journal journal = new Journal(path, FsyncPolicy.ALWAYS, 10)) {
+            assertEquals(expected, describe(new BankServiceImpl(journal)));
+            assertEquals(tornSize - 4096, Files.size(path));
+        }
+    }
+
+    @Test
+    void testReplay_ExceptionThrown_IfFrameBeforeEndIsDamaged() throws Exception {
+        Path path = directory.resolve("atm.journal");
+        writeSessions(path);
+
+        // a byte of the first frame's records, frames written after it are valid
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[8 + 8 + 1] ^= 1;
+        Files.write(path, bytes);
+
+        try (Journal journal = new Journal(path, FsyncPolicy.NONE, 10)) {
+            UncheckedIOException exception = assertThrows(UncheckedIOException.class,
+                    () -> new BankServiceImpl(journal));
+            assertTrue(exception.getCause().getMessage().contains("damaged at offset 8"),
+                    exception.getCause().getMessage());
+        }
+        assertArrayEquals(bytes, Files.readAllBytes(path));
+    }
+
+    @Test
+    void testReplay_ExceptionThrown_IfFileIsNotJournal() throws IOException {
+        Path path = directory.resolve("atm.journal");
+        Files.write(path, "login user0\n".getBytes());
+
+        try (Journal journal = new Journal(path, FsyncPolicy.NONE, 10)) {
+            assertThrows(UncheckedIOException.class, () -> new BankServiceImpl(journal));
+        }
+    }
+
+    @Test
+    void testLogin_CustomerNotAuthenticated_IfJournalRejectsIt() throws Exception {
+        Path path = directory.resolve("atm.journal");
+
+        try (Journal journal = new Journal(path, FsyncPolicy.ALWAYS, 10)) {
+            BankService bankService = new BankServiceImpl(journal);
+            StringBuilder loginName = new StringBuilder();
+            for (int i = 0; i < 2000; i++) {
+                loginName.append('a');
+            }
+
+            assertThrows(IllegalArgumentException.class, () -> bankService.login(loginName.toString()));
+            assertThrows(IllegalArgumentException.class, () -> bankService.login(loginName.toString()));
+        }
+    }
+
+    /**
+     * Run a session of every customer making random deposits and transfers in its own thread
+     */
+    private static void runConcurrentSessions(BankService bankService) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(LOGIN_NAMES.size());
+        List<Future<?>> futures = new ArrayList<>();
+        for (String loginName : LOGIN_NAMES) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Session session = bankService.login(loginName);
+                for (int i = 0; i < 2_000; i++) {
+                    if (random.nextInt(4) == 0) {
+                        bankService.deposit(session, valueOf(random.nextInt(1, 100)));
+                    } else {
+                        String to = LOGIN_NAMES.get(random.nextInt(LOGIN_NAMES.size()));
+                        if (!to.equals(loginName)) {
+                            bankService.transfer(session, to, valueOf(random.nextInt(1, 100)));
+                        }
+                    }
+                }
+                return bankService.logout(session);
+            }));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES), "possible deadlock");
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    /**
+     * Journal a few sessions, every operation in its own frame
+     *
+     * @return a description of the bank after them
+     */
+    private static String writeSessions(Path path) throws Exception {
+        try (Journal journal = new Journal(path, FsyncPolicy.ALWAYS, 10)) {
+            BankService bankService = new BankServiceImpl(journal);
+            for (int i = 0; i < 3; i++) {
+                Session session = bankService.login("user" + i);
+                bankService.deposit(session, valueOf(100));
+                bankService.logout(session);
+            }
+            return describe(bankService);
+        }
+    }
+
+    /**
+     * Log in and out every customer, so customers are created if they don't exist
+     *
+     * @return a description of every customer's balance and debts
+     */
+    private static String describe(BankService bankService) throws BankServiceException {
+        StringBuilder description = new StringBuilder();
+        for (String loginName : LOGIN_NAMES) {
+            Session session = bankService.login(loginName);
+            description.append(loginName).append(' ')
+                    .append(session.getCustomer().getAccountBalance()).append(' ')
+                    .append(session.getCustomer().getCreditStatement()).append(' ')
+                    .append(session.getCustomer().getDebitStatement()).append('\n');
+            bankService.logout(session);
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,238 @@
+package dev.maltsev.atm.journal;
+
+import dev.maltsev.atm.domain.Account;
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class SnapshotTests {
+
+    private static final List<String> LOGIN_NAMES = new ArrayList<>();
+
+    static {
+        for (int i = 0; i < 8; i++) {
+            LOGIN_NAMES.add("user" + i);
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSaveLoad_Ok() throws IOException {
+        SnapshotStore store = new SnapshotStore(directory.resolve("atm.snapshot"));
+        Snapshot snapshot = new Snapshot(new JournalPosition(1024, 42));
+        snapshot.addCustomer(0, "user0".getBytes(StandardCharsets.UTF_8), 1050, 40);
+        snapshot.addDebt(2, 300);
+        snapshot.addDebt(1, 25);
+        snapshot.addCustomer(1, "\u0438\u0432\u0430\u043d".getBytes(StandardCharsets.UTF_8), 0, 0);
+        snapshot.addCustomer(2, "user2".getBytes(StandardCharsets.UTF_8), 7, 41);
+        snapshot.addDebt(1, 1);
+        store.save(snapshot);
+
+        Snapshot loaded = store.load();
+        assertNotNull(loaded);
+        assertEquals(1024, loaded.getPosition().getOffset());
+        assertEquals(42, loaded.getPosition().getSequence());
+        assertEquals(3, loaded.getCustomerCount());
+        assertEquals(3, loaded.getDebtCount());
+        assertEquals("\u0438\u0432\u0430\u043d", new String(loaded.getName(1), StandardCharsets.UTF_8));
+        assertEquals(1050, loaded.getBalance(0));
+        assertEquals(41, loaded.getLastSequence(2));
+        assertEquals(2, loaded.getDebtCount(0));
+        assertEquals(0, loaded.getDebtCount(1));
+        assertEquals(1, loaded.getDebtCount(2));
+        assertEquals(2, loaded.getCreditorId(0));
+        assertEquals(25, loaded.getDebt(1));
+        assertEquals(1, loaded.getCreditorId(2));
+    }
+
+    @Test
+    void testLoad_Null_IfNoSnapshot() throws IOException {
+        assertNull(new SnapshotStore(directory.resolve("atm.snapshot")).load());
+    }
+
+    @Test
+    void testLoad_ExceptionThrown_IfSnapshotCorrupted() throws IOException {
+        Path path = directory.resolve("atm.snapshot");
+        SnapshotStore store = new SnapshotStore(path);
+        Snapshot snapshot = new Snapshot(new JournalPosition(8, 0));
+        snapshot.addCustomer(0, "user0".getBytes(StandardCharsets.UTF_8), 1050, 1);
+        store.save(snapshot);
+
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes);
+
+        assertThrows(IOException.class, store::load);
+    }
+
+    @Test
+    void testRecovery_StateRestored_FromSnapshotAndJournalTail() throws Exception {
+        Path journalPath = directory.resolve("atm.journal");
+        SnapshotStore store = new SnapshotStore(directory.resolve("atm.snapshot"));
+
+        String expected;
+        try (Journal journal = new Journal(journalPath, FsyncPolicy.ALWAYS, 10)) {
+            BankServiceImpl bankService = new BankServiceImpl(journal, store);
+            describe(bankService);
+            Session session = bankService.login("user0");
+            bankService.deposit(session, valueOf(100));
+            bankService.transfer(session, "user1", valueOf(30));
+            bankService.transfer(session, "user2", valueOf(120));
+            bankService.logout(session);
+
+            bankService.snapshot();
+
+            session = bankService.login("user2");
+            bankService.transfer(session, "user0", valueOf(15));
+            bankService.deposit(session, valueOf(5));
+            bankService.logout(session);
+
+            expected = describe(bankService);
+        }
+
+        try (Journal journal = new Journal(journalPath, FsyncPolicy.ALWAYS, 10)) {
+            BankServiceImpl bankService = new BankServiceImpl(journal, store);
+            assertEquals(expected, describe(bankService));
+
+            // a snapshot taken after recovery and the tail appended after it
+            bankService.snapshot();
+            Session session = bankService.login("user3");
+            bankService.transfer(session, "user0", valueOf(1));
+            bankService.logout(session);
+            expected = describe(bankService);
+        }
+
+        try (Journal journal = new Journal(journalPath, FsyncPolicy.ALWAYS, 10)) {
+            assertEquals(expected, describe(new BankServiceImpl(journal, store)));
+        }
+    }
+
+    @Test
+    void testRecovery_StateRestored_IfSnapshotsTakenDuringConcurrentSessions() throws Exception {
+        Path journalPath = directory.resolve("atm.journal");
+        SnapshotStore store = new SnapshotStore(directory.resolve("atm.snapshot"));
+
+        String expected;
+        try (Journal journal = new Journal(journalPath, FsyncPolicy.NONE, 1)) {
+            BankServiceImpl bankService = new BankServiceImpl(journal, store);
+            // customers are created concurrently with snapshots
+            ExecutorService executor = Executors.newFixedThreadPool(LOGIN_NAMES.size() + 1);
+            AtomicBoolean running = new AtomicBoolean(true);
+
+            Future<Integer> snapshots = executor.submit(() -> {
+                int count = 0;
+                while (running.get()) {
+                    bankService.snapshot();
+                    count++;
+                }
+                return count;
+            });
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (String loginName : LOGIN_NAMES) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    Session session = bankService.login(loginName);
+                    for (int i = 0; i < 5_000; i++) {
+                        if (random.nextInt(4) == 0) {
+                            bankService.deposit(session, valueOf(random.nextInt(1, 100)));
+                        } else {
+                            String to = LOGIN_NAMES.get(random.nextInt(LOGIN_NAMES.size()));
+                            try {
+                                bankService.transfer(session, to, valueOf(random.nextInt(1, 100)));
+                            } catch (BankServiceException e) {
+                                // the customer has not logged in yet or it is a transfer to yourself
+                            }
+                        }
+                    }
+                    return bankService.logout(session);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            running.set(false);
+            assertTrue(snapshots.get(1, TimeUnit.MINUTES) > 0);
+            executor.shutdown();
+
+            expected = describe(bankService);
+        }
+
+        try (Journal journal = new Journal(journalPath, FsyncPolicy.NONE, 1)) {
+            assertEquals(expected, describe(new BankServiceImpl(journal, store)));
+        }
+    }
+
+    @Test
+    void testSnapshot_ExceptionThrown_IfNoJournal() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new BankServiceImpl(null, new SnapshotStore(directory.resolve("atm.snapshot"))));
+        assertThrows(IllegalStateException.class, () -> new BankServiceImpl().snapshot());
+    }
+
+    @Test
+    void testRecovery_ExceptionThrown_IfJournalIsBehindSnapshot() throws Exception {
+        Path journalPath = directory.resolve("atm.journal");
+        SnapshotStore store = new SnapshotStore(directory.resolve("atm.snapshot"));
+
+        try (Journal journal = new Journal(journalPath, FsyncPolicy.ALWAYS, 10)) {
+            BankServiceImpl bankService = new BankServiceImpl(journal, store);
+            describe(bankService);
+            bankService.snapshot();
+        }
+        Files.delete(journalPath);
+
+        try (Journal journal = new Journal(journalPath, FsyncPolicy.ALWAYS, 10)) {
+            assertThrows(UncheckedIOException.class, () -> new BankServiceImpl(journal, store));
+        }
+    }
+
+    /**
+     * Log in and out every customer, so customers are created if they don't exist
+     *
+     * @return a description of every customer's balance and debts, debts to a customer are sorted by debtor
+     */
+    private static String describe(BankService bankService) throws BankServiceException {
+        StringBuilder description = new StringBuilder();
+        for (String loginName : LOGIN_NAMES) {
+            Session session = bankService.login(loginName);
+            CustomerView customer = session.getCustomer();
+            Map<String, String> debits = new TreeMap<>();
+            for (Map.Entry<? extends CustomerView, ? extends Account> debit : customer.getDebitAccountMap().entrySet()) {
+                debits.put(debit.getKey().getLoginName(), debit.getValue().getBalance().toString());
+            }
+            description.append(loginName).append(' ')
+                    .append(customer.getAccountBalance()).append(' ')
+                    .append(customer.getCreditStatement()).append(' ')
+                    .append(debits).append('\n');
+            bankService.logout(session);
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,154 @@
+package dev.maltsev.atm.load;
+
+import dev.maltsev.atm.command.CommandFactory;
+import dev.maltsev.atm.controller.AtmController;
+import dev.maltsev.atm.load.LoadCommand.Operation;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class LoadGeneratorTests {
+
+    private static final LoadSettings SETTINGS = LoadSettings.builder()
+            .customerCount(50)
+            .threadCount(4)
+            .duration(Duration.ofMillis(300))
+            .build();
+
+    @Test
+    void testRun_OperationsReported_IfClosedLoopCallsService() throws Exception {
+        BankService bankService = new BankServiceImpl();
+        LoadReport report = new LoadGenerator(SETTINGS).run(new ServiceTarget(bankService));
+
+        assertTrue(report.getOperationCount() > 0);
+        assertEquals(report.getOperationCount(), report.getTotalLatency().getCount());
+        assertTrue(report.getLatencies().get(Operation.TRANSFER).getCount() > 0);
+        assertTrue(report.getThroughput() > 0);
+        assertNull(report.getServiceTime());
+        assertTrue(report.toString().contains("not corrected"), report.toString());
+
+        // all the sessions are logged out and transfers of the run have made debts
+        boolean owed = false;
+        for (int i = 0; i < SETTINGS.getCustomerCount(); i++) {
+            String loginName = Workload.loginName(i);
+            owed |= !bankService.logout(bankService.login(loginName)).getCreditStatement().isEmpty();
+        }
+        assertTrue(owed);
+    }
+
+    @Test
+    void testRun_OperationsReported_IfClosedLoopTypesCommands() throws Exception {
+        BankService bankService = new BankServiceImpl();
+        AtmController controller = new AtmController(new CommandFactory(), bankService);
+        LoadReport report = new LoadGenerator(SETTINGS).run(new ProtocolTarget(controller));
+
+        assertTrue(report.getOperationCount() > 0);
+        assertTrue(report.getLatencies().get(Operation.DEPOSIT).getCount() > 0);
+        for (int i = 0; i < SETTINGS.getCustomerCount(); i++) {
+            bankService.logout(bankService.login(Workload.loginName(i)));
+        }
+    }
+
+    @Test
+    void testRun_RateKept_IfOpenLoop() throws Exception {
+        LoadSettings settings = SETTINGS.toBuilder()
+                .mode(LoadMode.OPEN)
+                .rate(2000)
+                .duration(Duration.ofMillis(500))
+                .build();
+        LoadReport report = new LoadGenerator(settings).run(new ServiceTarget(new BankServiceImpl()));
+
+        assertEquals(1000, report.getOperationCount(), 50);
+        assertNotNull(report.getServiceTime());
+        assertEquals(report.getOperationCount(), report.getServiceTime().getCount());
+    }
+
+    @Test
+    void testRun_StallCounted_IfOpenLoop() throws Exception {
+        LoadSettings settings = SETTINGS.toBuilder()
+                .mode(LoadMode.OPEN)
+                .threadCount(1)
+                .rate(1000)
+                .duration(Duration.ofMillis(500))
+                .build();
+        LoadReport report = new LoadGenerator(settings).run(new StallingTarget(new BankServiceImpl(), 100));
+
+        // the operations due during the stall of 100 ms are late by up to 100 ms, so about a fifth of the run of
+        // 500 operations is slow, a closed loop would have shown one slow operation
+        long slowLatency = TimeUnit.MILLISECONDS.toNanos(5);
+        assertTrue(report.getTotalLatency().getValueAtPercentile(90) >= slowLatency, report.toString());
+        assertTrue(report.getServiceTime().getValueAtPercentile(90) < slowLatency, report.toString());
+    }
+
+    @Test
+    void testRun_StallCorrected_IfClosedLoopHasExpectedInterval() throws Exception {
+        LoadSettings settings = SETTINGS.toBuilder()
+                .threadCount(1)
+                .expectedInterval(Duration.ofMillis(1))
+                .build();
+        LoadReport report = new LoadGenerator(settings).run(new StallingTarget(new BankServiceImpl(), 100));
+
+        // the stall is recorded with the 99 operations it has held up
+        assertTrue(report.getTotalLatency().getCount() >= report.getOperationCount() + 99, report.toString());
+        assertTrue(report.getTotalLatency().getMax() >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void testConstructor_ExceptionThrown_IfSettingsAreWrong() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new LoadGenerator(SETTINGS.toBuilder().threadCount(0).build()));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LoadGenerator(SETTINGS.toBuilder().mode(LoadMode.OPEN).rate(0).build()));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LoadGenerator(SETTINGS.toBuilder().customerCount(1).build()));
+    }
+
+    /**
+     * Calls the bank service and stalls once, on the 100th operation of the run
+     */
+    private static class StallingTarget extends ServiceTarget {
+
+        private final AtomicInteger deposits = new AtomicInteger();
+
+        private final long stallMillis;
+
+        StallingTarget(BankService service, long stallMillis) {
+            super(service);
+            this.stallMillis = stallMillis;
+        }
+
+        @NotNull
+        @Override
+        public Connection connect() {
+            Connection connection = super.connect();
+            return new Connection() {
+                @Override
+                public boolean execute(@NotNull LoadCommand command) {
+                    try {
+                        if (command.getOperation() != Operation.LOGIN && command.getOperation() != Operation.LOGOUT
+                                && deposits.incrementAndGet() == 100) {
+                            Thread.sleep(stallMillis);
+                        }
+                        return connection.execute(command);
+                    } catch (InterruptedException | IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    connection.close();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package dev.maltsev.atm.load;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ZipfDistributionTests {
+
+    private static final int DRAW_COUNT = 100_000;
+
+    @Test
+    void testNext_LowRanksHot_IfExponentIsOne() {
+        ZipfDistribution distribution = new ZipfDistribution(1000, 1);
+        int[] counts = draw(distribution);
+
+        // rank 0 is drawn with probability 1 / H(1000), about 13.4%, twice as often as rank 1
+        assertEquals(0.134, counts[0] / (double) DRAW_COUNT, 0.01);
+        assertEquals(2, counts[0] / (double) counts[1], 0.2);
+        assertTrue(counts[999] < counts[0] / 100);
+    }
+
+    @Test
+    void testNext_Uniform_IfExponentIsZero() {
+        ZipfDistribution distribution = new ZipfDistribution(10, 0);
+        int[] counts = draw(distribution);
+
+        for (int count : counts) {
+            assertEquals(0.1, count / (double) DRAW_COUNT, 0.01);
+        }
+    }
+
+    @Test
+    void testConstructor_ExceptionThrown_IfArgumentsAreWrong() {
+        assertThrows(IllegalArgumentException.class, () -> new ZipfDistribution(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ZipfDistribution(10, -1));
+    }
+
+    private static int[] draw(ZipfDistribution distribution) {
+        SplittableRandom random = new SplittableRandom(1);
+        int[] counts = new int[distribution.getCount()];
+        for (int i = 0; i < DRAW_COUNT; i++) {
+            counts[distribution.next(random)]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,76 @@
+package dev.maltsev.atm.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HistogramTests {
+
+    @Test
+    void testBucketIndex_ValueWithinBucket() {
+        for (long value = 0; value < 1_000_000; value += value < 1000 ? 1 : 997) {
+            int index = Histogram.bucketIndex(value);
+            assertTrue(value <= Histogram.highestValue(index), "value " + value);
+            assertTrue(index == 0 || value > Histogram.highestValue(index - 1), "value " + value);
+        }
+    }
+
+    @Test
+    void testBucketIndex_HugeValue_LastBucket() {
+        assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.bucketIndex(Long.MAX_VALUE));
+        assertEquals(0, Histogram.bucketIndex(-1));
+    }
+
+    @Test
+    void testPercentiles_WithinPrecision() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals(10_000, snapshot.getCount());
+        assertWithinPrecision(5_000_000, snapshot.getValueAtPercentile(50));
+        assertWithinPrecision(9_900_000, snapshot.getValueAtPercentile(99));
+        assertWithinPrecision(10_000_000, snapshot.getMax());
+    }
+
+    @Test
+    void testSnapshot_Empty_Zeros() {
+        HistogramSnapshot snapshot = new Histogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+        assertEquals(0, snapshot.getMax());
+    }
+
+    @Test
+    void testRecord_ConcurrentThreads_NothingLost() throws InterruptedException {
+        Histogram histogram = new Histogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                for (int value = 0; value < 100_000; value++) {
+                    histogram.record(value);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(800_000, histogram.snapshot().getCount());
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / Histogram.HALF_SUB_BUCKET_COUNT,
+                "expected about " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,68 @@
+package dev.maltsev.atm.metrics;
+
+import dev.maltsev.atm.command.CommandFactory;
+import dev.maltsev.atm.controller.AtmController;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class MetricsTests {
+
+    private final Metrics metrics = new Metrics();
+
+    @Test
+    void testMeteredBankService_CallsAndErrorsCounted() throws BankServiceException {
+        BankService service = new MeteredBankService(new BankServiceImpl(), metrics);
+
+        Session session = service.login("Alice");
+        service.deposit(session, valueOf(100));
+        assertThrows(BankServiceException.class, () -> service.withdraw(session, valueOf(200)));
+        service.logout(session);
+
+        assertEquals(1, metrics.timer("bank.login").snapshot().getCount());
+        assertEquals(1, metrics.timer("bank.deposit").snapshot().getCount());
+        assertEquals(1, metrics.timer("bank.withdraw").snapshot().getCount());
+        assertEquals(1, metrics.timer("bank.withdraw").getErrorCount());
+        assertEquals(0, metrics.timer("bank.deposit").getErrorCount());
+    }
+
+    @Test
+    void testStatsCommand_ReportsCommandsAndStages() {
+        CommandFactory commandFactory = new CommandFactory(Collections.emptyList(), metrics);
+        AtmController controller = new AtmController(commandFactory,
+                new MeteredBankService(new BankServiceImpl(), metrics), metrics);
+        String script = "login Alice\ndeposit 100\nwithdraw 500\nhello\nlogout\nstats\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        controller.doProcess(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)), out);
+
+        String report = out.toString().substring(out.toString().indexOf("operation"));
+        assertTrue(report.matches("(?s).*command\\.deposit +1 +0 .*"), report);
+        assertTrue(report.matches("(?s).*command\\.withdraw +1 +1 .*"), report);
+        assertTrue(report.matches("(?s).*bank\\.withdraw +1 +1 .*"), report);
+        assertTrue(report.matches("(?s).*factory\\.create +6 +1 .*"), report);
+        assertTrue(report.matches("(?s).*parser\\.parse +6 +0 .*"), report);
+    }
+
+    @Test
+    void testDisabled_NothingRecorded() {
+        Timer timer = Metrics.DISABLED.timer("disabled");
+
+        timer.fail(timer.start());
+
+        assertEquals(0, timer.snapshot().getCount());
+        assertEquals(0, timer.getErrorCount());
+        assertFalse(Metrics.DISABLED.isEnabled());
+    }
+}
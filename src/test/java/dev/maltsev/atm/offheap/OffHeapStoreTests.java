@@ -0,0 +1,102 @@
+package dev.maltsev.atm.offheap;
+
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.Transaction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class OffHeapStoreTests {
+
+    private static final String CREDITOR = "\u043a\u0440\u0435\u0434\u0438\u0442\u043e\u0440";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testFindOrCreate_Ok_IfIndexGrowsAcrossSegments() throws IOException {
+        try (OffHeapStore store = new OffHeapStore(directory, 6, false)) {
+            for (int i = 0; i < 5000; i++) {
+                assertEquals(i + 1, store.findOrCreate("user" + i));
+            }
+
+            assertEquals(5000, store.getCustomerCount());
+            for (int i = 0; i < 5000; i++) {
+                assertEquals(i + 1, store.find("user" + i));
+                assertEquals("user" + i, store.getLoginName(i + 1));
+            }
+            assertEquals(0, store.find("user5000"));
+            assertEquals(2, store.findOrCreate("user1"));
+        }
+    }
+
+    @Test
+    void testOpen_Ok_IfStoreHasBeenClosed() throws IOException {
+        try (OffHeapStore store = new OffHeapStore(directory, 6, false)) {
+            int debtor = store.findOrCreate("debtor");
+            int creditor = store.findOrCreate(CREDITOR);
+            store.deposit(debtor, "debtor", valueOf(30));
+            store.transfer(debtor, "debtor", creditor, CREDITOR, valueOf(100));
+        }
+
+        try (OffHeapStore store = new OffHeapStore(directory, 6, false)) {
+            int debtor = store.find("debtor");
+            int creditor = store.find(CREDITOR);
+            assertEquals(2, store.getCustomerCount());
+            assertEquals(0, store.getBalance(debtor));
+            assertEquals(3000, store.getBalance(creditor));
+            assertEquals("Owed $70 to " + CREDITOR, store.getCreditStatement(debtor));
+            assertEquals("Owed $70 from debtor", store.getDebitStatement(creditor));
+
+            assertEquals(Arrays.asList(new Transaction(null, "debtor", valueOf(70)),
+                            new Transaction("debtor", CREDITOR, valueOf(70))),
+                    store.deposit(debtor, "debtor", valueOf(70)));
+            assertEquals("", store.getCreditStatement(debtor));
+            assertEquals(10000, store.getBalance(creditor));
+        }
+    }
+
+    @Test
+    void testTransfer_DebtRecordsReused_IfDebtsRepaid() throws IOException {
+        try (OffHeapStore store = new OffHeapStore(directory, 6, false)) {
+            int debtor = store.findOrCreate("debtor");
+            int first = store.findOrCreate("first");
+            int second = store.findOrCreate("second");
+
+            for (int i = 0; i < 100; i++) {
+                store.transfer(debtor, "debtor", first, "first", valueOf(1));
+                store.transfer(debtor, "debtor", second, "second", valueOf(2));
+                assertEquals("Owed $1 to firstOwed $2 to second", store.getCreditStatement(debtor));
+                store.deposit(debtor, "debtor", valueOf(3));
+                assertEquals("", store.getCreditStatement(debtor));
+            }
+
+            assertEquals(Money.ZERO, Money.ofCents(store.getBalance(debtor)));
+            assertEquals(10000, store.getBalance(first));
+            assertEquals(20000, store.getBalance(second));
+            // the unused record 0 and two debt records in two segments of 64 bytes
+            assertEquals(2 * 64, Files.size(directory.resolve("debts")));
+        }
+    }
+
+    @Test
+    void testOpen_ExceptionThrown_IfNotStore() throws IOException {
+        Files.write(directory.resolve("customers"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> new OffHeapStore(directory, 6, false));
+    }
+
+    @Test
+    void testClose_DirectoryDeleted_IfTemporary() throws IOException {
+        Path temporary = directory.resolve("temporary");
+        new OffHeapStore(temporary, 6, true).close();
+        assertFalse(Files.exists(temporary));
+    }
+}
@@ -0,0 +1,193 @@
+package dev.maltsev.atm.replica;
+
+import dev.maltsev.atm.command.CommandArguments;
+import dev.maltsev.atm.command.CommandContext;
+import dev.maltsev.atm.command.StatementCommand;
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.journal.FsyncPolicy;
+import dev.maltsev.atm.journal.Journal;
+import dev.maltsev.atm.service.BankService;
+import dev.maltsev.atm.service.Session;
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import dev.maltsev.atm.service.impl.SingleWriterBankService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ReadReplicaTests {
+
+    private static final List<String> LOGIN_NAMES = new ArrayList<>();
+
+    static {
+        for (int i = 0; i < 8; i++) {
+            LOGIN_NAMES.add("user" + i);
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    private ReadReplica replica;
+
+    @BeforeEach
+    void setUp() {
+        replica = new ReadReplica();
+    }
+
+    @AfterEach
+    void tearDown() {
+        replica.close();
+    }
+
+    @Test
+    void testStatements_SameAsBank_AfterReplicaCaughtUp() throws Exception {
+        BankService bankService = new BankServiceImpl(null, null, replica);
+        Session session = bankService.login("Alice");
+        bankService.logout(bankService.login("Bob"));
+        bankService.deposit(session, valueOf(100));
+        bankService.transfer(session, "Bob", valueOf(130));
+        bankService.logout(session);
+
+        session = bankService.login("Bob");
+        bankService.transfer(session, "Alice", valueOf(10));
+
+        assertTrue(replica.awaitApplied(10, TimeUnit.SECONDS));
+        assertEquals(0, replica.getLag());
+        assertEquals(0, replica.getLagMillis());
+        CustomerView alice = replica.getCustomer("Alice");
+        assertEquals(valueOf(0), alice.getAccountBalance());
+        assertEquals("Owed $20 to Bob", alice.getCreditStatement());
+        CustomerView bob = replica.getCustomer("Bob");
+        assertEquals(valueOf(100), bob.getAccountBalance());
+        assertEquals("Owed $20 from Alice", bob.getDebitStatement());
+        assertEquals(valueOf(20), bob.getDebitAccountMap().get(alice).getBalance());
+    }
+
+    @Test
+    void testStatements_SameAsBank_AfterConcurrentSessions() throws Exception {
+        SingleWriterBankService bankService = new SingleWriterBankService(null, null, replica, 16);
+        try {
+            runConcurrentSessions(bankService);
+            assertTrue(replica.awaitApplied(10, TimeUnit.SECONDS));
+            assertEquals(describe(bankService), describe(replica));
+        } finally {
+            bankService.close();
+        }
+    }
+
+    @Test
+    void testRestore_RecoveredStateCopied() throws Exception {
+        Path path = directory.resolve("atm.journal");
+        String expected;
+        try (Journal journal = new Journal(path, FsyncPolicy.ALWAYS, 10)) {
+            BankService bankService = new BankServiceImpl(journal);
+            runConcurrentSessions(bankService);
+            expected = describe(bankService);
+        }
+
+        try (Journal journal = new Journal(path, FsyncPolicy.ALWAYS, 10)) {
+            BankService bankService = new BankServiceImpl(journal, null, replica);
+            assertTrue(replica.awaitApplied(10, TimeUnit.SECONDS));
+            assertEquals(expected, describe(replica));
+
+            Session session = bankService.login("user0");
+            bankService.deposit(session, valueOf(1000));
+            bankService.logout(session);
+            assertTrue(replica.awaitApplied(10, TimeUnit.SECONDS));
+            assertEquals(describe(bankService), describe(replica));
+        }
+    }
+
+    @Test
+    void testStatementCommand_ReadFromReplica() throws Exception {
+        BankService bankService = new BankServiceImpl(null, null, replica);
+        CommandContext context = new CommandContext();
+        context.setSession(bankService.login("Alice"));
+        bankService.logout(bankService.login("Bob"));
+        bankService.deposit(context.getSession(), valueOf(50));
+        bankService.transfer(context.getSession(), "Bob", valueOf(70));
+        assertTrue(replica.awaitApplied(10, TimeUnit.SECONDS));
+
+        StatementCommand command = new StatementCommand(CommandArguments.of(), replica);
+        assertEquals("Your balance is $0\nOwed $20 to Bob\n", command.execute(bankService, context));
+    }
+
+    @Test
+    void testStatementCommand_ExceptionThrown_IfNotAuthenticated() {
+        StatementCommand command = new StatementCommand(CommandArguments.of(), replica);
+        assertThrows(BankServiceException.class, () -> command.execute(new BankServiceImpl(), new CommandContext()));
+    }
+
+    private static void runConcurrentSessions(BankService bankService) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String loginName : LOGIN_NAMES) {
+                futures.add(executor.submit(() -> {
+                    Session session = bankService.login(loginName);
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 200; i++) {
+                        String to = LOGIN_NAMES.get(random.nextInt(LOGIN_NAMES.size()));
+                        if (random.nextInt(3) == 0) {
+                            bankService.deposit(session, valueOf(random.nextInt(1, 50)));
+                        } else if (!to.equals(loginName)) {
+                            // the recipient may not have logged in yet
+                            try {
+                                bankService.transfer(session, to, valueOf(random.nextInt(1, 50)));
+                            } catch (BankServiceException e) {
+                                assertTrue(e.getMessage().startsWith("no customer"));
+                            }
+                        }
+                    }
+                    bankService.logout(session);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String describe(BankService bankService) throws BankServiceException {
+        StringBuilder description = new StringBuilder();
+        for (String loginName : LOGIN_NAMES) {
+            Session session = bankService.login(loginName);
+            describe(description, session.getCustomer());
+            bankService.logout(session);
+        }
+        return description.toString();
+    }
+
+    private static String describe(ReadReplica replica) {
+        StringBuilder description = new StringBuilder();
+        for (String loginName : LOGIN_NAMES) {
+            describe(description, replica.getCustomer(loginName));
+        }
+        return description.toString();
+    }
+
+    private static void describe(StringBuilder description, CustomerView customer) {
+        description.append(customer.getLoginName()).append(' ')
+                .append(customer.getAccountBalance()).append(' ')
+                .append(customer.getCreditStatement()).append(' ')
+                .append(customer.getDebitStatement()).append('\n');
+    }
+}
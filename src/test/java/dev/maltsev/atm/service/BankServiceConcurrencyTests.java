@@ -0,0 +1,101 @@
+package dev.maltsev.atm.service;
+
+import dev.maltsev.atm.domain.Account;
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.service.impl.BankServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class BankServiceConcurrencyTests {
+
+    private static final int CUSTOMER_COUNT = 16;
+
+    private static final int OPERATION_COUNT = 20_000;
+
+    private static final Money INITIAL_BALANCE = valueOf(1000);
+
+    private BankService bankService;
+
+    private final List<CustomerView> customers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        bankService = createBankService();
+        for (int i = 0; i < CUSTOMER_COUNT; i++) {
+            Session session = bankService.login("user" + i);
+            bankService.deposit(session, INITIAL_BALANCE);
+            customers.add(bankService.logout(session));
+        }
+    }
+
+    protected BankService createBankService() throws Exception {
+        return new BankServiceImpl();
+    }
+
+    @Test
+    void testTransfer_MoneyConserved_UnderContention() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CUSTOMER_COUNT);
+        List<Future<Money>> futures = new ArrayList<>();
+
+        // every worker drives its own customer session, transferring to random customers and
+        // depositing from time to time so debts are repaid while other workers transfer
+        for (int i = 0; i < CUSTOMER_COUNT; i++) {
+            String loginName = "user" + i;
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Money deposited = Money.ZERO;
+                Session session = bankService.login(loginName);
+                for (int j = 0; j < OPERATION_COUNT; j++) {
+                    Money amount = valueOf(random.nextInt(1, 200));
+                    if (random.nextInt(10) == 0) {
+                        bankService.deposit(session, amount);
+                        deposited = deposited.add(amount);
+                    } else {
+                        String to = "user" + random.nextInt(CUSTOMER_COUNT);
+                        if (!to.equals(loginName)) {
+                            bankService.transfer(session, to, amount);
+                        }
+                    }
+                }
+                bankService.logout(session);
+                return deposited;
+            }));
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES), "possible deadlock");
+
+        Money expectedTotal = INITIAL_BALANCE.multiply(CUSTOMER_COUNT);
+        for (Future<Money> future : futures) {
+            expectedTotal = expectedTotal.add(future.get());
+        }
+
+        Money actualTotal = Money.ZERO;
+        for (CustomerView customer : customers) {
+            actualTotal = actualTotal.add(customer.getAccountBalance());
+        }
+        assertEquals(expectedTotal, actualTotal);
+
+        for (CustomerView debtor : customers) {
+            for (Map.Entry<? extends CustomerView, ? extends Account> entry : debtor.getCreditAccountMap().entrySet()) {
+                Account debitAccount = entry.getKey().getDebitAccountMap().get(debtor);
+                assertNotNull(debitAccount);
+                assertEquals(entry.getValue().getBalance(), debitAccount.getBalance());
+            }
+        }
+    }
+}
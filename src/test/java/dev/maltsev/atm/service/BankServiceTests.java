@@ -2,16 +2,25 @@ package dev.maltsev.atm.service;
 
 import dev.maltsev.atm.domain.Transaction;
 import dev.maltsev.atm.domain.Account;
-import dev.maltsev.atm.domain.Customer;
+import dev.maltsev.atm.domain.CustomerView;
+import dev.maltsev.atm.domain.Money;
+import dev.maltsev.atm.domain.Payment;
+import dev.maltsev.atm.domain.TransferSummary;
 import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.exceptions.PaymentException;
 import dev.maltsev.atm.service.impl.BankServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import static java.math.BigDecimal.valueOf;
+import static dev.maltsev.atm.domain.Money.valueOf;
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -20,8 +29,12 @@ public class BankServiceTests {
     private BankService bankService;
 
     @BeforeEach
-    void setUp() {
-        bankService = new BankServiceImpl();
+    void setUp() throws Exception {
+        bankService = createBankService();
+    }
+
+    protected BankService createBankService() throws Exception {
+        return new BankServiceImpl();
     }
 
     /**
@@ -30,10 +43,13 @@ public class BankServiceTests {
     @Test
     void testLogin_Ok() throws BankServiceException {
         String loginName = "user";
-        Customer customer = bankService.login(loginName);
+        Session session = bankService.login(loginName);
+        assertNotNull(session);
+        assertTrue(session.isActive());
+        CustomerView customer = session.getCustomer();
         assertNotNull(customer);
         assertEquals(loginName, customer.getLoginName());
-        assertEquals(0, customer.getAccountBalance().doubleValue());
+        assertEquals(Money.ZERO, customer.getAccountBalance());
         assertEquals(0, customer.getCreditAccountMap().size());
         assertEquals(0, customer.getDebitAccountMap().size());
     }
@@ -45,49 +61,65 @@ public class BankServiceTests {
     }
 
     @Test
-    void testLogin_ExceptionThrown_IfAnotherCustomerHasLoggedIn() throws BankServiceException {
-        bankService.login("user");
-        assertThrows(BankServiceException.class, () -> bankService.login("another_user"));
-    }
+    void testLogin_Ok_IfAnotherCustomerHasLoggedIn() throws BankServiceException {
+        Session session = bankService.login("user");
+        Session anotherSession = bankService.login("another_user");
 
+        assertTrue(session.isActive());
+        assertTrue(anotherSession.isActive());
+        assertEquals("user", session.getCustomer().getLoginName());
+        assertEquals("another_user", anotherSession.getCustomer().getLoginName());
+    }
 
-    /**
-     * getCurrentCustomer() tests
-     */
     @Test
-    void testGetCurrentCustomer_ExceptionThrown_IfNoCustomerLoggedIn() {
-        assertThrows(BankServiceException.class, () -> bankService.getCurrentCustomer());
+    void testLogin_SameCustomer_IfLoggedInAgain() throws BankServiceException {
+        Session session = bankService.login("user");
+        bankService.logout(session);
+
+        Session anotherSession = bankService.login("user");
+
+        assertNotSame(session, anotherSession);
+        assertEquals(session.getCustomer(), anotherSession.getCustomer());
     }
 
     @Test
-    void testGetCurrentCustomer_Ok() throws BankServiceException {
-        String loginName = "user";
-        bankService.login(loginName);
-        Customer customer = bankService.getCurrentCustomer();
-        assertNotNull(customer);
-        assertEquals(loginName, customer.getLoginName());
-        assertEquals(0, customer.getAccountBalance().doubleValue());
-        assertEquals(0, customer.getCreditAccountMap().size());
-        assertEquals(0, customer.getDebitAccountMap().size());
+    void testLogin_ConcurrentSessions() throws Exception {
+        int sessionCount = 64;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<CustomerView>> futures = new ArrayList<>();
+            for (int i = 0; i < sessionCount; i++) {
+                String loginName = "user" + i;
+                futures.add(executor.submit(() -> {
+                    Session session = bankService.login(loginName);
+                    bankService.deposit(session, valueOf(10));
+                    return bankService.logout(session);
+                }));
+            }
+
+            for (int i = 0; i < sessionCount; i++) {
+                CustomerView customer = futures.get(i).get();
+                assertEquals("user" + i, customer.getLoginName());
+                assertEquals(valueOf(10), customer.getAccountBalance());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     /**
      * logout tests
      */
-    @Test
-    void testLogout_ExceptionThrown_IfNoCustomerLoggedIn() {
-        assertThrows(BankServiceException.class, () -> bankService.logout());
-    }
-
     @Test
     void testLogout_Ok() throws BankServiceException {
         String loginName = "user";
-        bankService.login(loginName);
-        Customer customer = bankService.logout();
+        Session session = bankService.login(loginName);
+        CustomerView customer = bankService.logout(session);
 
+        assertFalse(session.isActive());
         assertNotNull(customer);
         assertEquals(loginName, customer.getLoginName());
-        assertEquals(0, customer.getAccountBalance().doubleValue());
+        assertEquals(Money.ZERO, customer.getAccountBalance());
         assertEquals(0, customer.getCreditAccountMap().size());
         assertEquals(0, customer.getDebitAccountMap().size());
 
@@ -96,38 +128,41 @@ public class BankServiceTests {
 
     @Test
     void testLogout_ExceptionThrown_IfCustomerHasAlreadyLoggedOut() throws BankServiceException {
-        bankService.login("user");
-        bankService.logout();
-        assertThrows(BankServiceException.class, () -> bankService.logout());
+        Session session = bankService.login("user");
+        bankService.logout(session);
+        assertThrows(BankServiceException.class, () -> bankService.logout(session));
     }
 
     /**
      * deposit tests
      */
     @Test
-    void testDeposit_ExceptionThrown_IfNoCustomerLoggedIn() {
-        assertThrows(BankServiceException.class, () -> bankService.deposit(valueOf(10)));
+    void testDeposit_ExceptionThrown_IfSessionClosed() throws BankServiceException {
+        Session session = bankService.login("user");
+        bankService.logout(session);
+        assertThrows(BankServiceException.class, () -> bankService.deposit(session, valueOf(10)));
     }
 
     @Test
     void testDeposit_ExceptionThrown_If_NegativeAmount() throws BankServiceException {
-        bankService.login("user");
-        assertThrows(BankServiceException.class, () -> bankService.deposit(valueOf(-1)));
+        Session session = bankService.login("user");
+        assertThrows(BankServiceException.class, () -> bankService.deposit(session, valueOf(-1)));
     }
 
     @Test
     void testDeposit_ExceptionThrown_IfZeroAmount() throws BankServiceException {
-        bankService.login("user");
-        assertThrows(BankServiceException.class, () -> bankService.deposit(valueOf(0)));
+        Session session = bankService.login("user");
+        assertThrows(BankServiceException.class, () -> bankService.deposit(session, valueOf(0)));
     }
 
     @Test
     void testDeposit_IfNoDebt() throws BankServiceException {
         String loginName = "user";
-        Customer customer = bankService.login(loginName);
-        BigDecimal amount = valueOf(100);
+        Session session = bankService.login(loginName);
+        CustomerView customer = session.getCustomer();
+        Money amount = valueOf(100);
 
-        List<Transaction> transactions = bankService.deposit(amount);
+        List<Transaction> transactions = bankService.deposit(session, amount);
 
         assertEquals(amount, customer.getAccountBalance());
         assertEquals(0, customer.getCreditAccountMap().size());
@@ -139,14 +174,14 @@ public class BankServiceTests {
     @Test
     void testDeposit_SingleCreditor_IfDepositGreaterThanDebt() throws BankServiceException {
         String creditorLoginName = "creditor_user";
-        Customer creditor = bankService.login(creditorLoginName);
-        bankService.logout();
+        CustomerView creditor = bankService.logout(bankService.login(creditorLoginName));
 
         String debtorLoginName = "user";
-        Customer debtor = bankService.login(debtorLoginName);
-        bankService.transfer(creditorLoginName, valueOf(60));
+        Session session = bankService.login(debtorLoginName);
+        CustomerView debtor = session.getCustomer();
+        bankService.transfer(session, creditorLoginName, valueOf(60));
 
-        List<Transaction> transactions = bankService.deposit(valueOf(100));
+        List<Transaction> transactions = bankService.deposit(session, valueOf(100));
 
         assertEquals(valueOf(40), debtor.getAccountBalance());
         assertEquals(valueOf(60), creditor.getAccountBalance());
@@ -158,21 +193,21 @@ public class BankServiceTests {
         assertEquals(0, creditor.getDebitAccountMap().size());
 
         assertEquals(2, transactions.size());
-        assertEquals(new Transaction(debtorLoginName, creditorLoginName, valueOf(60)), transactions.get(0));
-        assertEquals(new Transaction(null, debtorLoginName, valueOf(40)), transactions.get(1));
+        assertEquals(new Transaction(null, debtorLoginName, valueOf(100)), transactions.get(0));
+        assertEquals(new Transaction(debtorLoginName, creditorLoginName, valueOf(60)), transactions.get(1));
     }
 
     @Test
     void testDeposit_SingleCreditor_IfDepositEqualsToDebt() throws BankServiceException {
         String creditorLoginName = "creditor_user";
-        Customer creditor = bankService.login(creditorLoginName);
-        bankService.logout();
+        CustomerView creditor = bankService.logout(bankService.login(creditorLoginName));
 
         String debtorLoginName = "user";
-        Customer debtor = bankService.login(debtorLoginName);
-        bankService.transfer(creditorLoginName, valueOf(60));
+        Session session = bankService.login(debtorLoginName);
+        CustomerView debtor = session.getCustomer();
+        bankService.transfer(session, creditorLoginName, valueOf(60));
 
-        List<Transaction> transactions = bankService.deposit(valueOf(60));
+        List<Transaction> transactions = bankService.deposit(session, valueOf(60));
 
         assertEquals(valueOf(0), debtor.getAccountBalance());
         assertEquals(valueOf(60), creditor.getAccountBalance());
@@ -183,21 +218,22 @@ public class BankServiceTests {
         assertEquals(0, creditor.getCreditAccountMap().size());
         assertEquals(0, creditor.getDebitAccountMap().size());
 
-        assertEquals(1, transactions.size());
-        assertEquals(new Transaction(debtorLoginName, creditorLoginName, valueOf(60)), transactions.get(0));
+        assertEquals(2, transactions.size());
+        assertEquals(new Transaction(null, debtorLoginName, valueOf(60)), transactions.get(0));
+        assertEquals(new Transaction(debtorLoginName, creditorLoginName, valueOf(60)), transactions.get(1));
     }
 
     @Test
     void testDeposit_SingleCreditor_IfDepositLessThanDebt() throws BankServiceException {
         String creditorLoginName = "creditor_user";
-        Customer creditor = bankService.login(creditorLoginName);
-        bankService.logout();
+        CustomerView creditor = bankService.logout(bankService.login(creditorLoginName));
 
         String debtorLoginName = "user";
-        Customer debtor = bankService.login(debtorLoginName);
-        bankService.transfer(creditorLoginName, valueOf(60));
+        Session session = bankService.login(debtorLoginName);
+        CustomerView debtor = session.getCustomer();
+        bankService.transfer(session, creditorLoginName, valueOf(60));
 
-        List<Transaction> transactions = bankService.deposit(valueOf(40));
+        List<Transaction> transactions = bankService.deposit(session, valueOf(40));
 
         assertEquals(valueOf(0), debtor.getAccountBalance());
         assertEquals(valueOf(40), creditor.getAccountBalance());
@@ -205,35 +241,35 @@ public class BankServiceTests {
         assertEquals(1, debtor.getCreditAccountMap().size());
         Account creditAccount = debtor.getCreditAccountMap().get(creditor);
         assertNotNull(creditAccount);
-        assertEquals(20, creditAccount.getBalance().doubleValue());
+        assertEquals(valueOf(20), creditAccount.getBalance());
         assertEquals(0, debtor.getDebitAccountMap().size());
 
         assertEquals(0, creditor.getCreditAccountMap().size());
         assertEquals(1, creditor.getDebitAccountMap().size());
         Account debitAccount = creditor.getDebitAccountMap().get(debtor);
         assertNotNull(debitAccount);
-        assertEquals(20, debitAccount.getBalance().doubleValue());
+        assertEquals(valueOf(20), debitAccount.getBalance());
 
-        assertEquals(1, transactions.size());
-        assertEquals(new Transaction(debtorLoginName, creditorLoginName, valueOf(40)), transactions.get(0));
+        assertEquals(2, transactions.size());
+        assertEquals(new Transaction(null, debtorLoginName, valueOf(40)), transactions.get(0));
+        assertEquals(new Transaction(debtorLoginName, creditorLoginName, valueOf(40)), transactions.get(1));
     }
 
     @Test
     void testDeposit_IfSeveralCreditors() throws BankServiceException {
         String creditorLoginName1 = "creditor_user1";
-        Customer creditor1 = bankService.login(creditorLoginName1);
-        bankService.logout();
+        CustomerView creditor1 = bankService.logout(bankService.login(creditorLoginName1));
 
         String creditorLoginName2 = "creditor_user2";
-        Customer creditor2 = bankService.login(creditorLoginName2);
-        bankService.logout();
+        CustomerView creditor2 = bankService.logout(bankService.login(creditorLoginName2));
 
         String debtorLoginName = "user";
-        Customer debtor = bankService.login(debtorLoginName);
-        bankService.transfer(creditorLoginName1, valueOf(25));
-        bankService.transfer(creditorLoginName2, valueOf(35));
+        Session session = bankService.login(debtorLoginName);
+        CustomerView debtor = session.getCustomer();
+        bankService.transfer(session, creditorLoginName1, valueOf(25));
+        bankService.transfer(session, creditorLoginName2, valueOf(35));
 
-        List<Transaction> transactions = bankService.deposit(valueOf(100));
+        List<Transaction> transactions = bankService.deposit(session, valueOf(100));
 
         assertEquals(0, debtor.getCreditAccountMap().size());
         assertEquals(0, debtor.getDebitAccountMap().size());
@@ -247,45 +283,104 @@ public class BankServiceTests {
         assertEquals(valueOf(35), creditor2.getAccountBalance());
 
         assertEquals(3, transactions.size());
-        assertEquals(new Transaction(debtorLoginName, creditorLoginName1, valueOf(25)), transactions.get(0));
-        assertEquals(new Transaction(debtorLoginName, creditorLoginName2, valueOf(35)), transactions.get(1));
-        assertEquals(new Transaction(null, debtorLoginName, valueOf(40)), transactions.get(2));
+        assertEquals(new Transaction(null, debtorLoginName, valueOf(100)), transactions.get(0));
+        assertEquals(new Transaction(debtorLoginName, creditorLoginName1, valueOf(25)), transactions.get(1));
+        assertEquals(new Transaction(debtorLoginName, creditorLoginName2, valueOf(35)), transactions.get(2));
+    }
+
+    @Test
+    void testDeposit_CreditorRepaysCreditorBeforeNextDebt() throws BankServiceException {
+        // user owes 10 to creditor1 and to creditor2, creditor1 owes 10 to creditor3 who owes 10 to user
+        for (String loginName : new String[]{"creditor1", "creditor2", "creditor3"}) {
+            bankService.logout(bankService.login(loginName));
+        }
+        Session session = bankService.login("user");
+        CustomerView user = session.getCustomer();
+        bankService.transfer(session, "creditor1", valueOf(10));
+        bankService.transfer(session, "creditor2", valueOf(10));
+        Session creditor1 = bankService.login("creditor1");
+        bankService.transfer(creditor1, "creditor3", valueOf(10));
+        Session creditor3 = bankService.login("creditor3");
+        bankService.transfer(creditor3, "user", valueOf(10));
+
+        List<Transaction> transactions = bankService.deposit(session, valueOf(20));
+
+        // the repayment to creditor1 comes back to user through creditor3 and repays creditor2
+        assertEquals(List.of(
+                new Transaction(null, "user", valueOf(20)),
+                new Transaction("user", "creditor1", valueOf(10)),
+                new Transaction("creditor1", "creditor3", valueOf(10)),
+                new Transaction("creditor3", "user", valueOf(10)),
+                new Transaction("user", "creditor2", valueOf(10))), transactions);
+        assertEquals(valueOf(10), user.getAccountBalance());
+        assertEquals(0, user.getCreditAccountMap().size());
+        assertEquals(Money.ZERO, creditor1.getCustomer().getAccountBalance());
+        assertEquals(Money.ZERO, creditor3.getCustomer().getAccountBalance());
+        assertEquals(valueOf(10), bankService.login("creditor2").getCustomer().getAccountBalance());
+    }
+
+    @Test
+    void testDeposit_LongDebtChain() throws BankServiceException {
+        int chainLength = 100_000;
+        Session[] sessions = new Session[chainLength];
+        for (int i = 0; i < chainLength; i++) {
+            sessions[i] = bankService.login("user" + i);
+        }
+        for (int i = chainLength - 2; i >= 0; i--) {
+            bankService.transfer(sessions[i], "user" + (i + 1), valueOf(10));
+        }
+
+        List<Transaction> transactions = bankService.deposit(sessions[0], valueOf(10));
+
+        // the deposit and a repayment of every debt of the chain
+        assertEquals(chainLength, transactions.size());
+        assertEquals(new Transaction(null, "user0", valueOf(10)), transactions.get(0));
+        for (int i = 0; i < chainLength - 1; i++) {
+            assertEquals(new Transaction("user" + i, "user" + (i + 1), valueOf(10)), transactions.get(i + 1));
+            assertEquals(0, sessions[i].getCustomer().getCreditAccountMap().size());
+            assertEquals(Money.ZERO, sessions[i].getCustomer().getAccountBalance());
+        }
+        assertEquals(valueOf(10), sessions[chainLength - 1].getCustomer().getAccountBalance());
     }
 
     /**
      * withdraw tests
      */
     @Test
-    void testWithdraw_ExceptionThrown_IfNoCustomerLoggedIn() {
-        assertThrows(BankServiceException.class, () -> bankService.withdraw(new BigDecimal(10)));
+    void testWithdraw_ExceptionThrown_IfSessionClosed() throws BankServiceException {
+        Session session = bankService.login("user");
+        bankService.deposit(session, valueOf(100));
+        bankService.logout(session);
+        assertThrows(BankServiceException.class, () -> bankService.withdraw(session, valueOf(10)));
     }
 
     @Test
     void testWithdraw_ExceptionThrown_IfNegativeAmount() throws BankServiceException {
-        bankService.login("user");
-        assertThrows(BankServiceException.class, () -> bankService.withdraw(valueOf(-1)));
+        Session session = bankService.login("user");
+        assertThrows(BankServiceException.class, () -> bankService.withdraw(session, valueOf(-1)));
     }
 
     @Test
     void testWithdraw_ExceptionThrown_IfZeroAmount() throws BankServiceException {
-        bankService.login("user");
-        assertThrows(BankServiceException.class, () -> bankService.withdraw(valueOf(0)));
+        Session session = bankService.login("user");
+        assertThrows(BankServiceException.class, () -> bankService.withdraw(session, valueOf(0)));
     }
 
     @Test
     void testWithdraw_ExceptionThrown_IfNotEnoughBalance() throws BankServiceException {
         String loginName = "user";
-        bankService.login(loginName);
-        assertThrows(BankServiceException.class, () -> bankService.withdraw(new BigDecimal(10)));
+        Session session = bankService.login(loginName);
+        assertThrows(BankServiceException.class, () -> bankService.withdraw(session, valueOf(10)));
     }
 
     @Test
     void testWithdraw_Ok_IfAmountLessThanDeposit() throws BankServiceException {
         String loginName = "user";
-        Customer customer = bankService.login(loginName);
-        bankService.deposit(valueOf(100));
+        Session session = bankService.login(loginName);
+        CustomerView customer = session.getCustomer();
+        bankService.deposit(session, valueOf(100));
 
-        Transaction transaction = bankService.withdraw(valueOf(10));
+        Transaction transaction = bankService.withdraw(session, valueOf(10));
 
         assertEquals(0, customer.getCreditAccountMap().size());
         assertEquals(0, customer.getDebitAccountMap().size());
@@ -297,10 +392,11 @@ public class BankServiceTests {
     @Test
     void testWithdraw_Ok_IfAmountEqualsToDeposit() throws BankServiceException {
         String loginName = "user";
-        Customer customer = bankService.login(loginName);
-        bankService.deposit(valueOf(10));
+        Session session = bankService.login(loginName);
+        CustomerView customer = session.getCustomer();
+        bankService.deposit(session, valueOf(10));
 
-        Transaction transaction = bankService.withdraw(valueOf(10));
+        Transaction transaction = bankService.withdraw(session, valueOf(10));
 
         assertEquals(0, customer.getCreditAccountMap().size());
         assertEquals(0, customer.getDebitAccountMap().size());
@@ -313,55 +409,56 @@ public class BankServiceTests {
      * transfer tests
      */
     @Test
-    void testTransfer_ExceptionThrown_IfNoCustomerLoggedIn() {
-        assertThrows(BankServiceException.class, () -> bankService.transfer("user", valueOf(10)));
+    void testTransfer_ExceptionThrown_IfSessionClosed() throws BankServiceException {
+        bankService.logout(bankService.login("another_user"));
+        Session session = bankService.login("user");
+        bankService.logout(session);
+        assertThrows(BankServiceException.class, () -> bankService.transfer(session, "another_user", valueOf(10)));
     }
 
     @Test
     void testTransfer_ExceptionThrown_IfNegativeAmount() throws BankServiceException {
         String toLoginName = "another_user";
-        bankService.login(toLoginName);
-        bankService.logout();
-        bankService.login("user");
-        assertThrows(BankServiceException.class, () -> bankService.transfer(toLoginName, valueOf(-1)));
+        bankService.logout(bankService.login(toLoginName));
+        Session session = bankService.login("user");
+        assertThrows(BankServiceException.class, () -> bankService.transfer(session, toLoginName, valueOf(-1)));
     }
 
     @Test
     void testTransfer_ExceptionThrown_IfZeroAmount() throws BankServiceException {
         String toLoginName = "another_user";
-        bankService.login(toLoginName);
-        bankService.logout();
-        bankService.login("user");
-        assertThrows(BankServiceException.class, () -> bankService.transfer(toLoginName, valueOf(0)));
+        bankService.logout(bankService.login(toLoginName));
+        Session session = bankService.login("user");
+        assertThrows(BankServiceException.class, () -> bankService.transfer(session, toLoginName, valueOf(0)));
     }
 
     @Test
     void testTransfer_ExceptionThrown_IfSelfTransfer() throws BankServiceException {
-        bankService.login("user");
-        assertThrows(BankServiceException.class, () -> bankService.transfer("user", valueOf(100)));
+        Session session = bankService.login("user");
+        assertThrows(BankServiceException.class, () -> bankService.transfer(session, "user", valueOf(100)));
     }
 
     @Test
     void testTransfer_ExceptionThrown_IfNoToCustomerExists() throws BankServiceException {
         String from = "user";
-        bankService.login(from);
-        bankService.deposit(valueOf(100));
-        assertThrows(BankServiceException.class, () -> bankService.transfer("another_user", valueOf(10)));
+        Session session = bankService.login(from);
+        bankService.deposit(session, valueOf(100));
+        assertThrows(BankServiceException.class, () -> bankService.transfer(session, "another_user", valueOf(10)));
     }
 
     @Test
     void testTransfer_IfAmountLessThanDeposit() throws BankServiceException {
         String toLoginName = "another_user";
-        Customer to = bankService.login(toLoginName);
-        bankService.logout();
+        CustomerView to = bankService.logout(bankService.login(toLoginName));
 
         String fromLoginName = "user";
-        Customer from = bankService.login(fromLoginName);
-        bankService.deposit(valueOf(100));
+        Session session = bankService.login(fromLoginName);
+        CustomerView from = session.getCustomer();
+        bankService.deposit(session, valueOf(100));
 
-        BigDecimal transferAmount = valueOf(60);
+        Money transferAmount = valueOf(60);
 
-        List<Transaction> transactions = bankService.transfer(toLoginName, transferAmount);
+        List<Transaction> transactions = bankService.transfer(session, toLoginName, transferAmount);
 
         assertEquals(0, from.getCreditAccountMap().size());
         assertEquals(0, from.getDebitAccountMap().size());
@@ -379,16 +476,16 @@ public class BankServiceTests {
     @Test
     void testTransfer_IfAmountEqualsToDeposit() throws BankServiceException {
         String toLoginName = "another_user";
-        Customer to = bankService.login(toLoginName);
-        bankService.logout();
+        CustomerView to = bankService.logout(bankService.login(toLoginName));
 
         String fromLoginName = "user";
-        Customer from = bankService.login(fromLoginName);
-        bankService.deposit(valueOf(60));
+        Session session = bankService.login(fromLoginName);
+        CustomerView from = session.getCustomer();
+        bankService.deposit(session, valueOf(60));
 
-        BigDecimal transferAmount = valueOf(60);
+        Money transferAmount = valueOf(60);
 
-        List<Transaction> transactions = bankService.transfer(toLoginName, transferAmount);
+        List<Transaction> transactions = bankService.transfer(session, toLoginName, transferAmount);
 
         assertEquals(0, from.getCreditAccountMap().size());
         assertEquals(0, from.getDebitAccountMap().size());
@@ -406,26 +503,26 @@ public class BankServiceTests {
     @Test
     void testTransfer_DepositLessThanTransfer() throws BankServiceException {
         String toLoginName = "another_user";
-        Customer to = bankService.login(toLoginName);
-        bankService.logout();
+        CustomerView to = bankService.logout(bankService.login(toLoginName));
 
         String fromLoginName = "user";
-        Customer from = bankService.login(fromLoginName);
-        bankService.deposit(valueOf(60));
+        Session session = bankService.login(fromLoginName);
+        CustomerView from = session.getCustomer();
+        bankService.deposit(session, valueOf(60));
 
-        List<Transaction> transactions = bankService.transfer(toLoginName, valueOf(100));
+        List<Transaction> transactions = bankService.transfer(session, toLoginName, valueOf(100));
 
         assertEquals(1, from.getCreditAccountMap().size());
         assertEquals(0, from.getDebitAccountMap().size());
         Account creditAccount = from.getCreditAccountMap().get(to);
         assertNotNull(creditAccount);
-        assertEquals(40, creditAccount.getBalance().doubleValue());
+        assertEquals(valueOf(40), creditAccount.getBalance());
 
         assertEquals(0, to.getCreditAccountMap().size());
         assertEquals(1, to.getDebitAccountMap().size());
         Account debitAccount = to.getDebitAccountMap().get(from);
         assertNotNull(debitAccount);
-        assertEquals(40, debitAccount.getBalance().doubleValue());
+        assertEquals(valueOf(40), debitAccount.getBalance());
 
         assertEquals(valueOf(0), from.getAccountBalance());
         assertEquals(valueOf(60), to.getAccountBalance());
@@ -437,34 +534,157 @@ public class BankServiceTests {
     @Test
     void testTransfer_SingleCreditor_AmountGreaterThanDebt() throws BankServiceException {
         String fromLoginName = "user";
-        Customer from = bankService.login(fromLoginName);
-        bankService.logout();
+        CustomerView from = bankService.logout(bankService.login(fromLoginName));
 
         String toLoginName = "another_user";
-        Customer to = bankService.login(toLoginName);
-        bankService.transfer(fromLoginName, valueOf(60));
-        bankService.logout();
+        Session toSession = bankService.login(toLoginName);
+        CustomerView to = toSession.getCustomer();
+        bankService.transfer(toSession, fromLoginName, valueOf(60));
+        bankService.logout(toSession);
 
-        bankService.login(fromLoginName);
-        bankService.deposit(valueOf(100));
+        Session session = bankService.login(fromLoginName);
+        bankService.deposit(session, valueOf(100));
 
-        List<Transaction> transactions = bankService.transfer(toLoginName, valueOf(40));
+        List<Transaction> transactions = bankService.transfer(session, toLoginName, valueOf(40));
 
         assertEquals(0, from.getCreditAccountMap().size());
         assertEquals(1, from.getDebitAccountMap().size());
         Account debitAccount = from.getDebitAccountMap().get(to);
         assertNotNull(debitAccount);
-        assertEquals(20, debitAccount.getBalance().doubleValue());
+        assertEquals(valueOf(20), debitAccount.getBalance());
 
         assertEquals(1, to.getCreditAccountMap().size());
         assertEquals(0, to.getDebitAccountMap().size());
         Account creditAccount = to.getCreditAccountMap().get(from);
         assertNotNull(creditAccount);
-        assertEquals(20, creditAccount.getBalance().doubleValue());
+        assertEquals(valueOf(20), creditAccount.getBalance());
 
         assertEquals(valueOf(100), from.getAccountBalance());
         assertEquals(valueOf(0), to.getAccountBalance());
 
         assertEquals(0, transactions.size());
     }
+
+    @Test
+    void testTransfer_SingleCreditor_AmountGreaterThanOwedFromDestination() throws BankServiceException {
+        String fromLoginName = "user";
+        CustomerView from = bankService.logout(bankService.login(fromLoginName));
+
+        String toLoginName = "another_user";
+        Session toSession = bankService.login(toLoginName);
+        CustomerView to = toSession.getCustomer();
+        bankService.transfer(toSession, fromLoginName, valueOf(20));
+        bankService.logout(toSession);
+
+        Session session = bankService.login(fromLoginName);
+        bankService.deposit(session, valueOf(100));
+
+        List<Transaction> transactions = bankService.transfer(session, toLoginName, valueOf(50));
+
+        assertEquals(0, from.getCreditAccountMap().size());
+        assertEquals(0, from.getDebitAccountMap().size());
+        assertEquals(0, to.getCreditAccountMap().size());
+        assertEquals(0, to.getDebitAccountMap().size());
+
+        assertEquals(valueOf(70), from.getAccountBalance());
+        assertEquals(valueOf(30), to.getAccountBalance());
+
+        assertEquals(1, transactions.size());
+        assertEquals(new Transaction(fromLoginName, toLoginName, valueOf(30)), transactions.get(0));
+    }
+
+    /**
+     * statement tests
+     */
+    @Test
+    void testStatements_CachedUntilDebtsChange() throws BankServiceException {
+        CustomerView other = bankService.logout(bankService.login("other"));
+        Session session = bankService.login("user");
+        CustomerView from = session.getCustomer();
+        bankService.transfer(session, "other", valueOf(10));
+
+        String creditStatement = from.getCreditStatement();
+        assertEquals("Owed $10 to other", creditStatement);
+        assertEquals("Owed $10 from user", other.getDebitStatement());
+        assertSame(creditStatement, from.getCreditStatement());
+
+        bankService.deposit(session, valueOf(4));
+
+        assertEquals("Owed $6 to other", from.getCreditStatement());
+        assertEquals("Owed $6 from user", other.getDebitStatement());
+
+        bankService.deposit(session, valueOf(6));
+
+        assertEquals("", from.getCreditStatement());
+        assertEquals("", other.getDebitStatement());
+    }
+
+    /**
+     * batch transfer tests
+     */
+    @Test
+    void testTransferAll_OffsetTransferredAndOwed() throws BankServiceException {
+        CustomerView from = bankService.logout(bankService.login("user"));
+        Session debtorSession = bankService.login("debtor");
+        CustomerView debtor = debtorSession.getCustomer();
+        bankService.transfer(debtorSession, "user", valueOf(20));
+        bankService.logout(debtorSession);
+        CustomerView other = bankService.logout(bankService.login("other"));
+
+        Session session = bankService.login("user");
+        bankService.deposit(session, valueOf(50));
+
+        TransferSummary summary = bankService.transferAll(session, Arrays.asList(
+                new Payment("debtor", valueOf(30)), new Payment("other", valueOf(30)),
+                new Payment("debtor", valueOf(20))));
+
+        assertEquals(3, summary.getPaymentCount());
+        assertEquals(2, summary.getRecipientCount());
+        assertEquals(valueOf(20), summary.getOffset());
+        assertEquals(valueOf(50), summary.getTransferred());
+        assertEquals(valueOf(10), summary.getOwed());
+        assertEquals(Arrays.asList(new Transaction("user", "debtor", valueOf(10)),
+                new Transaction("user", "other", valueOf(30)), new Transaction("user", "debtor", valueOf(10))),
+                summary.getTransactions());
+        assertEquals("Paid $80 in 3 payments to 2 customers\nTransferred $50, offset $20 of debts to you, owed $10",
+                summary.getStatement());
+
+        assertEquals(Money.ZERO, from.getAccountBalance());
+        assertEquals(valueOf(20), debtor.getAccountBalance());
+        assertEquals(valueOf(30), other.getAccountBalance());
+        assertEquals(0, debtor.getCreditAccountMap().size());
+        assertEquals(valueOf(10), from.getCreditAccountMap().values().iterator().next().getBalance());
+        assertEquals("debtor", from.getCreditAccountMap().keySet().iterator().next().getLoginName());
+    }
+
+    @Test
+    void testTransferAll_NothingTransferred_IfAnyRecipientInvalid() throws BankServiceException {
+        CustomerView other = bankService.logout(bankService.login("other"));
+        Session session = bankService.login("user");
+        CustomerView from = session.getCustomer();
+        bankService.deposit(session, valueOf(100));
+
+        PaymentException e = assertThrows(PaymentException.class, () -> bankService.transferAll(session,
+                Arrays.asList(new Payment("other", valueOf(10)), new Payment("nobody", valueOf(10)))));
+        assertEquals(1, e.getIndex());
+        assertEquals("no customer with the login name found in payment 2", e.getMessage());
+        assertThrows(PaymentException.class, () -> bankService.transferAll(session, Arrays.asList(
+                new Payment("other", valueOf(10)), new Payment("user", valueOf(10)))));
+        assertThrows(BankServiceException.class, () -> bankService.transferAll(session, Arrays.asList(
+                new Payment("other", valueOf(10)), new Payment("other", valueOf(0)))));
+        assertThrows(BankServiceException.class, () -> bankService.transferAll(session, Collections.emptyList()));
+
+        assertEquals(valueOf(100), from.getAccountBalance());
+        assertEquals(Money.ZERO, other.getAccountBalance());
+        assertEquals(0, from.getCreditAccountMap().size());
+    }
+
+    @Test
+    void testTransferAll_ExceptionThrown_IfSessionClosed() throws BankServiceException {
+        bankService.logout(bankService.login("other"));
+        Session session = bankService.login("user");
+        bankService.logout(session);
+        assertThrows(BankServiceException.class, () -> bankService.transferAll(session,
+                Collections.singletonList(new Payment("other", valueOf(10)))));
+    }
 }
@@ -0,0 +1,31 @@
+package dev.maltsev.atm.service;
+
+import dev.maltsev.atm.offheap.OffHeapStore;
+import dev.maltsev.atm.service.impl.OffHeapBankService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+
+/**
+ * Runs the bank service tests against the off-heap engine with segments small enough to be crossed
+ */
+public class OffHeapBankServiceTests extends BankServiceTests {
+
+    @TempDir
+    Path directory;
+
+    private OffHeapBankService offHeapBankService;
+
+    @Override
+    protected BankService createBankService() throws Exception {
+        offHeapBankService = new OffHeapBankService(new OffHeapStore(directory, 8, false));
+        return offHeapBankService;
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        offHeapBankService.close();
+    }
+}
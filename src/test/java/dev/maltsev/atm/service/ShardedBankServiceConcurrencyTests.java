@@ -0,0 +1,16 @@
+package dev.maltsev.atm.service;
+
+import dev.maltsev.atm.service.impl.ShardedBankService;
+import dev.maltsev.atm.shard.LoopbackTransport;
+
+
+/**
+ * Runs the concurrency tests against the sharded engine, most transfers cross shards
+ */
+public class ShardedBankServiceConcurrencyTests extends BankServiceConcurrencyTests {
+
+    @Override
+    protected BankService createBankService() {
+        return new ShardedBankService(new LoopbackTransport(4));
+    }
+}
@@ -0,0 +1,74 @@
+package dev.maltsev.atm.service;
+
+import dev.maltsev.atm.service.exceptions.BankServiceException;
+import dev.maltsev.atm.service.impl.ShardedBankService;
+import dev.maltsev.atm.shard.LoopbackTransport;
+import dev.maltsev.atm.shard.ShardTransport;
+import org.junit.jupiter.api.Test;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Runs the bank service tests against the sharded engine
+ */
+public class ShardedBankServiceTests extends BankServiceTests {
+
+    private static final int SHARD_COUNT = 4;
+
+    private ShardedBankService shardedBankService;
+
+    @Override
+    protected BankService createBankService() {
+        shardedBankService = new ShardedBankService(new LoopbackTransport(SHARD_COUNT));
+        return shardedBankService;
+    }
+
+    @Test
+    void testTransfer_CommittedInTwoPhases_IfCustomersBelongToDifferentShards() throws Exception {
+        String alice = "alice";
+        String bob = nameOfOtherShard(alice);
+        Session aliceSession = shardedBankService.login(alice);
+        Session bobSession = shardedBankService.login(bob);
+
+        shardedBankService.deposit(aliceSession, valueOf(30));
+        long localCount = shardedBankService.getLocalCount();
+        shardedBankService.transfer(aliceSession, bob, valueOf(100));
+        assertEquals(1, shardedBankService.getCrossShardCount());
+        assertEquals(localCount, shardedBankService.getLocalCount());
+
+        assertEquals(valueOf(0), aliceSession.getCustomer().getAccountBalance());
+        assertEquals(valueOf(30), bobSession.getCustomer().getAccountBalance());
+        assertEquals("Owed $70 to " + bob, aliceSession.getCustomer().getCreditStatement());
+        assertEquals("Owed $70 from " + alice, bobSession.getCustomer().getDebitStatement());
+
+        // the repayment crosses the shards too, the copy of the debt is dropped with the debt
+        shardedBankService.deposit(aliceSession, valueOf(100));
+        assertEquals(valueOf(30), aliceSession.getCustomer().getAccountBalance());
+        assertEquals(valueOf(100), bobSession.getCustomer().getAccountBalance());
+        assertEquals("", aliceSession.getCustomer().getCreditStatement());
+        assertEquals("", bobSession.getCustomer().getDebitStatement());
+    }
+
+    @Test
+    void testWithdraw_NothingChanged_IfOperationFails() throws Exception {
+        Session session = shardedBankService.login("user");
+        shardedBankService.deposit(session, valueOf(10));
+
+        assertThrows(BankServiceException.class, () -> shardedBankService.withdraw(session, valueOf(11)));
+        assertEquals(valueOf(10), session.getCustomer().getAccountBalance());
+        shardedBankService.withdraw(session, valueOf(10));
+        assertEquals(valueOf(0), session.getCustomer().getAccountBalance());
+    }
+
+    private static String nameOfOtherShard(String loginName) {
+        int shard = ShardTransport.partitionOf(loginName, SHARD_COUNT);
+        for (int i = 0; ; i++) {
+            String name = "user" + i;
+            if (ShardTransport.partitionOf(name, SHARD_COUNT) != shard) {
+                return name;
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package dev.maltsev.atm.service;
+
+import dev.maltsev.atm.service.impl.SingleWriterBankService;
+import org.junit.jupiter.api.AfterEach;
+
+
+/**
+ * Runs the concurrency tests against the single-writer engine
+ */
+public class SingleWriterBankServiceConcurrencyTests extends BankServiceConcurrencyTests {
+
+    private SingleWriterBankService singleWriterBankService;
+
+    @Override
+    protected BankService createBankService() {
+        singleWriterBankService = new SingleWriterBankService(16);
+        return singleWriterBankService;
+    }
+
+    @AfterEach
+    void tearDown() {
+        singleWriterBankService.close();
+    }
+}
@@ -0,0 +1,38 @@
+package dev.maltsev.atm.service;
+
+import dev.maltsev.atm.service.impl.SingleWriterBankService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static dev.maltsev.atm.domain.Money.valueOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Runs the bank service tests against the single-writer engine with a buffer small enough to be filled
+ */
+public class SingleWriterBankServiceTests extends BankServiceTests {
+
+    private SingleWriterBankService singleWriterBankService;
+
+    @Override
+    protected BankService createBankService() {
+        singleWriterBankService = new SingleWriterBankService(2);
+        return singleWriterBankService;
+    }
+
+    @AfterEach
+    void tearDown() {
+        singleWriterBankService.close();
+    }
+
+    @Test
+    void testDeposit_ExceptionThrown_IfServiceIsClosed() throws Exception {
+        Session session = singleWriterBankService.login("user");
+        singleWriterBankService.deposit(session, valueOf(100));
+        singleWriterBankService.close();
+
+        assertThrows(IllegalStateException.class, () -> singleWriterBankService.deposit(session, valueOf(10)));
+        assertEquals(valueOf(100), session.getCustomer().getAccountBalance());
+    }
+}